@@ -5,12 +5,22 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import edu.stanford.nlp.sempre.Builder;
 import edu.stanford.nlp.sempre.Derivation;
 import edu.stanford.nlp.sempre.Example;
+import edu.stanford.nlp.sempre.Grammar;
 import edu.stanford.nlp.sempre.LanguageAnalyzer;
 import edu.stanford.nlp.sempre.StringValue;
 import edu.stanford.nlp.sempre.Value;
@@ -18,17 +28,43 @@ import fig.basic.LogInfo;
 
 public class Engine {
 
+	static final String gPath = "./grammar/wizard.grammar";
+
+	// maximum number of utterances whose parses are remembered.
+	static final int CACHE_SIZE = 10000;
+
 	Builder builder = new Builder();
 
+	// modification time of the grammar file that the parser was built from.
+	long grammarTime;
+
+	// normalized utterance -> parse result ("" if there is no parse).
+	final Map<String, String> cache = Collections
+			.synchronizedMap(new LinkedHashMap<String, String>(16, 0.75f, true) {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+					return size() > CACHE_SIZE;
+				}
+			});
+
+	final ExecutorService pool = Executors.newFixedThreadPool(Runtime
+			.getRuntime().availableProcessors());
+
 	public static void main(String[] args) {
-		new Engine().run();
+		Engine engine = new Engine();
+		try {
+			engine.run();
+		} finally {
+			engine.pool.shutdown();
+		}
 	}
 
 	private void run() {
 
-		String gPath = "./grammar/wizard.grammar";
-
 		builder.build();
+		grammarTime = new File(gPath).lastModified();
 		builder.grammar.read(gPath);
 
 		// This is used for learning based.
@@ -58,25 +94,33 @@ public class Engine {
 		File src = new File(srcPath);
 		try (BufferedReader br = new BufferedReader(new FileReader(src))) {
 			String line;
-			StringBuilder sb = new StringBuilder();
+			// the sentences of each line, parsed together and reassembled in
+			// line order.
+			List<String> nums = new ArrayList<String>();
+			List<String[]> stmts = new ArrayList<String[]>();
+			List<String> queries = new ArrayList<String>();
 			while ((line = br.readLine()) != null) {
 				// process the line.
 				String num = line.substring(0, 1);
 				String stmt = line.substring(3, line.length());
-				sb.append("line " + num + "\n");
 				// break it into multiple sentences.
+				String[] sub = new String[0];
 				if (stmt.contains("; ")) {
-					String[] sub = stmt.split("; ");
-					for (int i = 0; i < sub.length; i++) {
-						String res = parse(sub[i]);
-						sb.append(res);
-					}
+					sub = stmt.split("; ");
 				} else if (stmt.contains(".")) {
-					String[] sub = stmt.split("\\.");
-					for (int i = 0; i < sub.length; i++) {
-						String res = parse(sub[i]);
-						sb.append(res);
-					}
+					sub = stmt.split("\\.");
+				}
+				nums.add(num);
+				stmts.add(sub);
+				queries.addAll(Arrays.asList(sub));
+			}
+			List<String> results = parseAll(queries);
+			StringBuilder sb = new StringBuilder();
+			int k = 0;
+			for (int i = 0; i < nums.size(); i++) {
+				sb.append("line " + nums.get(i) + "\n");
+				for (int j = 0; j < stmts.get(i).length; j++) {
+					sb.append(results.get(k++));
 				}
 			}
 			LogInfo.log("Program: \n" + sb.toString());
@@ -91,10 +135,11 @@ public class Engine {
 	private void testFromBuffer() {
 		List<String> queryList = Arrays.asList(testSet);
 		// query = "two plus one";
+		List<String> results = parseAll(queryList);
 		int succ = 0;
-		for (String query : queryList) {
-			LogInfo.logs("Parse query----------%s", query);
-			String res = parse(query);
+		for (int i = 0; i < queryList.size(); i++) {
+			LogInfo.logs("Parse query----------%s", queryList.get(i));
+			String res = results.get(i);
 			if (!res.equals("")) {
 				succ++;
 				LogInfo.log("Dev result-----------: " + res);
@@ -104,7 +149,66 @@ public class Engine {
 		LogInfo.log("Success: " + succ + "/" + queryList.size());
 	}
 
+	/**
+	 * Parses the given utterances concurrently and returns the results in the
+	 * same order. The grammar is reloaded first if the grammar file has
+	 * changed since the parser was built.
+	 */
+	private List<String> parseAll(List<String> queries) {
+		checkGrammar();
+		List<Future<String>> futures = new ArrayList<Future<String>>();
+		LogInfo.begin_threads();
+		try {
+			for (final String query : queries) {
+				futures.add(pool.submit(new Callable<String>() {
+					public String call() {
+						return parse(query);
+					}
+				}));
+			}
+			List<String> results = new ArrayList<String>();
+			for (Future<String> future : futures) {
+				results.add(future.get());
+			}
+			return results;
+		} catch (InterruptedException e) {
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		} finally {
+			LogInfo.end_threads();
+		}
+	}
+
+	private void checkGrammar() {
+		long time = new File(gPath).lastModified();
+		if (time == grammarTime) {
+			return;
+		}
+		LogInfo.logs("Grammar %s has changed; reloading", gPath);
+		grammarTime = time;
+		builder.grammar = new Grammar();
+		builder.grammar.read(gPath);
+		builder.parser = null;
+		builder.buildUnspecified();
+		cache.clear();
+	}
+
+	private static String normalize(String query) {
+		return query.trim().replaceAll("\\s+", " ");
+	}
+
 	private String parse(String query) {
+		String key = normalize(query);
+		String res = cache.get(key);
+		if (res == null) {
+			res = parseUncached(key);
+			cache.put(key, res);
+		}
+		return res;
+	}
+
+	private String parseUncached(String query) {
 		StringBuilder sb = new StringBuilder();
 		Example.Builder b = new Example.Builder();
 		b.setUtterance(query);
@@ -1,33 +1,42 @@
 package cs.utexas.wizard.translator;
 
 import java.io.*;
-import org.antlr.runtime.*;
-import org.antlr.stringtemplate.*;
-import org.antlr.stringtemplate.language.*;
+import java.util.*;
 
+/**
+ * Usage: Main [template.stg ...] [input [outDir]]
+ *
+ * Translates the input with every template group given (by default,
+ * templates/Java.stg and templates/Python.stg). If the input is a directory,
+ * all the .cminus files in it are translated in parallel, and the code is
+ * written to outDir (by default, the input directory).
+ */
 public class Main {
-    public static StringTemplateGroup templates;
-
     public static void main(String[] args) throws Exception {
-	String templateFileName;
 	int a = 0;
-	if ( args.length<=1 ) {
-		templateFileName = "templates/Python.stg";
-	}
-	else {
-		templateFileName = args[a];
+	List<String> templateFileNames = new ArrayList<String>();
+	while ( a<args.length && args[a].endsWith(".stg") ) {
+		templateFileNames.add(args[a]);
 		a++;
 	}
-	templates = new StringTemplateGroup(new FileReader(templateFileName),
-					    AngleBracketTemplateLexer.class);
+	Translator translator = templateFileNames.isEmpty()
+		? new Translator()
+		: new Translator(templateFileNames.toArray(new String[0]));
 
-	String src = "input";
-	CharStream input = new ANTLRFileStream(src);
-	CMinusLexer lexer = new CMinusLexer(input);
-	CommonTokenStream tokens = new CommonTokenStream(lexer);
-	CMinusParser parser = new CMinusParser(tokens);
-	parser.setTemplateLib(templates);
-	RuleReturnScope r = parser.program();
-	System.out.println(r.getTemplate().toString());
+	File src = new File(a<args.length ? args[a++] : "input");
+	if ( src.isDirectory() ) {
+		File outDir = a<args.length ? new File(args[a]) : src;
+		int threads = Runtime.getRuntime().availableProcessors();
+		int n = translator.translateDirectory(src, outDir, threads);
+		System.err.println(n + " programs translated");
+		return;
+	}
+	Map<String, String> code = translator.translate(src);
+	for (Map.Entry<String, String> entry : code.entrySet()) {
+		if ( code.size()>1 ) {
+			System.out.println("// " + entry.getKey());
+		}
+		System.out.println(entry.getValue());
+	}
     }
 }
@@ -1,11 +1,31 @@
 package cs.utexas.wizard.translator;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 import edu.uw.cs.lil.tiny.base.concurrency.ITinyExecutor;
 import edu.uw.cs.lil.tiny.base.concurrency.TinyExecutorService;
@@ -37,6 +57,7 @@ import edu.uw.cs.lil.tiny.mr.lambda.LogicalExpression;
 import edu.uw.cs.lil.tiny.mr.lambda.ccg.LogicalExpressionCategoryServices;
 import edu.uw.cs.lil.tiny.mr.lambda.ccg.SimpleFullParseFilter;
 import edu.uw.cs.lil.tiny.mr.language.type.TypeRepository;
+import edu.uw.cs.lil.tiny.parser.IParse;
 import edu.uw.cs.lil.tiny.parser.ccg.cky.CKYBinaryParsingRule;
 import edu.uw.cs.lil.tiny.parser.ccg.cky.CKYUnaryParsingRule;
 import edu.uw.cs.lil.tiny.parser.ccg.cky.multi.MultiCKYParser;
@@ -62,8 +83,10 @@ import edu.uw.cs.lil.tiny.parser.ccg.rules.primitivebinary.composition.ForwardCo
 import edu.uw.cs.lil.tiny.parser.ccg.rules.skipping.BackwardSkippingRule;
 import edu.uw.cs.lil.tiny.parser.ccg.rules.skipping.ForwardSkippingRule;
 import edu.uw.cs.lil.tiny.parser.graph.IGraphParser;
+import edu.uw.cs.lil.tiny.parser.graph.IGraphParserOutput;
 import edu.uw.cs.lil.tiny.test.Tester;
 import edu.uw.cs.lil.tiny.test.stats.ExactMatchTestingStatistics;
+import edu.uw.cs.lil.tiny.test.stats.ITestingStatistics;
 import edu.uw.cs.utils.collections.ISerializableScorer;
 import edu.uw.cs.utils.collections.SetUtils;
 import edu.uw.cs.utils.log.ILogger;
@@ -77,11 +100,34 @@ import edu.uw.cs.utils.log.thread.LoggingThreadFactory;
  * Cross validation experiment for Wizard using fold0 for testing. This class
  * is intended to illustrate how an experiment is structured. For complete
  * experiments see the accompanying ExPlat files.
- * 
+ * <p>
+ * Usage:
+ * <ul>
+ * <li><code>PseudocodeExp [modelFile]</code> trains and tests a model, and
+ * saves the trained model to <code>modelFile</code> (by default,
+ * <code>experiments/wizard.model.gz</code>).</li>
+ * <li><code>PseudocodeExp -parse modelFile [inputFile]</code> loads a saved
+ * model and parses each line of <code>inputFile</code> (by default, standard
+ * input), without any training.</li>
+ * <li><code>PseudocodeExp -cv</code> runs 10-fold cross validation, training
+ * and testing all folds concurrently, and reports the statistics over all
+ * folds.</li>
+ * </ul>
  */
 public class PseudocodeExp {
 	public static final ILogger	LOG	= LoggerFactory.create(PseudocodeExp.class);
 	
+	// //////////////////////////////////////////
+	// Set some locations to use later
+	// //////////////////////////////////////////
+	
+	private static final File	resourceDir			= new File("resources/");
+	private static final File	experimentsDir		= new File("experiments/");
+	private static final File	dataDir				= new File(experimentsDir, "data");
+	private static final File	defaultModelFile	= new File(experimentsDir,
+															"wizard.model.gz");
+	private static final int	numFolds			= 10;
+	
 	private PseudocodeExp() {
 		// Private ctor. Service class.
 	}
@@ -95,13 +141,49 @@ public class PseudocodeExp {
 		Logger.setSkipPrefix(true);
 		LogLevel.setLogLevel(LogLevel.INFO);
 		
-		// //////////////////////////////////////////
-		// Set some locations to use later
-		// //////////////////////////////////////////
-		
-		final File resourceDir = new File("resources/");
-		final File experimentsDir = new File("experiments/");
-		final File dataDir = new File(experimentsDir, "data");
+		if (args.length >= 2 && args[0].equals("-parse")) {
+			parse(new File(args[1]), args.length >= 3 ? new File(args[2])
+					: null);
+		} else if (args.length >= 1 && args[0].equals("-cv")) {
+			crossValidate();
+		} else {
+			train(args.length >= 1 ? new File(args[0]) : defaultModelFile);
+		}
+	}
+	
+	/**
+	 * Reads a model written by {@link #writeModel(Model, File)}. The lambda
+	 * calculus system and the lexical factoring services must be set first
+	 * (see {@link #initLogic()}).
+	 */
+	@SuppressWarnings("unchecked")
+	public static Model<Sentence, LogicalExpression> readModel(File file)
+			throws IOException, ClassNotFoundException {
+		try (final ObjectInputStream in = new ObjectInputStream(
+				new BufferedInputStream(new GZIPInputStream(
+						new FileInputStream(file))))) {
+			return (Model<Sentence, LogicalExpression>) in.readObject();
+		}
+	}
+	
+	/**
+	 * Writes the given model (lexicon and feature weights) to a file, as a
+	 * gzipped serialized object.
+	 */
+	public static void writeModel(Model<Sentence, LogicalExpression> model,
+			File file) throws IOException {
+		try (final ObjectOutputStream out = new ObjectOutputStream(
+				new BufferedOutputStream(new GZIPOutputStream(
+						new FileOutputStream(file))))) {
+			out.writeObject(model);
+		}
+	}
+	
+	/**
+	 * Inits the lambda calculus system and the lexical factoring services,
+	 * and returns the category services for logical expressions.
+	 */
+	private static LogicalExpressionCategoryServices initLogic() {
 		
 		// //////////////////////////////////////////
 		// Use tree hash vector
@@ -147,49 +229,18 @@ public class PseudocodeExp {
 		unfactoredConstants.add(LogicalConstant.read("exists:<<e,t>,t>"));
 		FactoredLexiconServices.set(unfactoredConstants);
 		
-		// //////////////////////////////////////////////////
-		// Read initial lexicon
-		// //////////////////////////////////////////////////
-		
-		// Create a static set of lexical entries, which are factored using
-		// non-maximal factoring (each lexical entry is factored to multiple
-		// entries). This static set is used to init the model with various
-		// templates and lexemes.
-		
-		final File seedLexiconFile = new File(resourceDir, "seed.lex");
-		final File npLexiconFile = new File(resourceDir, "np-list.lex");
-		
-		final Lexicon<LogicalExpression> readLexicon = new Lexicon<LogicalExpression>();
-		readLexicon.addEntriesFromFile(seedLexiconFile, categoryServices,
-				Origin.FIXED_DOMAIN);
-		
-		final Lexicon<LogicalExpression> semiFactored = new Lexicon<LogicalExpression>();
-		for (final LexicalEntry<LogicalExpression> entry : readLexicon
-				.toCollection()) {
-			for (final FactoredLexicalEntry factoredEntry : FactoredLexicon
-					.factor(entry, true, true, 2)) {
-				semiFactored.add(FactoredLexicon.factor(factoredEntry));
-			}
-		}
-		
-		// Read NP list
-		final ILexicon<LogicalExpression> npLexicon = new FactoredLexicon();
-		npLexicon.addEntriesFromFile(npLexiconFile, categoryServices,
-				Origin.FIXED_DOMAIN);
-		
-		// //////////////////////////////////////////////////
-		// Multi threaded executor
-		// //////////////////////////////////////////////////
-		
-		final TinyExecutorService executor = new TinyExecutorService(Runtime
-				.getRuntime().availableProcessors(),
-				new LoggingThreadFactory(), ITinyExecutor.DEFAULT_MONITOR_SLEEP);
-		
-		// //////////////////////////////////////////////////
-		// CKY parser
-		// //////////////////////////////////////////////////
-		
-		final IGraphParser<Sentence, LogicalExpression> parser = new MultiCKYParser.Builder<LogicalExpression>(
+		return categoryServices;
+	}
+	
+	private static TinyExecutorService createExecutor(int numThreads) {
+		return new TinyExecutorService(numThreads, new LoggingThreadFactory(),
+				ITinyExecutor.DEFAULT_MONITOR_SLEEP);
+	}
+	
+	private static IGraphParser<Sentence, LogicalExpression> createParser(
+			LogicalExpressionCategoryServices categoryServices,
+			TinyExecutorService executor) {
+		return new MultiCKYParser.Builder<LogicalExpression>(
 				categoryServices, executor, new SimpleFullParseFilter(
 						SetUtils.createSingleton((Syntax) Syntax.S)))
 				.setPruneLexicalCells(true)
@@ -233,16 +284,15 @@ public class PseudocodeExp {
 						new CKYBinaryParsingRule<LogicalExpression>(
 								new PluralExistentialTypeShifting(
 										categoryServices))).build();
-		
-		// //////////////////////////////////////////////////
-		// Model
-		// //////////////////////////////////////////////////
-		
+	}
+	
+	private static Model<Sentence, LogicalExpression> createModel(
+			LogicalExpressionCategoryServices categoryServices) {
 		final ISerializableScorer<LexicalEntry<LogicalExpression>> uniform0Scorer = new UniformScorer<LexicalEntry<LogicalExpression>>(
 				0.0);
 		final SkippingSensitiveLexicalEntryScorer<LogicalExpression> skippingScorer = new SkippingSensitiveLexicalEntryScorer<LogicalExpression>(
 				categoryServices.getEmptyCategory(), -1.0, uniform0Scorer);
-		final Model<Sentence, LogicalExpression> model = new Model.Builder<Sentence, LogicalExpression>()
+		return new Model.Builder<Sentence, LogicalExpression>()
 				.setLexicon(new FactoredLexicon())
 				.addLexicalFeatureSet(
 						new LexicalFeatureSet.Builder<Sentence, LogicalExpression>()
@@ -255,6 +305,247 @@ public class PseudocodeExp {
 				.addParseFeatureSet(
 						new LogicalExpressionCoordinationFeatureSet<Sentence>(
 								true, true, true)).build();
+	}
+	
+	/**
+	 * Parses each line of the input with a saved model, and prints the
+	 * sentence and its logical form (or "-" if there is no parse).
+	 */
+	private static void parse(File modelFile, File inputFile) {
+		
+		final LogicalExpressionCategoryServices categoryServices = initLogic();
+		
+		final Model<Sentence, LogicalExpression> model;
+		try {
+			model = readModel(modelFile);
+		} catch (final IOException | ClassNotFoundException e) {
+			throw new RuntimeException(e);
+		}
+		
+		final TinyExecutorService executor = createExecutor(Runtime
+				.getRuntime().availableProcessors());
+		final IGraphParser<Sentence, LogicalExpression> parser = createParser(
+				categoryServices, executor);
+		
+		try (final BufferedReader in = new BufferedReader(
+				inputFile == null ? new InputStreamReader(System.in)
+						: new FileReader(inputFile))) {
+			String line;
+			while ((line = in.readLine()) != null) {
+				line = line.trim();
+				if (line.isEmpty()) {
+					continue;
+				}
+				final Sentence sentence = new Sentence(line);
+				final IGraphParserOutput<LogicalExpression> output = parser
+						.parse(sentence, model.createDataItemModel(sentence));
+				final List<? extends IParse<LogicalExpression>> best = output
+						.getBestParses();
+				System.out.println(line + "\t"
+						+ (best.isEmpty() ? "-" : best.get(0).getSemantics()));
+				if (best.size() > 1) {
+					LOG.info("%d best parses for: %s", best.size(), line);
+				}
+			}
+		} catch (final IOException e) {
+			throw new RuntimeException(e);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+	
+	/**
+	 * Reads the seed lexicon and factors each entry using non-maximal
+	 * factoring (each lexical entry is factored to multiple entries). This
+	 * static set is used to init the model with various templates and lexemes.
+	 */
+	private static Lexicon<LogicalExpression> readSemiFactoredLexicon(
+			LogicalExpressionCategoryServices categoryServices) {
+		final File seedLexiconFile = new File(resourceDir, "seed.lex");
+		
+		final Lexicon<LogicalExpression> readLexicon = new Lexicon<LogicalExpression>();
+		readLexicon.addEntriesFromFile(seedLexiconFile, categoryServices,
+				Origin.FIXED_DOMAIN);
+		
+		final Lexicon<LogicalExpression> semiFactored = new Lexicon<LogicalExpression>();
+		for (final LexicalEntry<LogicalExpression> entry : readLexicon
+				.toCollection()) {
+			for (final FactoredLexicalEntry factoredEntry : FactoredLexicon
+					.factor(entry, true, true, 2)) {
+				semiFactored.add(FactoredLexicon.factor(factoredEntry));
+			}
+		}
+		return semiFactored;
+	}
+	
+	private static ILexicon<LogicalExpression> readNPLexicon(
+			LogicalExpressionCategoryServices categoryServices) {
+		final File npLexiconFile = new File(resourceDir, "np-list.lex");
+		
+		final ILexicon<LogicalExpression> npLexicon = new FactoredLexicon();
+		npLexicon.addEntriesFromFile(npLexiconFile, categoryServices,
+				Origin.FIXED_DOMAIN);
+		return npLexicon;
+	}
+	
+	private static List<IDataCollection<? extends SingleSentence>> readFolds() {
+		final List<IDataCollection<? extends SingleSentence>> folds = new ArrayList<IDataCollection<? extends SingleSentence>>(
+				numFolds);
+		for (int i = 0; i < numFolds; ++i) {
+			System.out.println("yufeng: " + i);
+			folds.add(SingleSentenceDataset.read(
+					new File(dataDir, String.format("fold%d.ccg", i)),
+					new StubStringFilter()));
+		}
+		return folds;
+	}
+	
+	/**
+	 * Trains a model on folds 1-9, tests it on fold0, and writes it to the
+	 * given file.
+	 */
+	private static void train(File modelFile) {
+		
+		final LogicalExpressionCategoryServices categoryServices = initLogic();
+		
+		// //////////////////////////////////////////////////
+		// Read initial lexicon
+		// //////////////////////////////////////////////////
+		
+		final Lexicon<LogicalExpression> semiFactored = readSemiFactoredLexicon(categoryServices);
+		final ILexicon<LogicalExpression> npLexicon = readNPLexicon(categoryServices);
+		
+		// //////////////////////////////////////////////////
+		// Load training and testing data
+		// //////////////////////////////////////////////////
+		
+		final List<IDataCollection<? extends SingleSentence>> folds = readFolds();
+		
+		// //////////////////////////////////////////////////
+		// Multi threaded executor
+		// //////////////////////////////////////////////////
+		
+		final TinyExecutorService executor = createExecutor(Runtime
+				.getRuntime().availableProcessors());
+		
+		// //////////////////////////////////////////////////
+		// Training and testing
+		// //////////////////////////////////////////////////
+		
+		final ExactMatchTestingStatistics<Sentence, LogicalExpression> stats = new ExactMatchTestingStatistics<Sentence, LogicalExpression>();
+		final Model<Sentence, LogicalExpression> model = trainAndTest(0, folds,
+				categoryServices, semiFactored, npLexicon, executor, stats);
+		LOG.info(stats.toString());
+		
+		// //////////////////////////////////////////////////
+		// Save model
+		// //////////////////////////////////////////////////
+		
+		try {
+			writeModel(model, modelFile);
+			LOG.info("Model saved to %s", modelFile);
+		} catch (final IOException e) {
+			throw new RuntimeException(e);
+		}
+		
+		// //////////////////////////////////////////////////
+		// Close executor
+		// //////////////////////////////////////////////////
+		
+		executor.shutdownNow();
+		
+	}
+	
+	/**
+	 * Runs 10-fold cross validation. The folds are trained and tested
+	 * concurrently; they share the ontology, the lexicons and the data, and
+	 * each fold has its own model, parser and executor. The processors are
+	 * split between the folds and their parsers.
+	 */
+	private static void crossValidate() {
+		
+		final LogicalExpressionCategoryServices categoryServices = initLogic();
+		final Lexicon<LogicalExpression> semiFactored = readSemiFactoredLexicon(categoryServices);
+		final ILexicon<LogicalExpression> npLexicon = readNPLexicon(categoryServices);
+		final List<IDataCollection<? extends SingleSentence>> folds = readFolds();
+		
+		final int numProcessors = Runtime.getRuntime().availableProcessors();
+		final int numFoldThreads = Math.min(numFolds, numProcessors);
+		final int numParserThreads = Math.max(1, numProcessors
+				/ numFoldThreads);
+		LOG.info("Cross validation: %d folds at a time, %d parser threads each",
+				numFoldThreads, numParserThreads);
+		
+		final ExactMatchTestingStatistics<Sentence, LogicalExpression> stats = new ExactMatchTestingStatistics<Sentence, LogicalExpression>();
+		final long startTime = System.currentTimeMillis();
+		
+		final ExecutorService foldExecutor = Executors.newFixedThreadPool(
+				numFoldThreads, new LoggingThreadFactory());
+		try {
+			final List<Future<FoldStatistics>> results = new ArrayList<Future<FoldStatistics>>();
+			for (int i = 0; i < numFolds; ++i) {
+				final int testFold = i;
+				results.add(foldExecutor.submit(new Callable<FoldStatistics>() {
+					@Override
+					public FoldStatistics call() {
+						final FoldStatistics foldStats = new FoldStatistics();
+						final TinyExecutorService executor = createExecutor(numParserThreads);
+						try {
+							trainAndTest(testFold, folds, categoryServices,
+									semiFactored, npLexicon, executor,
+									foldStats.proxy());
+						} finally {
+							executor.shutdownNow();
+						}
+						LOG.info("Fold %d done: %s", testFold, foldStats);
+						return foldStats;
+					}
+				}));
+			}
+			// Merge the statistics of the folds in fold order
+			for (final Future<FoldStatistics> result : results) {
+				result.get().replay(stats);
+			}
+		} catch (final InterruptedException e) {
+			throw new RuntimeException(e);
+		} catch (final ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		} finally {
+			foldExecutor.shutdownNow();
+		}
+		
+		LOG.info("Total cross validation time %.4f seconds",
+				(System.currentTimeMillis() - startTime) / 1000.0);
+		LOG.info("Cross validation over %d folds:", numFolds);
+		LOG.info(stats.toString());
+	}
+	
+	/**
+	 * Trains a new model on all folds except the given one, and tests it on
+	 * that fold. The test results are added to the given statistics, which
+	 * must not be shared by folds trained concurrently.
+	 */
+	private static Model<Sentence, LogicalExpression> trainAndTest(
+			int testFold,
+			List<IDataCollection<? extends SingleSentence>> folds,
+			LogicalExpressionCategoryServices categoryServices,
+			Lexicon<LogicalExpression> semiFactored,
+			ILexicon<LogicalExpression> npLexicon,
+			TinyExecutorService executor,
+			ITestingStatistics<Sentence, LogicalExpression> stats) {
+		
+		// //////////////////////////////////////////////////
+		// CKY parser
+		// //////////////////////////////////////////////////
+		
+		final IGraphParser<Sentence, LogicalExpression> parser = createParser(
+				categoryServices, executor);
+		
+		// //////////////////////////////////////////////////
+		// Model
+		// //////////////////////////////////////////////////
+		
+		final Model<Sentence, LogicalExpression> model = createModel(categoryServices);
 		
 		// Model logger
 		final ModelLogger modelLogger = new ModelLogger(true);
@@ -273,20 +564,16 @@ public class PseudocodeExp {
 				4).addTemplatesFromLexicon(semiFactored).build();
 		
 		// //////////////////////////////////////////////////
-		// Load training and testing data
+		// Split training and testing data
 		// //////////////////////////////////////////////////
 		
-		final List<IDataCollection<? extends SingleSentence>> folds = new ArrayList<IDataCollection<? extends SingleSentence>>(
-				10);
-		for (int i = 0; i < 10; ++i) {
-			System.out.println("yufeng: " + i);
-			folds.add(SingleSentenceDataset.read(
-					new File(dataDir, String.format("fold%d.ccg", i)),
-					new StubStringFilter()));
-		}
+		final List<IDataCollection<? extends SingleSentence>> trainFolds = new ArrayList<IDataCollection<? extends SingleSentence>>(
+				folds);
+		trainFolds.remove(testFold);
 		final CompositeDataCollection<SingleSentence> train = new CompositeDataCollection<SingleSentence>(
-				folds.subList(1, folds.size()));
-		final IDataCollection<? extends SingleSentence> test = folds.get(0);
+				trainFolds);
+		final IDataCollection<? extends SingleSentence> test = folds
+				.get(testFold);
 		
 		// //////////////////////////////////////////////////
 		// Tester
@@ -332,8 +619,11 @@ public class PseudocodeExp {
 		// Log initial model
 		// //////////////////////////////////////////////////
 		
-		LOG.info("Initial model:");
-		modelLogger.log(model, System.err);
+		// Folds trained concurrently share System.err.
+		synchronized (System.err) {
+			LOG.info("Initial model (test fold %d):", testFold);
+			modelLogger.log(model, System.err);
+		}
 		
 		// //////////////////////////////////////////////////
 		// Training
@@ -344,29 +634,82 @@ public class PseudocodeExp {
 		learner.train(model);
 		
 		// Output total run time
-		LOG.info("Total training time %.4f seconds",
+		LOG.info("Total training time for test fold %d: %.4f seconds", testFold,
 				(System.currentTimeMillis() - startTime) / 1000.0);
 		
 		// //////////////////////////////////////////////////
 		// Log final model
 		// //////////////////////////////////////////////////
 		
-		LOG.info("Final model:");
-		modelLogger.log(model, System.err);
+		synchronized (System.err) {
+			LOG.info("Final model (test fold %d):", testFold);
+			modelLogger.log(model, System.err);
+		}
 		
 		// //////////////////////////////////////////////////
 		// Testing
 		// //////////////////////////////////////////////////
 		
-		final ExactMatchTestingStatistics<Sentence, LogicalExpression> stats = new ExactMatchTestingStatistics<Sentence, LogicalExpression>();
 		tester.test(model, stats);
-		LOG.info(stats.toString());
 		
-		// //////////////////////////////////////////////////
-		// Close executor
-		// //////////////////////////////////////////////////
+		return model;
+	}
+	
+	/**
+	 * Testing statistics of one cross validation fold. Results are recorded in
+	 * the fold's own statistics, so that folds can be tested concurrently
+	 * without a lock. Each recorded result is also kept, so that it can be
+	 * replayed into the statistics over all folds once the fold is done.
+	 */
+	private static class FoldStatistics implements InvocationHandler {
+		private final List<Object[]>											args	= new ArrayList<Object[]>();
+		private final List<Method>												methods	= new ArrayList<Method>();
+		private final ExactMatchTestingStatistics<Sentence, LogicalExpression>	stats	= new ExactMatchTestingStatistics<Sentence, LogicalExpression>();
+		
+		@Override
+		public synchronized Object invoke(Object proxy, Method method,
+				Object[] methodArgs) throws Throwable {
+			if (method.getDeclaringClass() != Object.class
+					&& method.getReturnType() == void.class) {
+				methods.add(method);
+				args.add(methodArgs);
+			}
+			try {
+				return method.invoke(stats, methodArgs);
+			} catch (final InvocationTargetException e) {
+				throw e.getCause();
+			}
+		}
 		
-		executor.shutdownNow();
+		/**
+		 * Returns the statistics object to pass to the tester of this fold.
+		 */
+		@SuppressWarnings("unchecked")
+		public ITestingStatistics<Sentence, LogicalExpression> proxy() {
+			return (ITestingStatistics<Sentence, LogicalExpression>) Proxy
+					.newProxyInstance(ITestingStatistics.class.getClassLoader(),
+							new Class<?>[] { ITestingStatistics.class }, this);
+		}
+		
+		/**
+		 * Adds the results of this fold to the given statistics.
+		 */
+		public synchronized void replay(
+				ITestingStatistics<Sentence, LogicalExpression> target) {
+			for (int i = 0; i < methods.size(); ++i) {
+				try {
+					methods.get(i).invoke(target, args.get(i));
+				} catch (final IllegalAccessException e) {
+					throw new RuntimeException(e);
+				} catch (final InvocationTargetException e) {
+					throw new RuntimeException(e.getCause());
+				}
+			}
+		}
 		
+		@Override
+		public synchronized String toString() {
+			return stats.toString();
+		}
 	}
 }
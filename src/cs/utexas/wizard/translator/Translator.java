@@ -0,0 +1,285 @@
+package cs.utexas.wizard.translator;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.antlr.runtime.ANTLRFileStream;
+import org.antlr.runtime.ANTLRStringStream;
+import org.antlr.runtime.CharStream;
+import org.antlr.runtime.CommonTokenStream;
+import org.antlr.runtime.RecognitionException;
+import org.antlr.stringtemplate.StringTemplate;
+import org.antlr.stringtemplate.StringTemplateGroup;
+import org.antlr.stringtemplate.language.AngleBracketTemplateLexer;
+
+/**
+ * Translates CMinus programs into the target languages given by a set of
+ * template groups (e.g. templates/Java.stg and templates/Python.stg).
+ *
+ * The template groups are loaded once, and each thread keeps its own lexer
+ * and parser, which are reset for every program. A program is parsed once
+ * into a tree of templates that are not bound to any target language; the
+ * tree is then rendered with each template group in turn.
+ */
+public class Translator {
+
+	public static final String[] DEFAULT_TARGETS = { "templates/Java.stg",
+			"templates/Python.stg" };
+
+	public static final String SOURCE_SUFFIX = ".cminus";
+
+	private static final Map<String, String> suffixes = new HashMap<String, String>();
+	static {
+		suffixes.put("Java", ".java");
+		suffixes.put("Python", ".py");
+	}
+
+	/** Target names to template groups, in the order given. */
+	private final Map<String, StringTemplateGroup> targets = new LinkedHashMap<String, StringTemplateGroup>();
+
+	private final ThreadLocal<Worker> workers = new ThreadLocal<Worker>() {
+		@Override
+		protected Worker initialValue() {
+			return new Worker();
+		}
+	};
+
+	/**
+	 * A template group that defines an empty template for every name that is
+	 * looked up. The parser builds its template tree with this group, so that
+	 * the tree records only template names and attributes.
+	 */
+	private static class SkeletonGroup extends StringTemplateGroup {
+		private final Set<String> names = new HashSet<String>();
+
+		public SkeletonGroup() {
+			super("CMinusSkeleton", AngleBracketTemplateLexer.class);
+		}
+
+		@Override
+		public synchronized StringTemplate lookupTemplate(
+				StringTemplate enclosingInstance, String name) {
+			if (names.add(name))
+				defineTemplate(name, "");
+			return super.lookupTemplate(enclosingInstance, name);
+		}
+	}
+
+	/** The lexer and parser used by one thread. */
+	private static class Worker {
+		final SkeletonGroup skeleton = new SkeletonGroup();
+		final CMinusLexer lexer = new CMinusLexer();
+		final CommonTokenStream tokens = new CommonTokenStream();
+		final CMinusParser parser = new CMinusParser(tokens);
+
+		Worker() {
+			parser.setTemplateLib(skeleton);
+		}
+
+		StringTemplate parse(CharStream input) throws RecognitionException {
+			lexer.setCharStream(input);
+			tokens.setTokenSource(lexer);
+			parser.setTokenStream(tokens);
+			return (StringTemplate) parser.program().getTemplate();
+		}
+	}
+
+	public Translator() throws IOException {
+		this(DEFAULT_TARGETS);
+	}
+
+	public Translator(String... templateFileNames) throws IOException {
+		for (String templateFileName : templateFileNames) {
+			try (Reader in = new FileReader(templateFileName)) {
+				StringTemplateGroup group = new StringTemplateGroup(in,
+						AngleBracketTemplateLexer.class);
+				targets.put(group.getName(), group);
+			}
+		}
+	}
+
+	public List<String> getTargets() {
+		return new ArrayList<String>(targets.keySet());
+	}
+
+	/**
+	 * Translates the given program into every target language. Returns a map
+	 * from target names to code. A target is missing from the map if its
+	 * template group lacks a template that the program needs.
+	 */
+	public Map<String, String> translate(CharStream input)
+			throws RecognitionException {
+		Worker worker = workers.get();
+		StringTemplate tree;
+		try {
+			tree = worker.parse(input);
+		} catch (RuntimeException e) {
+			// the parser may be left in a bad state; start afresh next time.
+			workers.remove();
+			throw e;
+		}
+		Set<String> names = new HashSet<String>();
+		collectNames(tree, worker.skeleton, names);
+		Map<String, String> code = new LinkedHashMap<String, String>();
+		for (Map.Entry<String, StringTemplateGroup> entry : targets.entrySet()) {
+			String missing = missingTemplate(entry.getValue(), names);
+			if (missing != null) {
+				System.err.println(input.getSourceName() + ": cannot render "
+						+ entry.getKey() + ": no template " + missing);
+				continue;
+			}
+			// a failure in one target must not lose the code of the others.
+			try {
+				code.put(entry.getKey(),
+						render(tree, worker.skeleton, entry.getValue()).toString());
+			} catch (RuntimeException e) {
+				System.err.println(input.getSourceName() + ": cannot render "
+						+ entry.getKey() + ": " + e);
+			}
+		}
+		return code;
+	}
+
+	/**
+	 * Returns the first of the given template names that the group does not
+	 * define, or null if it defines them all. StringTemplate remembers a failed
+	 * lookup, so every name must be checked before the tree is rendered.
+	 */
+	private static String missingTemplate(StringTemplateGroup group,
+			Set<String> names) {
+		for (String name : names)
+			if (!group.isDefined(name))
+				return name;
+		return null;
+	}
+
+	/** Collects the names of the skeleton templates in the given tree. */
+	private static void collectNames(Object o, SkeletonGroup skeleton,
+			Set<String> names) {
+		if (o instanceof StringTemplate) {
+			StringTemplate st = (StringTemplate) o;
+			if (st.getGroup() != skeleton)
+				return;
+			names.add(st.getName());
+			if (st.getAttributes() != null)
+				for (Object value : st.getAttributes().values())
+					collectNames(value, skeleton, names);
+		} else if (o instanceof List)
+			for (Object e : (List<?>) o)
+				collectNames(e, skeleton, names);
+	}
+
+	public Map<String, String> translate(String source)
+			throws RecognitionException {
+		return translate(new ANTLRStringStream(source));
+	}
+
+	public Map<String, String> translate(File src) throws IOException,
+			RecognitionException {
+		return translate(new ANTLRFileStream(src.getPath()));
+	}
+
+	/** Rebuilds a template tree of the skeleton group with the given group. */
+	private static Object render(Object o, SkeletonGroup skeleton,
+			StringTemplateGroup group) {
+		if (o instanceof StringTemplate) {
+			StringTemplate st = (StringTemplate) o;
+			// templates created directly by the parser are the same in every
+			// target language.
+			if (st.getGroup() != skeleton)
+				return st;
+			Map<String, Object> attrs = new HashMap<String, Object>();
+			if (st.getAttributes() != null)
+				for (Iterator<?> it = st.getAttributes().entrySet().iterator(); it
+						.hasNext();) {
+					Map.Entry<?, ?> entry = (Map.Entry<?, ?>) it.next();
+					attrs.put((String) entry.getKey(),
+							render(entry.getValue(), skeleton, group));
+				}
+			return group.getInstanceOf(st.getName(), attrs);
+		} else if (o instanceof List) {
+			List<Object> list = new ArrayList<Object>();
+			for (Object e : (List<?>) o)
+				list.add(render(e, skeleton, group));
+			return list;
+		} else
+			return o;
+	}
+
+	/**
+	 * Translates every CMinus program in the given directory, using the given
+	 * number of threads. The code for each program and target is written to
+	 * outDir, named after the program with the suffix of the target language.
+	 * Returns the number of programs translated.
+	 */
+	public int translateDirectory(File dir, final File outDir, int threads)
+			throws IOException, InterruptedException {
+		File[] files = dir.listFiles(new FileFilter() {
+			public boolean accept(File f) {
+				return f.isFile() && f.getName().endsWith(SOURCE_SUFFIX);
+			}
+		});
+		if (files == null)
+			throw new IOException("Not a directory: " + dir);
+		outDir.mkdirs();
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+			for (final File file : files)
+				results.add(pool.submit(new Callable<Boolean>() {
+					public Boolean call() throws Exception {
+						String name = file.getName();
+						String base = name.substring(0, name.length()
+								- SOURCE_SUFFIX.length());
+						for (Map.Entry<String, String> entry : translate(file)
+								.entrySet())
+							write(new File(outDir, base + suffix(entry.getKey())),
+									entry.getValue());
+						return true;
+					}
+				}));
+			int n = 0;
+			for (int i = 0; i < files.length; i++) {
+				try {
+					results.get(i).get();
+					n++;
+				} catch (ExecutionException e) {
+					System.err.println(files[i] + ": " + e.getCause());
+				}
+			}
+			return n;
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	private static String suffix(String target) {
+		String suffix = suffixes.get(target);
+		return (suffix == null) ? "." + target.toLowerCase() : suffix;
+	}
+
+	private static void write(File file, String code) throws IOException {
+		try (Writer out = new FileWriter(file)) {
+			out.write(code);
+			out.write('\n');
+		}
+	}
+}
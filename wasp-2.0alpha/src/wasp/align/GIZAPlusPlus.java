@@ -19,10 +19,8 @@
  */
 package wasp.align;
 
-import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
@@ -30,8 +28,6 @@ import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
-import java.util.Stack;
-import java.util.StringTokenizer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -51,13 +47,15 @@ import wasp.mrl.ProductionSymbol;
 import wasp.scfg.Rule;
 import wasp.scfg.SCFG;
 import wasp.util.Arrays;
+import wasp.util.ChunkedFileReader;
 import wasp.util.InputStreamWriter;
 import wasp.util.Int;
 import wasp.util.Mask;
 import wasp.util.Numberer;
+import wasp.util.Pair;
 import wasp.util.RadixMap;
-import wasp.util.Double;
 import wasp.util.Short;
+import wasp.util.TokenReader;
 
 /**
  * A wrapper for GIZA++, Franz Och's implementation of the IBM Models.
@@ -124,10 +122,13 @@ public class GIZAPlusPlus extends WordAlignModel {
 	    public File alignFile;
 	    public File alignNBestFile;
 	    public File alignRevFile;
-	    public Settings() {
+	    public Settings() throws IOException {
 	        execFile = new File(Config.get(Config.GIZAPP_EXEC));
 	        tmpDir = new File(System.getProperty("java.io.tmpdir"));
-	        prefix = "giza++";
+	        // reserve a unique output prefix, so that concurrent runs do not overwrite each other's outputs
+	        File stem = File.createTempFile("giza++", "", tmpDir);
+	        stem.deleteOnExit();
+	        prefix = stem.getName();
 	        String suffix = ".final";
 	        tTableFile = new File(tmpDir, prefix+".t3"+suffix);
 	        tActualTableFile = new File(tmpDir, prefix+".actual.t3"+suffix);
@@ -195,8 +196,8 @@ public class GIZAPlusPlus extends WordAlignModel {
 	        table = new double[vocab1.getNextId()][vocab2.getNextId()];
 	    }
 	    public double getProb(String s1, String s2) {
-	        int id1 = vocab1.getId(s1, false);
-	        int id2 = vocab2.getId(s2, false);
+	        int id1 = vocab1.lookup(s1);
+	        int id2 = vocab2.lookup(s2);
 	        if (id1 >= 0 && id2 >= 0)
 	            return table[id1][id2];
 	        else
@@ -205,6 +206,19 @@ public class GIZAPlusPlus extends WordAlignModel {
 	    public void setProb(int id1, int id2, double prob) {
 	        table[id1][id2] = prob;
 	    }
+	    /**
+	     * Reads a GIZA++ translation table, each line of which is <code>id1 id2 prob</code>.  Chunks of
+	     * the file are read concurrently.  Each entry goes to its own cell, so no merging is needed.
+	     */
+	    public void read(File file) throws IOException {
+	    	new ChunkedFileReader() {
+	    		protected Object parse(TokenReader in) throws IOException {
+	    			while (in.nextLine())
+	    				setProb(in.getInt(0), in.getInt(1), in.getDouble(2));
+	    			return null;
+	    		}
+	    	}.read(file);
+	    }
 	}
 
 	private static class Vocabulary extends Numberer {
@@ -223,6 +237,12 @@ public class GIZAPlusPlus extends WordAlignModel {
 				++count.val;
 			return id;
 		}
+		/**
+		 * Returns the ID of the specified object without counting it.  This can be done concurrently.
+		 */
+		public int lookup(Object o) {
+			return super.getId(o, false);
+		}
 		public void write(PrintWriter out) {
 			for (int i = FIRST_ID; i < getNextId(); ++i) {
 				out.print(i);
@@ -234,42 +254,9 @@ public class GIZAPlusPlus extends WordAlignModel {
 		}
 	}
 	
-	private static class DistortionTable {
-	    private static final int INC = 2;
-	    private double[][][][] table;
-	    public DistortionTable() {
-	        table = null;
-	    }
-	    public double getProb(int j, int i, int l, int m) {
-	        if (table != null && table.length > j
-	            && table[j] != null && table[j].length > i
-	            && table[j][i] != null && table[j][i].length > l
-	            && table[j][i][l] != null && table[j][i][l].length > m)
-	            return table[j][i][l][m];
-	        else
-	            return 0;
-	    }
-	    public void setProb(int j, int i, int l, int m, double prob) {
-	        if (table == null)
-	            table = new double[((j/INC)+1)*INC][][][];
-	        else if (table.length <= j)
-	            table = (double[][][][]) Arrays.resize(table, j+INC);
-	        if (table[j] == null)
-	            table[j] = new double[((i/INC)+1)*INC][][];
-	        else if (table[j].length <= i)
-	            table[j] = (double[][][]) Arrays.resize(table[j], i+INC);
-	        if (table[j][i] == null)
-	            table[j][i] = new double[((l/INC)+1)*INC][];
-	        else if (table[j][i].length <= l)
-	            table[j][i] = (double[][]) Arrays.resize(table[j][i], l+INC);
-	        if (table[j][i][l] == null)
-	            table[j][i][l] = new double[((m/INC)+1)*INC];
-	        else if (table[j][i][l].length <= m)
-	            table[j][i][l] = Arrays.resize(table[j][i][l], m+INC);
-	        table[j][i][l][m] = prob;
-	    }
-	}
-
+	// the first line of each record in the A3 files
+	private static final String A3_RECORD = "# Sentence pair";
+	
 	private Settings s;
 	private Vocabulary srcVocab;
 	private Vocabulary tarVocab;
@@ -461,80 +448,64 @@ public class GIZAPlusPlus extends WordAlignModel {
     }
     
     private void readGizaOutputReverse() throws IOException {
-        BufferedReader tTableIn = new BufferedReader(new FileReader(s.tRevTableFile));
-        BufferedReader tiTableIn = new BufferedReader(new FileReader(s.tiRevTableFile));
-        BufferedReader alignIn = new BufferedReader(new FileReader(s.alignRevFile));
-        TranslationTable tTable = new TranslationTable(tarVocab, srcVocab);
-        String s;
-        while ((s = tTableIn.readLine()) != null) {
-            StringTokenizer toks = new StringTokenizer(s);
-            int tid = Int.parseInt(toks.nextToken());
-            int sid = Int.parseInt(toks.nextToken());
-            double prob = Double.parseDouble(toks.nextToken());
-            tTable.setProb(tid, sid, prob);
-        }
-        TranslationTable tiTable = new TranslationTable(srcVocab, tarVocab);
-        while ((s = tiTableIn.readLine()) != null) {
-            StringTokenizer toks = new StringTokenizer(s);
-            int sid = Int.parseInt(toks.nextToken());
-            int tid = Int.parseInt(toks.nextToken());
-            double prob = Double.parseDouble(toks.nextToken());
-            tiTable.setProb(sid, tid, prob);
-        }
-        while ((s = alignIn.readLine()) != null) {
-            Example ex = null;
-            Mask Fmask = null;
-            Symbol[] E = null;
-            Node[] F = null;
-            WordAlign align = null;
-            StringTokenizer toks = new StringTokenizer(s);
-            while (toks.hasMoreTokens()) {
-                String tok = toks.nextToken();
-                if (tok.equals("pair")) {
-                    tok = toks.nextToken();
-                    tok = tok.substring(1, tok.length()-1);
-                    ex = examples.getNth(Int.parseInt(tok)-1);
-                    Fmask = (Mask) Fmasks.get(ex.id);
-                    E = (Symbol[]) Eshorters.get(ex.id);
-                    F = (Node[]) Fshorts.get(ex.id);
-                } else if (tok.equals("score")) {
-                    toks.nextToken();
-                    tok = toks.nextToken(); // score
-                    align = new NToNWordAlign(E, F);
+        final TranslationTable tTable = new TranslationTable(tarVocab, srcVocab);
+        tTable.read(s.tRevTableFile);
+        final Example[] byNth = listExamples();
+        Object[] chunks = new ChunkedFileReader(A3_RECORD) {
+            protected Object parse(TokenReader in) throws IOException {
+                ArrayList list = new ArrayList();
+                while (in.nextLine()) {
+                    Example ex = null;
+                    Mask Fmask = null;
+                    Symbol[] E = null;
+                    Node[] F = null;
+                    WordAlign align = null;
+                    for (int k = 0; k < in.countTokens(); ++k)
+                        if (in.isToken(k, "pair")) {
+                            String tok = in.getToken(++k);
+                            ex = byNth[Int.parseInt(tok.substring(1, tok.length()-1))-1];
+                            Fmask = (Mask) Fmasks.get(ex.id);
+                            E = (Symbol[]) Eshorters.get(ex.id);
+                            F = (Node[]) Fshorts.get(ex.id);
+                        } else if (in.isToken(k, "score")) {
+                            k += 2;  // score
+                            align = new NToNWordAlign(E, F);
+                        }
+                    in.nextLine();
+                    in.nextLine();
+                    int k = 0;
+                    for (short i = 0; i <= E.length; ++i) {
+                        short e = -1;
+                        String word = null;
+                        if (i > 0) {
+                            e = (short) (i-1);
+                            word = Dictionary.term(E[e].getId());
+                        }
+                        k += 2;  // ({
+                        for (; !in.isToken(k, "})"); ++k)
+                            if (i > 0) {
+                                short j = (short) in.getInt(k);
+                                short f = (short) (j-1);
+                                String prod = getProductionLabel(F[f]);
+                                double t = tTable.getProb(word, prod);
+                                //double ti = tiTable.getProb(prod, word);
+                                align.addLink(e, f, t);
+                            }
+                        ++k;
+                    }
+                    list.add(new Pair(ex, align.unmaskF(ex.F.linear, Fmask)));
                 }
+                return list;
             }
-            alignIn.readLine();
-            s = alignIn.readLine();
-            toks = new StringTokenizer(s);
-            for (short i = 0; i <= E.length; ++i) {
-                short e = -1;
-                String word = null;
-                if (i > 0) {
-                	e = (short) (i-1);
-                	word = Dictionary.term(E[e].getId());
-                }
-                String tok;
-                toks.nextToken();
-                toks.nextToken();  // ({
-                while (!(tok = toks.nextToken()).equals("})"))
-                    if (i > 0) {
-                        short j = (short) Int.parseInt(tok);
-                        short f = (short) (j-1);
-                        String prod = getProductionLabel(F[f]);
-                        double t = tTable.getProb(word, prod);
-                        //double ti = tiTable.getProb(prod, word);
-                        align.addLink(e, f, t);
-                    }
+        }.read(s.alignRevFile);
+        for (int i = 0; i < chunks.length; ++i)
+            for (Iterator it = ((ArrayList) chunks[i]).iterator(); it.hasNext();) {
+                Pair p = (Pair) it.next();
+                Example ex = (Example) p.first;
+                logger.finest("example "+ex.id);
+                revAligns.put(ex.id, p.second);
+                logger.finest(revAligns.get(ex.id).toString());
             }
-            logger.finest("example "+ex.id);
-            logger.finest(align.toString());
-            revAligns.put(ex.id, align.unmaskF(ex.F.linear, Fmask));
-            logger.finest("unmask");
-            logger.finest(revAligns.get(ex.id).toString());
-        }
-        tTableIn.close();
-        tiTableIn.close();
-        alignIn.close();
     }
 
     private void runGiza() throws IOException {
@@ -570,107 +541,79 @@ public class GIZAPlusPlus extends WordAlignModel {
     }
     
     private void readGizaOutput() throws IOException {
-        BufferedReader tTableIn = new BufferedReader(new FileReader(s.tTableFile));
-        BufferedReader tiTableIn = new BufferedReader(new FileReader(s.tiTableFile));
-        BufferedReader d3TableIn = new BufferedReader(new FileReader(s.d3TableFile));
-        BufferedReader alignNBestIn = new BufferedReader(new FileReader(s.alignNBestFile));
-        TranslationTable tTable = new TranslationTable(srcVocab, tarVocab);
-        String s;
-        while ((s = tTableIn.readLine()) != null) {
-            StringTokenizer toks = new StringTokenizer(s);
-            int sid = Int.parseInt(toks.nextToken());
-            int tid = Int.parseInt(toks.nextToken());
-            double prob = Double.parseDouble(toks.nextToken());
-            tTable.setProb(sid, tid, prob);
-        }
-        TranslationTable tiTable = new TranslationTable(tarVocab, srcVocab);
-        while ((s = tiTableIn.readLine()) != null) {
-            StringTokenizer toks = new StringTokenizer(s);
-            int tid = Int.parseInt(toks.nextToken());
-            int sid = Int.parseInt(toks.nextToken());
-            double prob = Double.parseDouble(toks.nextToken());
-            tiTable.setProb(tid, sid, prob);
-        }
-        DistortionTable dTable = new DistortionTable();
-        Stack stack = new Stack();
-        while ((s = d3TableIn.readLine()) != null)
-            stack.push(s);
-        while (!stack.empty()) {
-            s = (String) stack.pop();
-            StringTokenizer toks = new StringTokenizer(s);
-            int j = Int.parseInt(toks.nextToken());
-            int i = Int.parseInt(toks.nextToken());
-            int l = Int.parseInt(toks.nextToken());
-            int m = Int.parseInt(toks.nextToken());
-            double prob = Double.parseDouble(toks.nextToken());
-            dTable.setProb(j, i, l, m, prob);
-        }
-        while ((s = alignNBestIn.readLine()) != null) {
-            Example ex = null;
-            Mask Fmask = null;
-            Symbol[] E = null;
-            Node[] F = null;
-            //int l = 0;
-            //int m = 0;
-            NTo1WordAlign align = null;
-            StringTokenizer toks = new StringTokenizer(s);
-            while (toks.hasMoreTokens()) {
-                String tok = toks.nextToken();
-                if (tok.equals("pair")) {
-                    tok = toks.nextToken();
-                    tok = tok.substring(1, tok.length()-1);
-                    ex = examples.getNth(Int.parseInt(tok)-1);
-                    Fmask = (Mask) Fmasks.get(ex.id);
-                    E = (Symbol[]) Eshorters.get(ex.id);
-                    F = (Node[]) Fshorts.get(ex.id);
-                    //l = F.length;
-                    //m = E.length;
-                } else if (tok.equals("score")) {
-                    toks.nextToken();
-                    tok = toks.nextToken();
-                    double score = Double.parseDouble(tok);
-                    align = new NTo1WordAlign(E, F, score);
+        final TranslationTable tiTable = new TranslationTable(tarVocab, srcVocab);
+        tiTable.read(s.tiTableFile);
+        final Example[] byNth = listExamples();
+        Object[] chunks = new ChunkedFileReader(A3_RECORD) {
+            protected Object parse(TokenReader in) throws IOException {
+                ArrayList list = new ArrayList();
+                while (in.nextLine()) {
+                    Example ex = null;
+                    Mask Fmask = null;
+                    Symbol[] E = null;
+                    Node[] F = null;
+                    NTo1WordAlign align = null;
+                    for (int k = 0; k < in.countTokens(); ++k)
+                        if (in.isToken(k, "pair")) {
+                            String tok = in.getToken(++k);
+                            ex = byNth[Int.parseInt(tok.substring(1, tok.length()-1))-1];
+                            Fmask = (Mask) Fmasks.get(ex.id);
+                            E = (Symbol[]) Eshorters.get(ex.id);
+                            F = (Node[]) Fshorts.get(ex.id);
+                        } else if (in.isToken(k, "score")) {
+                            k += 2;
+                            align = new NTo1WordAlign(E, F, in.getDouble(k));
+                        }
+                    in.nextLine();
+                    in.nextLine();
+                    int k = 0;
+                    for (short i = 0; i <= F.length; ++i) {
+                        short f = -1;
+                        String prod = null;
+                        if (i > 0) {
+                            f = (short) (i-1);
+                            prod = getProductionLabel(F[f]);
+                        }
+                        k += 2;  // ({
+                        for (; !in.isToken(k, "})"); ++k)
+                            if (i > 0) {
+                                short j = (short) in.getInt(k);
+                                short e = (short) (j-1);
+                                String word = Dictionary.term(E[e].getId());
+                                double ti = tiTable.getProb(word, prod);
+                                //double t = tTable.getProb(prod, word);
+                                align.addLink(e, f, ti);
+                            }
+                        ++k;
+                    }
+                    list.add(new Pair(ex, align.unmaskF(ex.F.linear, Fmask)));
                 }
+                return list;
             }
-            alignNBestIn.readLine();
-            s = alignNBestIn.readLine();
-            toks = new StringTokenizer(s);
-            for (short i = 0; i <= F.length; ++i) {
-                short f = -1;
-                String prod = null;
-                if (i > 0) {
-                    f = (short) (i-1);
-                    prod = getProductionLabel(F[f]);
+        }.read(s.alignNBestFile);
+        for (int i = 0; i < chunks.length; ++i)
+            for (Iterator it = ((ArrayList) chunks[i]).iterator(); it.hasNext();) {
+                Pair p = (Pair) it.next();
+                Example ex = (Example) p.first;
+                ArrayList list = (ArrayList) aligns.get(ex.id);
+                if (list == null) {
+                    list = new ArrayList();
+                    aligns.put(ex.id, list);
                 }
-                String tok;
-                toks.nextToken();
-                toks.nextToken();  // ({
-                while (!(tok = toks.nextToken()).equals("})"))
-                    if (i > 0) {
-                        short j = (short) Int.parseInt(tok);
-                        short e = (short) (j-1);
-                        String word = Dictionary.term(E[e].getId());
-                        double ti = tiTable.getProb(word, prod);
-                        //double t = tTable.getProb(prod, word);
-                        //double d = dTable.getProb(j, i, l, m);
-                        align.addLink(e, f, ti);
-                    }
+                logger.finest("example "+ex.id);
+                list.add(p.second);
+                logger.finest(list.get(list.size()-1).toString());
             }
-            ArrayList list = (ArrayList) aligns.get(ex.id);
-            if (list == null) {
-                list = new ArrayList();
-                aligns.put(ex.id, list);
-            }
-            logger.finest("example "+ex.id);
-            logger.finest(align.toString());
-            list.add(align.unmaskF(ex.F.linear, Fmask));
-            logger.finest("unmask");
-            logger.finest(list.get(list.size()-1).toString());
-        }
-        tTableIn.close();
-        tiTableIn.close();
-        d3TableIn.close();
-        alignNBestIn.close();
+    }
+
+    /**
+     * Returns the examples in the order in which they are numbered in GIZA++ input.
+     */
+    private Example[] listExamples() {
+        Example[] byNth = new Example[examples.size()];
+        for (int i = 0; i < byNth.length; ++i)
+            byNth[i] = examples.getNth(i);
+        return byNth;
     }
 
     private void fixAligns() {
@@ -129,7 +129,7 @@ public class GoldStandard extends WordAlignModel {
 			return true;
 		} else {
 			AugSymbol augsym;
-			Terminal.readWords = true;
+			Terminal.readWords.set(true);
 			int idx1 = line[i].indexOf("-[");
 			int idx2 = line[i].indexOf(":", idx1);
 			int idx3 = line[i].indexOf("]", idx2);
@@ -19,7 +19,13 @@
  */
 package wasp.align;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
 import java.io.IOException;
+import java.io.PrintWriter;
 import java.util.Iterator;
 
 import wasp.data.Example;
@@ -27,8 +33,11 @@ import wasp.data.Examples;
 import wasp.data.Node;
 import wasp.data.Terminal;
 import wasp.main.Config;
+import wasp.util.Double;
 import wasp.util.Mask;
 import wasp.util.RadixMap;
+import wasp.util.Short;
+import wasp.util.TokenReader;
 
 /**
  * The abstract class for word alignment models.
@@ -120,4 +129,106 @@ public abstract class WordAlignModel {
 		}
 	}
 	
+	///
+	/// Checkpoints
+	///
+	
+	/**
+	 * Writes the word alignments of the specified training examples to a file, so that they can be
+	 * restored by the <code>readAligns</code> method without re-training the word alignment model.
+	 * Only the alignments in the <code>aligns</code> field of each example are written.  These 
+	 * alignments must be based on the NL sentence and the linearized MR parse of the example.
+	 * 
+	 * @param examples a set of training examples.
+	 * @param file the file to write to.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	public static void writeAligns(Examples examples, File file) throws IOException {
+		PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(file)));
+		for (Iterator it = examples.iterator(); it.hasNext();) {
+			Example ex = (Example) it.next();
+			out.print("example ");
+			out.print(ex.id);
+			out.print(' ');
+			out.println(ex.aligns.size());
+			for (Iterator jt = ex.aligns.iterator(); jt.hasNext();) {
+				WordAlign align = (WordAlign) jt.next();
+				out.print((align instanceof NTo1WordAlign) ? "n-to-1" : "n-to-n");
+				out.print(' ');
+				out.print(align.getScore());
+				for (short i = 0; i < align.lengthE(); ++i)
+					for (Link link = align.getFirstLinkFromE(i); link != null; link = link.next) {
+						out.print(' ');
+						out.print(link.e);
+						out.print(' ');
+						out.print(link.f);
+						out.print(' ');
+						out.print(link.strength);
+					}
+				out.println();
+			}
+		}
+		out.close();
+	}
+	
+	/**
+	 * Restores the word alignments of the specified training examples from a file written by the
+	 * <code>writeAligns</code> method.  If the file does not match the given examples (e.g. when the 
+	 * training set has been changed), then the <code>aligns</code> fields of the examples are cleared, 
+	 * and <code>false</code> is returned.
+	 * 
+	 * @param examples a set of training examples.
+	 * @param file the file to read from.
+	 * @return <code>true</code> if the word alignments are restored; <code>false</code> otherwise.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	public static boolean readAligns(Examples examples, File file) throws IOException {
+		TokenReader in = new TokenReader(new BufferedReader(new FileReader(file)));
+		try {
+			for (Iterator it = examples.iterator(); it.hasNext();) {
+				Example ex = (Example) it.next();
+				ex.aligns.clear();
+				String[] line = in.readLine();
+				if (line == null || line.length != 3 || !line[0].equals("example")
+						|| Integer.parseInt(line[1]) != ex.id)
+					return clearAligns(examples);
+				int n = Integer.parseInt(line[2]);
+				Terminal[] E = ex.E();
+				Node[] F = ex.F.linear;
+				for (int i = 0; i < n; ++i) {
+					line = in.readLine();
+					if (line == null || line.length < 2 || (line.length-2)%3 != 0)
+						return clearAligns(examples);
+					double score = Double.parseDouble(line[1]);
+					WordAlign align;
+					if (line[0].equals("n-to-1"))
+						align = new NTo1WordAlign(E, F, score);
+					else if (line[0].equals("n-to-n"))
+						align = new NToNWordAlign(E, F, score);
+					else
+						return clearAligns(examples);
+					for (int j = 2; j < line.length; j += 3) {
+						short e = Short.parseShort(line[j]);
+						short f = Short.parseShort(line[j+1]);
+						if (e < 0 || e >= E.length || f < 0 || f >= F.length)
+							return clearAligns(examples);
+						align.addLink(e, f, Double.parseDouble(line[j+2]));
+					}
+					ex.aligns.add(align);
+				}
+			}
+			return in.readLine() == null || clearAligns(examples);
+		} catch (NumberFormatException e) {
+			return clearAligns(examples);
+		} finally {
+			in.close();
+		}
+	}
+	
+	private static boolean clearAligns(Examples examples) {
+		for (Iterator it = examples.iterator(); it.hasNext();)
+			((Example) it.next()).aligns.clear();
+		return false;
+	}
+	
 }
@@ -19,29 +19,37 @@
  */
 package wasp.data;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 import wasp.main.Config;
-import wasp.util.Numberer;
-import wasp.util.RadixMap;
+import wasp.util.SymbolTable;
 
 /**
  * Mappings from strings to their integer IDs.  Terminals and nonterminals have separate mappings.
+ * The mappings can be shared by multiple threads.  Lookups never block, and the properties of each
+ * terminal are kept as bit flags that are computed when the terminal is first added.
  * 
  * @author ywwong
  *
  */
 public class Dictionary {
 
+	private static final int WORD = 1;
+	private static final int NUM = 2;
+	private static final int UNUM = 4;
+	private static final int IDENT = 8;
+	
 	private static class StringProperties {
 		private static boolean isRoboCup = Config.getMRL().startsWith("robocup");
-		public boolean isWord;
-		public boolean isNum;
-		public boolean isUnum;
-		public boolean isIdent;
-		public StringProperties(String str, boolean isWord) {
-			this.isWord = isWord;
-			isNum = isNum(str);
-			isUnum = isUnum(str);
-			isIdent = isIdent(str);
+		public static int flags(String str) {
+			int flags = 0;
+			if (isNum(str))
+				flags |= NUM;
+			if (isUnum(str))
+				flags |= UNUM;
+			if (isIdent(str))
+				flags |= IDENT;
+			return flags;
 		}
 		public static boolean isNum(String str) {
 			try {
@@ -85,30 +93,25 @@ public class Dictionary {
 		}
 	}
 	
-	private static Numberer terms = new Numberer(Terminal.NUM_SPECIAL_TERMS);
-	private static Numberer nonterms = new Numberer();
-	private static RadixMap properties = new RadixMap();
-	private static int nwords = 0;
+	private static SymbolTable terms = new SymbolTable(Terminal.NUM_SPECIAL_TERMS);
+	private static SymbolTable nonterms = new SymbolTable();
+	private static AtomicInteger nwords = new AtomicInteger();
 	
 	private Dictionary() {}
 	
 	public static String term(int id) {
-		return (String) terms.getObj(id);
+		return terms.getStr(id);
 	}
 	
 	public static int term(String str, boolean isWord, boolean add) {
-		int id = terms.getId(str, add);
-		if (id < 0)
-			return id;
-		StringProperties p = (StringProperties) properties.get(id);
-		if (p == null) {
-			p = new StringProperties(str, false);
-			properties.put(id, p);
-		}
-		if (isWord && !p.isWord) {
-			p.isWord = true;
-			++nwords;
+		int id = terms.getId(str);
+		if (id < 0) {
+			if (!add)
+				return id;
+			id = terms.getId(str, StringProperties.flags(str));
 		}
+		if (isWord && terms.setFlags(id, WORD))
+			nwords.incrementAndGet();
 		return id;
 	}
 	
@@ -121,17 +124,15 @@ public class Dictionary {
 	}
 	
 	public static int countWords() {
-		return nwords;
+		return nwords.get();
 	}
 	
 	public static boolean isWord(int id) {
-		StringProperties p = (StringProperties) properties.get(id);
-		return (p==null) ? false : p.isWord;
+		return (terms.getFlags(id) & WORD) != 0;
 	}
 
 	public static boolean isNum(int id) {
-		StringProperties p = (StringProperties) properties.get(id);
-		return (p==null) ? false : p.isNum;
+		return (terms.getFlags(id) & NUM) != 0;
 	}
 
 	public static boolean isNum(String str) {
@@ -139,8 +140,7 @@ public class Dictionary {
 	}
 	
 	public static boolean isUnum(int id) {
-		StringProperties p = (StringProperties) properties.get(id);
-		return (p==null) ? false : p.isUnum;
+		return (terms.getFlags(id) & UNUM) != 0;
 	}
 
 	public static boolean isUnum(String str) {
@@ -148,8 +148,7 @@ public class Dictionary {
 	}
 	
 	public static boolean isIdent(int id) {
-		StringProperties p = (StringProperties) properties.get(id);
-		return (p==null) ? false : p.isIdent;
+		return (terms.getFlags(id) & IDENT) != 0;
 	}
 
 	public static boolean isIdent(String str) {
@@ -161,11 +160,11 @@ public class Dictionary {
 	}
 	
 	public static String nonterm(int id) {
-		return (String) nonterms.getObj(id);
+		return nonterms.getStr(id);
 	}
 	
 	public static int nonterm(String str) {
-		return nonterms.getId(str, true);
+		return nonterms.getId(str, 0);
 	}
 	
 	public static int countNonterms() {
@@ -81,7 +81,9 @@ public class Example implements Copyable {
 	}
 	
 	/**
-	 * Returns a shallow copy of this example.
+	 * Returns a shallow copy of this example, except that the copy has its own MR parse tree.  MR parse
+	 * trees may be changed during training (e.g. nodes are relabeled during rule extraction), so copies
+	 * can be trained on concurrently (e.g. in cross validation).
 	 */
 	public Object copy() {
 		Example ex = new Example();
@@ -92,7 +94,7 @@ public class Example implements Copyable {
 		ex.mrlMap = mrlMap;
 		ex.mrlparseMap = mrlparseMap;
 		ex.E = E;
-		ex.F = F;
+		ex.F = (F==null) ? null : F.copy();
 		ex.Fparse = Fparse;
 		ex.EFalign = EFalign;
 		ex.aligns.addAll(aligns);
@@ -58,6 +58,16 @@ public class Examples {
 
 	private static Logger logger = Logger.getLogger(Examples.class.getName());
 	
+	/**
+	 * A receiver of examples that are read one at a time from an XML file.
+	 * 
+	 * @author ywwong
+	 *
+	 */
+	public interface Sink {
+		public void add(Example ex);
+	}
+	
 	private class ExampleIterator implements Iterator {
 		private Iterator it;
 		public ExampleIterator() {
@@ -152,15 +162,37 @@ public class Examples {
 	private static boolean addMRLParse = false;
 	
 	public void read(String filename)
+	throws IOException, SAXException, ParserConfigurationException {
+		stream(filename, new Sink() {
+			public void add(Example ex) {
+				Examples.this.add(ex);
+			}
+		});
+	}
+
+	/**
+	 * Reads examples from the specified XML file, and passes them to the given sink one at a time as
+	 * soon as they are read.  Unlike <code>read</code>, this method does not keep all examples in
+	 * memory.
+	 * 
+	 * @param filename the name of the XML file to read.
+	 * @param sink the receiver of examples.
+	 * @throws IOException if an I/O error occurs.
+	 * @throws SAXException if the XML parser throws a <code>SAXException</code> while parsing.
+	 * @throws ParserConfigurationException if an XML parser cannot be created which satisfies the 
+	 * requested configuration.
+	 */
+	public static void stream(String filename, Sink sink)
 	throws IOException, SAXException, ParserConfigurationException {
 		SAXParserFactory factory = SAXParserFactory.newInstance();
 		factory.setValidating(false);
 		factory.setNamespaceAware(false);
 		SAXParser parser = factory.newSAXParser();
-		parser.parse(new File(filename), new ExampleHandler());
+		parser.parse(new File(filename), new ExampleHandler(sink));
 	}
 
-	private class ExampleHandler extends DefaultHandler {
+	private static class ExampleHandler extends DefaultHandler {
+		private Sink sink;
 		private Example ex;
 		private String lang;
 		private String mrl;
@@ -169,6 +201,9 @@ public class Examples {
 		private ArrayList slist;
 		private ArrayList plist;
 		private StringBuffer buf;
+		public ExampleHandler(Sink sink) {
+			this.sink = sink;
+		}
 		public void startElement(String uri, String localName, String qName, Attributes attributes) {
 			if (qName.equalsIgnoreCase("example")) {
 				ex = new Example();
@@ -240,7 +275,7 @@ public class Examples {
 				if (lang.equals(Config.getMRL())) {
 					String[] line = Arrays.tokenize(s);
 					Int index = new Int(0);
-					Production.readOrig = false;
+					Production.readOrig.set(false);
 					Production prod = Production.read(line, index).intern();
 					if (index.val == line.length)
 						plist.add(prod);
@@ -255,7 +290,7 @@ public class Examples {
 				ex.parses.add(new Parse(buf.toString().trim(), score));
 			else if (qName.equalsIgnoreCase("example")) {
 				if (ex.F == null || ex.F.parse != null)
-					add(ex);
+					sink.add(ex);
 			}
 		}
 	}
@@ -20,10 +20,12 @@
 package wasp.data;
 
 import wasp.main.Config;
+import wasp.mrl.MRLGrammar;
 import wasp.mrl.MRLParser;
 import wasp.mrl.Production;
 import wasp.mrl.ProductionSymbol;
 import wasp.util.Arrays;
+import wasp.util.Cache;
 
 /**
  * Meaning representations and related data structures.
@@ -53,16 +55,39 @@ public class Meaning {
 	
 	public Meaning(String str) {
 		this.str = str;
-		syms = Config.getMRLGrammar().tokenize(str);
-		parse();
-		if (parse != null)
-			init();
+		Parsed p = lookup(str);
+		syms = p.syms;
+		if (p.parse != null) {
+			parse = p.parse.deepCopy();
+			linear = parse.getDescends();
+			lprods = p.lprods;
+			parent = p.parent;
+			child = p.child;
+			lastd = p.lastd;
+		}
 	}
 	
 	protected Meaning() {}
 	
-	private void parse() {
-		parse = new MRLParser(Config.getMRLGrammar()).parse(syms);
+	/**
+	 * Returns a copy of this MR with its own parse tree.  Other fields are shared, since they are not
+	 * modified.
+	 * 
+	 * @return a copy of this MR.
+	 */
+	public Meaning copy() {
+		Meaning m = new Meaning();
+		m.str = str;
+		m.syms = syms;
+		if (parse != null) {
+			m.parse = parse.deepCopy();
+			m.linear = m.parse.getDescends();
+			m.lprods = lprods;
+			m.parent = parent;
+			m.child = child;
+			m.lastd = lastd;
+		}
+		return m;
 	}
 	
 	private void init() {
@@ -71,32 +96,95 @@ public class Meaning {
 		parent = new short[linear.length];
 		child = new short[linear.length][];
 		lastd = new short[linear.length];
-		for (short i = 0; i < linear.length; ++i) {
-			lprods[i] = ((ProductionSymbol) linear[i].getSymbol()).getProduction();
-			Node p = linear[i].getParent();
-			parent[i] = (p==null) ? -1 : (short) Arrays.indexOf(linear, p);
-			child[i] = new short[linear[i].countChildren()];
-			for (short j = 0; j < child[i].length; ++j)
-				child[i][j] = (short) Arrays.indexOf(linear, linear[i].getChild(j));
-			Node[] d = linear[i].getDescends();
-			lastd[i] = (short) Arrays.indexOf(linear, d[d.length-1]);
+		index(parse, (short) -1, (short) 0);
+	}
+	
+	/**
+	 * Fills in the <code>lprods</code>, <code>parent</code>, <code>child</code> and <code>lastd</code>
+	 * arrays for the subtree rooted at the specified node, in a single pre-order traversal.
+	 * 
+	 * @param node the root of a subtree.
+	 * @param p the index of the parent of <code>node</code>.
+	 * @param i the index of <code>node</code> in the linearized parse.
+	 * @return the index of the node that follows the subtree in the linearized parse.
+	 */
+	private short index(Node node, short p, short i) {
+		lprods[i] = ((ProductionSymbol) node.getSymbol()).getProduction();
+		parent[i] = p;
+		child[i] = new short[node.countChildren()];
+		short next = (short) (i+1);
+		for (short j = 0; j < child[i].length; ++j) {
+			child[i][j] = next;
+			next = index(node.getChild(j), i, next);
 		}
+		lastd[i] = (short) (next-1);
+		return next;
+	}
+	
+	///
+	/// Cache of parsed MRs
+	///
+	
+	/**
+	 * An MR that has been tokenized and parsed.  Objects of this class are shared among all 
+	 * <code>Meaning</code> objects created from the same string, so they must not be modified.  Each
+	 * <code>Meaning</code> object gets its own copy of the parse tree, since parse tree nodes may be
+	 * relabeled during rule extraction.
+	 */
+	private static class Parsed {
+		public Symbol[] syms;
+		public Node parse;
+		public Production[] lprods;
+		public short[] parent;
+		public short[][] child;
+		public short[] lastd;
+	}
+	
+	private static Parsed lookup(String str) {
+		MRLGrammar gram = Config.getMRLGrammar();
+		// String -> Parsed; null if caching is disabled
+		Cache cache = gram.getParseCache();
+		if (cache != null) {
+			Parsed p = (Parsed) cache.get(str);
+			if (p != null)
+				return p;
+		}
+		Parsed p = new Parsed();
+		p.syms = gram.tokenize(str);
+		p.parse = new MRLParser(gram).parse(p.syms);
+		if (p.parse != null) {
+			Meaning m = new Meaning();
+			m.parse = p.parse;
+			m.init();
+			p.lprods = m.lprods;
+			p.parent = m.parent;
+			p.child = m.child;
+			p.lastd = m.lastd;
+		}
+		if (cache != null)
+			cache.put(str, p);
+		return p;
 	}
 	
 	/**
-	 * Replaces the specified node in the MR parse tree with another.  Note that this operation does not
-	 * affect the <code>str</code> field.
+	 * Returns a copy of this MR in which the specified node in the MR parse tree is replaced with
+	 * another.  This MR is left unchanged.  The <code>syms</code> field of the copy is derived from the
+	 * new parse tree, but its <code>str</code> field is the same as that of this MR.
 	 * 
 	 * @param i the index of the node to replace.
 	 * @param replacement the replacement node.
 	 * @return a copy of this MR with the <code>i</code>-th node replaced.
 	 */
 	public Meaning replace(short i, Node replacement) {
-		Meaning m = new Meaning(str);
+		Meaning m = new Meaning();
+		m.str = str;
 		if (i == 0)
 			m.parse = replacement;
-		else
-			m.linear[i].getParent().replaceChild(m.linear[i], replacement);
+		else {
+			m.parse = parse.deepCopy();
+			Node[] d = m.parse.getDescends();
+			d[i].getParent().replaceChild(d[i], replacement);
+		}
 		m.syms = toSyms(m.parse);
 		m.init();
 		return m;
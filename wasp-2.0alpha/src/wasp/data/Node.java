@@ -23,6 +23,7 @@ import java.util.ArrayList;
 
 import wasp.util.Arrays;
 import wasp.util.Int;
+import wasp.util.ThreadBool;
 
 /**
  * The class for tree nodes.  These nodes form the basis of NL and MRL parse trees.
@@ -453,8 +454,8 @@ public class Node {
 			pretty(node.children[i], sb, offset+2, false);
 	}
 	
-	/** Indicates if all trees subsequently read are NL syntactic parses. */
-	public static boolean readSyn = false;
+	/** Indicates if all trees subsequently read in the current thread are NL syntactic parses. */
+	public static final ThreadBool readSyn = new ThreadBool(false);
 	
 	/**
 	 * Returns a tree that part of the given line of text represents.  Beginning with the token at the 
@@ -477,8 +478,8 @@ public class Node {
 		if (line[i].equals("(")) {
 			++i;
 			Symbol sym;
-			if (readSyn)
-				Terminal.readWords = false;
+			if (readSyn.get())
+				Terminal.readWords.set(false);
 			if (i == line.length || (sym = Symbol.read(line[i])) == null)
 				return null;
 			Node n = new Node(sym);
@@ -495,8 +496,8 @@ public class Node {
 			index.val = i+1;
 			return n;
 		} else {
-			if (readSyn)
-				Terminal.readWords = true;
+			if (readSyn.get())
+				Terminal.readWords.set(true);
 			Symbol sym = Symbol.read(line[i]);
 			if (sym == null)
 				return null;
@@ -22,6 +22,7 @@ package wasp.data;
 import wasp.util.Double;
 import wasp.util.Int;
 import wasp.util.Short;
+import wasp.util.ThreadBool;
 
 /**
  * The class for terminal symbols.  For logical variables, see the <code>Variable</code> class.
@@ -286,8 +287,9 @@ public class Terminal extends Symbol {
         return sb.toString();
 	}
 
-	/** Indicates if all tokens subsequently read by the <code>read</code> method are NL words. */
-	public static boolean readWords = false;
+	/** Indicates if all tokens subsequently read by the <code>read</code> method in the current thread
+	 * are NL words. */
+	public static final ThreadBool readWords = new ThreadBool(false);
 
 	public static Symbol read(String token) {
 		if (token.startsWith("*t:")) {
@@ -315,7 +317,7 @@ public class Terminal extends Symbol {
 				t.setIndex(index);
 			return t;
 		}
-		return new Terminal(token, readWords);
+		return new Terminal(token, readWords.get());
 	}
 	
 }
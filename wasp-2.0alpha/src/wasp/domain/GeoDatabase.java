@@ -0,0 +1,487 @@
+/*
+ * Copyright 2006, 2007 Yuk Wah Wong.
+ *
+ * This file is part of the WASP distribution.
+ *
+ * WASP is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * WASP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with WASP; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package wasp.domain;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+/**
+ * The Geoquery database, read from the <code>geobase.pl</code> file.  Entities are represented by
+ * the canonical strings of their Prolog terms (e.g. <code>'stateid'('texas')</code>,
+ * <code>'cityid'('austin','tx')</code>), and numbers by <code>java.lang.Double</code> objects.
+ * Objects of this class are immutable once read, so they can be shared among threads.
+ *
+ * @author ywwong
+ *
+ */
+public class GeoDatabase {
+
+	private static Logger logger = Logger.getLogger(GeoDatabase.class.getName());
+
+	public static final String STATE = "state";
+	public static final String CITY = "city";
+	public static final String RIVER = "river";
+	public static final String LAKE = "lake";
+	public static final String MOUNTAIN = "mountain";
+	public static final String PLACE = "place";
+	public static final String COUNTRY = "country";
+	public static final String CAPITAL = "capital";
+	public static final String MAJOR = "major";
+
+	public static final String LOC = "loc";
+	public static final String TRAVERSE = "traverse";
+	public static final String NEXT_TO = "next_to";
+	public static final String CAPITAL_OF = "capital";
+	public static final String HIGH_POINT = "high_point";
+	public static final String LOW_POINT = "low_point";
+
+	public static final String AREA = "area";
+	public static final String POPULATION = "population";
+	public static final String DENSITY = "density";
+	public static final String LEN = "len";
+	public static final String ELEVATION = "elevation";
+	public static final String SIZE = "size";
+
+	private static final double MAJOR_CITY_POPULATION = 150000;
+	private static final double MAJOR_RIVER_LENGTH = 750;
+	private static final double MAJOR_LAKE_AREA = 5000;
+
+	private static final String USA = "usa";
+
+	/**
+	 * A binary relation between entities, indexed in both directions.
+	 */
+	public static class Relation {
+		// Object -> Set
+		private HashMap fwd = new HashMap();
+		// Object -> Set
+		private HashMap bwd = new HashMap();
+		private void add(Object a, Object b) {
+			add(fwd, a, b);
+			add(bwd, b, a);
+		}
+		private static void add(HashMap map, Object key, Object val) {
+			Set set = (Set) map.get(key);
+			if (set == null) {
+				set = new HashSet();
+				map.put(key, set);
+			}
+			set.add(val);
+		}
+		/**
+		 * Returns the set of all <code>b</code> such that <code>(a, b)</code> is in this relation.
+		 */
+		public Set forward(Object a) {
+			Set set = (Set) fwd.get(a);
+			return (set==null) ? Collections.EMPTY_SET : set;
+		}
+		/**
+		 * Returns the set of all <code>a</code> such that <code>(a, b)</code> is in this relation.
+		 */
+		public Set backward(Object b) {
+			Set set = (Set) bwd.get(b);
+			return (set==null) ? Collections.EMPTY_SET : set;
+		}
+		/**
+		 * Returns the set of all <code>a</code> such that <code>(a, b)</code> is in this relation for
+		 * some <code>b</code>.
+		 */
+		public Set domain() {
+			return fwd.keySet();
+		}
+		public boolean contains(Object a, Object b) {
+			return forward(a).contains(b);
+		}
+	}
+
+	// String -> Set
+	private HashMap types;
+	// String -> Relation
+	private HashMap relations;
+	// String -> Map (Object -> Double)
+	private HashMap attrs;
+	// city name -> Set of city entities
+	private HashMap citiesByName;
+
+	private GeoDatabase() {
+		types = new HashMap();
+		relations = new HashMap();
+		attrs = new HashMap();
+		citiesByName = new HashMap();
+		String[] t = {STATE, CITY, RIVER, LAKE, MOUNTAIN, PLACE, COUNTRY, CAPITAL, MAJOR};
+		for (int i = 0; i < t.length; ++i)
+			types.put(t[i], new HashSet());
+		String[] r = {LOC, TRAVERSE, NEXT_TO, CAPITAL_OF, HIGH_POINT, LOW_POINT};
+		for (int i = 0; i < r.length; ++i)
+			relations.put(r[i], new Relation());
+		String[] a = {AREA, POPULATION, DENSITY, LEN, ELEVATION, SIZE};
+		for (int i = 0; i < a.length; ++i)
+			attrs.put(a[i], new HashMap());
+	}
+
+	/**
+	 * Returns the set of all entities of the specified type (e.g. <code>state</code>,
+	 * <code>major</code>).  An empty set is returned if the type is unknown.
+	 */
+	public Set getType(String type) {
+		Set set = (Set) types.get(type);
+		return (set==null) ? Collections.EMPTY_SET : set;
+	}
+
+	/**
+	 * Returns the binary relation with the specified name (e.g. <code>loc</code>).
+	 * <code>null</code> is returned if the relation is unknown.
+	 */
+	public Relation getRelation(String name) {
+		return (Relation) relations.get(name);
+	}
+
+	/**
+	 * Returns the value of the specified numeric attribute (e.g. <code>population</code>) of the
+	 * specified entity.  <code>null</code> is returned if the attribute is undefined.
+	 */
+	public Double getAttr(String name, Object entity) {
+		Map map = (Map) attrs.get(name);
+		return (map==null) ? null : (Double) map.get(entity);
+	}
+
+	/**
+	 * Returns the set of all entities for which the specified numeric attribute is defined.
+	 */
+	public Set getAttrDomain(String name) {
+		Map map = (Map) attrs.get(name);
+		return (map==null) ? Collections.EMPTY_SET : map.keySet();
+	}
+
+	public boolean hasAttr(String name) {
+		return attrs.containsKey(name);
+	}
+
+	/**
+	 * Returns the set of entities denoted by the specified entity term (e.g.
+	 * <code>stateid('texas')</code>, <code>cityid('austin',_)</code>).  An empty set is returned if
+	 * the term does not denote any known entity.
+	 */
+	public Set lookup(GeoTerm term) {
+		// cityid(Name, _) denotes all cities with the given name
+		if (term.is("cityid", 2) && (term.args[1].isVar() || "_".equals(term.args[1].functor))) {
+			Set set = (Set) citiesByName.get(term.args[0].functor);
+			return (set==null) ? Collections.EMPTY_SET : set;
+		}
+		if (term.isNum()) {
+			Set set = new HashSet();
+			set.add(Double.valueOf(term.num));
+			return set;
+		}
+		String e = term.toString();
+		Set set = new HashSet();
+		if (isEntity(e))
+			set.add(e);
+		return set;
+	}
+
+	private boolean isEntity(String e) {
+		for (Iterator it = types.values().iterator(); it.hasNext();)
+			if (((Set) it.next()).contains(e))
+				return true;
+		return false;
+	}
+
+	///
+	/// Entities
+	///
+
+	private static String entity(String f, String a) {
+		return "'"+f+"'('"+a+"')";
+	}
+
+	public static String state(String name) {
+		return entity("stateid", name);
+	}
+
+	public static String city(String name, String abbrev) {
+		return "'cityid'('"+name+"','"+abbrev+"')";
+	}
+
+	public static String river(String name) {
+		return entity("riverid", name);
+	}
+
+	public static String place(String name) {
+		return entity("placeid", name);
+	}
+
+	public static String country(String name) {
+		return entity("countryid", name);
+	}
+
+	///
+	/// File I/O
+	///
+
+	// String -> GeoDatabase
+	private static HashMap dbs = new HashMap();
+
+	/**
+	 * Returns the Geoquery database stored in the specified file.  Each database file is read only
+	 * once.
+	 *
+	 * @param file a <code>geobase.pl</code> file.
+	 * @return the Geoquery database stored in <code>file</code>.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	public static synchronized GeoDatabase read(File file) throws IOException {
+		String path = file.getCanonicalPath();
+		GeoDatabase db = (GeoDatabase) dbs.get(path);
+		if (db == null) {
+			db = new GeoDatabase();
+			db.readFacts(file);
+			db.addDerived();
+			dbs.put(path, db);
+		}
+		return db;
+	}
+
+	private void readFacts(File file) throws IOException {
+		BufferedReader in = new BufferedReader(new FileReader(file));
+		StringBuffer sb = new StringBuffer();
+		int c;
+		while ((c = in.read()) >= 0)
+			sb.append((char) c);
+		in.close();
+		String text = sb.toString();
+		int nfacts = 0;
+		StringBuffer clause = new StringBuffer();
+		boolean inQuote = false;
+		for (int i = 0; i < text.length(); ++i) {
+			char ch = text.charAt(i);
+			if (!inQuote && ch == '%') {
+				while (i < text.length() && text.charAt(i) != '\n')
+					++i;
+				continue;
+			}
+			if (!inQuote && ch == '/' && i+1 < text.length() && text.charAt(i+1) == '*') {
+				int end = text.indexOf("*/", i+2);
+				i = (end < 0) ? text.length() : end+1;
+				continue;
+			}
+			if (ch == '\'')
+				inQuote = !inQuote;
+			if (!inQuote && ch == '.' && (i+1 == text.length() || Character.isWhitespace(text.charAt(i+1)))) {
+				String s = clause.toString().trim();
+				clause.setLength(0);
+				if (s.length() == 0 || s.startsWith(":-") || s.indexOf(":-") >= 0)
+					continue;
+				try {
+					if (addFact(GeoTerm.parse(s)))
+						++nfacts;
+				} catch (IllegalArgumentException e) {
+					logger.fine("ignored clause: "+s);
+				}
+				continue;
+			}
+			clause.append(ch);
+		}
+		logger.info(nfacts+" facts are read from "+file.getPath());
+	}
+
+	private static String atom(GeoTerm t) {
+		return t.functor;
+	}
+
+	private static Double number(GeoTerm t) {
+		return Double.valueOf(t.num);
+	}
+
+	private boolean addFact(GeoTerm f) {
+		if (f.is("state", 10)) {
+			// state(Name, Abbrev, Capital, Population, Area, Number, City1, ..., City4)
+			String s = state(atom(f.args[0]));
+			String abbrev = atom(f.args[1]);
+			String cap = city(atom(f.args[2]), abbrev);
+			getType(STATE).add(s);
+			getType(CAPITAL).add(cap);
+			getRelation(CAPITAL_OF).add(s, cap);
+			putAttr(POPULATION, s, number(f.args[3]));
+			putAttr(AREA, s, number(f.args[4]));
+			return true;
+		} else if (f.is("city", 4)) {
+			// city(State, Abbrev, Name, Population)
+			String c = city(atom(f.args[2]), atom(f.args[1]));
+			getType(CITY).add(c);
+			Relation.add(citiesByName, atom(f.args[2]), c);
+			getRelation(LOC).add(c, state(atom(f.args[0])));
+			putAttr(POPULATION, c, number(f.args[3]));
+			return true;
+		} else if (f.is("river", 3)) {
+			// river(Name, Length, [State, ...])
+			String r = river(atom(f.args[0]));
+			getType(RIVER).add(r);
+			putAttr(LEN, r, number(f.args[1]));
+			GeoTerm[] states = f.args[2].args;
+			for (int i = 0; i < states.length; ++i) {
+				String s = state(atom(states[i]));
+				getRelation(TRAVERSE).add(r, s);
+				getRelation(LOC).add(r, s);
+			}
+			return true;
+		} else if (f.is("border", 3)) {
+			// border(State, Abbrev, [State, ...])
+			String s = state(atom(f.args[0]));
+			GeoTerm[] states = f.args[2].args;
+			for (int i = 0; i < states.length; ++i)
+				getRelation(NEXT_TO).add(s, state(atom(states[i])));
+			return true;
+		} else if (f.is("highlow", 6)) {
+			// highlow(State, Abbrev, HighPoint, HighElevation, LowPoint, LowElevation)
+			String s = state(atom(f.args[0]));
+			String hp = place(atom(f.args[2]));
+			String lp = place(atom(f.args[4]));
+			getType(PLACE).add(hp);
+			getType(PLACE).add(lp);
+			getRelation(HIGH_POINT).add(s, hp);
+			getRelation(LOW_POINT).add(s, lp);
+			getRelation(LOC).add(hp, s);
+			getRelation(LOC).add(lp, s);
+			putAttr(ELEVATION, hp, number(f.args[3]));
+			putAttr(ELEVATION, lp, number(f.args[5]));
+			return true;
+		} else if (f.is("mountain", 4)) {
+			// mountain(State, Abbrev, Name, Height)
+			String m = place("mount "+atom(f.args[2]));
+			if (!getType(PLACE).contains(m))
+				m = place(atom(f.args[2]));
+			getType(MOUNTAIN).add(m);
+			getType(PLACE).add(m);
+			getRelation(LOC).add(m, state(atom(f.args[0])));
+			putAttr(ELEVATION, m, number(f.args[3]));
+			return true;
+		} else if (f.is("lake", 3)) {
+			// lake(Name, Area, [State, ...])
+			String l = place(atom(f.args[0]));
+			getType(LAKE).add(l);
+			getType(PLACE).add(l);
+			putAttr(AREA, l, number(f.args[1]));
+			GeoTerm[] states = f.args[2].args;
+			for (int i = 0; i < states.length; ++i)
+				getRelation(LOC).add(l, state(atom(states[i])));
+			return true;
+		} else if (f.is("country", 3)) {
+			// country(Name, Population, Area)
+			String c = country(atom(f.args[0]));
+			getType(COUNTRY).add(c);
+			putAttr(POPULATION, c, number(f.args[1]));
+			putAttr(AREA, c, number(f.args[2]));
+			return true;
+		}
+		return false;
+	}
+
+	private void putAttr(String name, Object entity, Double val) {
+		((Map) attrs.get(name)).put(entity, val);
+	}
+
+	/**
+	 * Adds facts that follow from the ones in <code>geobase.pl</code>, as defined in
+	 * <code>geoquery.pl</code>.
+	 */
+	private void addDerived() {
+		String usa = country(USA);
+		getType(COUNTRY).add(usa);
+		Relation loc = getRelation(LOC);
+		// every entity is located in the country
+		String[] located = {STATE, CITY, RIVER, LAKE, MOUNTAIN, PLACE};
+		for (int i = 0; i < located.length; ++i)
+			for (Iterator it = getType(located[i]).iterator(); it.hasNext();)
+				loc.add(it.next(), usa);
+		for (Iterator it = getType(RIVER).iterator(); it.hasNext();)
+			getRelation(TRAVERSE).add(it.next(), usa);
+		// a state is next to the rivers that traverse it
+		Relation traverse = getRelation(TRAVERSE);
+		for (Iterator it = getType(RIVER).iterator(); it.hasNext();) {
+			Object r = it.next();
+			for (Iterator jt = traverse.forward(r).iterator(); jt.hasNext();) {
+				Object s = jt.next();
+				if (getType(STATE).contains(s))
+					getRelation(NEXT_TO).add(s, r);
+			}
+		}
+		// high and low points of the country
+		Object hp = null, lp = null;
+		for (Iterator it = getAttrDomain(ELEVATION).iterator(); it.hasNext();) {
+			Object p = it.next();
+			if (hp == null || getAttr(ELEVATION, p).doubleValue() > getAttr(ELEVATION, hp).doubleValue())
+				hp = p;
+			if (lp == null || getAttr(ELEVATION, p).doubleValue() < getAttr(ELEVATION, lp).doubleValue())
+				lp = p;
+		}
+		if (hp != null) {
+			getRelation(HIGH_POINT).add(usa, hp);
+			getRelation(LOW_POINT).add(usa, lp);
+		}
+		// density
+		for (Iterator it = getAttrDomain(POPULATION).iterator(); it.hasNext();) {
+			Object e = it.next();
+			Double area = getAttr(AREA, e);
+			if (area != null && area.doubleValue() > 0)
+				putAttr(DENSITY, e, Double.valueOf(getAttr(POPULATION, e).doubleValue()/area.doubleValue()));
+		}
+		// size: area for states, countries and lakes; population for cities; length for rivers;
+		// elevation for other places
+		addSize(getType(STATE), AREA);
+		addSize(getType(COUNTRY), AREA);
+		addSize(getType(LAKE), AREA);
+		addSize(getType(CITY), POPULATION);
+		addSize(getType(RIVER), LEN);
+		addSize(getType(MOUNTAIN), ELEVATION);
+		// major cities, rivers and lakes
+		addMajor(getType(CITY), POPULATION, MAJOR_CITY_POPULATION);
+		addMajor(getType(RIVER), LEN, MAJOR_RIVER_LENGTH);
+		addMajor(getType(LAKE), AREA, MAJOR_LAKE_AREA);
+	}
+
+	private void addSize(Set entities, String attr) {
+		for (Iterator it = entities.iterator(); it.hasNext();) {
+			Object e = it.next();
+			Double val = getAttr(attr, e);
+			if (val != null)
+				putAttr(SIZE, e, val);
+		}
+	}
+
+	private void addMajor(Set entities, String attr, double threshold) {
+		for (Iterator it = entities.iterator(); it.hasNext();) {
+			Object e = it.next();
+			Double val = getAttr(attr, e);
+			if (val != null && val.doubleValue() > threshold)
+				getType(MAJOR).add(e);
+		}
+	}
+
+}
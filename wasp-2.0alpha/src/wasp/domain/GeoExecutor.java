@@ -0,0 +1,271 @@
+/*
+ * Copyright 2006, 2007 Yuk Wah Wong.
+ *
+ * This file is part of the WASP distribution.
+ *
+ * WASP is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * WASP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with WASP; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package wasp.domain;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+
+import wasp.data.Example;
+import wasp.data.Examples;
+import wasp.data.Symbol;
+import wasp.main.Config;
+import wasp.main.Context;
+import wasp.main.Parse;
+import wasp.mrl.MRLGrammar;
+import wasp.mrl.MRLParser;
+import wasp.util.Arrays;
+import wasp.util.Cache;
+import wasp.util.Int;
+
+/**
+ * An in-process executor of Geoquery MRs over the facts in <code>geobase.pl</code>, which is used
+ * in place of SICSTUS when <code>Config.GEO_EVAL_ENGINE</code> is set to <code>java</code>.  An
+ * automatically-generated MR is correct if its answer is the same as that of the gold-standard MR.
+ * Answers are memoized in bounded caches (see <code>Config.GEO_EVAL_CACHE_SIZE</code>), so executors
+ * can be kept around and used inside training loops.  Executors are thread-safe.
+ *
+ * @author ywwong
+ *
+ */
+public abstract class GeoExecutor {
+
+	private static Logger logger = Logger.getLogger(GeoExecutor.class.getName());
+
+	/** The answer given to MRs that cannot be executed. */
+	private static final Set FAILURE = Collections.unmodifiableSet(new HashSet());
+
+	private static final double TOLERANCE = 1e-6;
+
+	private static final int DEFAULT_CACHE_SIZE = 100000;
+
+	// the thread pool shared by all executors
+	private static ExecutorService pool;
+
+	protected GeoDatabase db;
+	// String -> Set
+	private Cache answers;
+
+	protected GeoExecutor(GeoDatabase db) {
+		this.db = db;
+		answers = new Cache(getCacheSize());
+	}
+
+	/**
+	 * Returns the maximum number of entries in each cache of an executor.
+	 *
+	 * @see wasp.main.Config#GEO_EVAL_CACHE_SIZE
+	 */
+	protected static int getCacheSize() {
+		String size = Config.get(Config.GEO_EVAL_CACHE_SIZE);
+		return (size==null) ? DEFAULT_CACHE_SIZE : Int.parseInt(size);
+	}
+
+	/**
+	 * Reads the Geoquery database from the directory that contains the Geoquery evaluation scripts.
+	 *
+	 * @return the Geoquery database.
+	 * @throws IOException if an I/O error occurs.
+	 * @see wasp.main.Config#GEO_EVAL_DIR
+	 */
+	protected static GeoDatabase readDatabase() throws IOException {
+		return GeoDatabase.read(new File(Config.get(Config.GEO_EVAL_DIR), "geobase.pl"));
+	}
+
+	/**
+	 * Returns the answer to the specified MR, as a set of entities and numbers.  <code>null</code> is
+	 * returned if the MR cannot be executed.
+	 *
+	 * @param mr an MR string.
+	 * @return the answer to <code>mr</code>.
+	 */
+	public Set answer(String mr) {
+		Set a = (Set) answers.get(mr);
+		if (a == null) {
+			try {
+				a = execute(GeoTerm.parse(mr));
+			} catch (RuntimeException e) {
+				logger.fine("cannot execute "+mr+": "+e);
+				a = null;
+			}
+			if (a == null)
+				a = FAILURE;
+			answers.put(mr, a);
+		}
+		return (a==FAILURE) ? null : a;
+	}
+
+	/**
+	 * Executes the specified query and returns its answer.  <code>null</code> is returned if the
+	 * query is malformed.
+	 *
+	 * @param query a query.
+	 * @return the answer to <code>query</code>.
+	 */
+	protected abstract Set execute(GeoTerm query);
+
+	/**
+	 * Indicates if the specified MR has the same answer as the given gold-standard MR.
+	 *
+	 * @param correct the gold-standard MR.
+	 * @param mr the MR to evaluate.
+	 * @return <code>true</code> if <code>mr</code> and <code>correct</code> have the same answer;
+	 * <code>false</code> otherwise.
+	 */
+	public boolean isCorrect(String correct, String mr) {
+		Set a = answer(correct);
+		Set b = answer(mr);
+		return a != null && b != null && sameAnswer(a, b);
+	}
+
+	private static boolean sameAnswer(Set a, Set b) {
+		if (a.size() != b.size())
+			return false;
+		if (a.equals(b))
+			return true;
+		// numbers may differ by rounding errors
+		OUTER: for (Iterator it = a.iterator(); it.hasNext();) {
+			Object x = it.next();
+			if (b.contains(x))
+				continue;
+			if (!(x instanceof Double))
+				return false;
+			double dx = ((Double) x).doubleValue();
+			for (Iterator jt = b.iterator(); jt.hasNext();) {
+				Object y = jt.next();
+				if (y instanceof Double) {
+					double dy = ((Double) y).doubleValue();
+					if (Math.abs(dx-dy) <= TOLERANCE*Math.max(1, Math.abs(dx)))
+						continue OUTER;
+				}
+			}
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Evaluates the correctness of the automatically-generated MR translations of the specified
+	 * examples, in the same way as <code>MRLGrammar.evaluate</code>.  Translations that are
+	 * identical to the gold-standard MRs are correct.  Other grammatical translations are executed
+	 * concurrently, and they are correct if they have the same answers as the gold-standard MRs.
+	 *
+	 * @param gram the MRL grammar.
+	 * @param examples the set of examples to evaluate.
+	 * @param gold examples with gold-standard translations in the <code>Example.F</code> field.
+	 * @return a two-dimensional Boolean array, <code>B</code>, such that <code>B[j][i]</code> is true
+	 * if and only if the <code>i</code>-th top-scoring parse of the <code>j</code>-th example is
+	 * correct.
+	 * @throws IOException if an MR cannot be evaluated, or the evaluation is interrupted.
+	 */
+	public boolean[][] evaluate(MRLGrammar gram, Examples examples, Examples gold) throws IOException {
+		MRLParser parser = new MRLParser(gram);
+		int size = examples.size();
+		boolean[][] isCorrect = new boolean[size][];
+		ArrayList tasks = new ArrayList();
+		for (int i = 0; i < size; ++i) {
+			Example ex = examples.getNth(i);
+			Symbol[] correct = gold.get(ex.id).F.syms;
+			Parse[] parses = ex.getSortedParses();
+			isCorrect[i] = new boolean[parses.length];
+			for (int j = 0; j < parses.length; ++j) {
+				Symbol[] syms = gram.tokenize(parses[j].toStr());
+				isCorrect[i][j] = Arrays.equal(correct, syms);
+				if (!isCorrect[i][j]) {
+					// make sure that the translation is grammatical
+					if (parser.parse(syms) == null)
+						continue;
+					tasks.add(new Task(isCorrect[i], j, gram.combine(correct), gram.combine(syms)));
+				}
+			}
+		}
+		logger.info("Geoquery evaluation starts");
+		ExecutorService pool = getPool();
+		ArrayList futures = new ArrayList();
+		try {
+			for (Iterator it = tasks.iterator(); it.hasNext();)
+				futures.add(pool.submit((Task) it.next()));
+			for (Iterator it = futures.iterator(); it.hasNext();)
+				((Future) it.next()).get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			cancel(futures);
+			throw new IOException("Geoquery evaluation is interrupted", e);
+		} catch (ExecutionException e) {
+			cancel(futures);
+			throw new IOException("Geoquery evaluation fails: "+e.getCause(), e.getCause());
+		}
+		logger.info("Geoquery evaluation ends");
+		return isCorrect;
+	}
+
+	/**
+	 * Returns the thread pool for executing MRs, which is shared by all executors and all callers
+	 * (e.g. the worker threads of <code>Evaluator</code>), so that concurrent evaluations do not
+	 * each start their own threads.
+	 */
+	private static synchronized ExecutorService getPool() {
+		if (pool == null)
+			pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+					Context.getSharedThreadFactory("geo-executor"));
+		return pool;
+	}
+
+	private static void cancel(ArrayList futures) {
+		for (Iterator it = futures.iterator(); it.hasNext();)
+			((Future) it.next()).cancel(true);
+	}
+
+	private class Task implements Callable {
+		private boolean[] isCorrect;
+		private int index;
+		private String correct;
+		private String mr;
+		// the context of the submitting thread
+		private Context ctx;
+		public Task(boolean[] isCorrect, int index, String correct, String mr) {
+			this.isCorrect = isCorrect;
+			this.index = index;
+			this.correct = correct;
+			this.mr = mr;
+			ctx = Context.current();
+		}
+		public Object call() {
+			Context prev = Context.install(ctx);
+			try {
+				isCorrect[index] = isCorrect(correct, mr);
+			} finally {
+				Context.install(prev);
+			}
+			return null;
+		}
+	}
+
+}
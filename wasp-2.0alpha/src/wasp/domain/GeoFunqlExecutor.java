@@ -0,0 +1,301 @@
+/*
+ * Copyright 2006, 2007 Yuk Wah Wong.
+ *
+ * This file is part of the WASP distribution.
+ *
+ * WASP is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * WASP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with WASP; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package wasp.domain;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import wasp.util.Cache;
+
+/**
+ * An executor of Geoquery MRs written in the functional query language (FunQL).  The denotations
+ * of all sub-queries are memoized, so sub-queries shared among different MRs (e.g.
+ * <code>state(all)</code>) are evaluated only once.
+ *
+ * @author ywwong
+ *
+ */
+public class GeoFunqlExecutor extends GeoExecutor {
+
+	// FunQL type function -> GeoDatabase type
+	private static final HashMap TYPES = new HashMap();
+	// FunQL relation function -> GeoDatabase relation
+	private static final HashMap RELATIONS = new HashMap();
+	// FunQL attribute function -> GeoDatabase attribute
+	private static final HashMap ATTRS = new HashMap();
+	// FunQL superlative -> GeoDatabase attribute
+	private static final HashMap SUPERLATIVES = new HashMap();
+	static {
+		String[] types = {"state", "city", "river", "lake", "mountain", "place", "country", "capital",
+				"major"};
+		for (int i = 0; i < types.length; ++i)
+			TYPES.put(types[i], types[i]);
+		String[] rels = {"loc", "traverse", "next_to", "capital", "high_point", "low_point"};
+		for (int i = 0; i < rels.length; ++i) {
+			RELATIONS.put(rels[i]+"_1", rels[i]);
+			RELATIONS.put(rels[i]+"_2", rels[i]);
+		}
+		ATTRS.put("area_1", GeoDatabase.AREA);
+		ATTRS.put("population_1", GeoDatabase.POPULATION);
+		ATTRS.put("density_1", GeoDatabase.DENSITY);
+		ATTRS.put("elevation_1", GeoDatabase.ELEVATION);
+		ATTRS.put("len", GeoDatabase.LEN);
+		ATTRS.put("size", GeoDatabase.SIZE);
+		SUPERLATIVES.put("largest", GeoDatabase.SIZE);
+		SUPERLATIVES.put("smallest", GeoDatabase.SIZE);
+		SUPERLATIVES.put("highest", GeoDatabase.ELEVATION);
+		SUPERLATIVES.put("lowest", GeoDatabase.ELEVATION);
+		SUPERLATIVES.put("longest", GeoDatabase.LEN);
+		SUPERLATIVES.put("shortest", GeoDatabase.LEN);
+	}
+
+	// String -> Set
+	private Cache denots;
+
+	public GeoFunqlExecutor(GeoDatabase db) {
+		super(db);
+		denots = new Cache(getCacheSize());
+	}
+
+	/**
+	 * Creates an executor based on the Geoquery database in the directory that contains the Geoquery
+	 * evaluation scripts.
+	 *
+	 * @throws IOException if an I/O error occurs.
+	 */
+	public GeoFunqlExecutor() throws IOException {
+		this(readDatabase());
+	}
+
+	protected Set execute(GeoTerm query) {
+		if (!query.is("answer", 1))
+			return null;
+		return denot(query.args[0]);
+	}
+
+	/**
+	 * Returns the denotation of the specified FunQL expression.  The returned set must not be
+	 * modified.
+	 */
+	private Set denot(GeoTerm t) {
+		String key = t.toString();
+		Set d = (Set) denots.get(key);
+		if (d == null) {
+			d = eval(t);
+			denots.put(key, d);
+		}
+		return d;
+	}
+
+	private Set eval(GeoTerm t) {
+		if (t.isNum())
+			return db.lookup(t);
+		if (t.isVar() || t.functor == null)
+			throw new IllegalArgumentException("unexpected term "+t);
+		String f = t.functor;
+		int n = t.args.length;
+		if (f.endsWith("id") && n > 0)
+			return db.lookup(t);
+		if (n == 1 && TYPES.containsKey(f)) {
+			Set type = db.getType((String) TYPES.get(f));
+			if (t.args[0].is("all", 0))
+				return type;
+			return intersect(denot(t.args[0]), type);
+		}
+		if (n == 1 && RELATIONS.containsKey(f)) {
+			GeoDatabase.Relation r = db.getRelation((String) RELATIONS.get(f));
+			boolean fwd = f.endsWith("_1");
+			Set set = new HashSet();
+			for (Iterator it = denot(t.args[0]).iterator(); it.hasNext();) {
+				Object x = it.next();
+				set.addAll((fwd) ? r.forward(x) : r.backward(x));
+			}
+			return set;
+		}
+		if (n == 1 && ATTRS.containsKey(f)) {
+			String attr = (String) ATTRS.get(f);
+			Set set = new HashSet();
+			for (Iterator it = denot(t.args[0]).iterator(); it.hasNext();) {
+				Double val = db.getAttr(attr, it.next());
+				if (val != null)
+					set.add(val);
+			}
+			return set;
+		}
+		if (n == 1 && SUPERLATIVES.containsKey(f)) {
+			boolean max = f.equals("largest") || f.equals("highest") || f.equals("longest");
+			return extreme(denot(t.args[0]), (String) SUPERLATIVES.get(f), max);
+		}
+		if (n == 1 && (f.equals("largest_one") || f.equals("smallest_one"))) {
+			GeoTerm arg = t.args[0];
+			if (arg.args.length != 1 || !ATTRS.containsKey(arg.functor))
+				throw new IllegalArgumentException("unexpected term "+t);
+			return extreme(denot(arg.args[0]), (String) ATTRS.get(arg.functor), f.equals("largest_one"));
+		}
+		if (n == 1 && (f.equals("most") || f.equals("fewest")))
+			return most(t.args[0], f.equals("most"));
+		if (n == 1 && f.equals("each"))
+			return denot(t.args[0]);
+		if (n == 1 && f.equals("count"))
+			return number(elements(t.args[0]).size());
+		if (n == 1 && f.equals("sum")) {
+			double sum = 0;
+			for (Iterator it = elements(t.args[0]).iterator(); it.hasNext();) {
+				Object x = it.next();
+				if (x instanceof Double)
+					sum += ((Double) x).doubleValue();
+			}
+			return number(sum);
+		}
+		if (n == 1 && f.equals("elevation_2")) {
+			Set nums = denot(t.args[0]);
+			Set set = new HashSet();
+			for (Iterator it = db.getAttrDomain(GeoDatabase.ELEVATION).iterator(); it.hasNext();) {
+				Object p = it.next();
+				if (nums.contains(db.getAttr(GeoDatabase.ELEVATION, p)))
+					set.add(p);
+			}
+			return set;
+		}
+		if (n == 1 && (f.startsWith("higher_") || f.startsWith("lower_") || f.equals("longer"))) {
+			// higher_2(X): places higher than some place in X; higher_1(X): places lower than some
+			// place in X
+			String attr = (f.equals("longer")) ? GeoDatabase.LEN : GeoDatabase.ELEVATION;
+			boolean greater = f.equals("higher_2") || f.equals("lower_1") || f.equals("longer");
+			Set xs = denot(t.args[0]);
+			Set set = new HashSet();
+			for (Iterator it = db.getAttrDomain(attr).iterator(); it.hasNext();) {
+				Object y = it.next();
+				double vy = db.getAttr(attr, y).doubleValue();
+				for (Iterator jt = xs.iterator(); jt.hasNext();) {
+					Double vx = db.getAttr(attr, jt.next());
+					if (vx != null && ((greater) ? vy > vx.doubleValue() : vy < vx.doubleValue())) {
+						set.add(y);
+						break;
+					}
+				}
+			}
+			return set;
+		}
+		if (n == 2 && f.equals("exclude")) {
+			Set set = new HashSet(denot(t.args[0]));
+			set.removeAll(denot(t.args[1]));
+			return set;
+		}
+		if (n == 2 && f.equals("intersection"))
+			return intersect(denot(t.args[0]), denot(t.args[1]));
+		throw new IllegalArgumentException("unknown function "+f+"/"+n);
+	}
+
+	/**
+	 * Returns the elements of the denotation of the specified FunQL expression, for use in aggregates.
+	 * The value of an attribute function is listed once for each entity that has it, so that equal
+	 * values of different entities are not collapsed (e.g. in <code>sum(population_1(...))</code>).
+	 */
+	private List elements(GeoTerm t) {
+		if (t.args.length != 1 || !ATTRS.containsKey(t.functor))
+			return new ArrayList(denot(t));
+		String attr = (String) ATTRS.get(t.functor);
+		List list = new ArrayList();
+		for (Iterator it = denot(t.args[0]).iterator(); it.hasNext();) {
+			Double val = db.getAttr(attr, it.next());
+			if (val != null)
+				list.add(val);
+		}
+		return list;
+	}
+
+	private static Set intersect(Set a, Set b) {
+		Set set = new HashSet();
+		for (Iterator it = a.iterator(); it.hasNext();) {
+			Object x = it.next();
+			if (b.contains(x))
+				set.add(x);
+		}
+		return set;
+	}
+
+	private static Set number(double val) {
+		Set set = new HashSet();
+		set.add(Double.valueOf(val));
+		return set;
+	}
+
+	/**
+	 * Returns the elements of the given set with the largest (or smallest) value of the given
+	 * attribute.  Numbers are compared by their own values.
+	 */
+	private Set extreme(Set xs, String attr, boolean max) {
+		Set set = new HashSet();
+		double best = 0;
+		for (Iterator it = xs.iterator(); it.hasNext();) {
+			Object x = it.next();
+			Double val = (x instanceof Double) ? (Double) x : db.getAttr(attr, x);
+			if (val == null)
+				continue;
+			double v = val.doubleValue();
+			if (set.isEmpty() || ((max) ? v > best : v < best)) {
+				set.clear();
+				best = v;
+			}
+			if (v == best)
+				set.add(x);
+		}
+		return set;
+	}
+
+	/**
+	 * Evaluates <code>most(X)</code> or <code>fewest(X)</code>.  The first relation applied in
+	 * <code>X</code> (e.g. <code>traverse_1</code> in <code>state(traverse_1(river(all)))</code>)
+	 * determines what is counted: each element of <code>X</code> is scored by the number of elements
+	 * of the relation's argument that it is related to.
+	 */
+	private Set most(GeoTerm t, boolean max) {
+		Set xs = denot(t);
+		GeoTerm r = t;
+		while (r.args.length == 1 && !RELATIONS.containsKey(r.functor)
+				&& (TYPES.containsKey(r.functor) || r.functor.equals("each")))
+			r = r.args[0];
+		if (r.args.length != 1 || !RELATIONS.containsKey(r.functor))
+			return xs;
+		GeoDatabase.Relation rel = db.getRelation((String) RELATIONS.get(r.functor));
+		boolean fwd = r.functor.endsWith("_1");
+		Set ys = denot(r.args[0]);
+		Set set = new HashSet();
+		int best = 0;
+		for (Iterator it = xs.iterator(); it.hasNext();) {
+			Object x = it.next();
+			int count = intersect((fwd) ? rel.backward(x) : rel.forward(x), ys).size();
+			if (set.isEmpty() || ((max) ? count > best : count < best)) {
+				set.clear();
+				best = count;
+			}
+			if (count == best)
+				set.add(x);
+		}
+		return set;
+	}
+
+}
@@ -74,6 +74,8 @@ public class GeoFunqlGrammar extends MRLGrammar {
 		"StateName"
 	};
 	
+	private GeoFunqlExecutor exec = null;
+	
 	private static final String START = "Query";
 	
 	public Nonterminal getStart() {
@@ -89,7 +91,7 @@ public class GeoFunqlGrammar extends MRLGrammar {
 	}
 	
 	public Symbol[] tokenize(String str) {
-		Terminal.readWords = false;
+		Terminal.readWords.set(false);
 		ArrayList list = new ArrayList();
 		StringTokenizer tokenizer = new StringTokenizer(str, "(),' \t\n\r\f", true);
 		while (tokenizer.hasMoreTokens()) {
@@ -119,7 +121,22 @@ public class GeoFunqlGrammar extends MRLGrammar {
 		return sb.toString();
 	}
 	
+	public boolean isEvaluatedExternally() {
+		String engine = Config.get(Config.GEO_EVAL_ENGINE);
+		return engine == null || !engine.equals("java");
+	}
+	
 	public boolean[][] evaluate(Examples examples, Examples gold) throws IOException {
+		if (isEvaluatedExternally())
+			return evaluateSicstus(examples, gold);
+		synchronized (this) {
+			if (exec == null)
+				exec = new GeoFunqlExecutor();
+		}
+		return exec.evaluate(this, examples, gold);
+	}
+	
+	private boolean[][] evaluateSicstus(Examples examples, Examples gold) throws IOException {
 		String evalDir = Config.get(Config.GEO_EVAL_DIR);
 		String execFile = Config.get(Config.SICSTUS_EXEC);
 		File geobaseFile = new File(evalDir, "geobase.pl");
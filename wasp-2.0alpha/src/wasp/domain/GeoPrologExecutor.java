@@ -0,0 +1,370 @@
+/*
+ * Copyright 2006, 2007 Yuk Wah Wong.
+ *
+ * This file is part of the WASP distribution.
+ *
+ * WASP is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * WASP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with WASP; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package wasp.domain;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import wasp.util.Cache;
+
+/**
+ * An executor of Geoquery MRs written in the logical query language (a subset of Prolog).  Queries
+ * are solved by a simple backtracking search over the Geoquery database.  The solutions of
+ * aggregate sub-goals (e.g. <code>largest</code>, <code>count</code>) are memoized for each
+ * combination of bindings of their free variables.
+ *
+ * @author ywwong
+ *
+ */
+public class GeoPrologExecutor extends GeoExecutor {
+
+	// predicate -> GeoDatabase attribute
+	private static final HashMap ATTRS = new HashMap();
+	// superlative -> GeoDatabase attribute
+	private static final HashMap SUPERLATIVES = new HashMap();
+	static {
+		String[] attrs = {"area", "population", "density", "len", "elevation", "size"};
+		for (int i = 0; i < attrs.length; ++i)
+			ATTRS.put(attrs[i], attrs[i]);
+		SUPERLATIVES.put("largest", GeoDatabase.SIZE);
+		SUPERLATIVES.put("smallest", GeoDatabase.SIZE);
+		SUPERLATIVES.put("highest", GeoDatabase.ELEVATION);
+		SUPERLATIVES.put("lowest", GeoDatabase.ELEVATION);
+		SUPERLATIVES.put("longest", GeoDatabase.LEN);
+		SUPERLATIVES.put("shortest", GeoDatabase.LEN);
+	}
+
+	// String -> List
+	private Cache memo;
+
+	public GeoPrologExecutor(GeoDatabase db) {
+		super(db);
+		memo = new Cache(getCacheSize());
+	}
+
+	/**
+	 * Creates an executor based on the Geoquery database in the directory that contains the Geoquery
+	 * evaluation scripts.
+	 *
+	 * @throws IOException if an I/O error occurs.
+	 */
+	public GeoPrologExecutor() throws IOException {
+		this(readDatabase());
+	}
+
+	protected Set execute(GeoTerm query) {
+		if (!query.is("answer", 2) || !query.args[0].isVar())
+			return null;
+		Set set = new HashSet();
+		List sols = solve(query.args[1], new HashMap());
+		for (Iterator it = sols.iterator(); it.hasNext();) {
+			Object val = ((HashMap) it.next()).get(query.args[0].var);
+			if (val != null)
+				set.add(val);
+		}
+		return set;
+	}
+
+	/**
+	 * Returns all solutions of the specified goal that extend the given variable bindings.  Each
+	 * solution is a map from variable names to values.
+	 */
+	private List solve(GeoTerm g, HashMap env) {
+		if (g.isVar() || g.functor == null)
+			throw new IllegalArgumentException("unexpected goal "+g);
+		String f = g.functor;
+		int n = g.args.length;
+		if (f.equals(GeoTerm.CONJ)) {
+			List sols = Collections.singletonList(env);
+			for (int i = 0; i < n && !sols.isEmpty(); ++i) {
+				List next = new ArrayList();
+				for (Iterator it = sols.iterator(); it.hasNext();)
+					next.addAll(solve(g.args[i], (HashMap) it.next()));
+				sols = next;
+			}
+			return sols;
+		}
+		if (n == 2 && f.equals("const"))
+			return unify(g.args[0], db.lookup(g.args[1]), env);
+		if (n == 1) {
+			if (f.equals("not"))
+				return (solve(g.args[0], env).isEmpty()) ? Collections.singletonList(env)
+						: Collections.EMPTY_LIST;
+			if (!db.getType(f).isEmpty() || f.equals(GeoDatabase.CAPITAL))
+				return unify(g.args[0], db.getType(f), env);
+		}
+		if (n == 2 && db.getRelation(f) != null)
+			return relation(db.getRelation(f), g.args[0], g.args[1], env);
+		if (n == 2 && ATTRS.containsKey(f))
+			return attr((String) ATTRS.get(f), g.args[0], g.args[1], env);
+		if (n == 2 && (f.equals("higher") || f.equals("lower") || f.equals("longer")))
+			return compare(g, env);
+		// aggregates
+		if (n == 2 && SUPERLATIVES.containsKey(f))
+			return memoized(g, env);
+		if (n == 3 && (f.equals("most") || f.equals("fewest") || f.equals("count") || f.equals("sum")))
+			return memoized(g, env);
+		throw new IllegalArgumentException("unknown predicate "+f+"/"+n);
+	}
+
+	private List memoized(GeoTerm g, HashMap env) {
+		TreeSet vars = new TreeSet();
+		collectVars(g, vars);
+		StringBuffer sb = new StringBuffer(g.toString());
+		for (Iterator it = vars.iterator(); it.hasNext();) {
+			String var = (String) it.next();
+			sb.append(' ');
+			sb.append(var);
+			sb.append('=');
+			sb.append(env.get(var));
+		}
+		String key = sb.toString();
+		List sols = (List) memo.get(key);
+		if (sols == null) {
+			sols = aggregate(g, env);
+			memo.put(key, sols);
+		}
+		// rebase the memoized solutions on the current bindings
+		List list = new ArrayList();
+		for (Iterator it = sols.iterator(); it.hasNext();) {
+			HashMap sol = (HashMap) ((HashMap) it.next()).clone();
+			sol.putAll(env);
+			list.add(sol);
+		}
+		return list;
+	}
+
+	private static void collectVars(GeoTerm t, Set vars) {
+		if (t.isVar())
+			vars.add(t.var);
+		for (int i = 0; i < t.args.length; ++i)
+			collectVars(t.args[i], vars);
+	}
+
+	private List aggregate(GeoTerm g, HashMap env) {
+		String f = g.functor;
+		if (SUPERLATIVES.containsKey(f)) {
+			// largest(X, Goal): the solutions of Goal with the largest X
+			GeoTerm x = g.args[0];
+			String attr = (String) SUPERLATIVES.get(f);
+			boolean max = f.equals("largest") || f.equals("highest") || f.equals("longest");
+			List best = new ArrayList();
+			double bestVal = 0;
+			for (Iterator it = solve(g.args[1], env).iterator(); it.hasNext();) {
+				HashMap sol = (HashMap) it.next();
+				Object val = value(x, sol);
+				Double v = (val instanceof Double) ? (Double) val : db.getAttr(attr, val);
+				if (v == null)
+					continue;
+				if (best.isEmpty() || ((max) ? v.doubleValue() > bestVal : v.doubleValue() < bestVal)) {
+					best.clear();
+					bestVal = v.doubleValue();
+				}
+				if (v.doubleValue() == bestVal)
+					best.add(sol);
+			}
+			return best;
+		} else if (f.equals("most") || f.equals("fewest")) {
+			// most(X, Y, Goal): the X with the most distinct Y's
+			GeoTerm x = g.args[0];
+			GeoTerm y = g.args[1];
+			HashMap groups = new HashMap();
+			for (Iterator it = solve(g.args[2], env).iterator(); it.hasNext();) {
+				HashMap sol = (HashMap) it.next();
+				Object vx = value(x, sol);
+				Set ys = (Set) groups.get(vx);
+				if (ys == null) {
+					ys = new HashSet();
+					groups.put(vx, ys);
+				}
+				ys.add(value(y, sol));
+			}
+			boolean max = f.equals("most");
+			Set best = new HashSet();
+			int bestCount = 0;
+			for (Iterator it = groups.keySet().iterator(); it.hasNext();) {
+				Object vx = it.next();
+				int count = ((Set) groups.get(vx)).size();
+				if (best.isEmpty() || ((max) ? count > bestCount : count < bestCount)) {
+					best.clear();
+					bestCount = count;
+				}
+				if (count == bestCount)
+					best.add(vx);
+			}
+			return unify(x, best, env);
+		} else {
+			// count(X, Goal, N) and sum(X, Goal, N): an entity is counted once, but a number is
+			// counted once for each distinct solution of Goal, since equal numbers (e.g. the
+			// populations of two states) may come from different entities
+			Set entities = new HashSet();
+			List nums = new ArrayList();
+			for (Iterator it = new HashSet(solve(g.args[1], env)).iterator(); it.hasNext();) {
+				Object val = value(g.args[0], (HashMap) it.next());
+				if (val instanceof Double)
+					nums.add(val);
+				else if (val != null)
+					entities.add(val);
+			}
+			double total = 0;
+			if (f.equals("count"))
+				total = entities.size()+nums.size();
+			else
+				for (Iterator it = nums.iterator(); it.hasNext();)
+					total += ((Double) it.next()).doubleValue();
+			Set set = new HashSet();
+			set.add(Double.valueOf(total));
+			return unify(g.args[2], set, env);
+		}
+	}
+
+	/**
+	 * Returns the value of the specified term under the given bindings.  <code>null</code> is
+	 * returned for unbound variables.
+	 */
+	private Object value(GeoTerm t, HashMap env) {
+		if (t.isVar())
+			return env.get(t.var);
+		if (t.isNum())
+			return Double.valueOf(t.num);
+		Set set = db.lookup(t);
+		return (set.size() == 1) ? set.iterator().next() : null;
+	}
+
+	/**
+	 * Unifies the specified term with each of the given values.
+	 */
+	private List unify(GeoTerm t, Set vals, HashMap env) {
+		List list = new ArrayList();
+		if (t.isVar() && !env.containsKey(t.var)) {
+			for (Iterator it = vals.iterator(); it.hasNext();) {
+				HashMap sol = (HashMap) env.clone();
+				sol.put(t.var, it.next());
+				list.add(sol);
+			}
+		} else if (t.isVar()) {
+			if (vals.contains(env.get(t.var)))
+				list.add(env);
+		} else {
+			Set set = db.lookup(t);
+			for (Iterator it = set.iterator(); it.hasNext();)
+				if (vals.contains(it.next())) {
+					list.add(env);
+					break;
+				}
+		}
+		return list;
+	}
+
+	/**
+	 * Returns the set of possible values of the specified term (a singleton set for bound variables
+	 * and constants), or <code>null</code> for unbound variables.
+	 */
+	private Set values(GeoTerm t, HashMap env) {
+		if (t.isVar()) {
+			Object val = env.get(t.var);
+			return (val==null) ? null : Collections.singleton(val);
+		}
+		return db.lookup(t);
+	}
+
+	private List relation(GeoDatabase.Relation r, GeoTerm a, GeoTerm b, HashMap env) {
+		Set as = values(a, env);
+		Set bs = values(b, env);
+		List list = new ArrayList();
+		if (as != null) {
+			for (Iterator it = as.iterator(); it.hasNext();) {
+				Object va = it.next();
+				List sols = unify(a, Collections.singleton(va), env);
+				for (Iterator jt = sols.iterator(); jt.hasNext();)
+					list.addAll(unify(b, r.forward(va), (HashMap) jt.next()));
+			}
+		} else if (bs != null) {
+			for (Iterator it = bs.iterator(); it.hasNext();) {
+				Object vb = it.next();
+				List sols = unify(b, Collections.singleton(vb), env);
+				for (Iterator jt = sols.iterator(); jt.hasNext();)
+					list.addAll(unify(a, r.backward(vb), (HashMap) jt.next()));
+			}
+		} else {
+			for (Iterator it = new ArrayList(r.domain()).iterator(); it.hasNext();) {
+				Object va = it.next();
+				List sols = unify(a, Collections.singleton(va), env);
+				for (Iterator jt = sols.iterator(); jt.hasNext();)
+					list.addAll(unify(b, r.forward(va), (HashMap) jt.next()));
+			}
+		}
+		return list;
+	}
+
+	private List attr(String attr, GeoTerm a, GeoTerm b, HashMap env) {
+		Set as = values(a, env);
+		if (as == null)
+			as = db.getAttrDomain(attr);
+		List list = new ArrayList();
+		for (Iterator it = as.iterator(); it.hasNext();) {
+			Object va = it.next();
+			Double val = db.getAttr(attr, va);
+			if (val == null)
+				continue;
+			List sols = unify(a, Collections.singleton(va), env);
+			for (Iterator jt = sols.iterator(); jt.hasNext();)
+				list.addAll(unify(b, Collections.singleton(val), (HashMap) jt.next()));
+		}
+		return list;
+	}
+
+	private List compare(GeoTerm g, HashMap env) {
+		String attr = (g.functor.equals("longer")) ? GeoDatabase.LEN : GeoDatabase.ELEVATION;
+		boolean greater = !g.functor.equals("lower");
+		Set as = values(g.args[0], env);
+		Set bs = values(g.args[1], env);
+		if (as == null)
+			as = db.getAttrDomain(attr);
+		if (bs == null)
+			bs = db.getAttrDomain(attr);
+		List list = new ArrayList();
+		for (Iterator it = as.iterator(); it.hasNext();) {
+			Object va = it.next();
+			Double x = db.getAttr(attr, va);
+			if (x == null)
+				continue;
+			for (Iterator jt = bs.iterator(); jt.hasNext();) {
+				Object vb = jt.next();
+				Double y = db.getAttr(attr, vb);
+				if (y == null || ((greater) ? x.doubleValue() <= y.doubleValue()
+						: x.doubleValue() >= y.doubleValue()))
+					continue;
+				List sols = unify(g.args[0], Collections.singleton(va), env);
+				for (Iterator kt = sols.iterator(); kt.hasNext();)
+					list.addAll(unify(g.args[1], Collections.singleton(vb), (HashMap) kt.next()));
+			}
+		}
+		return list;
+	}
+
+}
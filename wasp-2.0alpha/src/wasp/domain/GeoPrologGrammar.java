@@ -88,6 +88,8 @@ public class GeoPrologGrammar extends MRLGrammar {
 		"State"
 	};
 	
+	private GeoPrologExecutor exec = null;
+	
 	private static final String START = "Query";
 	
 	public Nonterminal getStart() {
@@ -103,7 +105,7 @@ public class GeoPrologGrammar extends MRLGrammar {
 	}
 	
 	public Symbol[] tokenize(String str) {
-		Terminal.readWords = false;
+		Terminal.readWords.set(false);
 		HashMap vars = new HashMap();
 		short nextVar = 1;
 		ArrayList list = new ArrayList();
@@ -159,7 +161,22 @@ public class GeoPrologGrammar extends MRLGrammar {
 		return sb.toString();
 	}
 	
+	public boolean isEvaluatedExternally() {
+		String engine = Config.get(Config.GEO_EVAL_ENGINE);
+		return engine == null || !engine.equals("java");
+	}
+	
 	public boolean[][] evaluate(Examples examples, Examples gold) throws IOException {
+		if (isEvaluatedExternally())
+			return evaluateSicstus(examples, gold);
+		synchronized (this) {
+			if (exec == null)
+				exec = new GeoPrologExecutor();
+		}
+		return exec.evaluate(this, examples, gold);
+	}
+	
+	private boolean[][] evaluateSicstus(Examples examples, Examples gold) throws IOException {
 		String evalDir = Config.get(Config.GEO_EVAL_DIR);
 		String execFile = Config.get(Config.SICSTUS_EXEC);
 		File geobaseFile = new File(evalDir, "geobase.pl");
@@ -0,0 +1,277 @@
+/*
+ * Copyright 2006, 2007 Yuk Wah Wong.
+ *
+ * This file is part of the WASP distribution.
+ *
+ * WASP is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * WASP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with WASP; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package wasp.domain;
+
+import java.util.ArrayList;
+
+/**
+ * Prolog-style terms, used for representing Geoquery MRs (in FunQL or Prolog) and the facts in the
+ * Geoquery database.  A term is either a variable, a number, an atom, a compound term, a list
+ * (functor <code>[]</code>), or a parenthesized conjunction (functor <code>,</code>).
+ *
+ * @author ywwong
+ *
+ */
+public class GeoTerm {
+
+	public static final String CONJ = ",";
+	public static final String LIST = "[]";
+
+	/** The functor of this term; <code>null</code> for variables and numbers. */
+	public String functor;
+	/** The arguments of this term. */
+	public GeoTerm[] args;
+	/** The name of this variable; <code>null</code> if this term is not a variable. */
+	public String var;
+	/** The value of this number; <code>NaN</code> if this term is not a number. */
+	public double num;
+
+	private String str;
+
+	private GeoTerm() {
+		functor = null;
+		args = new GeoTerm[0];
+		var = null;
+		num = Double.NaN;
+		str = null;
+	}
+
+	public boolean isVar() {
+		return var != null;
+	}
+
+	public boolean isNum() {
+		return functor == null && var == null;
+	}
+
+	public boolean isAtom() {
+		return functor != null && args.length == 0 && !functor.equals(LIST);
+	}
+
+	public boolean is(String functor, int arity) {
+		return functor.equals(this.functor) && args.length == arity;
+	}
+
+	public boolean equals(Object o) {
+		return o instanceof GeoTerm && toString().equals(o.toString());
+	}
+
+	public int hashCode() {
+		return toString().hashCode();
+	}
+
+	/**
+	 * Returns the canonical string representation of this term.  Atoms are always quoted, and there
+	 * are no spaces between tokens.  Two terms are equal if and only if their canonical strings are
+	 * equal.
+	 */
+	public String toString() {
+		if (str == null) {
+			StringBuffer sb = new StringBuffer();
+			if (var != null)
+				sb.append(var);
+			else if (functor == null)
+				sb.append(num);
+			else if (functor.equals(CONJ) || functor.equals(LIST)) {
+				sb.append((functor.equals(CONJ)) ? '(' : '[');
+				for (int i = 0; i < args.length; ++i) {
+					if (i > 0)
+						sb.append(',');
+					sb.append(args[i]);
+				}
+				sb.append((functor.equals(CONJ)) ? ')' : ']');
+			} else {
+				sb.append('\'');
+				sb.append(functor);
+				sb.append('\'');
+				if (args.length > 0) {
+					sb.append('(');
+					for (int i = 0; i < args.length; ++i) {
+						if (i > 0)
+							sb.append(',');
+						sb.append(args[i]);
+					}
+					sb.append(')');
+				}
+			}
+			str = sb.toString();
+		}
+		return str;
+	}
+
+	///
+	/// Parser
+	///
+
+	/**
+	 * Parses the specified string as a single term.  Unquoted tokens that start with an uppercase
+	 * letter, or with an underscore followed by other characters, are variables.  A single underscore
+	 * is an atom.
+	 *
+	 * @param str the string to parse.
+	 * @return the term represented by <code>str</code>.
+	 * @throws IllegalArgumentException if <code>str</code> is not a well-formed term.
+	 */
+	public static GeoTerm parse(String str) {
+		Tokens tokens = new Tokens(str);
+		GeoTerm t = tokens.term();
+		if (tokens.peek() != null)
+			throw new IllegalArgumentException("extra tokens in "+str);
+		return t;
+	}
+
+	private static class Tokens {
+		private String str;
+		private int pos;
+		private String next;
+		private boolean quoted;
+		public Tokens(String str) {
+			this.str = str;
+			pos = 0;
+			advance();
+		}
+		public String peek() {
+			return next;
+		}
+		private String take() {
+			if (next == null)
+				throw new IllegalArgumentException("unexpected end of "+str);
+			String t = next;
+			advance();
+			return t;
+		}
+		private void expect(String t) {
+			if (quoted || !t.equals(next))
+				throw new IllegalArgumentException("expected "+t+" in "+str);
+			advance();
+		}
+		private boolean at(String t) {
+			return !quoted && t.equals(next);
+		}
+		private void advance() {
+			quoted = false;
+			while (pos < str.length() && Character.isWhitespace(str.charAt(pos)))
+				++pos;
+			if (pos == str.length()) {
+				next = null;
+				return;
+			}
+			char c = str.charAt(pos);
+			if (c == '\'') {
+				int end = str.indexOf('\'', pos+1);
+				if (end < 0)
+					throw new IllegalArgumentException("unterminated quote in "+str);
+				next = str.substring(pos+1, end).trim();
+				quoted = true;
+				pos = end+1;
+			} else if ("(),[]".indexOf(c) >= 0) {
+				next = String.valueOf(c);
+				++pos;
+			} else {
+				int start = pos;
+				if (c == '-' || c == '+')
+					++pos;
+				while (pos < str.length()) {
+					c = str.charAt(pos);
+					if (Character.isLetterOrDigit(c) || c == '_')
+						++pos;
+					else if (c == '.' && pos+1 < str.length() && Character.isDigit(str.charAt(pos+1)))
+						++pos;
+					else if ((c == '+' || c == '-') && pos > start
+							&& Character.toLowerCase(str.charAt(pos-1)) == 'e'
+							&& Character.isDigit(str.charAt(start)))
+						++pos;
+					else
+						break;
+				}
+				if (pos == start)
+					throw new IllegalArgumentException("unexpected character "+c+" in "+str);
+				next = str.substring(start, pos);
+			}
+		}
+		public GeoTerm term() {
+			GeoTerm t = new GeoTerm();
+			if (at("(")) {
+				// parenthesized conjunction
+				advance();
+				ArrayList list = new ArrayList();
+				list.add(term());
+				while (at(",")) {
+					advance();
+					list.add(term());
+				}
+				expect(")");
+				if (list.size() == 1)
+					return (GeoTerm) list.get(0);
+				t.functor = CONJ;
+				t.args = (GeoTerm[]) list.toArray(new GeoTerm[0]);
+				return t;
+			}
+			if (at("[")) {
+				advance();
+				ArrayList list = new ArrayList();
+				if (!at("]")) {
+					list.add(term());
+					while (at(",")) {
+						advance();
+						list.add(term());
+					}
+				}
+				expect("]");
+				t.functor = LIST;
+				t.args = (GeoTerm[]) list.toArray(new GeoTerm[0]);
+				return t;
+			}
+			boolean q = quoted;
+			String tok = take();
+			if (!q) {
+				char c = tok.charAt(0);
+				if (Character.isUpperCase(c) || (c == '_' && tok.length() > 1)) {
+					t.var = tok;
+					return t;
+				}
+				if (Character.isDigit(c) || c == '-' || c == '+') {
+					try {
+						t.num = Double.parseDouble(tok);
+						return t;
+					} catch (NumberFormatException e) {
+						throw new IllegalArgumentException("bad number "+tok+" in "+str);
+					}
+				}
+				if ("(),[]".indexOf(c) >= 0)
+					throw new IllegalArgumentException("unexpected "+tok+" in "+str);
+			}
+			t.functor = tok;
+			if (at("(")) {
+				advance();
+				ArrayList list = new ArrayList();
+				list.add(term());
+				while (at(",")) {
+					advance();
+					list.add(term());
+				}
+				expect(")");
+				t.args = (GeoTerm[]) list.toArray(new GeoTerm[0]);
+			}
+			return t;
+		}
+	}
+
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2006, 2007 Yuk Wah Wong.
+ * 
+ * This file is part of the WASP distribution.
+ *
+ * WASP is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * WASP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with WASP; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package wasp.main;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.logging.Logger;
+
+import wasp.util.Int;
+
+/**
+ * Training checkpoints.  Checkpoints are kept in the <code>checkpoint</code> subdirectory of the 
+ * current model directory.  They record the stages of the training pipeline that have been completed
+ * (e.g. word alignment), and the intermediate states of parameter estimation.  
+ * Checkpoints are deleted when training is done.
+ * 
+ * @author ywwong
+ *
+ */
+public class Checkpoint {
+
+	private static Logger logger = Logger.getLogger(Checkpoint.class.getName());
+	
+	/** Indicates if training should resume from the last checkpoint. */
+	public static boolean resume = false;
+	
+	/** The stage at which word alignments have been obtained. */
+	public static final String ALIGNED = "aligned";
+	
+	/** The default number of LBFGS iterations between checkpoints.  Each checkpoint holds the
+	 * decision vector and the correction history, so writing one every iteration would cost about as
+	 * much disk I/O as the model is large. */
+	private static final int DEFAULT_INTERVAL = 10;
+	
+	private static final String DIR = "checkpoint";
+	private static final String STAGES = "stages";
+	
+	private Checkpoint() {}
+	
+	private static File getDir() {
+		return new File(Config.getModelDir(), DIR);
+	}
+	
+	/**
+	 * Returns the checkpoint file with the specified name.
+	 * 
+	 * @param name the name of a checkpoint file.
+	 * @return the checkpoint file with the specified name.
+	 */
+	public static File getFile(String name) {
+		File dir = getDir();
+		dir.mkdirs();
+		return new File(dir, name);
+	}
+	
+	/**
+	 * Replaces the specified checkpoint file with a newly written temporary file.  Checkpoint files
+	 * should be written to temporary files first, so that a crash while writing would not destroy the
+	 * last checkpoint.
+	 * 
+	 * @param tmp a newly written temporary file.
+	 * @param file the checkpoint file to replace.
+	 * @throws IOException if the checkpoint file cannot be replaced.
+	 */
+	public static void commit(File tmp, File file) throws IOException {
+		if (!tmp.renameTo(file)) {
+			file.delete();
+			if (!tmp.renameTo(file))
+				throw new IOException("cannot rename "+tmp+" to "+file);
+		}
+	}
+	
+	/**
+	 * Indicates if training is being resumed, and the specified stage has been completed before.
+	 * 
+	 * @param stage a training stage.
+	 * @return <code>true</code> if the specified stage can be skipped; <code>false</code> otherwise.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	public static boolean isDone(String stage) throws IOException {
+		if (!resume)
+			return false;
+		File file = new File(getDir(), STAGES);
+		if (!file.exists())
+			return false;
+		BufferedReader in = new BufferedReader(new FileReader(file));
+		try {
+			String line;
+			while ((line = in.readLine()) != null)
+				if (line.trim().equals(stage))
+					return true;
+			return false;
+		} finally {
+			in.close();
+		}
+	}
+	
+	/**
+	 * Records the completion of the specified stage.
+	 * 
+	 * @param stage a training stage.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	public static void done(String stage) throws IOException {
+		PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(getFile(STAGES), true)));
+		out.println(stage);
+		out.close();
+		logger.info("Checkpoint: "+stage);
+	}
+	
+	/**
+	 * Deletes all checkpoints in the current model directory.
+	 */
+	public static void clear() {
+		File dir = getDir();
+		File[] files = dir.listFiles();
+		if (files == null)
+			return;
+		for (int i = 0; i < files.length; ++i)
+			files[i].delete();
+		dir.delete();
+	}
+	
+	/**
+	 * Returns the number of LBFGS iterations between checkpoints.
+	 * 
+	 * @return the number of LBFGS iterations between checkpoints; <code>0</code> if no checkpoints
+	 * should be made during parameter estimation.
+	 * @see wasp.main.Config#CHECKPOINT_INTERVAL
+	 */
+	public static int getInterval() {
+		String interval = Config.get(Config.CHECKPOINT_INTERVAL);
+		return (interval==null) ? DEFAULT_INTERVAL : Int.parseInt(interval);
+	}
+	
+}
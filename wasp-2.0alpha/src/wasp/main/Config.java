@@ -96,7 +96,7 @@ public class Config {
 	 * @return the current value for the given key.
 	 */
 	public static String get(String key) {
-		return config.props.getProperty(key);
+		return getProperties().getProperty(key);
 	}
 	
 	/**
@@ -106,7 +106,24 @@ public class Config {
 	 * @param value the value.
 	 */
 	public static void set(String key, String value) {
-		config.props.setProperty(key, value);
+		getProperties().setProperty(key, value);
+	}
+	
+	static Properties getGlobalProperties() {
+		return config.props;
+	}
+	
+	static MRLGrammar getGlobalMRLGrammar() {
+		return mrlGram;
+	}
+	
+	/**
+	 * Returns the property list of the current thread's context, or the global property list if the
+	 * current thread is not in any context.
+	 */
+	static Properties getProperties() {
+		Context ctx = Context.current();
+		return (ctx==null) ? config.props : ctx.props;
 	}
 	
 	/**
@@ -146,7 +163,8 @@ public class Config {
 	 * @see wasp.main.Config#MRL_GRAMMAR
 	 */
 	public static MRLGrammar getMRLGrammar() {
-		return mrlGram;
+		Context ctx = Context.current();
+		return (ctx==null) ? mrlGram : ctx.mrlGram;
 	}
 
 	/**
@@ -270,6 +288,10 @@ public class Config {
 	/** The name of the file that stores the formal MRL grammar. */
 	public static final String MRL_GRAMMAR = "wasp.mrl.grammar";
 
+	/** The maximum number of parsed MRs kept in memory, so that identical MR strings are not parsed
+	 * again.  The default is 50000.  A value of <code>0</code> disables caching. */
+	public static final String MRL_PARSE_CACHE_SIZE = "wasp.mrl.parse-cache-size";
+
 	/** The value of <i>k</i> for <i>k</i>-best parsing.  The actual number of parses returned can be
 	 * more if there are ties. */
 	public static final String KBEST = "wasp.kbest";
@@ -333,8 +355,8 @@ public class Config {
 	/** The value of <i>k</i> for <i>k</i>-best parsing during minimum error-rate training. */
 	public static final String MIN_ERROR_RATE_KBEST = "wasp.min-error-rate.kbest";
 
-	/** The objective used for minimum error-rate training.  The only recognized identifier is:
-	 * <code>bleu</code> for maximum-BLEU training.  */
+	/** The objective used for minimum error-rate training.  Recognized identifiers are:
+	 * <code>bleu</code> for maximum-BLEU training, and <code>nist</code> for maximum-NIST training.  */
 	public static final String MIN_ERROR_RATE_OBJECTIVE = "wasp.min-error-rate.objective";
 	
 	/** The current word alignment model.  Recognized identifiers are: <code>giza++</code> for
@@ -367,6 +389,10 @@ public class Config {
 	/** The size of <i>n</i> for <i>n</i>-gram models (either NL or MRL). */
 	public static final String NGRAM_N = "wasp.ngram.n";
 	
+	/** The number of n-gram scores cached per thread (default: 65536).  Set to <code>0</code> to turn
+	 * off caching. */
+	public static final String NGRAM_CACHE_SIZE = "wasp.ngram.cache-size";
+	
 	/** The absolute pathname of the directory that contains the executables for the CMU-Cambridge
 	 * Statistical Language Modeling Toolkit. */
 	public static final String CMU_CAM_TOOLKIT_DIR = "wasp.cmu-cam-toolkit.dir";
@@ -390,6 +416,15 @@ public class Config {
 	 * <code>wasp.translation.prob.model</code> is either <code>maxent</code> or <code>pscfg</code>). */
 	public static final String TRANSLATION_KBEST = "wasp.translation.kbest";
 	
+	/** The directory for caching the outputs of training stages (e.g. word alignments, n-gram models)
+	 * across runs.  Stage outputs are keyed by a hash of their inputs and relevant settings.  Caching
+	 * is disabled if this key is not set. */
+	public static final String STAGE_CACHE_DIR = "wasp.stage-cache.dir";
+	
+	/** The number of LBFGS iterations between training checkpoints (default: 10).  Use 0 to disable
+	 * checkpoints of parameter estimation. */
+	public static final String CHECKPOINT_INTERVAL = "wasp.checkpoint.interval";
+	
 	/** The frequency in which Viterbi approximation occurs when training a maximum-entropy model. */ 
 	public static final String MAXENT_VITERBI_APPROX_ITERATIONS = "wasp.maxent.viterbi-approx-iterations";
 
@@ -409,12 +444,44 @@ public class Config {
 	/** The maximum number of items for each cell in a tactical generator based on lambda-SCFG. */
 	public static final String SCFG_LAMBDA_PRUNE_K = "wasp.scfg.lambda.prune-k";
 	
+	/** The number of threads for completing disjoint MR subtrees concurrently in a tactical generator
+	 * based on lambda-SCFG.  The default is the number of available processors.  If it is greater
+	 * than one, subtrees are completed in the fork/join pool shared by all contexts, which has one
+	 * thread for each available processor. */
+	public static final String SCFG_LAMBDA_THREADS = "wasp.scfg.lambda.threads";
+	
+	/** The maximum number of completed MR subtrees kept across sentences in a tactical generator
+	 * based on lambda-SCFG.  The default is 1000.  Set it to 0 to disable the cache. */
+	public static final String SCFG_LAMBDA_CACHE_SIZE = "wasp.scfg.lambda.cache-size";
+	
+	/** The maximum wall-clock time in milliseconds for parsing or generating one sentence with an SCFG.
+	 * No time limit is imposed if this key is not set.
+	 * @see wasp.scfg.Budget */
+	public static final String SCFG_BUDGET_TIME = "wasp.scfg.budget.time";
+	
+	/** The maximum number of chart items for parsing or generating one sentence with an SCFG.  No
+	 * limit is imposed if this key is not set.
+	 * @see wasp.scfg.Budget */
+	public static final String SCFG_BUDGET_ITEMS = "wasp.scfg.budget.items";
+	
+	/** The maximum number of chart items per position when parsing or generation is re-run after
+	 * running out of budget (default: 100). */
+	public static final String SCFG_BUDGET_BEAM = "wasp.scfg.budget.beam";
+	
 	/** A boolean parameter that indicates if the Rewrite-based generator uses the MRL grammar. */
 	public static final String REWRITE_USE_MRL_GRAMMAR = "wasp.rewrite.use-mrl-grammar";
 	
 	/** The absolute pathname of the Rewrite executable file. */
 	public static final String REWRITE_EXEC = "wasp.rewrite.exec";
 	
+	/** The number of Rewrite decoding servers to start.  Sentences in a batch are dispatched to all
+	 * servers concurrently.  The default is 1. */
+	public static final String REWRITE_SERVERS = "wasp.rewrite.servers";
+	
+	/** The maximum number of requests sent to a Rewrite decoding server ahead of its replies.  The
+	 * default is 2. */
+	public static final String REWRITE_PIPELINE_DEPTH = "wasp.rewrite.pipeline-depth";
+	
 	/** A boolean parameter that indicates if the Pharaoh-based generator uses the MRL grammar. */
 	public static final String PHARAOH_USE_MRL_GRAMMAR = "wasp.pharaoh.use-mrl-grammar";
 	
@@ -425,6 +492,25 @@ public class Config {
 	/** The absolute pathname of the Pharaoh decoder. */
 	public static final String PHARAOH_EXEC = "wasp.pharaoh.exec";
 	
+	/** The maximum distance between consecutive source phrases in the phrase decoder that replaces
+	 * Pharaoh.  The default is -1, which means no limit. */
+	public static final String PHARAOH_DISTORTION_LIMIT = "wasp.pharaoh.distortion-limit";
+	
+	/** The maximum number of partial translations in each stack of the phrase decoder that replaces
+	 * Pharaoh.  The default is 100. */
+	public static final String PHARAOH_STACK_SIZE = "wasp.pharaoh.stack-size";
+	
+	/** The beam threshold of the phrase decoder that replaces Pharaoh.  Partial translations that
+	 * are less likely than the best one in the same stack by this factor are pruned.  The default is
+	 * 0.00001. */
+	public static final String PHARAOH_BEAM_THRESHOLD = "wasp.pharaoh.beam-threshold";
+	
+	/** The number of threads for decoding a batch of sentences concurrently in the phrase decoder
+	 * that replaces Pharaoh.  The default is the number of available processors.  If it is greater
+	 * than one, sentences are decoded in the fork/join pool shared by all contexts, which has one
+	 * thread for each available processor. */
+	public static final String PHARAOH_THREADS = "wasp.pharaoh.threads";
+	
 	/** The absolute pathname of the Pharaoh training script, <code>train-phrase-model.perl</code>. */
 	public static final String TRAIN_PHRASE_EXEC = "wasp.train-phrase.exec";
 
@@ -462,17 +548,45 @@ public class Config {
 	/** The name of the directory that contains the evaluation scripts for the Geoquery domain. */
 	public static final String GEO_EVAL_DIR = "wasp.domain.geo.eval.dir";
 	
+	/** The engine for running the Geoquery evaluation: <code>sicstus</code> (default) for running the
+	 * Geoquery evaluation scripts on SICSTUS, or <code>java</code> for executing MRs in-process over
+	 * <code>geobase.pl</code>. */
+	public static final String GEO_EVAL_ENGINE = "wasp.domain.geo.eval.engine";
+	
+	/** The maximum number of answers (and FunQL denotations) kept in memory by each in-process Geoquery
+	 * executor.  The default is 100000. */
+	public static final String GEO_EVAL_CACHE_SIZE = "wasp.domain.geo.eval.cache-size";
+	
 	/** The absolute pathname of the SICSTUS executable file for running the Geoquery evaluation
 	 * scripts. */
 	public static final String SICSTUS_EXEC = "wasp.sicstus.exec";
 	
-	/** The absolute pathname of the MTEval evaluation script. */
-	public static final String MTEVAL_EXEC = "wasp.mteval.exec";
-	
 	/** A boolean parameter that indicates if examples with no translations should be ignored when
 	 * evaluating generators. */
 	public static final String MTEVAL_IGNORE_EMPTY = "wasp.mteval.ignore-empty";
 	
+	/** The name of the class that checks the correctness of MR translations during the evaluation of
+	 * semantic parsers.  It must implement <code>wasp.main.parse.Evaluator.Checker</code>.  If this
+	 * key is not set, then the domain-specific evaluator of the current MRL grammar is used. */
+	public static final String EVAL_CHECKER = "wasp.eval.checker";
+	
+	/** The number of threads for checking the correctness of translations, and for scoring generated
+	 * sentences, during evaluation.  The default is the number of available processors.  Translations
+	 * are checked in a single thread if the evaluator starts an external process (e.g. SICSTUS). */
+	public static final String EVAL_THREADS = "wasp.eval.threads";
+	
+	/** A boolean parameter that indicates if metrics of parsing, generation and training are
+	 * collected.
+	 * @see Metrics */
+	public static final String METRICS = "wasp.metrics";
+	
+	/** The absolute pathname of the file to which metrics are written in JSON format.  Metrics are
+	 * only exposed through JMX if this key is not set. */
+	public static final String METRICS_FILE = "wasp.metrics.file";
+	
+	/** The number of seconds between writes to the metrics file (default: 60). */
+	public static final String METRICS_INTERVAL = "wasp.metrics.interval";
+	
 	///
 	/// Configuration files
 	///
@@ -491,6 +605,7 @@ public class Config {
 		config.print(System.err);
 		config.init();
 		configFilename = filename;
+		Metrics.init();
 	}
 	
 	/**
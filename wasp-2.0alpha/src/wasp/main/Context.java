@@ -0,0 +1,174 @@
+/*
+ * Copyright 2006, 2007 Yuk Wah Wong.
+ * 
+ * This file is part of the WASP distribution.
+ *
+ * WASP is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * WASP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with WASP; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package wasp.main;
+
+import java.util.Properties;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.ThreadFactory;
+
+import wasp.mrl.MRLGrammar;
+
+/**
+ * An isolated context for training and testing a model, so that several models can be trained 
+ * concurrently in the same JVM (e.g. for different folds in cross validation).  A context holds the
+ * parts of the global state that are modified during training: configuration settings (e.g. the model
+ * directory) and the MRL grammar (which is extended during rule extraction).  When a thread enters a
+ * context, the <code>Config</code> methods in that thread use the settings and the MRL grammar of the
+ * context.  Read-only parts of the global state, such as the corpus and the current NL, are shared by
+ * all contexts.
+ * <p>
+ * The dictionary is also shared by all contexts, but it is not read-only: words and nonterminals
+ * that are first seen during training (e.g. new nonterminals created during rule extraction) are
+ * added to it.  When several contexts are trained concurrently, these symbols get their IDs in the
+ * order in which the contexts add them, so their IDs (and anything ordered by these IDs) may differ
+ * from run to run.  Symbols read from the corpus are added before any context is created, so their
+ * IDs are the same in every run.
+ * <p>
+ * Threads in shared pools are not in any context.  Tasks submitted to such pools should capture the
+ * context of the submitting thread, and install it while they run (via <code>install</code>).
+ * 
+ * @author ywwong
+ *
+ */
+public class Context {
+
+	private static final ThreadLocal current = new InheritableThreadLocal();
+	
+	// the fork/join pool shared by all contexts; created on first use
+	private static ForkJoinPool sharedPool;
+	
+	/** Configuration settings; unspecified keys default to the global settings. */
+	Properties props;
+	/** A private copy of the global MRL grammar. */
+	MRLGrammar mrlGram;
+	
+	/**
+	 * Creates a new context based on the global configuration settings and MRL grammar.  The global
+	 * settings must have been read (via <code>Config.read</code>).
+	 */
+	public Context() {
+		props = new Properties(Config.getGlobalProperties());
+		mrlGram = Config.getGlobalMRLGrammar().copy();
+	}
+	
+	/**
+	 * Returns the context of the current thread.
+	 * 
+	 * @return the context of the current thread; <code>null</code> if the current thread is not in any
+	 * context.
+	 */
+	public static Context current() {
+		return (Context) current.get();
+	}
+	
+	/**
+	 * Makes this context the context of the current thread.  A thread can be in at most one context at
+	 * a time.
+	 * 
+	 * @throws IllegalStateException if the current thread is already in a context.
+	 */
+	public void enter() {
+		if (current.get() != null)
+			throw new IllegalStateException("already in a context");
+		current.set(this);
+	}
+	
+	/**
+	 * Makes the current thread leave its context.
+	 */
+	public static void exit() {
+		current.set(null);
+	}
+	
+	/**
+	 * Makes the specified context the context of the current thread, whether or not the thread is
+	 * already in a context.  This is used by tasks in shared pools, which run in the context of the
+	 * thread that submitted them.  Calls can be nested, since the previous context is returned so that
+	 * it can be restored.
+	 * 
+	 * @param ctx a context; <code>null</code> if the current thread should not be in any context.
+	 * @return the previous context of the current thread; <code>null</code> if it was not in any
+	 * context.
+	 */
+	public static Context install(Context ctx) {
+		Context prev = (Context) current.get();
+		current.set(ctx);
+		return prev;
+	}
+	
+	/**
+	 * Returns a factory of threads for a thread pool that is shared by all contexts.  Pool threads are
+	 * created lazily by whichever thread submits a task, so they would otherwise inherit the context
+	 * of that thread.  The threads created by this factory are daemon threads that are not in any
+	 * context.
+	 * 
+	 * @param name the name of the threads.
+	 * @return a factory of threads that are not in any context.
+	 */
+	public static ThreadFactory getSharedThreadFactory(final String name) {
+		return new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, name) {
+					public void run() {
+						exit();
+						super.run();
+					}
+				};
+				t.setDaemon(true);
+				return t;
+			}
+		};
+	}
+	
+	/**
+	 * Returns a factory of worker threads for a fork/join pool that is shared by all contexts.  The
+	 * worker threads are not in any context (see <code>getSharedThreadFactory</code>).
+	 * 
+	 * @return a factory of worker threads that are not in any context.
+	 */
+	public static ForkJoinPool.ForkJoinWorkerThreadFactory getSharedForkJoinFactory() {
+		return new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+			public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+				return new ForkJoinWorkerThread(pool) {
+					protected void onStart() {
+						super.onStart();
+						exit();
+					}
+				};
+			}
+		};
+	}
+	
+	/**
+	 * Returns the fork/join pool that is shared by all contexts, which has one thread for each
+	 * available processor.  Its worker threads are not in any context, so tasks must install the
+	 * context of the submitting thread if they depend on it (see <code>install</code>).
+	 * 
+	 * @return the fork/join pool shared by all contexts.
+	 */
+	public static synchronized ForkJoinPool getSharedPool() {
+		if (sharedPool == null)
+			sharedPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors(),
+					getSharedForkJoinFactory(), null, false);
+		return sharedPool;
+	}
+	
+}
@@ -0,0 +1,416 @@
+/*
+ * Copyright 2006, 2007 Yuk Wah Wong.
+ *
+ * This file is part of the WASP distribution.
+ *
+ * WASP is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * WASP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with WASP; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package wasp.main;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanParameterInfo;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+import wasp.util.FileWriter;
+
+/**
+ * Counters and histograms for monitoring the hot paths of parsing, generation and training.  Metrics
+ * are collected only when the key <code>Config.METRICS</code> is set to <code>true</code>.
+ * Instrumented code checks <code>Metrics.enabled</code> before doing any work, so that metrics cost
+ * nothing when they are disabled.
+ * <p>
+ * When enabled, all metrics are exposed through JMX as attributes of the MBean
+ * <code>wasp:type=Metrics</code>.  They are also written in JSON format to the file specified by
+ * the key <code>Config.METRICS_FILE</code>, periodically and when the program exits.
+ *
+ * @author ywwong
+ *
+ */
+public class Metrics {
+
+	private static Logger logger = Logger.getLogger(Metrics.class.getName());
+
+	/** Indicates if metrics are being collected. */
+	public static boolean enabled = false;
+
+	private static final String MBEAN_NAME = "wasp:type=Metrics";
+	private static final long DEFAULT_INTERVAL = 60;
+
+	// name -> Counter or Histogram
+	private static final TreeMap metrics = new TreeMap();
+	private static boolean started = false;
+
+	/**
+	 * Counters of events.
+	 *
+	 * @author ywwong
+	 *
+	 */
+	public static class Counter {
+		private final LongAdder count = new LongAdder();
+		private Counter() {}
+		public void inc() {
+			count.increment();
+		}
+		public void add(long n) {
+			count.add(n);
+		}
+		public long get() {
+			return count.sum();
+		}
+		private void reset() {
+			count.reset();
+		}
+	}
+
+	/**
+	 * Histograms of non-negative values, e.g. sizes and latencies.  Values are counted in buckets whose
+	 * bounds are powers of two, so percentiles are approximate.
+	 *
+	 * @author ywwong
+	 *
+	 */
+	public static class Histogram {
+		private static final int NBUCKETS = 64;
+		// values in [2^(i-1), 2^i) fall into bucket i; zero falls into bucket 0
+		private final AtomicLongArray buckets = new AtomicLongArray(NBUCKETS);
+		private final LongAdder count = new LongAdder();
+		private final LongAdder sum = new LongAdder();
+		private final AtomicLong max = new AtomicLong();
+		private Histogram() {}
+		public void add(long value) {
+			if (value < 0)
+				value = 0;
+			buckets.incrementAndGet(64-Long.numberOfLeadingZeros(value));
+			count.increment();
+			sum.add(value);
+			long m;
+			while ((m = max.get()) < value && !max.compareAndSet(m, value))
+				;
+		}
+		public long getCount() {
+			return count.sum();
+		}
+		public double getMean() {
+			long n = count.sum();
+			return (n==0) ? 0 : (double) sum.sum() / n;
+		}
+		public long getMax() {
+			return max.get();
+		}
+		/**
+		 * Returns an upper bound of the specified percentile of all values added so far.
+		 *
+		 * @param p a percentile between <code>0</code> and <code>100</code>.
+		 * @return an upper bound of the specified percentile.
+		 */
+		public long getPercentile(double p) {
+			long n = 0;
+			for (int i = 0; i < NBUCKETS; ++i)
+				n += buckets.get(i);
+			long rank = (long) Math.ceil(n*p/100);
+			long seen = 0;
+			for (int i = 0; i < NBUCKETS; ++i) {
+				seen += buckets.get(i);
+				if (seen > 0 && seen >= rank) {
+					long bound = (i==0) ? 0 : (i==NBUCKETS-1) ? Long.MAX_VALUE : (1L<<i)-1;
+					return Math.min(bound, max.get());
+				}
+			}
+			return 0;
+		}
+		private void reset() {
+			for (int i = 0; i < NBUCKETS; ++i)
+				buckets.set(i, 0);
+			count.reset();
+			sum.reset();
+			max.set(0);
+		}
+	}
+
+	/**
+	 * Returns the counter with the specified name.  A new counter is created if there is none.
+	 *
+	 * @param name the name of the counter.
+	 * @return the counter with the specified name.
+	 */
+	public static synchronized Counter counter(String name) {
+		Counter c = (Counter) metrics.get(name);
+		if (c == null) {
+			c = new Counter();
+			metrics.put(name, c);
+		}
+		return c;
+	}
+
+	/**
+	 * Returns the histogram with the specified name.  A new histogram is created if there is none.
+	 *
+	 * @param name the name of the histogram.
+	 * @return the histogram with the specified name.
+	 */
+	public static synchronized Histogram histogram(String name) {
+		Histogram h = (Histogram) metrics.get(name);
+		if (h == null) {
+			h = new Histogram();
+			metrics.put(name, h);
+		}
+		return h;
+	}
+
+	/**
+	 * Returns the current time for measuring latencies, or <code>0</code> if metrics are disabled.
+	 *
+	 * @return the current time in nanoseconds; <code>0</code> if metrics are disabled.
+	 */
+	public static long start() {
+		return (enabled) ? System.nanoTime() : 0;
+	}
+
+	/**
+	 * Adds the time elapsed since the specified start time to the specified histogram, in
+	 * microseconds.
+	 *
+	 * @param h the histogram of latencies.
+	 * @param start the start time returned by <code>start()</code>.
+	 */
+	public static void stop(Histogram h, long start) {
+		if (enabled)
+			h.add((System.nanoTime()-start)/1000);
+	}
+
+	/**
+	 * Resets all counters and histograms.
+	 */
+	public static synchronized void reset() {
+		for (Iterator it = metrics.values().iterator(); it.hasNext();) {
+			Object o = it.next();
+			if (o instanceof Counter)
+				((Counter) o).reset();
+			else
+				((Histogram) o).reset();
+		}
+	}
+
+	/**
+	 * Starts collecting metrics if the current configuration settings say so.  This method is called
+	 * whenever a configuration file is read.  Once started, metrics are collected until the program
+	 * exits.
+	 */
+	static synchronized void init() {
+		if (started)
+			return;
+		String flag = Config.get(Config.METRICS);
+		if (flag == null || !flag.equals("true"))
+			return;
+		started = true;
+		enabled = true;
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(new MBean(),
+					new ObjectName(MBEAN_NAME));
+		} catch (Exception e) {
+			logger.warning("cannot register MBean "+MBEAN_NAME+": "+e.getMessage());
+		}
+		String filename = Config.get(Config.METRICS_FILE);
+		if (filename == null)
+			return;
+		final File file = new File(filename);
+		String interval = Config.get(Config.METRICS_INTERVAL);
+		long secs = (interval==null) ? DEFAULT_INTERVAL : Long.parseLong(interval);
+		ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "metrics");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		timer.scheduleAtFixedRate(new Runnable() {
+			public void run() {
+				dump(file);
+			}
+		}, secs, secs, TimeUnit.SECONDS);
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			public void run() {
+				dump(file);
+			}
+		});
+	}
+
+	private static void dump(File file) {
+		File tmp = new File(file.getPath()+".tmp");
+		try {
+			PrintWriter out = new PrintWriter(FileWriter.createNew(tmp));
+			out.print(toJson());
+			out.close();
+			if (!tmp.renameTo(file)) {
+				file.delete();
+				if (!tmp.renameTo(file))
+					throw new IOException("cannot rename "+tmp);
+			}
+		} catch (IOException e) {
+			logger.warning("cannot write metrics to "+file+": "+e.getMessage());
+		}
+	}
+
+	/**
+	 * Returns all metrics in JSON format.
+	 *
+	 * @return a JSON object that contains all counters and histograms.
+	 */
+	public static synchronized String toJson() {
+		StringWriter sw = new StringWriter();
+		PrintWriter out = new PrintWriter(sw);
+		out.println("{");
+		out.println("  \"time\": "+System.currentTimeMillis()+",");
+		out.print("  \"counters\": {");
+		boolean first = true;
+		for (Iterator it = metrics.entrySet().iterator(); it.hasNext();) {
+			Map.Entry entry = (Map.Entry) it.next();
+			if (!(entry.getValue() instanceof Counter))
+				continue;
+			out.print((first) ? "\n" : ",\n");
+			out.print("    \""+entry.getKey()+"\": "+((Counter) entry.getValue()).get());
+			first = false;
+		}
+		out.println("\n  },");
+		out.print("  \"histograms\": {");
+		first = true;
+		for (Iterator it = metrics.entrySet().iterator(); it.hasNext();) {
+			Map.Entry entry = (Map.Entry) it.next();
+			if (!(entry.getValue() instanceof Histogram))
+				continue;
+			Histogram h = (Histogram) entry.getValue();
+			out.print((first) ? "\n" : ",\n");
+			out.print("    \""+entry.getKey()+"\": {\"count\": "+h.getCount()
+					+", \"mean\": "+h.getMean()
+					+", \"max\": "+h.getMax()
+					+", \"p50\": "+h.getPercentile(50)
+					+", \"p90\": "+h.getPercentile(90)
+					+", \"p99\": "+h.getPercentile(99)+"}");
+			first = false;
+		}
+		out.println("\n  }");
+		out.println("}");
+		out.close();
+		return sw.toString();
+	}
+
+	/**
+	 * Exposes all metrics through JMX.  Each counter is an attribute.  Each histogram is a group of
+	 * attributes named <code><i>name</i>.count</code>, <code><i>name</i>.mean</code>, and so on.
+	 */
+	private static class MBean implements DynamicMBean {
+		private static final String[] STATS = {"count", "mean", "max", "p50", "p90", "p99"};
+		public Object getAttribute(String attr) throws AttributeNotFoundException {
+			synchronized (Metrics.class) {
+				Object o = metrics.get(attr);
+				if (o instanceof Counter)
+					return Long.valueOf(((Counter) o).get());
+				int dot = attr.lastIndexOf('.');
+				if (dot >= 0) {
+					o = metrics.get(attr.substring(0, dot));
+					if (o instanceof Histogram) {
+						Histogram h = (Histogram) o;
+						String stat = attr.substring(dot+1);
+						if (stat.equals("count"))
+							return Long.valueOf(h.getCount());
+						else if (stat.equals("mean"))
+							return Double.valueOf(h.getMean());
+						else if (stat.equals("max"))
+							return Long.valueOf(h.getMax());
+						else if (stat.startsWith("p"))
+							try {
+								return Long.valueOf(h.getPercentile(Double.parseDouble(stat.substring(1))));
+							} catch (NumberFormatException e) {}
+					}
+				}
+			}
+			throw new AttributeNotFoundException(attr);
+		}
+		public AttributeList getAttributes(String[] attrs) {
+			AttributeList list = new AttributeList();
+			for (int i = 0; i < attrs.length; ++i)
+				try {
+					list.add(new Attribute(attrs[i], getAttribute(attrs[i])));
+				} catch (AttributeNotFoundException e) {}
+			return list;
+		}
+		public void setAttribute(Attribute attr) throws AttributeNotFoundException {
+			throw new AttributeNotFoundException(attr.getName()+" is read-only");
+		}
+		public AttributeList setAttributes(AttributeList attrs) {
+			return new AttributeList();
+		}
+		public Object invoke(String op, Object[] params, String[] sig) throws ReflectionException {
+			if (op.equals("reset")) {
+				reset();
+				return null;
+			} else if (op.equals("toJson"))
+				return toJson();
+			throw new ReflectionException(new NoSuchMethodException(op));
+		}
+		public MBeanInfo getMBeanInfo() {
+			ArrayList attrs = new ArrayList();
+			synchronized (Metrics.class) {
+				for (Iterator it = metrics.entrySet().iterator(); it.hasNext();) {
+					Map.Entry entry = (Map.Entry) it.next();
+					String name = (String) entry.getKey();
+					if (entry.getValue() instanceof Counter)
+						attrs.add(new MBeanAttributeInfo(name, "java.lang.Long", name, true, false, false));
+					else
+						for (int i = 0; i < STATS.length; ++i) {
+							String type = (STATS[i].equals("mean")) ? "java.lang.Double" : "java.lang.Long";
+							attrs.add(new MBeanAttributeInfo(name+"."+STATS[i], type, name+" ("+STATS[i]+")",
+									true, false, false));
+						}
+				}
+			}
+			MBeanOperationInfo[] ops = {
+				new MBeanOperationInfo("reset", "Resets all metrics", new MBeanParameterInfo[0],
+						"void", MBeanOperationInfo.ACTION),
+				new MBeanOperationInfo("toJson", "Returns all metrics in JSON format",
+						new MBeanParameterInfo[0], "java.lang.String", MBeanOperationInfo.INFO)
+			};
+			return new MBeanInfo(Metrics.class.getName(), "WASP metrics",
+					(MBeanAttributeInfo[]) attrs.toArray(new MBeanAttributeInfo[0]), null, ops, null);
+		}
+	}
+
+}
@@ -110,6 +110,41 @@ public abstract class Parser {
 		return null;
 	}
 	
+	/**
+	 * Parses the sentences of the specified examples.  The resulting parses are added to the
+	 * <code>parses</code> field of each example.
+	 * 
+	 * @param parser the parser to use.
+	 * @param examples the examples to parse.
+	 * @param oracle indicates if only parses that are consistent with correct MRs are returned.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	public static void parseAll(Parser parser, Examples examples, boolean oracle) throws IOException {
+		if (parser.batch()) {
+			Terminal[][] E = new Terminal[examples.size()][];
+			Meaning[] F = new Meaning[examples.size()];
+			for (int i = 0; i < E.length; ++i) {
+				Example ex = examples.getNth(i);
+				logger.fine("example "+ex.id);
+				E[i] = ex.E();
+				F[i] = ex.F;
+			}
+			Iterator[] P = (oracle) ? parser.parse(E, F) : parser.parse(E);
+			for (int i = 0; i < E.length; ++i) {
+				Example ex = examples.getNth(i);
+				while (P[i].hasNext())
+					ex.parses.add(P[i].next());
+			}
+		} else
+			for (Iterator it = examples.iterator(); it.hasNext();) {
+				Example ex = (Example) it.next();
+				logger.fine("example "+ex.id);
+				Iterator P = (oracle) ? parser.parse(ex.E(), ex.F) : parser.parse(ex.E());
+				while (P.hasNext())
+					ex.parses.add(P.next());
+			}
+	}
+	
 	/**
 	 * The main program for parsing (i.e.&nbsp;translation from NL into MRL).  This program takes the following
 	 * command-line arguments:
@@ -176,29 +211,7 @@ public abstract class Parser {
 		Parser parser = model.getParser();
 		logger.info("Parsing all input sentences");
 		NL.useNL = Config.getSourceNL();
-		if (parser.batch()) {
-			Terminal[][] E = new Terminal[examples.size()][];
-			Meaning[] F = new Meaning[examples.size()];
-			for (int i = 0; i < E.length; ++i) {
-				Example ex = examples.getNth(i);
-				logger.fine("example "+ex.id);
-				E[i] = ex.E();
-				F[i] = ex.F;
-			}
-			Iterator[] P = (oracle) ? parser.parse(E, F) : parser.parse(E);
-			for (int i = 0; i < E.length; ++i) {
-				Example ex = examples.getNth(i);
-				while (P[i].hasNext())
-					ex.parses.add(P[i].next());
-			}
-		} else
-			for (Iterator it = examples.iterator(); it.hasNext();) {
-				Example ex = (Example) it.next();
-				logger.fine("example "+ex.id);
-				Iterator P = (oracle) ? parser.parse(ex.E(), ex.F) : parser.parse(ex.E());
-				while (P.hasNext())
-					ex.parses.add(P.next());
-			}
+		parseAll(parser, examples, oracle);
 		logger.info("All input sentences have been processed");
 		examples.write(outputFilename);
 	}
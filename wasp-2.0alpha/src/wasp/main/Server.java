@@ -0,0 +1,410 @@
+/*
+ * Copyright 2006, 2007 Yuk Wah Wong.
+ *
+ * This file is part of the WASP distribution.
+ *
+ * WASP is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * WASP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with WASP; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package wasp.main;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.logging.Logger;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.xml.sax.SAXException;
+
+import wasp.data.Meaning;
+import wasp.data.Terminal;
+import wasp.main.generate.GenerateModel;
+import wasp.main.parse.ParseModel;
+import wasp.nl.NL;
+import wasp.scfg.Budget;
+import wasp.util.Int;
+
+/**
+ * A long-running server for semantic parsing or NL generation.  The learned model is loaded once, and
+ * requests are then read one per line, either from the standard input or from local socket
+ * connections.  Requests are handled concurrently, and each reply is a single line of JSON.
+ * <p>
+ * A request has the following form:
+ * <p>
+ * <blockquote><code>[-id <u>id</u>] [-kbest <u>k</u>] [-timeout <u>ms</u>] <u>input</u></code></blockquote>
+ * <p>
+ * where <code><u>input</u></code> is an NL sentence (for parsing) or an MR (for generation).  The
+ * optional <code>-kbest</code> argument limits the number of top-scoring parses returned; it cannot
+ * exceed the value of <code>Config.KBEST</code>.  The optional <code>-timeout</code> argument is the
+ * time limit in milliseconds, counting from when the request is read.  The time limit is enforced by
+ * the SCFG-based parser and generator, which return the best parses found so far when time runs out;
+ * other decoders ignore it.  The reply is:
+ * <p>
+ * <blockquote><code>{"id":<u>id</u>,"status":"ok","parses":[{"str":<u>str</u>,"score":<u>score</u>},
+ * ...]}</code></blockquote>
+ * <p>
+ * or <code>{"id":<u>id</u>,"status":"error","message":<u>message</u>}</code>.  Since replies may
+ * come back out of order, clients that send multiple requests at a time should tag them with IDs.
+ *
+ * @author ywwong
+ *
+ */
+public class Server {
+
+	private static Logger logger = Logger.getLogger(Server.class.getName());
+
+	// the maximum number of requests waiting for a worker thread, per worker thread
+	private static final int QUEUE_SIZE = 4;
+	// the maximum number of socket connections served at a time
+	private static final int MAX_CONNECTIONS = 50;
+
+	private boolean generate;
+	private ParseModel parseModel;
+	private GenerateModel genModel;
+	private ExecutorService pool;
+	// permits for requests that are being handled or are waiting for a worker thread
+	private Semaphore pending;
+	// each worker thread has its own parser (or generator), since parsers keep per-sentence states
+	private ThreadLocal decoders;
+
+	/**
+	 * Creates a server based on the learned model in the current model directory.
+	 *
+	 * @param generate indicates if this is a server for NL generation (rather than parsing).
+	 * @param nthreads the number of worker threads.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	public Server(boolean generate, int nthreads) throws IOException {
+		this.generate = generate;
+		if (generate) {
+			genModel = GenerateModel.createNew();
+			genModel.read();
+			NL.useNL = Config.getTargetNL();
+		} else {
+			parseModel = ParseModel.createNew();
+			parseModel.read();
+			NL.useNL = Config.getSourceNL();
+		}
+		pool = Executors.newFixedThreadPool(nthreads);
+		pending = new Semaphore(nthreads*(QUEUE_SIZE+1));
+		decoders = new ThreadLocal() {
+			protected Object initialValue() {
+				try {
+					return (Server.this.generate) ? (Object) genModel.getGenerator()
+							: (Object) parseModel.getParser();
+				} catch (IOException e) {
+					throw new RuntimeException(e.toString());
+				}
+			}
+		};
+	}
+
+	/**
+	 * Parses (or generates from) the given input in the current thread.  The deadline is passed to
+	 * the decoder via <code>Budget.setDeadline</code>.  Returns <code>null</code> if the deadline has
+	 * already passed.
+	 */
+	private ArrayList decode(String input, int kbest, long deadline) throws IOException {
+		if (deadline > 0 && System.currentTimeMillis() > deadline)
+			return null;
+		Budget.setDeadline(deadline);
+		try {
+			Iterator it;
+			if (generate) {
+				Meaning F = new Meaning(input);
+				if (F.parse == null)
+					throw new IllegalArgumentException("MR is not grammatical");
+				Generator generator = (Generator) decoders.get();
+				if (generator.batch())
+					it = generator.generate(new Meaning[] {F})[0];
+				else
+					it = generator.generate(F);
+			} else {
+				Terminal[] E = new NL().tokenize(input);
+				Parser parser = (Parser) decoders.get();
+				if (parser.batch())
+					it = parser.parse(new Terminal[][] {E})[0];
+				else
+					it = parser.parse(E);
+			}
+			ArrayList list = new ArrayList();
+			while (it.hasNext() && (kbest <= 0 || list.size() < kbest))
+				list.add(it.next());
+			return list;
+		} finally {
+			Budget.setDeadline(0);
+		}
+	}
+
+	/**
+	 * Handles the specified request in the current thread, and returns the reply.
+	 *
+	 * @param line a request.
+	 * @return the reply to <code>line</code>, in JSON.
+	 */
+	public String handle(String line) {
+		return handle(line, System.currentTimeMillis());
+	}
+
+	private String handle(String line, long received) {
+		String id = null;
+		int kbest = 0;
+		long timeout = 0;
+		String[] tokens = line.trim().split("\\s+", -1);
+		int i = 0;
+		try {
+			for (; i+1 < tokens.length && tokens[i].startsWith("-"); i += 2) {
+				if (tokens[i].equals("-id"))
+					id = tokens[i+1];
+				else if (tokens[i].equals("-kbest"))
+					kbest = Int.parseInt(tokens[i+1]);
+				else if (tokens[i].equals("-timeout"))
+					timeout = Long.parseLong(tokens[i+1]);
+				else
+					break;
+			}
+		} catch (NumberFormatException e) {
+			return error(id, "bad option "+tokens[i]);
+		}
+		StringBuffer input = new StringBuffer();
+		for (; i < tokens.length; ++i) {
+			if (input.length() > 0)
+				input.append(' ');
+			input.append(tokens[i]);
+		}
+		if (input.length() == 0)
+			return error(id, "empty input");
+		ArrayList list;
+		try {
+			list = decode(input.toString(), kbest, (timeout > 0) ? received+timeout : 0);
+		} catch (Exception e) {
+			logger.warning(e.toString());
+			return error(id, e.toString());
+		}
+		if (list == null)
+			return error(id, "timeout");
+		StringBuffer sb = new StringBuffer();
+		sb.append("{\"id\":");
+		sb.append(quote(id));
+		sb.append(",\"status\":\"ok\",\"parses\":[");
+		for (int j = 0; j < list.size(); ++j) {
+			Parse parse = (Parse) list.get(j);
+			if (j > 0)
+				sb.append(',');
+			sb.append("{\"str\":");
+			sb.append(quote(parse.toStr()));
+			sb.append(",\"score\":");
+			sb.append((Double.isNaN(parse.score) || Double.isInfinite(parse.score)) ? "null"
+					: Double.toString(parse.score));
+			sb.append('}');
+		}
+		sb.append("]}");
+		return sb.toString();
+	}
+
+	private static String error(String id, String message) {
+		return "{\"id\":"+quote(id)+",\"status\":\"error\",\"message\":"+quote(message)+"}";
+	}
+
+	private static String quote(String str) {
+		if (str == null)
+			return "null";
+		StringBuffer sb = new StringBuffer();
+		sb.append('"');
+		for (int i = 0; i < str.length(); ++i) {
+			char c = str.charAt(i);
+			if (c == '"' || c == '\\') {
+				sb.append('\\');
+				sb.append(c);
+			} else if (c == '\n')
+				sb.append("\\n");
+			else if (c == '\r')
+				sb.append("\\r");
+			else if (c == '\t')
+				sb.append("\\t");
+			else if (c < 0x20) {
+				String hex = Integer.toHexString(c);
+				sb.append("\\u");
+				for (int j = hex.length(); j < 4; ++j)
+					sb.append('0');
+				sb.append(hex);
+			} else
+				sb.append(c);
+		}
+		sb.append('"');
+		return sb.toString();
+	}
+
+	/**
+	 * Reads requests from the given reader until the end of stream is reached, and writes replies to the
+	 * given writer.  Requests are handled by the worker threads, so a slow request does not hold up the
+	 * others.  Reading stops while too many requests are waiting for a worker thread.
+	 */
+	private void serve(BufferedReader in, final PrintWriter out) throws IOException {
+		String line;
+		ArrayList futures = new ArrayList();
+		while ((line = in.readLine()) != null) {
+			if (line.trim().length() == 0)
+				continue;
+			final String request = line;
+			final long received = System.currentTimeMillis();
+			pending.acquireUninterruptibly();
+			futures.add(pool.submit(new Runnable() {
+				public void run() {
+					try {
+						String reply = handle(request, received);
+						synchronized (out) {
+							out.println(reply);
+							out.flush();
+						}
+					} finally {
+						pending.release();
+					}
+				}
+			}));
+			// forget requests that are done
+			for (Iterator it = futures.iterator(); it.hasNext();)
+				if (((Future) it.next()).isDone())
+					it.remove();
+		}
+		for (Iterator it = futures.iterator(); it.hasNext();)
+			try {
+				((Future) it.next()).get();
+			} catch (InterruptedException e) {
+				break;
+			} catch (ExecutionException e) {
+				logger.warning(e.getCause().toString());
+			}
+	}
+
+	private void serve(int port) throws IOException {
+		ServerSocket ss = new ServerSocket(port, MAX_CONNECTIONS, InetAddress.getByName(null));
+		logger.info("Listening on port "+ss.getLocalPort());
+		// connections beyond the limit wait until others are closed
+		ExecutorService connections = Executors.newFixedThreadPool(MAX_CONNECTIONS);
+		while (true) {
+			final Socket s = ss.accept();
+			connections.execute(new Runnable() {
+				public void run() {
+					try {
+						BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), "UTF-8"));
+						PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(s.getOutputStream(), "UTF-8")));
+						serve(in, out);
+					} catch (IOException e) {
+						logger.warning(e.toString());
+					} finally {
+						try {
+							s.close();
+						} catch (IOException e) {}
+					}
+				}
+			});
+		}
+	}
+
+	/**
+	 * The main program for the parsing (or generation) server.  This program takes the following
+	 * command-line arguments:
+	 * <p>
+	 * <blockquote><code><b>java wasp.main.Server</b> [-generate] [-port <u>port</u>] [-threads
+	 * <u>n</u>] <u>config-file</u> <u>model-dir</u></code></blockquote>
+	 * <p>
+	 * <ul>
+	 * <li><code><u>config-file</u></code> - the configuration file that contains the current
+	 * settings.</li>
+	 * <li><code><u>model-dir</u></code> - the directory that contains the learned model.</li>
+	 * </ul>
+	 * <p>
+	 * <b>Options:</b>
+	 * <p>
+	 * <ul>
+	 * <li><code>-generate</code> - serves NL generation requests instead of parsing requests.</li>
+	 * <li><code>-port</code> - listens on the specified local port instead of reading requests from the
+	 * standard input.</li>
+	 * <li><code>-threads</code> - the number of worker threads (default: the number of available
+	 * processors).</li>
+	 * </ul>
+	 * <p>
+	 * Log messages are sent to the standard error stream.
+	 *
+	 * @param args the command-line arguments.
+	 * @throws IOException if an I/O error occurs.
+	 * @throws SAXException if the XML parser throws a <code>SAXException</code> while parsing.
+	 * @throws ParserConfigurationException if an XML parser cannot be created which satisfies the 
+	 * requested configuration.
+	 */
+	public static void main(String[] args) throws IOException, SAXException, ParserConfigurationException {
+		boolean generate = false;
+		int port = -1;
+		int nthreads = Runtime.getRuntime().availableProcessors();
+		int index = 0;
+		try {
+			for (; index < args.length && args[index].startsWith("-"); ++index) {
+				if (args[index].equals("-generate"))
+					generate = true;
+				else if (args[index].equals("-port"))
+					port = Int.parseInt(args[++index]);
+				else if (args[index].equals("-threads"))
+					nthreads = Int.parseInt(args[++index]);
+				else
+					break;
+			}
+		} catch (RuntimeException e) {
+			index = -1;
+		}
+		if (index < 0 || args.length-index != 2) {
+			System.err.println("Usage: java wasp.main.Server [-generate] [-port port] [-threads n] config-file model-dir");
+			System.err.println();
+			System.err.println("config-file - the configuration file that contains the current settings.");
+			System.err.println("model-dir - the directory that contains the learned model.");
+			System.err.println();
+			System.err.println("Options:");
+			System.err.println("-generate - serves NL generation requests instead of parsing requests.");
+			System.err.println("-port - listens on the specified local port instead of the standard input.");
+			System.err.println("-threads - the number of worker threads.");
+			System.exit(1);
+		}
+		String configFilename = args[index++];
+		String modelDir = args[index++];
+
+		Config.read(configFilename);
+		Config.setModelDir(modelDir);
+		Config.readCorpus();
+		logger.info("Loading model");
+		Server server = new Server(generate, Math.max(1, nthreads));
+		logger.info("Server is ready");
+		if (port < 0) {
+			BufferedReader in = new BufferedReader(new InputStreamReader(System.in, "UTF-8"));
+			PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out, "UTF-8")));
+			server.serve(in, out);
+			server.pool.shutdown();
+		} else
+			server.serve(port);
+	}
+
+}
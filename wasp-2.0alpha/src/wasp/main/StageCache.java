@@ -0,0 +1,227 @@
+/*
+ * Copyright 2006, 2007 Yuk Wah Wong.
+ * 
+ * This file is part of the WASP distribution.
+ *
+ * WASP is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * WASP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with WASP; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package wasp.main;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.logging.Logger;
+
+import wasp.data.Example;
+import wasp.data.Examples;
+import wasp.data.Terminal;
+import wasp.util.FileOutputStream;
+
+/**
+ * A content-addressed cache for the outputs of training stages.  Each stage output is keyed by a hash
+ * of everything that the stage depends on: the training examples, the relevant configuration 
+ * settings, and the contents of any input files.  Stage outputs are files, which are copied into the
+ * cache directory (specified via the key <code>Config.STAGE_CACHE_DIR</code>) after the stage is 
+ * run, and copied back on a cache hit.  This saves time when identical stages are re-run, e.g. in
+ * parameter sweeps using the same data splits.
+ * 
+ * @author ywwong
+ *
+ */
+public class StageCache {
+
+	private static Logger logger = Logger.getLogger(StageCache.class.getName());
+	
+	/**
+	 * Keys for stage outputs.  A key is built by adding all inputs of a stage in a fixed order.
+	 * 
+	 * @author ywwong
+	 *
+	 */
+	public static class Key {
+		private String stage;
+		private MessageDigest md;
+		private String hex;
+		public Key(String stage) {
+			this.stage = stage;
+			try {
+				md = MessageDigest.getInstance("SHA-1");
+			} catch (NoSuchAlgorithmException e) {
+				throw new RuntimeException(e);
+			}
+			add(stage);
+		}
+		/**
+		 * Adds a string to this key.  Strings are length-prefixed, so that adjacent strings cannot
+		 * run into each other.
+		 */
+		public Key add(String s) {
+			if (s == null) {
+				md.update((byte) 0);
+				return this;
+			}
+			try {
+				byte[] b = s.getBytes("UTF-8");
+				add(b.length+1);
+				md.update(b);
+			} catch (UnsupportedEncodingException e) {
+				throw new RuntimeException(e);
+			}
+			return this;
+		}
+		public Key add(int n) {
+			md.update((byte) (n>>>24));
+			md.update((byte) (n>>>16));
+			md.update((byte) (n>>>8));
+			md.update((byte) n);
+			return this;
+		}
+		/**
+		 * Adds the value of a configuration setting to this key.
+		 */
+		public Key addConfig(String key) {
+			add(key);
+			return add(Config.get(key));
+		}
+		/**
+		 * Adds the contents of a file to this key.  Missing files are treated as empty.
+		 */
+		public Key addFile(File file) throws IOException {
+			if (!file.exists())
+				return add(-1);
+			InputStream in = new BufferedInputStream(new FileInputStream(file));
+			byte[] buf = new byte[8192];
+			int n;
+			while ((n = in.read(buf)) > 0)
+				md.update(buf, 0, n);
+			in.close();
+			return add((int) file.length());
+		}
+		/**
+		 * Adds the current NL sentences and MRs of the given examples to this key.
+		 */
+		public Key addExamples(Examples examples) {
+			add(examples.size());
+			for (Iterator it = examples.iterator(); it.hasNext();) {
+				Example ex = (Example) it.next();
+				add(ex.id);
+				Terminal[] E = ex.E();
+				add(E.length);
+				for (int i = 0; i < E.length; ++i)
+					add(E[i].toString());
+				add((ex.F==null) ? null : ex.F.str);
+			}
+			return this;
+		}
+		/**
+		 * Returns the hash of this key.  Nothing can be added to this key afterwards.
+		 */
+		private String hex() {
+			if (hex != null)
+				return hex;
+			byte[] b = md.digest();
+			StringBuffer sb = new StringBuffer();
+			for (int i = 0; i < b.length; ++i) {
+				sb.append(Character.forDigit((b[i]>>4)&0xf, 16));
+				sb.append(Character.forDigit(b[i]&0xf, 16));
+			}
+			hex = sb.toString();
+			return hex;
+		}
+	}
+	
+	private StageCache() {}
+	
+	/**
+	 * Indicates if the stage cache is enabled.
+	 * 
+	 * @return <code>true</code> if a cache directory has been specified; <code>false</code> otherwise.
+	 */
+	public static boolean isEnabled() {
+		return Config.get(Config.STAGE_CACHE_DIR) != null;
+	}
+	
+	private static File getDir(Key key) {
+		return new File(new File(Config.get(Config.STAGE_CACHE_DIR), key.stage), key.hex());
+	}
+	
+	/**
+	 * Restores the outputs of a stage from the cache.  The outputs are copied to the given files.
+	 * 
+	 * @param key the key for the stage outputs.
+	 * @param files the stage outputs to restore.
+	 * @return <code>true</code> if there is a cache hit; <code>false</code> otherwise.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	public static boolean restore(Key key, File[] files) throws IOException {
+		if (!isEnabled())
+			return false;
+		File dir = getDir(key);
+		for (int i = 0; i < files.length; ++i)
+			if (!new File(dir, Integer.toString(i)).exists())
+				return false;
+		for (int i = 0; i < files.length; ++i)
+			copy(new File(dir, Integer.toString(i)), files[i]);
+		logger.info("Stage cache hit: "+key.stage+" "+dir.getName());
+		return true;
+	}
+	
+	/**
+	 * Stores the outputs of a stage in the cache.  The outputs are first copied into a temporary
+	 * directory, which is then renamed, so concurrent runs never see partially stored outputs.
+	 * 
+	 * @param key the key for the stage outputs.
+	 * @param files the stage outputs to store.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	public static void store(Key key, File[] files) throws IOException {
+		if (!isEnabled())
+			return;
+		File dir = getDir(key);
+		if (dir.exists())
+			return;
+		File tmp = new File(dir.getPath()+".tmp"+System.nanoTime());
+		tmp.mkdirs();
+		for (int i = 0; i < files.length; ++i)
+			copy(files[i], new File(tmp, Integer.toString(i)));
+		if (!tmp.renameTo(dir)) {
+			// another run has stored the same outputs
+			File[] tmps = tmp.listFiles();
+			for (int i = 0; i < tmps.length; ++i)
+				tmps[i].delete();
+			tmp.delete();
+		}
+	}
+	
+	private static void copy(File from, File to) throws IOException {
+		InputStream in = new BufferedInputStream(new FileInputStream(from));
+		OutputStream out = new BufferedOutputStream(FileOutputStream.createNew(to));
+		byte[] buf = new byte[8192];
+		int n;
+		while ((n = in.read(buf)) > 0)
+			out.write(buf, 0, n);
+		in.close();
+		out.close();
+	}
+	
+}
@@ -264,7 +264,7 @@ public class BLEU extends Evaluator implements MinErrorRateModel.Objective {
 	}
 
 	private Terminal[] tokenize(String str) {
-		Terminal.readWords = true;
+		Terminal.readWords.set(true);
 		String[] tokens = Arrays.tokenize(str);
 		Terminal[] E = new Terminal[tokens.length];
 		for (short i = 0; i < tokens.length; ++i)
@@ -0,0 +1,419 @@
+/*
+ * Copyright 2006, 2007 Yuk Wah Wong.
+ *
+ * This file is part of the WASP distribution.
+ *
+ * WASP is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * WASP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with WASP; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package wasp.main.generate;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.regex.Pattern;
+
+import wasp.data.Example;
+import wasp.data.Examples;
+import wasp.main.Config;
+import wasp.main.Context;
+import wasp.main.Parse;
+import wasp.math.Math;
+import wasp.util.Bool;
+import wasp.util.Int;
+import wasp.util.RadixMap;
+
+/**
+ * An in-process implementation of the NIST and BLEU metrics, as computed by the <code>MTEval</code>
+ * utility developed by NIST (version 11b).  Sentences are tokenized in the same way as
+ * <code>MTEval</code>, the BLEU brevity penalty is based on the shortest reference translations, and
+ * the NIST information weights are estimated from all reference translations.
+ * <p>
+ * Each generated sentence is scored separately, and the resulting sufficient statistics can be
+ * merged to obtain corpus-level scores.  Examples are scored concurrently.  This scorer can also be
+ * used as the objective function in minimum error-rate training.
+ *
+ * @author ywwong
+ *
+ */
+public class MTScorer implements MinErrorRateModel.Objective {
+
+	/** Indicates the NIST metric. */
+	public static final short NIST = 0;
+	/** Indicates the BLEU metric. */
+	public static final short BLEU = 1;
+
+	/** The maximum length of n-grams considered by the NIST metric. */
+	private static final short NIST_N = 5;
+	/** The maximum length of n-grams considered by the BLEU metric. */
+	private static final short BLEU_N = 4;
+	/** The maximum number of examples scored by each task. */
+	private static final int GRAIN = 16;
+
+	/**
+	 * Sufficient statistics for computing the NIST and BLEU scores of a set of generated sentences.
+	 */
+	public static class Stats {
+		/** The number of n-grams in the generated sentences, indexed by <i>n</i>-1. */
+		public int[] total;
+		/** The number of matching n-grams, indexed by <i>n</i>-1. */
+		public int[] match;
+		/** The information gain of matching n-grams, indexed by <i>n</i>-1. */
+		public double[] info;
+		/** The total length of the shortest reference translations. */
+		public int shortestRefLength;
+		/** The total length of all reference translations. */
+		public int refLength;
+		/** The number of reference translations for each example. */
+		public int nrefs;
+		public Stats() {
+			total = new int[NIST_N];
+			match = new int[NIST_N];
+			info = new double[NIST_N];
+		}
+		/**
+		 * Adds the given statistics to this one.
+		 *
+		 * @param s the statistics to add.
+		 */
+		public void add(Stats s) {
+			for (short n = 0; n < NIST_N; ++n) {
+				total[n] += s.total[n];
+				match[n] += s.match[n];
+				info[n] += s.info[n];
+			}
+			shortestRefLength += s.shortestRefLength;
+			refLength += s.refLength;
+			if (nrefs < s.nrefs)
+				nrefs = s.nrefs;
+		}
+		/**
+		 * Returns the NIST score based on these statistics.
+		 *
+		 * @return the NIST score.
+		 */
+		public double nist() {
+			if (nrefs == 0)
+				return 0;
+			double score = 0;
+			for (short n = 0; n < NIST_N; ++n)
+				score += info[n]/Math.max(total[n], 1);
+			double ratio = total[0]/(((double) refLength)/nrefs);
+			return score*lengthPenalty(ratio);
+		}
+		private static double lengthPenalty(double ratio) {
+			if (ratio >= 1)
+				return 1;
+			if (ratio <= 0)
+				return 0;
+			// a score of 0.5 for a length ratio of 1.5
+			double beta = -Math.log(0.5)/Math.log(1.5)/Math.log(1.5);
+			return Math.exp(-beta*Math.log(ratio)*Math.log(ratio));
+		}
+		/**
+		 * Returns the BLEU score based on these statistics.
+		 *
+		 * @return the BLEU score.
+		 */
+		public double bleu() {
+			if (total[0] == 0)
+				return 0;
+			double score = 0;
+			for (short n = 0; n < BLEU_N; ++n) {
+				if (match[n] == 0)
+					return 0;
+				score += Math.log(((double) match[n])/total[n]);
+			}
+			double brevity = Math.min(0, 1-((double) shortestRefLength)/total[0]);
+			return Math.exp(score/BLEU_N + brevity);
+		}
+	}
+
+	/** The reference translations of each example. */
+	private static class Refs {
+		/** The maximum count of each n-gram in any reference translation, indexed by <i>n</i>-1. */
+		public HashMap[] counts;
+		public int shortestLength;
+		public int length;
+		public int nrefs;
+	}
+
+	// the number of threads -> the pool of threads, shared by all scorers and all contexts (e.g.
+	// concurrent folds)
+	private static HashMap pools = new HashMap();
+
+	private short metric;
+	/** Indicates whether to ignore examples for which NL generation have not been successful
+	 * (i.e.&nbsp;no sentences have been generated.). */
+	private boolean IGNORE_EMPTY;
+	/** Example IDs to reference translations. */
+	private RadixMap refs;
+	/** The information gain of each n-gram in the reference translations. */
+	private HashMap info;
+
+	/**
+	 * Creates a scorer for the specified metric.  The metric is used only when this scorer is used
+	 * as an objective function.
+	 *
+	 * @param metric either <code>NIST</code> or <code>BLEU</code>.
+	 */
+	public MTScorer(short metric) {
+		this.metric = metric;
+		IGNORE_EMPTY = Bool.parseBool(Config.get(Config.MTEVAL_IGNORE_EMPTY));
+	}
+
+	public void init(Examples gold) {
+		RadixMap map = new RadixMap();
+		for (Iterator it = gold.iterator(); it.hasNext();) {
+			Example ex = (Example) it.next();
+			map.put(ex.id, new String[] {Evaluator.normalize(ex.E())});
+		}
+		setRefs(gold, map);
+	}
+
+	/**
+	 * Sets the reference translations of the given examples.  The NIST information weights are
+	 * estimated from these reference translations only.
+	 *
+	 * @param examples the examples to evaluate.
+	 * @param map a mapping from example IDs to reference translations (represented as string
+	 * arrays).
+	 */
+	public void setRefs(Examples examples, RadixMap map) {
+		refs = new RadixMap();
+		HashMap counts = new HashMap();
+		int nwords = 0;
+		for (Iterator it = examples.iterator(); it.hasNext();) {
+			Example ex = (Example) it.next();
+			String[] array = (String[]) map.get(ex.id);
+			Refs r = new Refs();
+			r.counts = new HashMap[NIST_N];
+			r.shortestLength = Integer.MAX_VALUE;
+			r.nrefs = array.length;
+			for (int i = 0; i < array.length; ++i) {
+				String[] tokens = tokenize(array[i]);
+				for (short n = 0; n < NIST_N; ++n) {
+					HashMap c = countNgrams(tokens, n+1);
+					if (r.counts[n] == null)
+						r.counts[n] = c;
+					else
+						for (Iterator jt = c.entrySet().iterator(); jt.hasNext();) {
+							Map.Entry entry = (Map.Entry) jt.next();
+							Int c1 = (Int) entry.getValue();
+							Int c2 = (Int) r.counts[n].get(entry.getKey());
+							if (c2 == null)
+								r.counts[n].put(entry.getKey(), c1);
+							else if (c2.val < c1.val)
+								c2.val = c1.val;
+						}
+					addCounts(counts, c);
+				}
+				r.length += tokens.length;
+				if (r.shortestLength > tokens.length)
+					r.shortestLength = tokens.length;
+				nwords += tokens.length;
+			}
+			refs.put(ex.id, r);
+		}
+		info = new HashMap();
+		for (Iterator it = counts.entrySet().iterator(); it.hasNext();) {
+			Map.Entry entry = (Map.Entry) it.next();
+			String ngram = (String) entry.getKey();
+			int count = ((Int) entry.getValue()).val;
+			int space = ngram.lastIndexOf(' ');
+			int prefixCount = (space<0) ? nwords : ((Int) counts.get(ngram.substring(0, space))).val;
+			info.put(ngram, Double.valueOf(-Math.log(((double) count)/prefixCount)/Math.log(2)));
+		}
+	}
+
+	private static void addCounts(HashMap counts, HashMap c) {
+		for (Iterator it = c.entrySet().iterator(); it.hasNext();) {
+			Map.Entry entry = (Map.Entry) it.next();
+			Int count = (Int) counts.get(entry.getKey());
+			if (count == null)
+				counts.put(entry.getKey(), new Int(((Int) entry.getValue()).val));
+			else
+				count.val += ((Int) entry.getValue()).val;
+		}
+	}
+
+	private static HashMap countNgrams(String[] tokens, int n) {
+		HashMap map = new HashMap();
+		StringBuffer sb = new StringBuffer();
+		for (int i = 0; i <= tokens.length-n; ++i) {
+			sb.setLength(0);
+			for (int j = 0; j < n; ++j) {
+				if (j > 0)
+					sb.append(' ');
+				sb.append(tokens[i+j]);
+			}
+			String ngram = sb.toString();
+			Int count = (Int) map.get(ngram);
+			if (count == null)
+				map.put(ngram, new Int(1));
+			else
+				++count.val;
+		}
+		return map;
+	}
+
+	private static final Pattern PUNCT = Pattern.compile("([\\{-~\\[-` -&\\(-\\+:-@/])");
+	private static final Pattern PERIOD_COMMA_1 = Pattern.compile("([^0-9])([\\.,])");
+	private static final Pattern PERIOD_COMMA_2 = Pattern.compile("([\\.,])([^0-9])");
+	private static final Pattern DASH = Pattern.compile("([0-9])(-)");
+	private static final Pattern SPACES = Pattern.compile("\\s+");
+
+	/**
+	 * Tokenizes the given sentence in the same way as the <code>MTEval</code> utility.  The sentence
+	 * is lowercased, and punctuation marks are separated from words.
+	 *
+	 * @param str a sentence.
+	 * @return the tokens of <code>str</code>.
+	 */
+	public static String[] tokenize(String str) {
+		str = str.replaceAll("<skipped>", "");
+		str = str.replaceAll("-\n", "");
+		str = str.replaceAll("\n", " ");
+		str = str.replaceAll("&quot;", "\"");
+		str = str.replaceAll("&amp;", "&");
+		str = str.replaceAll("&lt;", "<");
+		str = str.replaceAll("&gt;", ">");
+		str = " "+lowercase(str)+" ";
+		str = PUNCT.matcher(str).replaceAll(" $1 ");
+		str = PERIOD_COMMA_1.matcher(str).replaceAll("$1 $2 ");
+		str = PERIOD_COMMA_2.matcher(str).replaceAll(" $1 $2");
+		str = DASH.matcher(str).replaceAll("$1 $2 ");
+		str = SPACES.matcher(str).replaceAll(" ").trim();
+		return (str.length()==0) ? new String[0] : str.split(" ");
+	}
+
+	/** Lowercases ASCII letters only, like <code>tr/[A-Z]/[a-z]/</code>. */
+	private static String lowercase(String str) {
+		char[] chars = str.toCharArray();
+		for (int i = 0; i < chars.length; ++i)
+			if ('A' <= chars[i] && chars[i] <= 'Z')
+				chars[i] += 'a'-'A';
+		return new String(chars);
+	}
+
+	/**
+	 * Returns the statistics for the top-ranked sentence generated for the given example.
+	 *
+	 * @param ex an example that contains the generated sentences.
+	 * @return the statistics for <code>ex</code>; <code>null</code> if <code>ex</code> is to be
+	 * ignored.
+	 */
+	public Stats score(Example ex) {
+		Parse[] parses = ex.getSortedParses();
+		if (IGNORE_EMPTY && parses.length == 0)
+			return null;
+		String[] tokens = (parses.length==0) ? new String[0]
+				: tokenize(Evaluator.normalize(parses[0].toStr()));
+		Refs r = (Refs) refs.get(ex.id);
+		Stats s = new Stats();
+		for (short n = 0; n < NIST_N; ++n) {
+			HashMap c = countNgrams(tokens, n+1);
+			for (Iterator it = c.entrySet().iterator(); it.hasNext();) {
+				Map.Entry entry = (Map.Entry) it.next();
+				int count = ((Int) entry.getValue()).val;
+				Int refCount = (Int) r.counts[n].get(entry.getKey());
+				if (refCount != null) {
+					int m = Math.min(count, refCount.val);
+					s.match[n] += m;
+					s.info[n] += m*((Double) info.get(entry.getKey())).doubleValue();
+				}
+				s.total[n] += count;
+			}
+		}
+		s.shortestRefLength = r.shortestLength;
+		s.refLength = r.length;
+		s.nrefs = r.nrefs;
+		return s;
+	}
+
+	private class ScoreTask extends RecursiveTask {
+		private static final long serialVersionUID = 1L;
+		private Examples examples;
+		private int from;
+		private int to;
+		// the context of the submitting thread
+		private Context ctx;
+		public ScoreTask(Examples examples, int from, int to) {
+			this.examples = examples;
+			this.from = from;
+			this.to = to;
+			ctx = Context.current();
+		}
+		protected Object compute() {
+			Context prev = Context.install(ctx);
+			try {
+				return scoreRange();
+			} finally {
+				Context.install(prev);
+			}
+		}
+		private Object scoreRange() {
+			if (to-from <= GRAIN) {
+				Stats stats = new Stats();
+				for (int i = from; i < to; ++i) {
+					Stats s = score(examples.getNth(i));
+					if (s != null)
+						stats.add(s);
+				}
+				return stats;
+			}
+			int mid = from + (to-from)/2;
+			ScoreTask left = new ScoreTask(examples, from, mid);
+			left.fork();
+			Stats stats = (Stats) new ScoreTask(examples, mid, to).compute();
+			stats.add((Stats) left.join());
+			return stats;
+		}
+	}
+
+	/**
+	 * Returns the corpus-level statistics for the top-ranked sentences generated for the given
+	 * examples.  Examples are scored concurrently.
+	 *
+	 * @param examples a set of examples that contain the generated sentences.
+	 * @return the statistics for <code>examples</code>.
+	 */
+	public Stats score(Examples examples) {
+		String threads = Config.get(Config.EVAL_THREADS);
+		int nthreads = (threads==null) ? Runtime.getRuntime().availableProcessors() : Int.parseInt(threads);
+		return (Stats) getPool(Math.max(1, nthreads)).invoke(new ScoreTask(examples, 0, examples.size()));
+	}
+
+	/**
+	 * Returns the shared pool of the specified number of threads.  The number of threads is taken
+	 * from the configuration of each caller, since scorers may be used in different contexts.
+	 */
+	private static synchronized ForkJoinPool getPool(int nthreads) {
+		Integer key = Integer.valueOf(nthreads);
+		ForkJoinPool pool = (ForkJoinPool) pools.get(key);
+		if (pool == null) {
+			pool = new ForkJoinPool(nthreads, Context.getSharedForkJoinFactory(), null, false);
+			pools.put(key, pool);
+		}
+		return pool;
+	}
+
+	public double evaluate(Examples examples) {
+		Stats s = score(examples);
+		return (metric==NIST) ? s.nist() : s.bleu();
+	}
+
+}
@@ -361,6 +361,8 @@ public class MinErrorRateModel extends LogLinearModel {
 		String obj = Config.get(Config.MIN_ERROR_RATE_OBJECTIVE);
 		if (obj.equals("bleu"))
 			return new BLEU();
+		else if (obj.equals("nist"))
+			return new MTScorer(MTScorer.NIST);
 		else
 			return null;
 	}
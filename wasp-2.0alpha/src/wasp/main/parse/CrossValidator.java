@@ -0,0 +1,203 @@
+/*
+ * Copyright 2006, 2007 Yuk Wah Wong.
+ * 
+ * This file is part of the WASP distribution.
+ *
+ * WASP is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * WASP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with WASP; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package wasp.main.parse;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.xml.sax.SAXException;
+
+import wasp.data.Example;
+import wasp.data.ExampleMask;
+import wasp.data.Examples;
+import wasp.main.Config;
+import wasp.main.Context;
+import wasp.main.Parser;
+import wasp.nl.NL;
+import wasp.util.FileWriter;
+import wasp.util.Int;
+
+/**
+ * Cross validation of semantic parsers in a single JVM.  The corpus is read once, and all folds are
+ * trained and tested concurrently, each in its own {@link Context}.
+ * 
+ * @author ywwong
+ *
+ */
+public class CrossValidator {
+
+	private static Logger logger = Logger.getLogger(CrossValidator.class.getName());
+	
+	private static final String TRAIN_MASK = "train-mask";
+	private static final String TEST_MASK = "test-mask";
+	private static final String PARSES = "parses.xml";
+	
+	/**
+	 * Trains and tests a parsing model on one fold.
+	 */
+	private static class Fold implements Callable {
+		private int fold;
+		private File dir;
+		private Examples train;
+		private Examples test;
+		public Fold(int fold, File dir, Examples train, Examples test) {
+			this.fold = fold;
+			this.dir = dir;
+			this.train = train;
+			this.test = test;
+		}
+		public Object call() throws IOException {
+			Context ctx = new Context();
+			ctx.enter();
+			try {
+				Config.setModelDir(dir.getPath());
+				logger.info("Fold "+fold+": training");
+				ParseModel model = ParseModel.createNew();
+				model.train(train);
+				logger.info("Fold "+fold+": testing");
+				Parser.parseAll(model.getParser(), test, false);
+				File file = new File(dir, PARSES);
+				test.write(file.getPath());
+				logger.info("Fold "+fold+" is done");
+				return file.getPath();
+			} finally {
+				Context.exit();
+			}
+		}
+	}
+	
+	private static ExampleMask mask(Examples examples) {
+		ExampleMask mask = new ExampleMask();
+		for (Iterator it = examples.iterator(); it.hasNext();)
+			mask.add(((Example) it.next()).id);
+		return mask;
+	}
+	
+	/**
+	 * The main program for cross validation of semantic parsers.  This program takes the following 
+	 * command-line arguments:
+	 * <p>
+	 * <blockquote><code><b>java wasp.main.parse.CrossValidator</b> [-folds <u>k</u>] 
+	 * [-threads <u>n</u>] <u>config-file</u> <u>work-dir</u> <u>output-file</u></code></blockquote>
+	 * <p>
+	 * <ul>
+	 * <li><code><u>config-file</u></code> - the configuration file that contains the current 
+	 * settings.</li>
+	 * <li><code><u>work-dir</u></code> - the directory for storing the learned models, example masks
+	 * and automatically-generated parses; each fold has its own subdirectory.</li>
+	 * <li><code><u>output-file</u></code> - the output text file for storing the evaluation results.</li>
+	 * </ul>
+	 * <p>
+	 * <b>Options:</b>
+	 * <p>
+	 * <ul>
+	 * <li><code>-folds <u>k</u></code> - the number of folds (default: 10).</li>
+	 * <li><code>-threads <u>n</u></code> - the maximum number of folds processed at the same time
+	 * (default: the number of processors).</li>
+	 * </ul>
+	 * <p>
+	 * Only parsing models that keep their state in the current {@link Context} can be trained
+	 * concurrently.  New symbols that are added to the shared dictionary during training get IDs in
+	 * the order in which the folds add them, so the models of each fold may not be exactly
+	 * reproducible across runs when more than one thread is used (see {@link Context}).  Log messages
+	 * are sent to the standard error stream.
+	 * 
+	 * @param args the command-line arguments.
+	 * @throws IOException if an I/O error occurs.
+	 * @throws SAXException if the XML parser throws a <code>SAXException</code> while parsing.
+	 * @throws ParserConfigurationException if an XML parser cannot be created which satisfies the 
+	 * requested configuration.
+	 */
+	public static void main(String[] args) throws IOException, SAXException, ParserConfigurationException {
+		int nfolds = 10;
+		int nthreads = Runtime.getRuntime().availableProcessors();
+		int index = 0;
+		while (index < args.length && args[index].startsWith("-")) {
+			if (args[index].equals("-folds") && index+1 < args.length)
+				nfolds = Int.parseInt(args[index+1]);
+			else if (args[index].equals("-threads") && index+1 < args.length)
+				nthreads = Int.parseInt(args[index+1]);
+			else
+				break;
+			index += 2;
+		}
+		if (args.length-index != 3 || nfolds < 2 || nthreads < 1) {
+			System.err.println("Usage: java wasp.main.parse.CrossValidator [-folds k] [-threads n] config-file work-dir output-file");
+			System.err.println();
+			System.err.println("config-file - the configuration file that contains the current settings.");
+			System.err.println("work-dir - the directory for storing learned models and parses of each fold.");
+			System.err.println("output-file - the output text file for storing the evaluation results.");
+			System.err.println();
+			System.err.println("Options:");
+			System.err.println("-folds k - the number of folds (default: 10).");
+			System.err.println("-threads n - the maximum number of folds processed at the same time.");
+			System.exit(1);
+		}
+		String configFilename = args[index++];
+		File workDir = new File(args[index++]);
+		String outputFilename = args[index++];
+		
+		Config.read(configFilename);
+		NL.useNL = Config.getSourceNL();
+		Examples examples = Config.readCorpus();
+		Examples[][] splits = examples.crossValidate(nfolds);
+		ExecutorService pool = Executors.newFixedThreadPool(Math.min(nthreads, nfolds));
+		Future[] futures = new Future[nfolds];
+		for (int i = 0; i < nfolds; ++i) {
+			File dir = new File(workDir, "fold-"+i);
+			dir.mkdirs();
+			mask(splits[i][0]).write(new File(dir, TRAIN_MASK).getPath());
+			mask(splits[i][1]).write(new File(dir, TEST_MASK).getPath());
+			// the examples in each split are copies, so changes made during training and testing (e.g.
+			// word alignments, parses) are local to each fold
+			futures[i] = pool.submit(new Fold(i, dir, splits[i][0], splits[i][1]));
+		}
+		String[] parses = new String[nfolds];
+		try {
+			for (int i = 0; i < nfolds; ++i)
+				parses[i] = (String) futures[i].get();
+		} catch (InterruptedException e) {
+			throw new RuntimeException(e.toString());
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException)
+				throw (IOException) e.getCause();
+			throw new RuntimeException(e.getCause());
+		} finally {
+			pool.shutdown();
+		}
+		logger.info("Evaluation starts");
+		PrintWriter out = new PrintWriter(new BufferedWriter(FileWriter.createNew(outputFilename)));
+		Evaluator.evaluate(out, examples, parses);
+		out.close();
+		logger.info("Evaluation ends");
+	}
+	
+}
@@ -22,7 +22,16 @@ package wasp.main.parse;
 import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Logger;
 
 import javax.xml.parsers.ParserConfigurationException;
@@ -31,11 +40,14 @@ import org.xml.sax.SAXException;
 
 import wasp.data.Example;
 import wasp.data.Examples;
+import wasp.data.Symbol;
 import wasp.main.Config;
 import wasp.main.Parse;
+import wasp.mrl.MRLGrammar;
 import wasp.nl.NL;
 import wasp.util.Arrays;
 import wasp.util.FileWriter;
+import wasp.util.Int;
 
 /**
  * The program for evaluating semantic parsers.  All evaluation metrics (precision, recall and F-measure)
@@ -44,6 +56,10 @@ import wasp.util.FileWriter;
  * translated.  F-measure is the harmonic mean of precision and recall.
  * <p>
  * Macroaveraging is used to obtain the average statistics across all trials.
+ * <p>
+ * Input files are streamed, and examples are checked concurrently in small batches.  Translations that
+ * are identical to the gold-standard MRs are always correct; other translations are sent to a
+ * pluggable checker (see <code>Config.EVAL_CHECKER</code>).
  * 
  * @author ywwong
  *
@@ -60,13 +76,15 @@ public abstract class Evaluator {
 	 *
 	 */
 	protected static class Entry implements Comparable {
-		private static int nextId = 0;
 		private int id;
 		public boolean isTranslated;
 		public double score;
 		public boolean isCorrect;
-		public Entry(double score, boolean isCorrect) {
-			id = nextId++;
+		/**
+		 * @param id the position of the input sentence in the input files.
+		 */
+		public Entry(int id, double score, boolean isCorrect) {
+			this.id = id;
 			isTranslated = true;
 			this.score = score;
 			this.isCorrect = isCorrect;
@@ -74,8 +92,8 @@ public abstract class Evaluator {
 		/**
 		 * This is for sentences not having any translations.
 		 */
-		public Entry() {
-			id = nextId++;
+		public Entry(int id) {
+			this.id = id;
 			isTranslated = false;
 		}
 		/**
@@ -101,41 +119,249 @@ public abstract class Evaluator {
 		}
 	}
 	
-	private static TreeSet evaluate(PrintWriter out, Examples gold, String filename, int k)
-	throws IOException, SAXException, ParserConfigurationException {
-		Examples examples = new Examples();
-		examples.read(filename);
-		out.println("file "+filename);
-		// send all parses to the domain-specific evaluator
-		boolean[][] isCorrect = Config.getMRLGrammar().evaluate(examples, gold);
-		// choose the top-scoring (correct) parse for each example, and create a new entry for it
-		TreeSet entries = new TreeSet();
-		int size = examples.size();
-		for (int i = 0; i < size; ++i) {
-			Example ex = examples.getNth(i);
-			out.println("example "+ex.id);
-			out.println("correct translation:");
-			out.println(gold.get(ex.id).F.str);
-			boolean isCorrectlyTranslated = false;
-			Parse[] parses = ex.getSortedParses();
-			if (parses.length == 0)
-				entries.add(new Entry());
-			else {
+	/**
+	 * Accumulates the entries of a trial.  Counts are updated as entries are added, so precision and 
+	 * recall can be read off directly.  Only translated entries are kept (for precision-recall curves).
+	 * Accumulators of disjoint sets of entries can be merged.
+	 * 
+	 * @author ywwong
+	 *
+	 */
+	protected static class Trial {
+		/** The number of input sentences. */
+		public int size;
+		/** The number of input sentences that have translations. */
+		public int ntranslated;
+		/** The number of input sentences that are correctly translated. */
+		public int ncorrect;
+		private TreeSet translated;
+		public Trial() {
+			size = 0;
+			ntranslated = 0;
+			ncorrect = 0;
+			translated = new TreeSet();
+		}
+		public void add(Entry entry) {
+			++size;
+			if (entry.isTranslated) {
+				++ntranslated;
+				if (entry.isCorrect)
+					++ncorrect;
+				translated.add(entry);
+			}
+		}
+		public void merge(Trial trial) {
+			size += trial.size;
+			ntranslated += trial.ntranslated;
+			ncorrect += trial.ncorrect;
+			translated.addAll(trial.translated);
+		}
+		/**
+		 * Returns an iterator over the translated entries, in their natural ordering.
+		 */
+		public Iterator iterator() {
+			return translated.iterator();
+		}
+	}
+	
+	/**
+	 * The domain-specific definition of translation correctness.  Implementations must be thread-safe.
+	 * 
+	 * @author ywwong
+	 *
+	 */
+	public interface Checker {
+		/**
+		 * Evaluates the correctness of the automatically-generated MR translations of the specified
+		 * examples.
+		 * 
+		 * @param examples the set of examples to evaluate.
+		 * @param gold examples with gold-standard translations in the <code>Example.F</code> field.
+		 * @return a two-dimensional Boolean array, <code>B</code>, such that <code>B[j][i]</code> is
+		 * true if and only if the <code>i</code>-th top-scoring parse of the <code>j</code>-th example
+		 * is correct.
+		 * @throws IOException if an I/O error occurs.
+		 * @see wasp.mrl.MRLGrammar#evaluate(Examples, Examples)
+		 */
+		public boolean[][] check(Examples examples, Examples gold) throws IOException;
+	}
+	
+	/**
+	 * The default checker, which sends all parses to the domain-specific evaluator of the current MRL
+	 * grammar.
+	 */
+	private static class GrammarChecker implements Checker {
+		public boolean[][] check(Examples examples, Examples gold) throws IOException {
+			return Config.getMRLGrammar().evaluate(examples, gold);
+		}
+	}
+	
+	private static Checker getChecker() {
+		String name = Config.get(Config.EVAL_CHECKER);
+		if (name == null)
+			return new GrammarChecker();
+		try {
+			return (Checker) Class.forName(name).getDeclaredConstructor().newInstance();
+		} catch (Exception e) {
+			throw new RuntimeException("cannot create checker "+name+": "+e);
+		}
+	}
+	
+	/** The number of examples that are checked together. */
+	private static final int BATCH_SIZE = 16;
+	
+	/**
+	 * Checks a batch of examples, and formats the details of the evaluation.
+	 */
+	private static class Batch implements Callable {
+		private Examples examples;
+		private Examples gold;
+		private Checker checker;
+		private int first;
+		public Batch(Examples examples, Examples gold, Checker checker, int first) {
+			this.examples = examples;
+			this.gold = gold;
+			this.checker = checker;
+			this.first = first;
+		}
+		public Object call() throws IOException {
+			MRLGrammar gram = Config.getMRLGrammar();
+			int size = examples.size();
+			// translations that are identical to the gold-standard MRs are always correct
+			boolean[][] isCorrect = new boolean[size][];
+			boolean check = false;
+			for (int i = 0; i < size; ++i) {
+				Example ex = examples.getNth(i);
+				Symbol[] correct = gold.get(ex.id).F.syms;
+				Parse[] parses = ex.getSortedParses();
+				isCorrect[i] = new boolean[parses.length];
 				for (int j = 0; j < parses.length; ++j) {
-					out.println("parse "+j+": ");
+					isCorrect[i][j] = Arrays.equal(correct, gram.tokenize(parses[j].toStr()));
 					if (!isCorrect[i][j])
-						out.print('*');
-					out.println(parses[j].toStr());
-					if (!isCorrectlyTranslated && isCorrect[i][j]) {
-						entries.add(new Entry(parses[j].score, true));
-						isCorrectlyTranslated = true;
+						check = true;
+				}
+			}
+			// send the other parses to the domain-specific evaluator
+			if (check) {
+				boolean[][] b = checker.check(examples, gold);
+				for (int i = 0; i < size; ++i)
+					for (int j = 0; j < isCorrect[i].length; ++j)
+						isCorrect[i][j] = isCorrect[i][j] || b[i][j];
+			}
+			// choose the top-scoring (correct) parse for each example, and create a new entry for it
+			Trial batch = new Trial();
+			StringWriter sw = new StringWriter();
+			PrintWriter out = new PrintWriter(sw);
+			for (int i = 0; i < size; ++i) {
+				Example ex = examples.getNth(i);
+				out.println("example "+ex.id);
+				out.println("correct translation:");
+				out.println(gold.get(ex.id).F.str);
+				boolean isCorrectlyTranslated = false;
+				Parse[] parses = ex.getSortedParses();
+				if (parses.length == 0)
+					batch.add(new Entry(first+i));
+				else {
+					for (int j = 0; j < parses.length; ++j) {
+						out.println("parse "+j+": ");
+						if (!isCorrect[i][j])
+							out.print('*');
+						out.println(parses[j].toStr());
+						if (!isCorrectlyTranslated && isCorrect[i][j]) {
+							batch.add(new Entry(first+i, parses[j].score, true));
+							isCorrectlyTranslated = true;
+						}
 					}
+					if (!isCorrectlyTranslated)
+						batch.add(new Entry(first+i, parses[0].score, false));
 				}
-				if (!isCorrectlyTranslated)
-					entries.add(new Entry(parses[0].score, false));
+			}
+			out.close();
+			return new Object[] {sw.toString(), batch};
+		}
+	}
+	
+	/**
+	 * Streams examples from the input files to the checkers.  Batches of examples are checked
+	 * concurrently, and the results are written out and merged into the accumulators of their trials in
+	 * the order in which the examples are read.  The number of batches in flight is bounded, so memory
+	 * usage does not grow with the size of the input files, unless each input file is checked as one
+	 * batch.
+	 */
+	private static class Pipeline implements Examples.Sink {
+		private PrintWriter out;
+		private Examples gold;
+		private Checker checker;
+		private ExecutorService pool;
+		private int batchSize;
+		private int maxPending;
+		// Future (Object[] {String, Trial}) or String
+		private LinkedList pending;
+		// Future -> Trial
+		private HashMap trials;
+		private Trial trial;
+		private Examples batch;
+		private int next;
+		public Pipeline(PrintWriter out, Examples gold, Checker checker, int nthreads, int batchSize) {
+			this.out = out;
+			this.gold = gold;
+			this.checker = checker;
+			this.batchSize = batchSize;
+			pool = Executors.newFixedThreadPool(nthreads);
+			maxPending = 4*nthreads;
+			pending = new LinkedList();
+			trials = new HashMap();
+			trial = null;
+			batch = new Examples();
+			next = 0;
+		}
+		public void startTrial(String filename, Trial trial) {
+			flush();
+			pending.addLast("file "+filename);
+			this.trial = trial;
+		}
+		public void add(Example ex) {
+			batch.add(ex);
+			if (batch.size() == batchSize)
+				flush();
+		}
+		private void flush() {
+			if (batch.size() == 0)
+				return;
+			Future f = pool.submit(new Batch(batch, gold, checker, next));
+			trials.put(f, trial);
+			pending.addLast(f);
+			next += batch.size();
+			batch = new Examples();
+			while (pending.size() > maxPending)
+				drain();
+		}
+		private void drain() {
+			Object o = pending.removeFirst();
+			if (o instanceof String) {
+				out.println((String) o);
+				return;
+			}
+			Object[] result;
+			try {
+				result = (Object[]) ((Future) o).get();
+			} catch (InterruptedException e) {
+				throw new RuntimeException(e.toString());
+			} catch (ExecutionException e) {
+				throw new RuntimeException(e.getCause().toString());
+			}
+			out.print((String) result[0]);
+			((Trial) trials.remove(o)).merge((Trial) result[1]);
+		}
+		public void finish() {
+			flush();
+			try {
+				while (!pending.isEmpty())
+					drain();
+			} finally {
+				pool.shutdown();
 			}
 		}
-		return entries;
 	}
 	
 	/**
@@ -143,10 +369,11 @@ public abstract class Evaluator {
 	 * statistical figures which are written to the specified character stream.
 	 * 
 	 * @param out the character stream to write to.
-	 * @param entries sets of entries that contain information about input sentences in each trial (e.g. 
-	 * whether the sentences are correctly translated); there is one entry set for each trial.
+	 * @param trials accumulators of entries that contain information about input sentences in each 
+	 * trial (e.g. whether the sentences are correctly translated); there is one accumulator for each
+	 * trial.
 	 */
-	protected abstract void summarize(PrintWriter out, TreeSet[] entries);
+	protected abstract void summarize(PrintWriter out, Trial[] trials);
 	
 	/**
 	 * The main program for evaluating the performance of parsers.  This program takes the following 
@@ -189,18 +416,50 @@ public abstract class Evaluator {
 		logger.info("Evaluation starts");
 		NL.useNL = Config.getSourceNL();
 		PrintWriter out = new PrintWriter(new BufferedWriter(FileWriter.createNew(outputFilename)));
-		Examples gold = Config.readCorpus();
-		TreeSet[] entries = new TreeSet[inputFilenames.length];
-		for (int i = 0; i < inputFilenames.length; ++i) {
-			logger.fine("evaluate "+inputFilenames[i]);
-			entries[i] = evaluate(out, gold, inputFilenames[i], 1);
-		}
-		new Precision().summarize(out, entries);
-		new Recall().summarize(out, entries);
-		new FMeasure().summarize(out, entries);
-		new PrecisionRecallCurve().summarize(out, entries);
+		evaluate(out, Config.readCorpus(), inputFilenames);
 		out.close();
 		logger.info("Evaluation ends");
 	}
 	
+	/**
+	 * Evaluates the parses in the specified XML files, and writes the evaluation results to the
+	 * specified character stream.  Each input file represents a separate trial.
+	 * 
+	 * @param out the character stream to write to.
+	 * @param gold the gold-standard examples.
+	 * @param inputFilenames the input XML files that contain parses to evaluate.
+	 * @throws IOException if an I/O error occurs.
+	 * @throws SAXException if the XML parser throws a <code>SAXException</code> while parsing.
+	 * @throws ParserConfigurationException if an XML parser cannot be created which satisfies the 
+	 * requested configuration.
+	 */
+	public static void evaluate(PrintWriter out, Examples gold, String[] inputFilenames)
+	throws IOException, SAXException, ParserConfigurationException {
+		String threads = Config.get(Config.EVAL_THREADS);
+		int nthreads = (threads==null) ? Runtime.getRuntime().availableProcessors() : Int.parseInt(threads);
+		Checker checker = getChecker();
+		Pipeline pipeline;
+		// an evaluator that starts a new process for every call checks each input file at once, and
+		// one file at a time
+		if (checker instanceof GrammarChecker && Config.getMRLGrammar().isEvaluatedExternally())
+			pipeline = new Pipeline(out, gold, checker, 1, Integer.MAX_VALUE);
+		else
+			pipeline = new Pipeline(out, gold, checker, Math.max(1, nthreads), BATCH_SIZE);
+		Trial[] trials = new Trial[inputFilenames.length];
+		try {
+			for (int i = 0; i < inputFilenames.length; ++i) {
+				logger.fine("evaluate "+inputFilenames[i]);
+				trials[i] = new Trial();
+				pipeline.startTrial(inputFilenames[i], trials[i]);
+				Examples.stream(inputFilenames[i], pipeline);
+			}
+		} finally {
+			pipeline.finish();
+		}
+		new Precision().summarize(out, trials);
+		new Recall().summarize(out, trials);
+		new FMeasure().summarize(out, trials);
+		new PrecisionRecallCurve().summarize(out, trials);
+	}
+	
 }
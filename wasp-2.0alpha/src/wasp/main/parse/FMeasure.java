@@ -20,7 +20,6 @@
 package wasp.main.parse;
 
 import java.io.PrintWriter;
-import java.util.TreeSet;
 
 import wasp.math.Math;
 
@@ -33,20 +32,20 @@ import wasp.math.Math;
  */
 public class FMeasure extends Evaluator {
 
-	protected void summarize(PrintWriter out, TreeSet[] entries) {
+	protected void summarize(PrintWriter out, Trial[] trials) {
 		out.println("begin f-measure");
-		double[] f = new double[entries.length];
-		for (int i = 0; i < entries.length; ++i)
-			f[i] = f(entries[i]);
+		double[] f = new double[trials.length];
+		for (int i = 0; i < trials.length; ++i)
+			f[i] = f(trials[i]);
 		out.println("mean "+Math.mean(f));
 		double[] interval = Math.confInterval95(f);
 		out.println("95%-confidence-interval "+interval[0]+" "+interval[1]);
 		out.println("end f-measure");
 	}
 
-	private double f(TreeSet entries) {
-		double precision = new Precision().precision(entries);
-		double recall = new Recall().recall(entries);
+	private double f(Trial trial) {
+		double precision = new Precision().precision(trial);
+		double recall = new Recall().recall(trial);
 		return (precision==0 && recall==0) ? 0 : (2*precision*recall) / (precision+recall);
 	}
 	
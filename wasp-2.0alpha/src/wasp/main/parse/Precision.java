@@ -20,8 +20,6 @@
 package wasp.main.parse;
 
 import java.io.PrintWriter;
-import java.util.Iterator;
-import java.util.TreeSet;
 
 import wasp.math.Math;
 
@@ -34,28 +32,19 @@ import wasp.math.Math;
  */
 public class Precision extends Evaluator {
 
-	protected void summarize(PrintWriter out, TreeSet[] entries) {
+	protected void summarize(PrintWriter out, Trial[] trials) {
 		out.println("begin precision");
-		double[] precision = new double[entries.length];
-		for (int i = 0; i < entries.length; ++i)
-			precision[i] = precision(entries[i]);
+		double[] precision = new double[trials.length];
+		for (int i = 0; i < trials.length; ++i)
+			precision[i] = precision(trials[i]);
 		out.println("mean "+Math.mean(precision));
 		double[] interval = Math.confInterval95(precision);
 		out.println("95%-confidence-interval "+interval[0]+" "+interval[1]);
 		out.println("end precision");
 	}
 
-	protected double precision(TreeSet entries) {
-		double num = 0, denom = 0;
-		for (Iterator it = entries.iterator(); it.hasNext();) {
-			Entry entry = (Entry) it.next();
-			if (entry.isTranslated) {
-				++denom;
-				if (entry.isCorrect)
-					++num;
-			}
-		}
-		return (denom==0) ? 0 : num/denom;
+	protected double precision(Trial trial) {
+		return (trial.ntranslated==0) ? 0 : ((double) trial.ncorrect)/trial.ntranslated;
 	}
 	
 }
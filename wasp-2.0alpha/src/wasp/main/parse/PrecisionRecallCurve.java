@@ -22,7 +22,6 @@ package wasp.main.parse;
 import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Iterator;
-import java.util.TreeSet;
 
 import wasp.math.Math;
 
@@ -36,11 +35,11 @@ public class PrecisionRecallCurve extends Evaluator {
 
 	private static final int NUM_INTERVALS = 100;
 	
-	protected void summarize(PrintWriter out, TreeSet[] entries) {
+	protected void summarize(PrintWriter out, Trial[] trials) {
 		out.println("begin precision-recall-curve");
-		double[][] curves = new double[NUM_INTERVALS+1][entries.length];
-		for (int i = 0; i < entries.length; ++i)
-			precisions(curves, i, entries[i]);
+		double[][] curves = new double[NUM_INTERVALS+1][trials.length];
+		for (int i = 0; i < trials.length; ++i)
+			precisions(curves, i, trials[i]);
 		out.println("begin mean");
 		for (int i = 0; i <= NUM_INTERVALS; ++i) {
 			double recall = ((double) i)/NUM_INTERVALS;
@@ -58,9 +57,9 @@ public class PrecisionRecallCurve extends Evaluator {
 		out.println("end precision-recall-curve");
 	}
 
-	private void precisions(double[][] curves, int trial, TreeSet entries) {
+	private void precisions(double[][] curves, int trial, Trial entries) {
 		ArrayList list = new ArrayList();
-		int size = entries.size();
+		int size = entries.size;
 		int ntranslated = 0;
 		int ncorrect = 0;
 		for (Iterator it = entries.iterator(); it.hasNext();) {
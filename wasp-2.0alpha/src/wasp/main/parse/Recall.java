@@ -20,8 +20,6 @@
 package wasp.main.parse;
 
 import java.io.PrintWriter;
-import java.util.Iterator;
-import java.util.TreeSet;
 
 import wasp.math.Math;
 
@@ -34,26 +32,19 @@ import wasp.math.Math;
  */
 public class Recall extends Evaluator {
 
-	protected void summarize(PrintWriter out, TreeSet[] entries) {
+	protected void summarize(PrintWriter out, Trial[] trials) {
 		out.println("begin recall");
-		double[] recall = new double[entries.length];
-		for (int i = 0; i < entries.length; ++i)
-			recall[i] = recall(entries[i]);
+		double[] recall = new double[trials.length];
+		for (int i = 0; i < trials.length; ++i)
+			recall[i] = recall(trials[i]);
 		out.println("mean "+Math.mean(recall));
 		double[] interval = Math.confInterval95(recall);
 		out.println("95%-confidence-interval "+interval[0]+" "+interval[1]);
 		out.println("end recall");
 	}
 
-	protected double recall(TreeSet entries) {
-		double num = 0, denom = 0;
-		for (Iterator it = entries.iterator(); it.hasNext();) {
-			Entry entry = (Entry) it.next();
-			++denom;
-			if (entry.isTranslated && entry.isCorrect)
-				++num;
-		}
-		return (denom==0) ? 0 : num/denom;
+	protected double recall(Trial trial) {
+		return (trial.size==0) ? 0 : ((double) trial.ncorrect)/trial.size;
 	}
 	
 }
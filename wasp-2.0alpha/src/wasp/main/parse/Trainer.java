@@ -27,6 +27,7 @@ import org.xml.sax.SAXException;
 
 import wasp.data.ExampleMask;
 import wasp.data.Examples;
+import wasp.main.Checkpoint;
 import wasp.main.Config;
 import wasp.main.TranslationModel;
 import wasp.nl.NL;
@@ -45,7 +46,7 @@ public class Trainer {
 	 * The main program for training semantic parsing models.  This program takes the following
 	 * command-line arguments:
 	 * <p>
-	 * <blockquote><code><b>java wasp.main.parse.Trainer</b> [extract-only] <u>config-file</u>
+	 * <blockquote><code><b>java wasp.main.parse.Trainer</b> [-extract-only] [-resume] <u>config-file</u>
 	 * <u>model-dir</u> <u>mask-file</u></code></blockquote>
 	 * <p>
 	 * <ul>
@@ -60,6 +61,7 @@ public class Trainer {
 	 * <p>
 	 * <ul>
 	 * <li><code>-extract-only</code> - extracts rules only, no parameter estimation.</li>
+	 * <li><code>-resume</code> - resumes training from the last checkpoint in <code><u>model-dir</u></code>.</li>
 	 * </ul>
 	 * <p>
 	 * Log messages are sent to the standard error stream, which can be captured for detailed error
@@ -72,8 +74,8 @@ public class Trainer {
 	 * requested configuration.
 	 */
 	public static void main(String[] args) throws IOException, SAXException, ParserConfigurationException {
-		if (args.length < 3 || args.length > 4) {
-			System.err.println("Usage: java wasp.main.parse.Trainer [-extract-only] config-file model-dir mask-file");
+		if (args.length < 3 || args.length > 5) {
+			System.err.println("Usage: java wasp.main.parse.Trainer [-extract-only] [-resume] config-file model-dir mask-file");
 			System.err.println();
 			System.err.println("config-file - the configuration file that contains the current settings.");
 			System.err.println("model-dir - the directory for storing the learned semantic parsing model.");
@@ -81,6 +83,7 @@ public class Trainer {
 			System.err.println();
 			System.err.println("Options:");
 			System.err.println("-extract-only - extracts rules only, no parameter estimation.");
+			System.err.println("-resume - resumes training from the last checkpoint in model-dir.");
 			System.exit(1);
 		}
 		int index = 0;
@@ -88,6 +91,10 @@ public class Trainer {
 			TranslationModel.extractOnly = true;
 			++index;
 		}
+		if (args[index].equals("-resume")) {
+			Checkpoint.resume = true;
+			++index;
+		}
 		String configFilename = args[index++];
 		String modelDir = args[index++];
 		String maskFilename = args[index++];
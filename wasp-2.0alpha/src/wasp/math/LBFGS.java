@@ -19,8 +19,18 @@
  */
 package wasp.math;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.util.logging.Logger;
 
+import wasp.main.Checkpoint;
+import wasp.main.Metrics;
 import wasp.util.Double;
 
 /**
@@ -33,6 +43,9 @@ public class LBFGS {
 
 	private static Logger logger = Logger.getLogger(LBFGS.class.getName());
 	
+	private static final Metrics.Counter ITERATIONS = Metrics.counter("lbfgs.iterations");
+	private static final Metrics.Histogram ITERATION_TIME = Metrics.histogram("lbfgs.iteration.time");
+	
 	/**
 	 * Objective functions to minimize using the LBFGS algorithm.
 	 * 
@@ -56,6 +69,31 @@ public class LBFGS {
 		public void check(LBFGS lbfgs, int iter, boolean isLastIter);
 	}
 	
+	/**
+	 * Objective functions that can be checkpointed.  Besides the decision vector, these objective
+	 * functions may keep internal states that change from iteration to iteration (e.g. the set of
+	 * active rules); such states are saved together with the states of the LBFGS algorithm.
+	 * 
+	 * @author ywwong
+	 *
+	 */
+	public static interface Resumable extends Objective {
+		/**
+		 * Writes the internal state of this objective function.
+		 * 
+		 * @param out the output stream to write to.
+		 * @throws IOException if an I/O error occurs.
+		 */
+		public void writeState(DataOutputStream out) throws IOException;
+		/**
+		 * Restores the internal state of this objective function.
+		 * 
+		 * @param in the input stream to read from.
+		 * @throws IOException if an I/O error occurs.
+		 */
+		public void readState(DataInputStream in) throws IOException;
+	}
+	
 	private static final int NUM_CORRECTIONS = 4;
 
 	// constants for full training
@@ -77,8 +115,13 @@ public class LBFGS {
     private double[][] Y;
     private double[] Rho;
     private double[] alpha;
+    private File checkpoint;
+    private int interval;
+    private double savedG0;
     
     public LBFGS() {
+    	checkpoint = null;
+    	interval = 0;
     	lastX = null;
     	lastGrad = null;
     	S = null;
@@ -87,6 +130,21 @@ public class LBFGS {
     	alpha = null;
     }
 
+    /**
+     * Sets the checkpoint file for this <code>LBFGS</code> object.  If the checkpoint file exists when
+     * <code>minimize</code> is called, then the minimization resumes from the saved state.  The state is
+     * saved every <code>interval</code> iterations, provided that the objective function is 
+     * {@link Resumable}.
+     * 
+     * @param file the checkpoint file; <code>null</code> if no checkpoints should be made.
+     * @param interval the number of iterations between checkpoints; <code>0</code> if no checkpoints
+     * should be made.
+     */
+    public void setCheckpoint(File file, int interval) {
+    	checkpoint = file;
+    	this.interval = interval;
+    }
+    
     /**
      * Finds a decision vector that locally minimizes the value of the specified objective function.
      * 
@@ -107,13 +165,31 @@ public class LBFGS {
     	}
     	Double val = new Double();
     	double[] grad = new double[X.length];
-    	obj.getValueAndGradient(X, val, grad);
-    	double g0 = Vectors.twoNorm(grad);
-    	if (g0 == 0)
-    		return true;
     	reset();
-    	for (int iter = 0; iter < maxIters; ++iter) {
+    	int start = -1;
+    	if (canCheckpoint(obj) && checkpoint.exists()) {
+    		try {
+    			start = readCheckpoint((Resumable) obj, X);
+    		} catch (IOException e) {
+    			logger.warning("cannot read checkpoint "+checkpoint+": "+e.getMessage());
+    			reset();
+    			start = -1;
+    		}
+    	}
+    	double g0;
+    	obj.getValueAndGradient(X, val, grad);
+    	if (start < 0) {
+    		start = 0;
+    		g0 = Vectors.twoNorm(grad);
+    		if (g0 == 0)
+    			return true;
+    	} else {
+    		g0 = savedG0;
+    		logger.info("LBFGS resumes from iteration "+start);
+    	}
+    	for (int iter = start; iter < maxIters; ++iter) {
     		logger.info("LBFGS iteration "+iter);
+    		long t0 = Metrics.start();
     		double[] dir = null;
     		double[] s = null;
     		double[] y = null;
@@ -169,6 +245,10 @@ public class LBFGS {
     		// Kelley (1999)
     		boolean converged = Vectors.twoNorm(grad) < relRes*g0 + absRes;
     		obj.check(this, iter, !lineMinimized || converged);
+    		if (Metrics.enabled) {
+    			ITERATIONS.inc();
+    			Metrics.stop(ITERATION_TIME, t0);
+    		}
     		if (lastX == null) {
     			obj.getX(X);
     			obj.getValueAndGradient(X, val, grad);
@@ -178,11 +258,89 @@ public class LBFGS {
     			return false;
     		if (converged)
     			return true;
+    		if (canCheckpoint(obj) && (iter+1)%interval == 0)
+    			try {
+    				writeCheckpoint((Resumable) obj, X, iter+1, g0);
+    			} catch (IOException e) {
+    				logger.warning("cannot write checkpoint "+checkpoint+": "+e.getMessage());
+    			}
     	}
     	logger.warning("LBFGS fails to converge");
     	return false;
     }
     
+    private boolean canCheckpoint(Objective obj) {
+    	return checkpoint != null && interval > 0 && obj instanceof Resumable;
+    }
+    
+    private void writeCheckpoint(Resumable obj, double[] X, int iter, double g0) throws IOException {
+    	File tmp = new File(checkpoint.getPath()+".tmp");
+    	DataOutputStream out =
+    		new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+    	out.writeInt(X.length);
+    	out.writeInt(iter);
+    	out.writeDouble(g0);
+    	write(out, X);
+    	write(out, lastX);
+    	write(out, lastGrad);
+    	for (int i = 0; i < NUM_CORRECTIONS; ++i) {
+    		write(out, S[i]);
+    		write(out, Y[i]);
+    		out.writeDouble(Rho[i]);
+    	}
+    	obj.writeState(out);
+    	out.close();
+    	Checkpoint.commit(tmp, checkpoint);
+    }
+    
+    /**
+     * Restores the states saved in the checkpoint file.  Returns the iteration to resume from, or
+     * <code>-1</code> if the checkpoint does not fit the current decision vector.
+     */
+    private int readCheckpoint(Resumable obj, double[] X) throws IOException {
+    	DataInputStream in =
+    		new DataInputStream(new BufferedInputStream(new FileInputStream(checkpoint)));
+    	try {
+    		if (in.readInt() != X.length)
+    			return -1;
+    		int iter = in.readInt();
+    		savedG0 = in.readDouble();
+    		double[] x = read(in);
+    		lastX = read(in);
+    		lastGrad = read(in);
+    		for (int i = 0; i < NUM_CORRECTIONS; ++i) {
+    			S[i] = read(in);
+    			Y[i] = read(in);
+    			Rho[i] = in.readDouble();
+    		}
+    		obj.readState(in);
+    		Vectors.assign(X, x);
+    		return iter;
+    	} finally {
+    		in.close();
+    	}
+    }
+    
+    private static void write(DataOutputStream out, double[] X) throws IOException {
+    	if (X == null) {
+    		out.writeInt(-1);
+    		return;
+    	}
+    	out.writeInt(X.length);
+    	for (int i = 0; i < X.length; ++i)
+    		out.writeDouble(X[i]);
+    }
+    
+    private static double[] read(DataInputStream in) throws IOException {
+    	int length = in.readInt();
+    	if (length < 0)
+    		return null;
+    	double[] X = new double[length];
+    	for (int i = 0; i < length; ++i)
+    		X[i] = in.readDouble();
+    	return X;
+    }
+    
     /**
      * Resets the correction vectors (mainly <code>S</code> and <code>Y</code>) stored in this 
      * <code>LBFGS</code> object.  This is necessary when the objective function is changed (e.g. during
@@ -38,6 +38,7 @@ import wasp.domain.GeoFunqlGrammar;
 import wasp.domain.GeoPrologGrammar;
 import wasp.domain.RoboCupCLangGrammar;
 import wasp.main.Config;
+import wasp.util.Cache;
 import wasp.util.FileWriter;
 import wasp.util.Int;
 import wasp.util.Matrices;
@@ -50,7 +51,7 @@ import wasp.util.TokenReader;
  * @author ywwong
  *
  */
-public abstract class MRLGrammar {
+public abstract class MRLGrammar implements Cloneable {
 
 	private static final Logger logger = Logger.getLogger(MRLGrammar.class.getName());
 	static {
@@ -67,6 +68,12 @@ public abstract class MRLGrammar {
 	private boolean[][] lc;
 	private boolean[][] _lcTrans;
 	
+	private static final int DEFAULT_PARSE_CACHE_SIZE = 50000;
+	
+	// MR string -> parsed MR, maintained by wasp.data.Meaning; null if caching is disabled.  This is
+	// set only when the grammar is created or copied, before the grammar is shared with other threads.
+	private Cache parseCache;
+	
 	protected MRLGrammar() {
 		int nlhs = countNonterms();
 		byLhs = new ArrayList[nlhs];
@@ -80,6 +87,55 @@ public abstract class MRLGrammar {
 		anaphorOK = new HashSet();
 		lc = new boolean[nlhs][nlhs];
 		_lcTrans = null;
+		String size = Config.get(Config.MRL_PARSE_CACHE_SIZE);
+		int parseCacheSize = (size==null) ? DEFAULT_PARSE_CACHE_SIZE : Int.parseInt(size);
+		parseCache = (parseCacheSize > 0) ? new Cache(parseCacheSize) : null;
+	}
+	
+	/**
+	 * Returns a copy of this grammar.  Productions subsequently added to the copy (e.g. during rule 
+	 * extraction) are not added to this grammar, and vice versa.  Production objects themselves are
+	 * shared, since they are immutable.  This is useful when several models are trained concurrently 
+	 * from the same MRL grammar.
+	 * 
+	 * @return a copy of this grammar.
+	 */
+	public MRLGrammar copy() {
+		MRLGrammar g;
+		try {
+			g = (MRLGrammar) clone();
+		} catch (CloneNotSupportedException e) {
+			throw new RuntimeException(e.toString());
+		}
+		g.byLhs = new ArrayList[byLhs.length];
+		for (int i = 0; i < byLhs.length; ++i)
+			g.byLhs[i] = new ArrayList(byLhs[i]);
+		g._byLhs = new Production[byLhs.length][];
+		g.numberer = numberer.copy();
+		g.zeroFert = (HashSet) zeroFert.clone();
+		g.anaphorOK = (HashSet) anaphorOK.clone();
+		g.lc = new boolean[lc.length][];
+		for (int i = 0; i < lc.length; ++i)
+			g.lc[i] = lc[i].clone();
+		g._lcTrans = null;
+		if (parseCache != null) {
+			g.parseCache = new Cache(parseCache.getCapacity());
+			g.parseCache.putAll(parseCache);
+		}
+		return g;
+	}
+	
+	/**
+	 * Returns the cache of parsed MRs for this grammar.  The cache is used by 
+	 * <code>wasp.data.Meaning</code> so that identical MR strings are not parsed again.  Its size is
+	 * given in the configuration file (via the key <code>Config.MRL_PARSE_CACHE_SIZE</code>) when the
+	 * grammar is created.  Lookups never block, and entries that have not been used recently are
+	 * evicted when the cache is full.
+	 * 
+	 * @return the cache of parsed MRs for this grammar; <code>null</code> if caching is disabled.
+	 */
+	public Cache getParseCache() {
+		return parseCache;
 	}
 
 	/**
@@ -315,6 +371,18 @@ public abstract class MRLGrammar {
 	 */
 	public abstract boolean[][] evaluate(Examples examples, Examples gold) throws IOException;
 	
+	/**
+	 * Indicates whether the <code>evaluate</code> method starts an external process for each call.
+	 * Such evaluators are called once for each set of translations, rather than for each small batch
+	 * of examples.  The default implementation returns <code>false</code>.
+	 * 
+	 * @return <code>true</code> if each call to <code>evaluate</code> starts an external process;
+	 * <code>false</code> otherwise.
+	 */
+	public boolean isEvaluatedExternally() {
+		return false;
+	}
+	
 	///
 	/// File I/O
 	///
@@ -339,7 +407,7 @@ public abstract class MRLGrammar {
 		while ((line = in.readLine()) != null) {
 			++lineno;
 			Int index = new Int(0);
-			Production.readOrig = true;
+			Production.readOrig.set(true);
 			Production prod = Production.read(line, index);
 			// there shouldn't be any words linked to AC operators
 			if (prod.isAC())
@@ -115,7 +115,7 @@ public class MRLVocabulary {
 		String[] line;
 		while ((line = in.readLine()) != null) {
 			String token = line[0];
-			Production.readOrig = false;
+			Production.readOrig.set(false);
 			Production prod = Production.read(line, new Int(1)).intern();
 			add(prod, token);
 		}
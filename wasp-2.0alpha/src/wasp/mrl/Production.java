@@ -33,6 +33,7 @@ import wasp.data.VariableAssignment;
 import wasp.main.Config;
 import wasp.util.Arrays;
 import wasp.util.Int;
+import wasp.util.ThreadBool;
 
 /**
  * Production rules of MRL grammars.
@@ -729,7 +730,7 @@ public class Production {
 		return sb.toString();
 	}
 
-	public static boolean readOrig = false;
+	public static final ThreadBool readOrig = new ThreadBool(false);
 	
 	/**
 	 * Returns a production that part of the given line of text represents.  Beginning with the token at 
@@ -761,7 +762,7 @@ public class Production {
 		++i;
 		if (i == line.length || !line[i].equals("({"))
 			return null;
-		Terminal.readWords = false;
+		Terminal.readWords.set(false);
 		ArrayList list = new ArrayList();
 		for (++i; i < line.length && !line[i].equals("})"); ++i) {
 			Symbol sym = Symbol.read(line[i]);
@@ -773,7 +774,7 @@ public class Production {
 			return null;
 		Symbol[] rhs = (Symbol[]) list.toArray(new Symbol[0]);
 		index.val = i+1;
-		return new Production(lhs, rhs, ac, readOrig);
+		return new Production(lhs, rhs, ac, readOrig.get());
 	}
 	
 	/**
@@ -788,7 +789,7 @@ public class Production {
 	 * <code>null</code> if none exists.
 	 */
 	public static Production readParse(String[] line, Int index) {
-		Node.readSyn = false;
+		Node.readSyn.set(false);
 		Node parse = Node.read(line, index);
 		if (parse == null)
 			return null;
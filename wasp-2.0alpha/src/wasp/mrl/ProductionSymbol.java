@@ -115,7 +115,7 @@ public class ProductionSymbol extends Symbol {
 			else
 				sb.append(c);
 		}
-		Production.readOrig = false;
+		Production.readOrig.set(false);
 		return new ProductionSymbol(Production.read(Arrays.tokenize(sb.toString()), new Int(0)));
 	}
 	
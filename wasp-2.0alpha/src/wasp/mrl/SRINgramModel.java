@@ -35,6 +35,7 @@ import java.util.zip.GZIPOutputStream;
 import wasp.data.Example;
 import wasp.data.Examples;
 import wasp.main.Config;
+import wasp.main.StageCache;
 import wasp.util.Arrays;
 import wasp.util.InputStreamWriter;
 import wasp.util.Int;
@@ -152,7 +153,13 @@ public class SRINgramModel extends MRLModel {
 			args[12+(4*(i-2))] = "-gt"+i+"max";
 			args[13+(4*(i-2))] = Short.toString(GT_N_MAX);
 		}
+		StageCache.Key key = new StageCache.Key("srilm-mrl");
+		key.addFile(s.textFile).addFile(s.vocabFile).add(N).add(GT_1_MAX).add(GT_N_MAX);
+		key.addConfig(Config.SRILM_DIR);
+		if (StageCache.restore(key, new File[] {getModelFile()}))
+			return;
 		exec(cmd(s.ngramCountFile, (String[]) Arrays.concat(args, s.ngramCountOptions)));
+		StageCache.store(key, new File[] {getModelFile()});
 		logger.info("The N-gram language model for MRL has been trained");
 	}
 
@@ -33,7 +33,6 @@ import wasp.math.Math;
 import wasp.util.Arrays;
 import wasp.util.Double;
 import wasp.util.Pair;
-import wasp.util.Short;
 import wasp.util.TokenReader;
 
 /**
@@ -258,13 +257,13 @@ public class BasicGapModel extends GapModel {
 	}
 	
 	protected void readBasic(TokenReader in) throws IOException {
-		Terminal.readWords = true;
+		Terminal.readWords.set(true);
 		String[] line;
 		line = in.readLine();  // begin fillers
 		line = in.readLine();
 		while (!(line[0].equals("end") && line[1].equals("fillers"))) {
 			short i = 0;
-			short len = Short.parseShort(line[i++]);
+			short len = (short) in.getInt(i++);
 			Symbol before = Symbol.read(line[i++]);
 			Terminal[] filler = new Terminal[len];
 			for (short j = 0; j < len; ++j)
@@ -272,23 +271,23 @@ public class BasicGapModel extends GapModel {
 			Symbol after = Symbol.read(line[i++]);
 			GapFiller f = new GapFiller(filler, before, after);
 			if (i < line.length && line[i].equals("weight")) {
-				f.scores.tm = Double.parseDouble(line[i+1]);
+				f.scores.tm = in.getDouble(i+1);
 				i += 2;
 			}
 			if (i < line.length && line[i].equals("phr-prob-f|e")) {
-				f.scores.PFE = Double.parseDouble(line[i+1]);
+				f.scores.PFE = in.getDouble(i+1);
 				i += 2;
 			}
 			if (i < line.length && line[i].equals("phr-prob-e|f")) {
-				f.scores.PEF = Double.parseDouble(line[i+1]);
+				f.scores.PEF = in.getDouble(i+1);
 				i += 2;
 			}
 			if (i < line.length && line[i].equals("lex-weight-f|e")) {
-				f.scores.PwFE = Double.parseDouble(line[i+1]);
+				f.scores.PwFE = in.getDouble(i+1);
 				i += 2;
 			}
 			if (i < line.length && line[i].equals("lex-weight-e|f")) {
-				f.scores.PwEF = Double.parseDouble(line[i+1]);
+				f.scores.PwEF = in.getDouble(i+1);
 				i += 2;
 			}
 			addFiller(f);
@@ -297,7 +296,7 @@ public class BasicGapModel extends GapModel {
 		line = in.readLine();  // begin default-weight
 		line = in.readLine();
 		if (!(line[0].equals("end") && line[1].equals("default-weight"))) {
-			defWeight = Double.parseDouble(line[0]);
+			defWeight = in.getDouble(0);
 			line = in.readLine();
 		}
 		line = in.readLine();  // begin word-weights
@@ -307,7 +306,7 @@ public class BasicGapModel extends GapModel {
 		while (!(line[0].equals("end") && line[1].equals("word-weights"))) {
 			int id = Terminal.read(line[0]).getId();
 			if (id < wordWeights.length)
-				wordWeights[id] = Double.parseDouble(line[1]);
+				wordWeights[id] = in.getDouble(1);
 			else
 				// TODO shouldn't have happened
 				logger.warning("Word '"+line[0]+"' skipped: adjust charset settings?");
@@ -19,10 +19,8 @@
  */
 package wasp.nl;
 
-import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.PrintWriter;
 
@@ -76,7 +74,7 @@ public abstract class GapModel {
 	
 	protected static TokenReader getReader() throws IOException {
 		File file = new File(Config.getModelDir(), GAP_MODEL);
-		return new TokenReader(new BufferedReader(new FileReader(file)));
+		return new TokenReader(file);
 	}
 	
 	/**
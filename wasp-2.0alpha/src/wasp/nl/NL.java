@@ -39,7 +39,7 @@ public class NL {
 	public static String useNL = null;
 	
 	public Terminal[] tokenize(String str) {
-		Terminal.readWords = true;
+		Terminal.readWords.set(true);
 		ArrayList list = new ArrayList();
 		list.add(Terminal.boundary());
 		StringTokenizer tokenizer = new StringTokenizer(str);
@@ -70,7 +70,7 @@ public class NL {
 	public Node readSyn(String str) {
 		String[] line = tokenizeSyn(str);
 		Int index = new Int(0);
-		Node.readSyn = true;
+		Node.readSyn.set(true);
 		Node syn = Node.read(line, index);
 		return (index.val==line.length) ? syn : null;
 	}
@@ -19,19 +19,15 @@
  */
 package wasp.nl;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.util.zip.GZIPInputStream;
 
 import wasp.data.Dictionary;
 import wasp.data.Terminal;
 import wasp.main.Config;
+import wasp.main.Metrics;
 import wasp.math.Math;
 import wasp.util.Arrays;
-import wasp.util.Float;
 import wasp.util.Int;
 import wasp.util.Numberer;
 import wasp.util.TokenReader;
@@ -45,6 +41,8 @@ import wasp.util.TokenReader;
  */
 public abstract class NgramModel extends NLModel {
 
+	private static final Metrics.Counter SCORES = Metrics.counter("nl.ngram.score");
+
 	private static class Ngram {
 		public int word;
 		public float prob;
@@ -85,6 +83,41 @@ public abstract class NgramModel extends NLModel {
 		ngrams = new Ngram[0][];
 	}
 	
+	/**
+	 * Per-thread caches of n-gram scores.  Each cache is direct-mapped: an n-gram is packed into a
+	 * <code>long</code> key, which determines the only slot where its score can be stored.  New
+	 * scores simply replace old ones, so the size of each cache is fixed.
+	 */
+	private static class ScoreCache {
+		public long[] keys;
+		public float[] scores;
+		public int mask;
+		/** Vocabulary indices of the n-gram being scored. */
+		public int[] words;
+		public ScoreCache(int size, int maxOrder) {
+			if (size > 0) {
+				keys = new long[size];
+				Arrays.fill(keys, -1L);
+				scores = new float[size];
+				mask = size-1;
+			}
+			words = new int[maxOrder];
+		}
+	}
+	
+	private static final int DEFAULT_CACHE_SIZE = 1<<16;
+	private static final long HASH_MULT = 0x9e3779b97f4a7c15L;
+	private static final Metrics.Counter CACHE_HITS = Metrics.counter("nl.ngram.cache.hits");
+	
+	/** The score caches of the current model; replaced whenever a new model is read. */
+	private ThreadLocal caches;
+	/** The number of entries in each score cache; a power of two, or <code>0</code> for no caching. */
+	private int cacheSize;
+	/** The number of bits for each vocabulary index in a cache key. */
+	private int keyBits;
+	/** The maximum length of n-grams that can be scored. */
+	private int maxOrder;
+	
 	/**
 	 * Returns the score of the given n-gram.
 	 * 
@@ -92,46 +125,128 @@ public abstract class NgramModel extends NLModel {
 	 * @return the score of the given n-gram.
 	 */
 	public float score(Terminal[] T) {
-		return score(T, (short) 0);
+		return score(T, 0, T.length);
 	}
 	
-	private float score(Terminal[] T, short beg) {
-		int w = word(T, beg);
-		return score(T, beg, (short) (beg+1), w);
+	/**
+	 * Returns the score of the n-gram <code>T[from..to-1]</code>.  This method does not allocate any
+	 * memory.
+	 * 
+	 * @param T an array of terminal symbols.
+	 * @param from the start index of the n-gram (inclusive).
+	 * @param to the end index of the n-gram (exclusive).
+	 * @return the score of the given n-gram.
+	 */
+	public float score(Terminal[] T, int from, int to) {
+		ScoreCache cache = (ScoreCache) caches.get();
+		int n = to-from;
+		int[] w = cache.words;
+		for (int i = 0; i < n; ++i)
+			w[i] = word(T[from+i].getId(), i, n);
+		return score(cache, w, n);
 	}
-
-	private int word(Terminal[] T, short i) {
-		if (i == 0)
-			return (T[0].isBoundary()) ? sentBegin : word(T[0]);
-		else if (i < T.length-1)
-			return word(T[i]);
-		else
-			return (T[i].isBoundary()) ? sentEnd : word(T[i]);
+	
+	/**
+	 * Returns the score of the n-gram <code>T[from..to-1]</code>, where each element of <code>T</code>
+	 * is the ID of a terminal symbol.  This method does not allocate any memory.
+	 * 
+	 * @param T an array of terminal symbol IDs.
+	 * @param from the start index of the n-gram (inclusive).
+	 * @param to the end index of the n-gram (exclusive).
+	 * @return the score of the given n-gram.
+	 */
+	public float score(int[] T, int from, int to) {
+		ScoreCache cache = (ScoreCache) caches.get();
+		int n = to-from;
+		int[] w = cache.words;
+		for (int i = 0; i < n; ++i)
+			w[i] = word(T[from+i], i, n);
+		return score(cache, w, n);
 	}
 	
-	private int word(Terminal t) {
-		int tid = t.getId();
+	/**
+	 * Returns the score of the given bigram.  This method does not allocate any memory.
+	 * 
+	 * @param t1 the ID of the first terminal symbol.
+	 * @param t2 the ID of the second terminal symbol.
+	 * @return the score of the given bigram.
+	 */
+	public float score(int t1, int t2) {
+		ScoreCache cache = (ScoreCache) caches.get();
+		int[] w = cache.words;
+		w[0] = word(t1, 0, 2);
+		w[1] = word(t2, 1, 2);
+		return score(cache, w, 2);
+	}
+	
+	/**
+	 * Returns the score of the given trigram.  This method does not allocate any memory.
+	 * 
+	 * @param t1 the ID of the first terminal symbol.
+	 * @param t2 the ID of the second terminal symbol.
+	 * @param t3 the ID of the third terminal symbol.
+	 * @return the score of the given trigram.
+	 */
+	public float score(int t1, int t2, int t3) {
+		ScoreCache cache = (ScoreCache) caches.get();
+		int[] w = cache.words;
+		w[0] = word(t1, 0, 3);
+		w[1] = word(t2, 1, 3);
+		w[2] = word(t3, 2, 3);
+		return score(cache, w, 3);
+	}
+	
+	/**
+	 * Returns the vocabulary index of the <code>i</code>-th word of an n-gram.  Sentence boundaries
+	 * at the beginning and at the end of the n-gram are mapped to the start and end symbols.
+	 */
+	private int word(int tid, int i, int n) {
+		if (tid == Terminal.BOUNDARY) {
+			if (i == 0)
+				return sentBegin;
+			else if (i == n-1)
+				return sentEnd;
+		}
 		return (tid < toVocab.length && toVocab[tid] >= 0) ? toVocab[tid] : unk;
 	}
 	
-	private float score(Terminal[] T, short beg, short cur, int index) {
-		short n = (short) (cur-beg);
-		if (cur == T.length) {
-			//logger.finer(Arrays.toString(T)+":"+beg+" = "+ngrams[n-1][index].prob);
-			return ngrams[n-1][index].prob;
+	private float score(ScoreCache cache, int[] w, int n) {
+		if (Metrics.enabled)
+			SCORES.inc();
+		if (cache.keys == null || n*keyBits >= 63)
+			return backoff(w, n, 0);
+		// the leading 1 bit makes n-grams of different lengths distinct
+		long key = 1;
+		for (int i = 0; i < n; ++i)
+			key = (key<<keyBits) | w[i];
+		int slot = (int) ((key*HASH_MULT) >>> 32) & cache.mask;
+		if (cache.keys[slot] == key) {
+			if (Metrics.enabled)
+				CACHE_HITS.inc();
+			return cache.scores[slot];
 		}
-		int w = word(T, cur);
-		int next = find(w, n, ((index==0) ? 0 : ngrams[n-1][index-1].bound), ngrams[n-1][index].bound);
+		float score = backoff(w, n, 0);
+		cache.keys[slot] = key;
+		cache.scores[slot] = score;
+		return score;
+	}
+	
+	private float backoff(int[] w, int n, int beg) {
+		return backoff(w, n, beg, beg+1, w[beg]);
+	}
+	
+	private float backoff(int[] w, int n, int beg, int cur, int index) {
+		int order = cur-beg;
+		if (cur == n)
+			return ngrams[order-1][index].prob;
+		int next = find(w[cur], (short) order, ((index==0) ? 0 : ngrams[order-1][index-1].bound),
+				ngrams[order-1][index].bound);
 		if (next >= 0)
-			return score(T, beg, (short) (cur+1), next);
-		else if (cur == T.length-1) {
-			//logger.finer(Arrays.toString(T)+":"+beg+" = "+Arrays.toString(T)+":"+(beg+1)+" + "+ngrams[n-1][index].alpha);
-			return score(T, (short) (beg+1)) + ngrams[n-1][index].alpha;
-		}
-		else {
-			//logger.finer(Arrays.toString(T)+":"+beg+" = "+Arrays.toString(T)+":"+(beg+1));
-			return score(T, (short) (beg+1));
-		}
+			return backoff(w, n, beg, cur+1, next);
+		else if (cur == n-1)
+			return backoff(w, n, beg+1) + ngrams[order-1][index].alpha;
+		else
+			return backoff(w, n, beg+1);
 	}
 	
 	private int find(int word, short i, int from, int to) {
@@ -158,45 +273,65 @@ public abstract class NgramModel extends NLModel {
 		return new File(Config.getModelDir(), NGRAM_MODEL);
 	}
 
+	/**
+	 * Returns the terminal symbol ID of the given word, or <code>-1</code> if there is none.  Words
+	 * are looked up in the dictionary by default.  Models whose words are kept in a different symbol
+	 * space should override this method and <code>countTermIds()</code>.
+	 * 
+	 * @param word a word in the n-gram model.
+	 * @return the terminal symbol ID of <code>word</code>; <code>-1</code> if there is none.
+	 */
+	protected int getTermId(String word) {
+		return Dictionary.term(word, true, false);
+	}
+	
+	/**
+	 * Returns an upper bound of the terminal symbol IDs returned by <code>getTermId()</code>.
+	 * 
+	 * @return an upper bound of the terminal symbol IDs.
+	 */
+	protected int countTermIds() {
+		return Dictionary.countTerms();
+	}
+	
 	public void read() throws IOException {
 		File modelFile = new File(Config.getModelDir(), NGRAM_MODEL);
-		TokenReader in = new TokenReader(new BufferedReader(new InputStreamReader(new GZIPInputStream
-				(new FileInputStream(modelFile)))));
+		TokenReader in = new TokenReader(modelFile);
 		vocab = new Numberer();
-		toVocab = new int[Dictionary.countTerms()];
+		toVocab = new int[countTermIds()];
 		Arrays.fill(toVocab, -1);
 		boolean isData = false;
 		short n = 1;
-		String[] line;
-		while ((line = in.readLine()) != null) {
-			if (line.length == 0)
+		while (in.nextLine()) {
+			if (in.countTokens() == 0)
 				continue;
-			if (line[0].equals("\\data\\"))
+			if (in.isToken(0, "\\data\\"))
 				isData = true;
 			else if (!isData)
 				continue;
-			if (line[0].equals("ngram")) {
-				int count = Int.parseInt(line[1].substring(2));
+			if (in.isToken(0, "ngram")) {
+				int count = Int.parseInt(in.getToken(1).substring(2));
 				ngrams = (Ngram[][]) Arrays.append(ngrams, new Ngram[count]);
-			} else if (line[0].matches("\\\\(\\d+)-grams:")) {
+			} else if (in.getToken(0).matches("\\\\(\\d+)-grams:")) {
 				if (n == 1) {
 					for (int i = 0; i < ngrams[0].length; ++i) {
-						line = in.readLine();
-						vocab.addObj(line[1]);
-						if (line[1].equals(unkStr))
+						in.nextLine();
+						String word = in.getToken(1);
+						vocab.addObj(word);
+						if (word.equals(unkStr))
 							unk = i;
-						else if (line[1].equals(sentBeginStr))
+						else if (word.equals(sentBeginStr))
 							sentBegin = i;
-						else if (line[1].equals(sentEndStr))
+						else if (word.equals(sentEndStr))
 							sentEnd = i;
 						else {
-							int id = Dictionary.term(line[1], true, false);
+							int id = getTermId(word);
 							if (id >= 0)
 								toVocab[id] = i;
 						}
-						float prob = baseE(Float.parseFloat(line[0]));
-						if (line.length == 3) {
-							float alpha = baseE(Float.parseFloat(line[2]));
+						float prob = baseE(in.getFloat(0));
+						if (in.countTokens() == 3) {
+							float alpha = baseE(in.getFloat(2));
 							ngrams[0][i] = new Ngram(prob, alpha);
 						} else
 							ngrams[0][i] = new Ngram(prob);
@@ -206,13 +341,13 @@ public abstract class NgramModel extends NLModel {
 					int[] lastContext = new int[n-1];
 					int[] context = new int[n-1];
 					for (int i = 0; i < ngrams[n-1].length; ++i) {
-						line = in.readLine();
+						in.nextLine();
 						for (short j = 0; j < n-1; ++j)
-							context[j] = vocab.getId(line[j+1], false);
-						int word = vocab.getId(line[n], false);
-						float prob = baseE(Float.parseFloat(line[0]));
-						if (n < ngrams.length && line.length == n+2) {
-							float alpha = baseE(Float.parseFloat(line[n+1]));
+							context[j] = vocab.getId(in.getToken(j+1), false);
+						int word = vocab.getId(in.getToken(n), false);
+						float prob = baseE(in.getFloat(0));
+						if (n < ngrams.length && in.countTokens() == n+2) {
+							float alpha = baseE(in.getFloat(n+1));
 							ngrams[n-1][i] = new Ngram(word, prob, alpha);
 						} else
 							ngrams[n-1][i] = new Ngram(word, prob);
@@ -233,6 +368,22 @@ public abstract class NgramModel extends NLModel {
 			}
 		}
 		in.close();
+		initCaches();
+	}
+	
+	private void initCaches() {
+		String size = Config.get(Config.NGRAM_CACHE_SIZE);
+		int n = (size==null) ? DEFAULT_CACHE_SIZE : Int.parseInt(size);
+		cacheSize = (n<=0) ? 0 : Integer.highestOneBit(n);
+		if (cacheSize < n)
+			cacheSize <<= 1;
+		keyBits = 32-Integer.numberOfLeadingZeros(ngrams[0].length);
+		maxOrder = ngrams.length;
+		caches = new ThreadLocal() {
+			protected Object initialValue() {
+				return new ScoreCache(cacheSize, maxOrder);
+			}
+		};
 	}
 
 	private static float baseE(float x) {
@@ -34,6 +34,7 @@ import java.util.zip.GZIPOutputStream;
 import wasp.data.Example;
 import wasp.data.Examples;
 import wasp.main.Config;
+import wasp.main.StageCache;
 import wasp.util.Arrays;
 import wasp.util.InputStreamWriter;
 import wasp.util.Int;
@@ -125,7 +126,13 @@ public class SRINgramModel extends NgramModel {
 			args[12+(4*(i-2))] = "-gt"+i+"max";
 			args[13+(4*(i-2))] = Short.toString(GT_N_MAX);
 		}
+		StageCache.Key key = new StageCache.Key("srilm-nl");
+		key.addFile(s.textFile).addFile(s.vocabFile).add(N).add(GT_1_MAX).add(GT_N_MAX);
+		key.addConfig(Config.SRILM_DIR);
+		if (StageCache.restore(key, new File[] {getModelFile()}))
+			return;
 		exec(cmd(s.ngramCountFile, (String[]) Arrays.concat(args, s.ngramCountOptions)));
+		StageCache.store(key, new File[] {getModelFile()});
 		logger.info("The N-gram language model for NL has been trained");
 	}
 
@@ -0,0 +1,397 @@
+/*
+ * Copyright 2006, 2007 Yuk Wah Wong.
+ *
+ * This file is part of the WASP distribution.
+ *
+ * WASP is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * WASP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with WASP; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package wasp.pharaoh;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+import wasp.data.Terminal;
+import wasp.main.Config;
+import wasp.main.Context;
+import wasp.math.Math;
+import wasp.nl.NgramModel;
+import wasp.util.Arrays;
+import wasp.util.Double;
+import wasp.util.Int;
+
+/**
+ * A stack-based phrase decoder, which replaces the Pharaoh decoder.  Like Pharaoh, it translates a
+ * source sentence from left to right in the target language, one phrase at a time.  Partial
+ * translations that cover the same number of source words are kept in the same stack.  Partial
+ * translations that cannot be told apart by the rest of the search are recombined, and each stack is
+ * pruned by a threshold relative to the best partial translation in it, and by a maximum stack size.
+ * Partial translations are compared by their scores plus an estimate of the future cost of
+ * translating the rest of the sentence.
+ * <p>
+ * The search parameters are set in the configuration file (via the keys
+ * <code>Config.PHARAOH_DISTORTION_LIMIT</code>, <code>Config.PHARAOH_STACK_SIZE</code> and
+ * <code>Config.PHARAOH_BEAM_THRESHOLD</code>).  Their defaults are the same as Pharaoh's.  Sentences
+ * in a batch are decoded concurrently, in the fork/join pool shared by all contexts.
+ * <p>
+ * Feature weights tuned by minimum error rate training (e.g. in
+ * <code>wasp.pharaoh.generate.PhraseTranslationModel</code>) are still tuned with the Pharaoh binary,
+ * so they may not be optimal for this decoder.
+ *
+ * @author ywwong
+ *
+ */
+public class PhraseDecoder {
+
+	private static final int DEFAULT_DISTORTION_LIMIT = -1;
+	private static final int DEFAULT_STACK_SIZE = 100;
+	private static final double DEFAULT_BEAM_THRESHOLD = 0.00001;
+
+	/**
+	 * The best translation of a source sentence.
+	 */
+	public static class Translation {
+		/** The target sentence. */
+		public String[] tokens;
+		/** The model score of the target sentence. */
+		public double score;
+		/** The phrases used, in the format of the Pharaoh trace: each target phrase is followed by
+		 * <code>|score|from|to|</code>, where <code>from</code> and <code>to</code> are the (inclusive)
+		 * indices of the source phrase. */
+		public String trace;
+	}
+
+	private static class Hypothesis {
+		public Hypothesis back;
+		public PhraseTable.Phrase phrase;
+		/** The source phrase covered by the last target phrase. */
+		public int from;
+		public int to;
+		/** The source words covered so far. */
+		public boolean[] cover;
+		public int ncover;
+		/** The last <code>N-1</code> target words, with the sentence boundary in front if there are
+		 * fewer. */
+		public int[] context;
+		public double score;
+		public double future;
+		private int hash;
+		public void setHash() {
+			hash = 1;
+			hash = 31*hash + Arrays.hashCode(cover);
+			hash = 31*hash + Arrays.hashCode(context);
+			hash = 31*hash + to;
+		}
+		/** Two hypotheses are equal if they lead to the same expansions. */
+		public boolean equals(Object o) {
+			if (o == this)
+				return true;
+			if (o instanceof Hypothesis) {
+				Hypothesis h = (Hypothesis) o;
+				return hash == h.hash && to == h.to && Arrays.equal(cover, h.cover)
+				&& Arrays.equal(context, h.context);
+			}
+			return false;
+		}
+		public int hashCode() {
+			return hash;
+		}
+	}
+
+	private static class HypothesisComparator implements Comparator {
+		public int compare(Object o1, Object o2) {
+			Hypothesis h1 = (Hypothesis) o1;
+			Hypothesis h2 = (Hypothesis) o2;
+			double s1 = h1.score+h1.future;
+			double s2 = h2.score+h2.future;
+			return (s1 > s2) ? -1 : (s1 < s2) ? 1 : 0;
+		}
+	}
+
+	private static final HypothesisComparator comp = new HypothesisComparator();
+
+	private PhraseTable table;
+	private NgramModel lm;
+	private int N;
+	private int distLimit;
+	private int stackSize;
+	private double logThreshold;
+	/** The shared pool of threads for decoding a batch concurrently; <code>null</code> if sentences
+	 * are decoded one by one. */
+	private ForkJoinPool pool;
+
+	/**
+	 * Creates a decoder based on the given phrase table and language model.
+	 *
+	 * @param table a phrase table.
+	 * @param lm an n-gram language model for the target language.
+	 */
+	public PhraseDecoder(PhraseTable table, NgramModel lm) {
+		this.table = table;
+		this.lm = lm;
+		N = Int.parseInt(Config.get(Config.NGRAM_N));
+		String limit = Config.get(Config.PHARAOH_DISTORTION_LIMIT);
+		distLimit = (limit==null) ? DEFAULT_DISTORTION_LIMIT : Int.parseInt(limit);
+		String size = Config.get(Config.PHARAOH_STACK_SIZE);
+		stackSize = (size==null) ? DEFAULT_STACK_SIZE : Int.parseInt(size);
+		String threshold = Config.get(Config.PHARAOH_BEAM_THRESHOLD);
+		logThreshold = Math.log((threshold==null) ? DEFAULT_BEAM_THRESHOLD : Double.parseDouble(threshold));
+		String threads = Config.get(Config.PHARAOH_THREADS);
+		int nthreads = (threads==null) ? Runtime.getRuntime().availableProcessors() : Int.parseInt(threads);
+		pool = (nthreads > 1) ? Context.getSharedPool() : null;
+	}
+
+	/**
+	 * Translates the given source sentences.
+	 *
+	 * @param src the source sentences.
+	 * @return the best translation of each source sentence; <code>null</code> for sentences that
+	 * cannot be translated.
+	 */
+	public Translation[] decode(final String[][] src) {
+		final Translation[] tr = new Translation[src.length];
+		if (pool == null || src.length == 1) {
+			for (int i = 0; i < src.length; ++i)
+				tr[i] = decode(src[i]);
+			return tr;
+		}
+		pool.invoke(new RecursiveAction() {
+			protected void compute() {
+				ForkJoinTask[] tasks = new ForkJoinTask[src.length];
+				for (int i = 0; i < src.length; ++i) {
+					final int j = i;
+					tasks[i] = new RecursiveAction() {
+						protected void compute() {
+							tr[j] = decode(src[j]);
+						}
+					};
+				}
+				ForkJoinTask.invokeAll(tasks);
+			}
+		});
+		return tr;
+	}
+
+	/**
+	 * Translates the given source sentence.
+	 *
+	 * @param src a source sentence.
+	 * @return the best translation of <code>src</code>; <code>null</code> if it cannot be translated.
+	 */
+	public Translation decode(String[] src) {
+		int n = src.length;
+		PhraseTable.Phrase[][][] options = getOptions(src);
+		double[][] future = getFutureCosts(options, n);
+		HashMap[] stacks = new HashMap[n+1];
+		for (int i = 0; i <= n; ++i)
+			stacks[i] = new HashMap();
+		Hypothesis init = new Hypothesis();
+		init.cover = new boolean[n];
+		init.context = new int[] {Terminal.BOUNDARY};
+		init.future = future[0][n];
+		init.setHash();
+		stacks[0].put(init, init);
+		for (int k = 0; k < n; ++k) {
+			ArrayList stack = prune(stacks[k]);
+			for (int i = 0; i < stack.size(); ++i) {
+				Hypothesis hyp = (Hypothesis) stack.get(i);
+				for (int from = 0; from < n; ++from) {
+					if (hyp.cover[from])
+						continue;
+					if (distLimit >= 0 && Math.abs(from-hyp.to) > distLimit)
+						continue;
+					for (int to = from+1; to <= n && !hyp.cover[to-1] && to-from <= options[from].length;
+					++to) {
+						PhraseTable.Phrase[] opts = options[from][to-from-1];
+						if (opts == null)
+							continue;
+						for (int j = 0; j < opts.length; ++j)
+							add(stacks, expand(hyp, opts[j], from, to, future));
+					}
+				}
+			}
+		}
+		Hypothesis best = null;
+		for (Iterator it = stacks[n].values().iterator(); it.hasNext();) {
+			Hypothesis hyp = (Hypothesis) it.next();
+			if (best == null || hyp.score > best.score)
+				best = hyp;
+		}
+		return (best==null) ? null : getTranslation(best);
+	}
+
+	/** Returns the translation options of each source phrase, indexed by start index and length. */
+	private PhraseTable.Phrase[][][] getOptions(String[] src) {
+		int n = src.length;
+		PhraseTable.Phrase[][][] options = new PhraseTable.Phrase[n][][];
+		for (int i = 0; i < n; ++i) {
+			options[i] = new PhraseTable.Phrase[Math.max(1, Math.min(table.getMaxLength(), n-i))][];
+			for (int j = 0; j < options[i].length; ++j)
+				options[i][j] = table.get(src, i, i+j+1);
+			if (options[i][0] == null)
+				options[i][0] = new PhraseTable.Phrase[] {table.unknown(src[i])};
+		}
+		return options;
+	}
+
+	/**
+	 * Returns the estimated future cost of translating each source span.  The cost of a span is
+	 * that of its best translation option, or of the best way to split it into smaller spans.
+	 * Target phrases are scored by the language model without any context.
+	 */
+	private double[][] getFutureCosts(PhraseTable.Phrase[][][] options, int n) {
+		double[][] future = new double[n+1][n+1];
+		for (int len = 1; len <= n; ++len)
+			for (int i = 0; i+len <= n; ++i) {
+				int j = i+len;
+				double best = Double.NEGATIVE_INFINITY;
+				if (len <= options[i].length && options[i][len-1] != null) {
+					PhraseTable.Phrase[] opts = options[i][len-1];
+					for (int k = 0; k < opts.length; ++k) {
+						double score = opts[k].score + table.weightL*scoreLM(null, opts[k].words);
+						if (score > best)
+							best = score;
+					}
+				}
+				for (int k = i+1; k < j; ++k)
+					if (future[i][k]+future[k][j] > best)
+						best = future[i][k]+future[k][j];
+				future[i][j] = best;
+			}
+		return future;
+	}
+
+	/**
+	 * Returns the language model score of the given target words following the given context.  If
+	 * <code>context</code> is <code>null</code>, then the first words are scored with shorter
+	 * histories.
+	 */
+	private double scoreLM(int[] context, int[] words) {
+		int[] seq = (context==null) ? words : Arrays.concat(context, words);
+		int beg = (context==null) ? 0 : context.length;
+		double score = 0;
+		for (int i = beg; i < seq.length; ++i)
+			score += lm.score(seq, Math.max(0, i-N+1), i+1);
+		return score;
+	}
+
+	private Hypothesis expand(Hypothesis hyp, PhraseTable.Phrase phrase, int from, int to,
+			double[][] future) {
+		Hypothesis h = new Hypothesis();
+		h.back = hyp;
+		h.phrase = phrase;
+		h.from = from;
+		h.to = to;
+		h.cover = hyp.cover.clone();
+		Arrays.fill(h.cover, from, to, true);
+		h.ncover = hyp.ncover+to-from;
+		h.score = hyp.score + phrase.score - table.weightD*Math.abs(from-hyp.to)
+		+ table.weightL*scoreLM(hyp.context, phrase.words);
+		int[] seq = Arrays.concat(hyp.context, phrase.words);
+		if (h.ncover == h.cover.length) {
+			// end of sentence
+			seq = Arrays.append(seq, Terminal.BOUNDARY);
+			h.score += table.weightL*lm.score(seq, Math.max(0, seq.length-N), seq.length);
+			h.context = new int[0];
+		} else {
+			int len = Math.min(seq.length, N-1);
+			h.context = new int[len];
+			System.arraycopy(seq, seq.length-len, h.context, 0, len);
+		}
+		for (int i = 0; i < h.cover.length;) {
+			if (h.cover[i])
+				++i;
+			else {
+				int j = Arrays.indexOf(h.cover, true, i);
+				if (j < 0)
+					j = h.cover.length;
+				h.future += future[i][j];
+				i = j;
+			}
+		}
+		h.setHash();
+		return h;
+	}
+
+	/** Adds the given hypothesis to its stack, recombining it with an equivalent hypothesis if
+	 * there is one.  A stack that grows to twice its maximum size is pruned right away, so stacks
+	 * that are not yet expanded stay bounded. */
+	private void add(HashMap[] stacks, Hypothesis hyp) {
+		HashMap stack = stacks[hyp.ncover];
+		Hypothesis old = (Hypothesis) stack.get(hyp);
+		if (old == null || hyp.score > old.score) {
+			// an equal key is not replaced by put(), so drop the worse hypothesis first.
+			if (old != null)
+				stack.remove(old);
+			stack.put(hyp, hyp);
+			if (stack.size() > 2*stackSize) {
+				ArrayList kept = prune(stack);
+				stack.clear();
+				for (int i = 0; i < kept.size(); ++i)
+					stack.put(kept.get(i), kept.get(i));
+			}
+		}
+	}
+
+	/** Returns the hypotheses in the given stack that survive threshold and histogram pruning, best
+	 * first. */
+	private ArrayList prune(HashMap stack) {
+		ArrayList list = new ArrayList(stack.values());
+		if (list.isEmpty())
+			return list;
+		Collections.sort(list, comp);
+		Hypothesis best = (Hypothesis) list.get(0);
+		double min = best.score+best.future+logThreshold;
+		int n = 0;
+		while (n < list.size() && n < stackSize) {
+			Hypothesis hyp = (Hypothesis) list.get(n);
+			if (hyp.score+hyp.future < min)
+				break;
+			++n;
+		}
+		return new ArrayList(list.subList(0, n));
+	}
+
+	private static Translation getTranslation(Hypothesis hyp) {
+		Translation tr = new Translation();
+		tr.score = hyp.score;
+		ArrayList hyps = new ArrayList();
+		for (; hyp.back != null; hyp = hyp.back)
+			hyps.add(hyp);
+		Collections.reverse(hyps);
+		ArrayList tokens = new ArrayList();
+		StringBuffer trace = new StringBuffer();
+		for (int i = 0; i < hyps.size(); ++i) {
+			Hypothesis h = (Hypothesis) hyps.get(i);
+			for (int j = 0; j < h.phrase.tokens.length; ++j) {
+				tokens.add(h.phrase.tokens[j]);
+				trace.append(h.phrase.tokens[j]);
+				trace.append(' ');
+			}
+			double score = h.score-h.back.score;
+			trace.append('|').append(score).append('|').append(h.from).append('|').append(h.to-1);
+			trace.append("| ");
+		}
+		tr.tokens = (String[]) tokens.toArray(new String[0]);
+		tr.trace = trace.toString();
+		return tr;
+	}
+
+}
@@ -0,0 +1,283 @@
+/*
+ * Copyright 2006, 2007 Yuk Wah Wong.
+ *
+ * This file is part of the WASP distribution.
+ *
+ * WASP is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * WASP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with WASP; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package wasp.pharaoh;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import wasp.data.Dictionary;
+import wasp.math.Math;
+import wasp.util.Arrays;
+import wasp.util.Double;
+import wasp.util.Int;
+import wasp.util.SymbolTable;
+import wasp.util.TokenReader;
+
+/**
+ * A phrase table produced by the Pharaoh training scripts, together with the model weights given in
+ * the Pharaoh configuration file (<code>pharaoh.ini</code>).  Each line of the phrase table is of
+ * the form <code>f ||| e ||| p1 ... pn</code>, where <code>f</code> is a source phrase,
+ * <code>e</code> is a target phrase, and <code>p1</code> to <code>pn</code> are the translation
+ * probabilities.  The translation options of each source phrase are scored as in Pharaoh, and only
+ * the best options are kept (via the <code>ttable-limit</code> setting).
+ * <p>
+ * The <code>lmodel-file</code> setting is ignored.  The language model is supplied separately to
+ * the decoder.
+ *
+ * @author ywwong
+ *
+ */
+public class PhraseTable {
+
+	private static Logger logger = Logger.getLogger(PhraseTable.class.getName());
+
+	/** The probability given to the translation of an unknown source word into itself. */
+	private static final double UNKNOWN_PROB = 1e-10;
+	/** The probability that replaces zero probabilities in the phrase table. */
+	private static final double MIN_PROB = 1e-20;
+
+	/**
+	 * A translation option for a source phrase.
+	 */
+	public static class Phrase {
+		/** The target phrase. */
+		public String[] tokens;
+		/** The symbol IDs of the target phrase, in the symbol space of the phrase table. */
+		public int[] words;
+		/** The weighted translation model score of this option, including the word penalty. */
+		public double score;
+		public Phrase(String[] tokens, int[] words, double score) {
+			this.tokens = tokens;
+			this.words = words;
+			this.score = score;
+		}
+	}
+
+	private static class PhraseComparator implements Comparator {
+		public int compare(Object o1, Object o2) {
+			double s1 = ((Phrase) o1).score;
+			double s2 = ((Phrase) o2).score;
+			return (s1 > s2) ? -1 : (s1 < s2) ? 1 : 0;
+		}
+	}
+
+	/** The weight of the distortion model. */
+	public double weightD;
+	/** The weight of the language model. */
+	public double weightL;
+	/** The weights of the translation probabilities. */
+	public double[] weightT;
+	/** The weight of the word penalty. */
+	public double weightW;
+	/** The maximum number of translation options for each source phrase; <code>0</code> for no
+	 * limit. */
+	public int limit;
+
+	/** Source phrases (as strings) to arrays of translation options, sorted by score. */
+	private HashMap table;
+	private int maxLength;
+	/** The symbol table for target tokens; <code>null</code> if target tokens are NL words in the
+	 * dictionary. */
+	private SymbolTable symbols;
+
+	/**
+	 * Reads the phrase table and the model weights specified in the given Pharaoh configuration file.
+	 * Target tokens are added to the dictionary as NL words.
+	 *
+	 * @param iniFile the Pharaoh configuration file.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	public PhraseTable(File iniFile) throws IOException {
+		this(iniFile, null);
+	}
+
+	/**
+	 * Reads the phrase table and the model weights specified in the given Pharaoh configuration file.
+	 * Target tokens are added to the given symbol table instead of the dictionary, so that target
+	 * symbols that are not NL words (e.g.&nbsp;MRL tokens) are kept apart.
+	 *
+	 * @param iniFile the Pharaoh configuration file.
+	 * @param symbols the symbol table for target tokens; <code>null</code> if target tokens are NL
+	 * words.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	public PhraseTable(File iniFile, SymbolTable symbols) throws IOException {
+		this.symbols = symbols;
+		HashMap ini = readIni(iniFile);
+		weightD = getWeight(ini, "weight-d");
+		weightL = getWeight(ini, "weight-l");
+		weightW = getWeight(ini, "weight-w");
+		ArrayList t = (ArrayList) ini.get("weight-t");
+		weightT = new double[(t==null) ? 0 : t.size()];
+		for (int i = 0; i < weightT.length; ++i)
+			weightT[i] = Double.parseDouble(((String[]) t.get(i))[0]);
+		ArrayList l = (ArrayList) ini.get("ttable-limit");
+		limit = (l==null) ? 0 : Int.parseInt(((String[]) l.get(0))[0]);
+		ArrayList f = (ArrayList) ini.get("ttable-file");
+		if (f == null)
+			throw new IOException("No phrase table given in "+iniFile);
+		// Pharaoh gives the filename alone; later versions put the factors before it
+		String[] line = (String[]) f.get(0);
+		File tableFile = new File(line[line.length-1]);
+		if (!tableFile.isAbsolute())
+			tableFile = new File(iniFile.getParentFile(), line[line.length-1]);
+		readTable(tableFile);
+	}
+
+	private static HashMap readIni(File iniFile) throws IOException {
+		HashMap ini = new HashMap();
+		TokenReader in = new TokenReader(iniFile);
+		ArrayList values = null;
+		String[] line;
+		while ((line = in.readLine()) != null) {
+			if (line.length == 0 || line[0].startsWith("#"))
+				continue;
+			if (line[0].startsWith("[") && line[0].endsWith("]")) {
+				values = new ArrayList();
+				ini.put(line[0].substring(1, line[0].length()-1), values);
+			} else if (values != null)
+				values.add(line);
+		}
+		in.close();
+		return ini;
+	}
+
+	private static double getWeight(HashMap ini, String key) {
+		ArrayList values = (ArrayList) ini.get(key);
+		return (values==null) ? 0 : Double.parseDouble(((String[]) values.get(0))[0]);
+	}
+
+	private void readTable(File tableFile) throws IOException {
+		logger.info("Reading the phrase table "+tableFile);
+		table = new HashMap();
+		maxLength = 0;
+		TokenReader in = new TokenReader(tableFile);
+		String[] line;
+		while ((line = in.readLine()) != null) {
+			int sep1 = indexOfSeparator(line, 0);
+			int sep2 = indexOfSeparator(line, sep1+1);
+			if (sep1 < 0 || sep2 < 0)
+				continue;
+			String[] tokens = new String[sep2-sep1-1];
+			System.arraycopy(line, sep1+1, tokens, 0, tokens.length);
+			double[] probs = new double[line.length-sep2-1];
+			for (int i = 0; i < probs.length; ++i)
+				probs[i] = Double.parseDouble(line[sep2+1+i]);
+			String key = key(line, 0, sep1);
+			ArrayList options = (ArrayList) table.get(key);
+			if (options == null) {
+				options = new ArrayList();
+				table.put(key, options);
+			}
+			options.add(new Phrase(tokens, words(tokens), score(tokens.length, probs)));
+			if (sep1 > maxLength)
+				maxLength = sep1;
+		}
+		in.close();
+		PhraseComparator comp = new PhraseComparator();
+		for (Iterator it = table.entrySet().iterator(); it.hasNext();) {
+			Map.Entry entry = (Map.Entry) it.next();
+			ArrayList options = (ArrayList) entry.getValue();
+			Collections.sort(options, comp);
+			int n = (limit > 0 && options.size() > limit) ? limit : options.size();
+			Phrase[] array = new Phrase[n];
+			for (int i = 0; i < n; ++i)
+				array[i] = (Phrase) options.get(i);
+			entry.setValue(array);
+		}
+		logger.info(table.size()+" source phrases read");
+	}
+
+	private static int indexOfSeparator(String[] line, int from) {
+		for (int i = from; i < line.length; ++i)
+			if (line[i].equals("|||"))
+				return i;
+		return -1;
+	}
+
+	private static String key(String[] tokens, int from, int to) {
+		StringBuffer sb = new StringBuffer();
+		for (int i = from; i < to; ++i) {
+			if (i > from)
+				sb.append(' ');
+			sb.append(tokens[i]);
+		}
+		return sb.toString();
+	}
+
+	private int[] words(String[] tokens) {
+		int[] words = new int[tokens.length];
+		for (int i = 0; i < tokens.length; ++i)
+			words[i] = (symbols==null) ? Dictionary.term(tokens[i], true) : symbols.getId(tokens[i], 0);
+		return words;
+	}
+
+	private double score(int length, double[] probs) {
+		double score = -weightW*length;
+		for (int i = 0; i < probs.length && i < weightT.length; ++i)
+			score += weightT[i]*Math.log(Math.max(probs[i], MIN_PROB));
+		return score;
+	}
+
+	/**
+	 * Returns the maximum length of source phrases in this table.
+	 *
+	 * @return the maximum length of source phrases in this table.
+	 */
+	public int getMaxLength() {
+		return maxLength;
+	}
+
+	/**
+	 * Returns the translation options for the source phrase <code>src[from..to-1]</code>, sorted by
+	 * score.
+	 *
+	 * @param src a source sentence.
+	 * @param from the start index of the source phrase (inclusive).
+	 * @param to the end index of the source phrase (exclusive).
+	 * @return the translation options for the given source phrase; <code>null</code> if there are
+	 * none.
+	 */
+	public Phrase[] get(String[] src, int from, int to) {
+		return (Phrase[]) table.get(key(src, from, to));
+	}
+
+	/**
+	 * Returns the translation option that copies an unknown source word to the output, as Pharaoh
+	 * does.
+	 *
+	 * @param token an unknown source word.
+	 * @return the translation option that copies <code>token</code> to the output.
+	 */
+	public Phrase unknown(String token) {
+		double[] probs = new double[weightT.length];
+		Arrays.fill(probs, UNKNOWN_PROB);
+		String[] tokens = {token};
+		return new Phrase(tokens, words(tokens), score(1, probs));
+	}
+
+}
@@ -19,34 +19,21 @@
  */
 package wasp.pharaoh.generate;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Iterator;
-import java.util.logging.Logger;
 
 import wasp.data.Meaning;
 import wasp.main.Config;
-import wasp.main.Parse;
 import wasp.main.Generator;
+import wasp.main.Parse;
 import wasp.mrl.Production;
-import wasp.util.Arrays;
+import wasp.pharaoh.PhraseDecoder;
 import wasp.util.Bool;
-import wasp.util.Double;
-import wasp.util.InputStreamWriter;
-import wasp.util.TokenReader;
 
 /**
- * A tactical generator based on Pharaoh.  It uses the Pharaoh decoder, which can be found in
+ * A tactical generator based on Pharaoh.  It uses an in-process phrase decoder in place of the Pharaoh
+ * decoder, which can be found in
  * <a href="http://www.isi.edu/publications/licensed-sw/pharaoh/" 
  * target="_new">http://www.isi.edu/publications/licensed-sw/pharaoh/</a>. 
  * 
@@ -55,33 +42,10 @@ import wasp.util.TokenReader;
  */
 public class PharaohGenerator extends Generator {
 
-	private static Logger logger = Logger.getLogger(PharaohGenerator.class.getName());
-	
 	/** Indicates if the generator accepts linearized MR parse-trees as input (a.k.a.&nbsp;the
 	 * Pharaoh++ model). */
 	private boolean USE_MRL_GRAMMAR;
 	
-	private static class Settings {
-		public String[] options = {
-				"-trace",
-				"-verbose", "2"
-		};
-		public File pharaohFile;
-		public File srcSentFile;
-		public File tarSentFile;
-		public Settings() {
-			pharaohFile = new File(Config.get(Config.PHARAOH_EXEC));
-		}
-		public void createTempFiles() throws IOException {
-			String prefix = "pharaoh";
-			srcSentFile = File.createTempFile(prefix, ".src");
-			tarSentFile = File.createTempFile(prefix, ".tar");
-			srcSentFile.deleteOnExit();
-			tarSentFile.deleteOnExit();
-		};
-	}
-	
-	private Settings s;
 	private PhraseTranslationModel tm;
 	
 	/**
@@ -92,8 +56,6 @@ public class PharaohGenerator extends Generator {
 	 */
 	public PharaohGenerator(PhraseTranslationModel tm) throws IOException {
 		USE_MRL_GRAMMAR = Bool.parseBool(Config.get(Config.PHARAOH_USE_MRL_GRAMMAR));
-		s = new Settings();
-		s.createTempFiles();
 		this.tm = tm;
 	}
 	
@@ -120,87 +82,36 @@ public class PharaohGenerator extends Generator {
 	}
 	
 	public Iterator[] generate(Meaning[] F) throws IOException {
-		writePharaohInput(F);
-		runPharaoh();
-		return readPharaohOutput();
-	}
-
-	private void writePharaohInput(Meaning[] F) throws IOException {
-		PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(s.srcSentFile)));
+		String[][] src = new String[F.length][];
 		for (int i = 0; i < F.length; ++i) {
+			ArrayList tokens = new ArrayList();
 			if (USE_MRL_GRAMMAR)
 				for (short j = 0; j < F[i].lprods.length; ++j) {
 					Production prod = F[i].lprods[j];
-					if (!prod.isUnary() && !Config.getMRLGrammar().isZeroFertility(prod)) {
-						out.print(PharaohModel.token(F[i].lprods[j]));
-						out.print(' ');
-					}
+					if (!prod.isUnary() && !Config.getMRLGrammar().isZeroFertility(prod))
+						tokens.add(PharaohModel.token(F[i].lprods[j]));
 				}
 			else
-				for (short j = 0; j < F[i].syms.length; ++j) {
-					out.print(PharaohModel.token(F[i].syms[j]));
-					out.print(' ');
-				}
-			out.println();
+				for (short j = 0; j < F[i].syms.length; ++j)
+					tokens.add(PharaohModel.token(F[i].syms[j]));
+			src[i] = (String[]) tokens.toArray(new String[0]);
 		}
-		out.close();
-	}
-	
-	private void runPharaoh() throws IOException {
-		String[] cmdarray = new String[3];
-		cmdarray[0] = s.pharaohFile.getPath();
-		cmdarray[1] = "-config";
-		cmdarray[2] = tm.getIniFile().getPath();
-		cmdarray = (String[]) Arrays.concat(cmdarray, s.options);
-		exec(cmdarray, s.srcSentFile, s.tarSentFile);
-	}
-	
-	private static void exec(String[] cmdarray, File inFile, File outFile) throws IOException {
-		try {
-			Process proc = Runtime.getRuntime().exec(cmdarray);
-			BufferedInputStream in = new BufferedInputStream(new FileInputStream(inFile));
-			BufferedOutputStream out = new BufferedOutputStream(new FileOutputStream(outFile));
-			new InputStreamWriter(in, proc.getOutputStream(), true, true).start();
-			Thread outThread = new InputStreamWriter(proc.getInputStream(), out, false, true);
-			Thread errThread = new InputStreamWriter(proc.getErrorStream(), System.err);
-			outThread.start();
-			errThread.start();
-			int exitVal = proc.waitFor();
-			if (exitVal != 0) {
-				logger.severe(cmdarray[0]+" terminates abnormally");
-				throw new RuntimeException();
-			}
-			outThread.join();
-			errThread.join();
-		} catch (InterruptedException e) {}
-	}
-	
-	private Iterator[] readPharaohOutput() throws IOException {
-		TokenReader in = new TokenReader(new BufferedReader(new FileReader(s.tarSentFile)));
-		ArrayList list = new ArrayList();
-		String[] line;
-		while ((line = in.readLine()) != null) {
-			if (line.length > 0 && line[0].equals("BEST:")) {
+		PhraseDecoder.Translation[] tr = tm.getDecoder().decode(src);
+		Iterator[] it = new Iterator[F.length];
+		for (int i = 0; i < F.length; ++i) {
+			Parse gen = null;
+			if (tr[i] != null) {
 				StringBuffer nl = new StringBuffer();
-				StringBuffer comment = new StringBuffer();
-				// BEST: this is |0.014086|0|1| a |0.188447|2|2| house |5.85786e-08|3|3| -22.5844
-				for (short i = 1; i < line.length-1; ++i) {
-					if (!(line[i].startsWith("|") && line[i].endsWith("|"))) {
-						nl.append(line[i]);
-						nl.append(' ');
-					}
-					comment.append(line[i]);
-					comment.append(' ');
+				for (int j = 0; j < tr[i].tokens.length; ++j) {
+					nl.append(tr[i].tokens[j]);
+					nl.append(' ');
 				}
-				comment.append('\n');
-				double score = Double.parseDouble(line[line.length-1]);
-				Parse gen = new Parse(nl.toString(), score);
-				gen.comment = comment.toString();
-				list.add(new GenIterator(gen));
+				gen = new Parse(nl.toString(), tr[i].score);
+				gen.comment = tr[i].trace+"\n";
 			}
+			it[i] = new GenIterator(gen);
 		}
-		in.close();
-		return (Iterator[]) list.toArray(new Iterator[0]);
+		return it;
 	}
 	
 }
@@ -21,7 +21,6 @@ package wasp.pharaoh.generate;
 
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.Iterator;
@@ -36,6 +35,8 @@ import wasp.main.Config;
 import wasp.main.TranslationModel;
 import wasp.mrl.Production;
 import wasp.nl.NgramModel;
+import wasp.pharaoh.PhraseDecoder;
+import wasp.pharaoh.PhraseTable;
 import wasp.scfg.Rule;
 import wasp.scfg.SCFG;
 import wasp.util.Arrays;
@@ -133,6 +134,8 @@ public class PhraseTranslationModel extends TranslationModel {
 
 	private Settings s;
 	private NgramModel lm;
+	private PhraseTable table;
+	private PhraseDecoder decoder;
 	
 	/**
 	 * Constructs a new f-to-e phrase translation model based on Pharaoh.  It requires an n-gram
@@ -150,14 +153,14 @@ public class PhraseTranslationModel extends TranslationModel {
 	}
 	
 	/**
-	 * Checks if the model files are present.  No actual reading of the files is involved.
-	 * The files should be in the directory specified in the configuration file (via the
-	 * key <code>Config.MODEL_DIR</code>).
+	 * Reads the phrase table.  The files should be in the directory specified in the configuration
+	 * file (via the key <code>Config.MODEL_DIR</code>).
 	 * 
 	 * @throws IOException if an I/O error occurs.
 	 */
 	public void read() throws IOException {
-		new FileInputStream(s.iniFile).close();
+		table = new PhraseTable(s.iniFile);
+		decoder = null;
 	}
 
 	/**
@@ -169,7 +172,23 @@ public class PhraseTranslationModel extends TranslationModel {
 		return s.iniFile;
 	}
 	
+	/**
+	 * Returns the phrase decoder for this model.  The decoder can be shared among threads.
+	 * 
+	 * @return the phrase decoder for this model.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	public synchronized PhraseDecoder getDecoder() throws IOException {
+		if (table == null)
+			read();
+		if (decoder == null)
+			decoder = new PhraseDecoder(table, lm);
+		return decoder;
+	}
+	
 	public void train(Examples examples, boolean full) throws IOException {
+		table = null;
+		decoder = null;
 		logger.info("Training the phrase translation model");
 		boolean merTrained = false;
 		if (MIN_ERROR_RATE_TRAINING) {
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2006, 2007 Yuk Wah Wong.
+ * 
+ * This file is part of the WASP distribution.
+ *
+ * WASP is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * WASP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with WASP; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package wasp.pharaoh.parse;
+
+import java.io.IOException;
+
+import wasp.data.Examples;
+import wasp.mrl.SRINgramModel;
+import wasp.nl.NgramModel;
+import wasp.util.SymbolTable;
+
+/**
+ * The n-gram language model for MRL tokens, as used by the phrase decoder.  The model file is the one
+ * written by the n-gram language model for MRL (<code>wasp.mrl.SRINgramModel</code>), which also does
+ * the training.  MRL tokens are mapped to IDs in their own symbol table, so that they are kept out of
+ * the dictionary of NL words.
+ * 
+ * @author ywwong
+ *
+ */
+public class MRLTokenModel extends NgramModel {
+
+	private SRINgramModel lm;
+	private SymbolTable symbols;
+	
+	/**
+	 * Constructs a new n-gram language model for MRL tokens.
+	 * 
+	 * @param lm the n-gram language model for MRL that writes the model file.
+	 * @param symbols the symbol table for MRL tokens.
+	 */
+	public MRLTokenModel(SRINgramModel lm, SymbolTable symbols) {
+		super("<unk>", "<s>", "</s>");
+		this.lm = lm;
+		this.symbols = symbols;
+	}
+	
+	/**
+	 * Trains the underlying n-gram language model for MRL, and reads the resulting model file.
+	 */
+	public void train(Examples examples) throws IOException {
+		lm.train(examples);
+		read();
+	}
+	
+	protected int getTermId(String word) {
+		return symbols.getId(word);
+	}
+	
+	protected int countTermIds() {
+		return symbols.getNextId();
+	}
+	
+}
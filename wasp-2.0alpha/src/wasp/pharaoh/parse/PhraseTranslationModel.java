@@ -21,7 +21,6 @@ package wasp.pharaoh.parse;
 
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.Iterator;
@@ -37,11 +36,14 @@ import wasp.main.TranslationModel;
 import wasp.mrl.MRLVocabulary;
 import wasp.mrl.Production;
 import wasp.mrl.SRINgramModel;
+import wasp.pharaoh.PhraseDecoder;
+import wasp.pharaoh.PhraseTable;
 import wasp.scfg.Rule;
 import wasp.scfg.SCFG;
 import wasp.util.Arrays;
 import wasp.util.FileWriter;
 import wasp.util.InputStreamWriter;
+import wasp.util.SymbolTable;
 
 /**
  * An E-to-F translation model based on Pharaoh.  Training this model requires the Pharaoh training code, 
@@ -95,6 +97,12 @@ public class PhraseTranslationModel extends TranslationModel {
 	private Settings s;
 	private SRINgramModel lm;
 	private MRLVocabulary vocab;
+	/** The language model for the target MRL, as used by the phrase decoder. */
+	private MRLTokenModel ngram;
+	/** The symbol table for MRL tokens, which are kept out of the dictionary of NL words. */
+	private SymbolTable mrlSymbols;
+	private PhraseTable table;
+	private PhraseDecoder decoder;
 	
 	/**
 	 * Constructs a new e-to-f phrase translation model based on Pharaoh.  It requires an n-gram
@@ -107,17 +115,23 @@ public class PhraseTranslationModel extends TranslationModel {
 		s = new Settings();
 		this.lm = lm;
 		this.vocab = vocab;
+		mrlSymbols = new SymbolTable(Terminal.NUM_SPECIAL_TERMS);
+		ngram = new MRLTokenModel(lm, mrlSymbols);
 	}
 	
 	/**
-	 * Checks if the model files are present.  No actual reading of the files is involved.
-	 * The files should be in the directory specified in the configuration file (via the
-	 * key <code>Config.MODEL_DIR</code>).
+	 * Reads the phrase table, and the n-gram language model for the target MRL that is used by the
+	 * phrase decoder.  The files should be in the directory specified in the configuration file (via
+	 * the key <code>Config.MODEL_DIR</code>).
 	 * 
 	 * @throws IOException if an I/O error occurs.
 	 */
 	public void read() throws IOException {
-		new FileInputStream(s.iniFile).close();
+		// MRL tokens are added to their own symbol table as the phrase table is read, so that the
+		// language model can recognize them
+		table = new PhraseTable(s.iniFile, mrlSymbols);
+		ngram.read();
+		decoder = null;
 	}
 
 	/**
@@ -129,7 +143,23 @@ public class PhraseTranslationModel extends TranslationModel {
 		return s.iniFile;
 	}
 	
+	/**
+	 * Returns the phrase decoder for this model.  The decoder can be shared among threads.
+	 * 
+	 * @return the phrase decoder for this model.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	public synchronized PhraseDecoder getDecoder() throws IOException {
+		if (table == null)
+			read();
+		if (decoder == null)
+			decoder = new PhraseDecoder(table, ngram);
+		return decoder;
+	}
+	
 	public void train(Examples examples, boolean full) throws IOException {
+		table = null;
+		decoder = null;
 		logger.info("Training the phrase translation model");
 		writeInput(examples);
 		runTrainPhrase();
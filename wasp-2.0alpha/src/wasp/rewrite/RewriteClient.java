@@ -0,0 +1,374 @@
+/*
+ * Copyright 2006, 2007 Yuk Wah Wong.
+ *
+ * This file is part of the WASP distribution.
+ *
+ * WASP is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * WASP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with WASP; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package wasp.rewrite;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.LinkedList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import wasp.main.Config;
+import wasp.math.Math;
+import wasp.util.Arrays;
+import wasp.util.Double;
+import wasp.util.InputStreamWriter;
+import wasp.util.Int;
+
+/**
+ * A client of Rewrite decoding servers.  The Rewrite decoder can be found in
+ * <a href="http://www.isi.edu/publications/licensed-sw/rewrite-decoder/index.html"
+ * target="_new">http://www.isi.edu/publications/licensed-sw/rewrite-decoder/index.html</a>.
+ * <p>
+ * A client keeps one or more server instances.  The sentences in a batch are dispatched to all
+ * instances concurrently, and the replies are returned in the same order as the sentences.  Each
+ * instance serves requests one at a time, in the order in which they arrive, so up to a fixed number
+ * of requests are sent to an instance ahead of its replies.  The number of instances and the number
+ * of requests in flight for each instance are set in the configuration file (via the keys
+ * <code>Config.REWRITE_SERVERS</code> and <code>Config.REWRITE_PIPELINE_DEPTH</code>).
+ *
+ * @author ywwong
+ *
+ */
+public class RewriteClient {
+
+	private static Logger logger = Logger.getLogger(RewriteClient.class.getName());
+
+	private static final String HOST = "127.0.0.1";
+	private static final int DEFAULT_SERVERS = 1;
+	private static final int DEFAULT_PIPELINE_DEPTH = 2;
+
+	/**
+	 * The reply of a Rewrite server to a source sentence.
+	 */
+	public static class Reply {
+		/** The log probability of the translation. */
+		public double score;
+		/** The translation. */
+		public String translation;
+		/** The word alignment printed by the server; <code>null</code> if not available. */
+		public String alignment;
+	}
+
+	private static class Server {
+		public int port;
+		/** The standard output of the server, where word alignments are printed; <code>null</code> if
+		 * not available. */
+		public BufferedReader sin;
+		public int pid;
+		public Server(int port, BufferedReader sin) {
+			this.port = port;
+			this.sin = sin;
+			pid = -1;
+		}
+	}
+
+	private static String[][] decConfig = {
+			{"Greedy2", "true"}
+	};
+
+	private Server[] servers;
+	private int depth;
+
+	/**
+	 * Starts new Rewrite servers based on the given translation model and language model.  The
+	 * servers are killed when the JVM exits.
+	 *
+	 * @param tmConfigFile the configuration file for the translation model (IBM Model 4).
+	 * @param lmFile the binary file of the language model.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	public RewriteClient(File tmConfigFile, File lmFile) throws IOException {
+		String n = Config.get(Config.REWRITE_SERVERS);
+		servers = new Server[(n==null) ? DEFAULT_SERVERS : Int.parseInt(n)];
+		logger.info("Starting "+servers.length+" Rewrite server(s)");
+		for (int i = 0; i < servers.length; ++i)
+			servers[i] = startServer(tmConfigFile, lmFile);
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			public void run() {
+				// assumes UNIX operating system: Rewrite is available only on Linux or SunOS
+				for (int i = 0; i < servers.length; ++i) {
+					logger.info("Killing the Rewrite server (PID "+servers[i].pid+")");
+					try {
+						String[] cmdarray = new String[2];
+						cmdarray[0] = "kill";
+						cmdarray[1] = Int.toString(servers[i].pid);
+						exec(cmdarray);
+					} catch (IOException e) {
+						e.printStackTrace();
+					}
+				}
+			}
+		});
+		setDepth();
+	}
+
+	/**
+	 * Creates a client of Rewrite servers that are already running on the local host.
+	 *
+	 * @param ports the port numbers of the servers.
+	 * @param sin the standard output streams of the servers, from which word alignments are read.
+	 * This can be <code>null</code> if word alignments are not needed.
+	 */
+	public RewriteClient(int[] ports, BufferedReader[] sin) {
+		servers = new Server[ports.length];
+		for (int i = 0; i < ports.length; ++i)
+			servers[i] = new Server(ports[i], (sin==null) ? null : sin[i]);
+		setDepth();
+	}
+
+	private void setDepth() {
+		String d = Config.get(Config.REWRITE_PIPELINE_DEPTH);
+		depth = Math.max(1, (d==null) ? DEFAULT_PIPELINE_DEPTH : Int.parseInt(d));
+	}
+
+	private static void exec(String[] cmdarray) throws IOException {
+		try {
+			Process proc = Runtime.getRuntime().exec(cmdarray);
+			new InputStreamWriter(proc.getInputStream(), System.err).start();
+			new InputStreamWriter(proc.getErrorStream(), System.err).start();
+			proc.waitFor();
+		} catch (InterruptedException e) {}
+	}
+
+	private static int findFreePort() throws IOException {
+		ServerSocket socket = new ServerSocket(0);
+		int port = socket.getLocalPort();
+		socket.close();
+		return port;
+	}
+
+	private static Server startServer(File tmConfigFile, File lmFile) throws IOException {
+		String prefix = "rewrite";
+		File decConfigFile = File.createTempFile(prefix, ".dec.cfg");
+		final File serverLockPrefix = File.createTempFile(prefix, "");
+		decConfigFile.deleteOnExit();
+		serverLockPrefix.deleteOnExit();
+		int port = findFreePort();
+		PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(decConfigFile)));
+		String[][] config = {
+				{"LanguageModelFile", lmFile.getPath()},
+				{"TranslationModelConfigFile", tmConfigFile.getPath()},
+				{"Port", Int.toString(port)},
+				{"ServerLockFile", serverLockPrefix.getPath()}
+		};
+		config = (String[][]) Arrays.concat(config, decConfig);
+		for (int i = 0; i < config.length; ++i)
+			out.println(config[i][0]+" = "+config[i][1]);
+		out.close();
+		String[] cmdarray = new String[4];
+		cmdarray[0] = Config.get(Config.REWRITE_EXEC);
+		cmdarray[1] = "--server";
+		cmdarray[2] = "--print-all=true";
+		cmdarray[3] = "--config="+decConfigFile.getPath();
+		Server server = new Server(port, execServer(cmdarray));
+		// find server lock file
+		File[] files = serverLockPrefix.getParentFile().listFiles(new FileFilter() {
+			public boolean accept(File pathname) {
+				String path = pathname.getPath();
+				return path.startsWith(serverLockPrefix.getPath()) && path.endsWith(".lock");
+			}
+		});
+		if (files.length == 0) {
+			logger.severe("No server lock file is found");
+			System.exit(1);
+		}
+		if (files.length > 1) {
+			logger.severe("Multiple server lock files are found; remove them first");
+			System.exit(1);
+		}
+		// find server PID
+		String path = files[0].getPath();
+		int dot1 = path.indexOf('.', serverLockPrefix.getPath().length());
+		int dot2 = path.lastIndexOf('.');
+		server.pid = Int.parseInt(path.substring(dot1+1, dot2));
+		if (server.pid < 0) {
+			logger.severe("Server PID less than zero: "+server.pid);
+			System.exit(1);
+		}
+		files[0].deleteOnExit();
+		return server;
+	}
+
+	private static BufferedReader execServer(String[] cmdarray) throws IOException {
+		BufferedReader sin = null;
+		try {
+			Process proc = Runtime.getRuntime().exec(cmdarray);
+			sin = new BufferedReader(new InputStreamReader(proc.getInputStream()));
+			Thread errThread = new InputStreamWriter(proc.getErrorStream(), System.err);
+			errThread.setDaemon(true);
+			errThread.start();
+			int exitVal = proc.waitFor();
+			if (exitVal != 0) {
+				logger.severe(cmdarray[0]+" terminates abnormally");
+				System.exit(1);
+			}
+		} catch (InterruptedException e) {}
+		return sin;
+	}
+
+	/** A request that has been sent to a server, but whose reply has not been read. */
+	private static class Request {
+		public int index;
+		public Socket socket;
+		public BufferedReader in;
+	}
+
+	private Request send(Server server, String[] sentence, int index) throws IOException {
+		Request r = new Request();
+		r.index = index;
+		r.socket = new Socket(HOST, server.port);
+		r.in = new BufferedReader(new InputStreamReader(r.socket.getInputStream()));
+		PrintWriter out = new PrintWriter(r.socket.getOutputStream(), true);
+		out.println("<?xml version=\"1.0\" encoding=\"latin-1\"?>");
+		out.println("<doc>");
+		out.println("<s id=\"1\">");
+		for (int i = 0; i < sentence.length; ++i) {
+			out.print(sentence[i]);
+			out.print(' ');
+		}
+		out.println();
+		out.println("</s>");
+		out.println("</doc>");
+		out.write(4);  // part of the Rewrite protocol
+		out.flush();
+		return r;
+	}
+
+	private Reply receive(Server server, Request r, int len) throws IOException {
+		Reply reply = new Reply();
+		String s = r.in.readLine();
+		// greedy2 (0.000000 sec.):(A: 8.628147e-18 LM: 6.516801e-05 TM: 2.241332e-26)
+		int Acolon = s.indexOf("A: ");
+		int space = s.indexOf(' ', Acolon+3);
+		reply.score = Math.log(Double.parseDouble(s.substring(Acolon+3, space)));
+		// original sentence
+		r.in.readLine();
+		// translation
+		reply.translation = r.in.readLine();
+		// consume all output
+		while ((s = r.in.readLine()) != null)
+			;
+		r.in.close();
+		r.socket.close();
+		// add comment - alignment information
+		if (server.sin != null) {
+			StringBuffer sb = new StringBuffer();
+			while ((s = server.sin.readLine()) != null)
+				if (s.startsWith("Alignment")) {
+					sb.append(s);
+					sb.append('\n');
+					for (int i = 1; i < len; ++i) {
+						sb.append(server.sin.readLine());
+						sb.append('\n');
+					}
+					break;
+				}
+			reply.alignment = sb.toString();
+		}
+		return reply;
+	}
+
+	/**
+	 * Sends the source sentences taken from the given counter to the specified server, keeping up to
+	 * <code>depth</code> requests in flight, and stores the replies by sentence index.
+	 */
+	private void serve(Server server, String[][] sentences, AtomicInteger next, Reply[] replies)
+	throws IOException {
+		LinkedList queue = new LinkedList();
+		while (true) {
+			while (queue.size() < depth) {
+				int index = next.getAndIncrement();
+				if (index >= sentences.length)
+					break;
+				queue.addLast(send(server, sentences[index], index));
+			}
+			if (queue.isEmpty())
+				break;
+			Request r = (Request) queue.removeFirst();
+			replies[r.index] = receive(server, r, sentences[r.index].length);
+		}
+	}
+
+	/**
+	 * Translates the given source sentence.
+	 *
+	 * @param sentence a source sentence, as an array of tokens.
+	 * @return the reply of a Rewrite server.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	public Reply decode(String[] sentence) throws IOException {
+		return decode(new String[][] {sentence})[0];
+	}
+
+	/**
+	 * Translates the given source sentences.  The sentences are dispatched to all servers
+	 * concurrently.
+	 *
+	 * @param sentences the source sentences, each as an array of tokens.
+	 * @return the replies of the Rewrite servers, in the same order as <code>sentences</code>.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	public synchronized Reply[] decode(final String[][] sentences) throws IOException {
+		final Reply[] replies = new Reply[sentences.length];
+		final AtomicInteger next = new AtomicInteger();
+		int n = Math.min(servers.length, sentences.length);
+		if (n <= 1) {
+			serve(servers[0], sentences, next, replies);
+			return replies;
+		}
+		final IOException[] errors = new IOException[n];
+		Thread[] threads = new Thread[n];
+		for (int i = 0; i < n; ++i) {
+			final int j = i;
+			threads[i] = new Thread() {
+				public void run() {
+					try {
+						serve(servers[j], sentences, next, replies);
+					} catch (IOException e) {
+						errors[j] = e;
+						// stop the other servers from taking new sentences
+						next.set(sentences.length);
+					}
+				}
+			};
+			threads[i].start();
+		}
+		try {
+			for (int i = 0; i < n; ++i)
+				threads[i].join();
+		} catch (InterruptedException e) {
+			throw new IOException("interrupted while decoding");
+		}
+		for (int i = 0; i < n; ++i)
+			if (errors[i] != null)
+				throw errors[i];
+		return replies;
+	}
+
+}
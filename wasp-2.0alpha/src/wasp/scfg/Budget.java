@@ -0,0 +1,175 @@
+/*
+ * Copyright 2006, 2007 Yuk Wah Wong.
+ *
+ * This file is part of the WASP distribution.
+ *
+ * WASP is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * WASP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with WASP; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package wasp.scfg;
+
+import wasp.main.Config;
+import wasp.util.Int;
+
+/**
+ * Resource limits for parsing or generating one sentence.  A budget bounds the wall-clock time and
+ * the number of chart items.  Charts charge the budget for each item added, and stop accepting items
+ * once the budget runs out.  The item count also serves as the bound on chart memory, since the size
+ * of an item varies with its rule and features.
+ * <p>
+ * Budgets are set in the configuration file (via the keys <code>Config.SCFG_BUDGET_TIME</code> and
+ * <code>Config.SCFG_BUDGET_ITEMS</code>).  A server can also set a deadline for each request (via
+ * <code>setDeadline</code>).
+ *
+ * @author ywwong
+ *
+ */
+public class Budget {
+
+	/** The reason given when the time limit is reached. */
+	public static final String TIME = "time";
+	/** The reason given when the item limit is reached. */
+	public static final String ITEMS = "items";
+
+	private static final int DEFAULT_BEAM = 100;
+	// the deadline of the request that each thread is working on, in milliseconds since the epoch
+	private static ThreadLocal deadlines = new ThreadLocal();
+	// the clock is read once every this many items
+	private static final int CLOCK_MASK = 0xff;
+
+	private long maxMillis;
+	private long maxItems;
+	private long deadline;
+	private long items;
+	private String reason;
+
+	public Budget(long maxMillis, long maxItems) {
+		this.maxMillis = maxMillis;
+		this.maxItems = maxItems;
+		start();
+	}
+
+	/**
+	 * Returns a new budget based on the current configuration settings, or <code>null</code> if no
+	 * limits are set.
+	 *
+	 * @return a new budget; <code>null</code> if no limits are set.
+	 */
+	public static Budget create() {
+		long maxMillis = getLimit(Config.SCFG_BUDGET_TIME);
+		long maxItems = getLimit(Config.SCFG_BUDGET_ITEMS);
+		if (maxMillis == 0 && maxItems == 0)
+			return null;
+		return new Budget(maxMillis, maxItems);
+	}
+
+	private static long getLimit(String key) {
+		String val = Config.get(key);
+		return (val==null) ? 0 : Long.parseLong(val);
+	}
+
+	/**
+	 * Sets the deadline of the request that the current thread is working on.  Until it is cleared,
+	 * the deadline applies to every sentence that the current thread parses or generates, in addition
+	 * to the limits set in the configuration file.
+	 *
+	 * @param deadline the deadline in milliseconds since the epoch; <code>0</code> clears the
+	 * deadline.
+	 */
+	public static void setDeadline(long deadline) {
+		if (deadline == 0)
+			deadlines.remove();
+		else
+			deadlines.set(Long.valueOf(deadline));
+	}
+
+	/**
+	 * Prepares the given budget for a new sentence, taking the deadline of the current thread into
+	 * account.
+	 *
+	 * @param budget the budget based on the configuration settings; <code>null</code> if there are
+	 * no limits.
+	 * @return <code>budget</code>, reset for a new sentence; a new budget if <code>budget</code> is
+	 * <code>null</code> and the current thread has a deadline; <code>null</code> otherwise.
+	 */
+	public static Budget start(Budget budget) {
+		if (budget == null) {
+			if (deadlines.get() == null)
+				return null;
+			budget = new Budget(0, 0);
+		} else
+			budget.start();
+		return budget;
+	}
+
+	/**
+	 * Returns the maximum number of chart items per position when a sentence is re-processed after
+	 * running out of budget.
+	 *
+	 * @return the beam width for re-processing.
+	 */
+	public static int getBeam() {
+		String beam = Config.get(Config.SCFG_BUDGET_BEAM);
+		return (beam==null) ? DEFAULT_BEAM : Int.parseInt(beam);
+	}
+
+	/**
+	 * Resets this budget, so that it can be used for a new sentence.  The time limit starts counting
+	 * from now, and is cut short by the deadline of the current thread if there is one.
+	 */
+	public void start() {
+		deadline = (maxMillis==0) ? 0 : System.currentTimeMillis()+maxMillis;
+		Long d = (Long) deadlines.get();
+		if (d != null && (deadline == 0 || d.longValue() < deadline))
+			deadline = d.longValue();
+		items = 0;
+		reason = null;
+	}
+
+	/**
+	 * Charges this budget for a new chart item.
+	 *
+	 * @return <code>true</code> if the budget is not yet used up; <code>false</code> otherwise.
+	 */
+	public boolean charge() {
+		if (reason != null)
+			return false;
+		++items;
+		if (maxItems > 0 && items > maxItems)
+			reason = ITEMS;
+		else if (deadline > 0 && (items & CLOCK_MASK) == 0 && System.currentTimeMillis() > deadline)
+			reason = TIME;
+		return reason == null;
+	}
+
+	/**
+	 * Indicates if this budget has been used up.
+	 *
+	 * @return <code>true</code> if this budget has been used up; <code>false</code> otherwise.
+	 */
+	public boolean isExceeded() {
+		return reason != null;
+	}
+
+	/**
+	 * Returns the reason why this budget has been used up.
+	 *
+	 * @return either <code>TIME</code> or <code>ITEMS</code>; <code>null</code> if this budget is not
+	 * yet used up.
+	 */
+	public String getReason() {
+		return reason;
+	}
+
+}
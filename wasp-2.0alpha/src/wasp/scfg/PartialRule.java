@@ -92,7 +92,7 @@ public class PartialRule {
 		++i;
 		if (i == line.length || !line[i].equals("({"))
 			return null;
-		Terminal.readWords = false;
+		Terminal.readWords.set(false);
 		ArrayList list = new ArrayList();
 		for (++i; i < line.length && !line[i].equals("})"); ++i) {
 			Symbol sym = Symbol.read(line[i]);
@@ -34,6 +34,7 @@ import wasp.util.Arrays;
 import wasp.util.Double;
 import wasp.util.Int;
 import wasp.util.Short;
+import wasp.util.ThreadBool;
 
 /**
  * Production rules in a synchronous context-free grammar (SCFG) or a lambda-SCFG.
@@ -584,8 +585,9 @@ public class Rule {
 		return sb.toString();
 	}
 	
-	/** Indicates if all rules subsequently read by the <code>read</code> method are initial rules. */
-	public static boolean readInit = false;
+	/** Indicates if all rules subsequently read by the <code>read</code> method in the current thread
+	 * are initial rules. */
+	public static final ThreadBool readInit = new ThreadBool(false);
 
 	/**
 	 * Returns an SCFG rule that part of the given line of text represents.  Beginning with the token 
@@ -612,7 +614,7 @@ public class Rule {
 		++i;
 		if (i == line.length || !line[i].equals("({"))
 			return null;
-		Terminal.readWords = true;
+		Terminal.readWords.set(true);
 		ArrayList list1 = new ArrayList();
 		ArrayList list2 = new ArrayList();
 		list2.add(new Short(0));
@@ -627,7 +629,7 @@ public class Rule {
 				list1.add(sym);
 				list2.add(new Short(0));
 			}
-		Terminal.readWords = false;
+		Terminal.readWords.set(false);
 		ArrayList list3 = new ArrayList();
 		for (++i; i < line.length && !line[i].equals("})"); ++i) {
 			Symbol sym = Symbol.read(line[i]);
@@ -641,7 +643,7 @@ public class Rule {
 		short[] gaps = Arrays.toShortArray(list2);
 		Symbol[] F = (Symbol[]) list3.toArray(new Symbol[0]);
 		index.val = i+1;
-		return new Rule(lhs, E, gaps, F, readInit);
+		return new Rule(lhs, E, gaps, F, readInit.get());
 	}
 	
 }
@@ -19,23 +19,24 @@
  */
 package wasp.scfg;
 
-import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
 
 import wasp.data.Nonterminal;
 import wasp.data.Symbol;
 import wasp.data.Terminal;
+import wasp.data.Variable;
 import wasp.main.Config;
 import wasp.mrl.Production;
+import wasp.mrl.ProductionSymbol;
 import wasp.nl.NL;
 import wasp.util.Arrays;
-import wasp.util.Double;
 import wasp.util.FileWriter;
 import wasp.util.Int;
 import wasp.util.Matrices;
@@ -60,6 +61,9 @@ public class SCFG {
 	private boolean[][] _ElcTrans;
 	private boolean[][] Flc;
 	private boolean[][] _FlcTrans;
+	
+	// RootKey -> Rule[]
+	private HashMap _byRoot;
 
 	private Numberer partial;
 	private int npartial;
@@ -78,6 +82,8 @@ public class SCFG {
 		_ElcTrans = null;
 		Flc = new boolean[nlhs][nlhs];
 		_FlcTrans = null;
+		
+		_byRoot = null;
 
 		partial = new Numberer(1);
 		npartial = 1;  // 0 is reserved for the dummy rule
@@ -278,6 +284,7 @@ public class SCFG {
 				Flc[rule.getLhs().getId()][rule.getF((short) 0).getId()] = true;
 				_FlcTrans = null;
 			}
+			_byRoot = null;
 			return true;
 		}
 		return false;
@@ -317,6 +324,79 @@ public class SCFG {
 		return _FlcTrans[n1][n2];
 	}
 	
+	/**
+	 * Returns an array containing all rules in this grammar whose MR parse could be rooted at a node
+	 * formed by the specified MRL production.  Rules are indexed by the LHS nonterminal, the kinds of
+	 * RHS symbols and the child nonterminals of the root production of their MR parses, so the 
+	 * returned rules are only <i>candidates</i>: a match still has to be confirmed using the 
+	 * <code>Production.matches</code> method.  Inactive rules are included.  An empty array is 
+	 * returned if there are no such rules in this grammar.
+	 * 
+	 * @param prod an MRL production (e.g. a node in the linearized parse of an MR).
+	 * @return an array containing all rules in this grammar whose MR parses could be rooted at
+	 * <code>prod</code>.
+	 */
+	public Rule[] getRulesByRoot(Production prod) {
+		if (_byRoot == null)
+			indexByRoot();
+		Rule[] a = (Rule[]) _byRoot.get(new RootKey(prod));
+		return (a==null) ? new Rule[0] : a;
+	}
+	
+	private void indexByRoot() {
+		HashMap map = new HashMap();
+		int nr = rules.getNextId();
+		for (int i = 0; i < nr; ++i) {
+			Rule rule = (Rule) rules.getObj(i);
+			Production root =
+				((ProductionSymbol) rule.getProduction().getParse().getSymbol()).getProduction();
+			RootKey key = new RootKey(root);
+			ArrayList list = (ArrayList) map.get(key);
+			if (list == null) {
+				list = new ArrayList();
+				map.put(key, list);
+			}
+			list.add(rule);
+		}
+		_byRoot = new HashMap();
+		for (Iterator it = map.entrySet().iterator(); it.hasNext();) {
+			Map.Entry entry = (Map.Entry) it.next();
+			_byRoot.put(entry.getKey(), ((ArrayList) entry.getValue()).toArray(new Rule[0]));
+		}
+	}
+	
+	/**
+	 * The signature of an MRL production under the <code>Production.matches</code> relation.  Two
+	 * productions that match each other always have the same signature.  Terminals are not 
+	 * distinguished because of wildcards.
+	 */
+	private static class RootKey {
+		private int[] sig;
+		private int hash;
+		public RootKey(Production prod) {
+			Symbol[] rhs = prod.getRhs();
+			sig = new int[rhs.length+2];
+			sig[0] = prod.getLhsId();
+			sig[1] = (prod.isAC()) ? 1 : 0;
+			for (int i = 0; i < rhs.length; ++i)
+				if (rhs[i] instanceof Nonterminal)
+					sig[i+2] = rhs[i].getId();
+				else if (rhs[i] instanceof Variable)
+					sig[i+2] = -1;
+				else if (rhs[i] instanceof Terminal)
+					sig[i+2] = -2;
+				else
+					sig[i+2] = -3;
+			hash = Arrays.hashCode(sig);
+		}
+		public boolean equals(Object o) {
+			return o instanceof RootKey && Arrays.equal(sig, ((RootKey) o).sig);
+		}
+		public int hashCode() {
+			return hash;
+		}
+	}
+	
 	public int getPartialRuleId(PartialRule rule, boolean add) {
 		int id = partial.getId(rule, add);
 		if (add)
@@ -368,8 +448,8 @@ public class SCFG {
 		File inFile = new File(prefix+"-"+NL.useNL);
 		if (!inFile.exists())
 			inFile = new File(prefix);
-		TokenReader in = new TokenReader(new BufferedReader(new FileReader(inFile)));
-		Rule.readInit = true;
+		TokenReader in = new TokenReader(inFile);
+		Rule.readInit.set(true);
 		String[] line;
 		while ((line = in.readLine()) != null) {
 			Int index = new Int(0);
@@ -421,8 +501,8 @@ public class SCFG {
 	}
 	
 	public void read(File file) throws IOException {
-		TokenReader in = new TokenReader(new BufferedReader(new FileReader(file)));
-		Rule.readInit = false;
+		TokenReader in = new TokenReader(file);
+		Rule.readInit.set(false);
 		String[] line;
 		while ((line = in.readLine()) != null) {
 			Int index = new Int(0);
@@ -434,23 +514,23 @@ public class SCFG {
 				addTie(rule, tied);
 			}
 			if (index.val < line.length && line[index.val].equals("weight")) {
-				rule.setWeight(Double.parseDouble(line[index.val+1]));
+				rule.setWeight(in.getDouble(index.val+1));
 				index.val += 2;
 			}
 			if (index.val < line.length && line[index.val].equals("phr-prob-f|e")) {
-				rule.getScores().PFE = Double.parseDouble(line[index.val+1]);
+				rule.getScores().PFE = in.getDouble(index.val+1);
 				index.val += 2;
 			}
 			if (index.val < line.length && line[index.val].equals("phr-prob-e|f")) {
-				rule.getScores().PEF = Double.parseDouble(line[index.val+1]);
+				rule.getScores().PEF = in.getDouble(index.val+1);
 				index.val += 2;
 			}
 			if (index.val < line.length && line[index.val].equals("lex-weight-f|e")) {
-				rule.getScores().PwFE = Double.parseDouble(line[index.val+1]);
+				rule.getScores().PwFE = in.getDouble(index.val+1);
 				index.val += 2;
 			}
 			if (index.val < line.length && line[index.val].equals("lex-weight-e|f")) {
-				rule.getScores().PwEF = Double.parseDouble(line[index.val+1]);
+				rule.getScores().PwEF = in.getDouble(index.val+1);
 				index.val += 2;
 			}
 			if (index.val < line.length)
@@ -19,13 +19,16 @@
  */
 package wasp.scfg;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import wasp.align.WordAlignModel;
 import wasp.data.Examples;
+import wasp.main.Checkpoint;
 import wasp.main.Config;
+import wasp.main.StageCache;
 import wasp.main.TranslationModel;
 import wasp.nl.BasicGapModel;
 import wasp.nl.GapModel;
@@ -47,6 +50,8 @@ public class SCFGModel extends TranslationModel {
 	static {
 		logger.setLevel(Level.FINE);
 	}
+	
+	private static final String ALIGNS = "word-aligns";
 
 	public SCFG gram;
 	public GapModel gm;
@@ -61,8 +66,10 @@ public class SCFGModel extends TranslationModel {
 	}
 	
 	public void train(Examples examples, boolean full) throws IOException {
+		if (!Checkpoint.resume)
+			Checkpoint.clear();
 		gram.readInit();
-		WordAlignModel.createNew().train(examples);
+		align(examples);
 		new RuleExtractor().extract(gram, gm, examples);
 		if (!extractOnly) {
 			String prob = Config.get(Config.TRANSLATION_PROB_MODEL);
@@ -82,6 +89,43 @@ public class SCFGModel extends TranslationModel {
 		gm.write();
 		for (int i = 0; i < pf.all.length; ++i)
 			pf.all[i].write();
+		Checkpoint.clear();
+	}
+	
+	/**
+	 * Obtains the word alignments of the training examples.  GIZA++ alignments are checkpointed, so
+	 * that they can be re-used when training resumes.  They are also kept in the stage cache (if 
+	 * enabled), so that they can be re-used in later runs on the same training set.  Gold-standard
+	 * alignments are cheap to obtain, and they may change the MRs of the training examples, so they are
+	 * never checkpointed or cached.
+	 */
+	private void align(Examples examples) throws IOException {
+		boolean giza = Config.getAlignModel().equals("giza++");
+		File file = Checkpoint.getFile(ALIGNS);
+		if (giza && Checkpoint.isDone(Checkpoint.ALIGNED)) {
+			if (WordAlignModel.readAligns(examples, file)) {
+				logger.info("Word alignments are restored from the last checkpoint");
+				return;
+			}
+			logger.warning("Word alignments in the last checkpoint do not match the training set");
+		}
+		StageCache.Key key = null;
+		if (giza) {
+			key = new StageCache.Key("giza++").addExamples(examples);
+			key.addConfig(Config.MRL).addConfig(Config.MRL_GRAMMAR);
+			key.addFile(new File(Config.get(Config.MRL_GRAMMAR)));
+			key.addConfig(Config.GIZAPP_EXEC).addConfig(Config.MKCLS_EXEC).addConfig(Config.GIZAPP_KBEST);
+			if (StageCache.restore(key, new File[] {file}) && WordAlignModel.readAligns(examples, file)) {
+				Checkpoint.done(Checkpoint.ALIGNED);
+				return;
+			}
+		}
+		WordAlignModel.createNew().train(examples);
+		if (giza) {
+			WordAlignModel.writeAligns(examples, file);
+			Checkpoint.done(Checkpoint.ALIGNED);
+			StageCache.store(key, new File[] {file});
+		}
 	}
 	
 	public void read() throws IOException {
@@ -35,15 +35,25 @@ import wasp.util.Arrays;
 public class GapItem implements AnyItem {
 
 	private static short N;
-	private static Terminal[] ngram;
+	// IDs of the terminal symbols in the current n-gram of each thread
+	private static ThreadLocal ngrams = new ThreadLocal();
 
 	static void setN(short N) {
 		GapItem.N = N;
-		ngram = new Terminal[N];
+	}
+	
+	private static int[] ngram() {
+		int[] ngram = (int[]) ngrams.get();
+		if (ngram == null || ngram.length != N) {
+			ngram = new int[N];
+			ngrams.set(ngram);
+		}
+		return ngram;
 	}
 	
 	/**
-	 * The surrounding context in which a gap-filling phrase appears in the output sentence.
+	 * The surrounding context in which a gap-filling phrase appears in the output sentence, as
+	 * terminal IDs.
 	 * 
 	 * @author ywwong
 	 *
@@ -51,7 +61,7 @@ public class GapItem implements AnyItem {
 	public static class Context {
 		public short from;
 		public short to;
-		public Terminal[] context;
+		public int[] context;
 		public boolean equals(Object o) {
 			if (o == this)
 				return true;
@@ -74,8 +84,11 @@ public class GapItem implements AnyItem {
 	public short dot;
 	/** The surrounding context. */
 	public Context context;
-	/** Various components of the inner score. */
+	/** Contribution of the gap-filling phrase to the inner score (for the WASP<sup>-1</sup>++
+	 * model); <code>null</code> except in prediction items. */
 	public LogLinearModel.Scores scores;
+	/** The language model score added to the inner score in this step. */
+	public double lm;
 	/** The inner score. */
 	public double inner;
 	/** The back pointer. */
@@ -94,6 +107,7 @@ public class GapItem implements AnyItem {
 	public GapItem(Item.Context bc, LogLinearModel.Scores scores, LogLinearModel llm) {
 		dot = 0;
 		this.scores = scores;
+		lm = 0;
 		inner = llm.dot(scores);
 		back = null;
 		backWord = null;
@@ -106,7 +120,7 @@ public class GapItem implements AnyItem {
 		short from = (short) Math.max(here-N+1, prev+1);
 		short to = (short) Math.min(here+N, next);
 		c.from = c.to = (short) (here-from);
-		c.context = new Terminal[to-from-1];
+		c.context = new int[to-from-1];
 		for (short i = from; i < here; ++i)
 			c.context[i-from] = bc.context[i];
 		for (short i = (short) (here+1); i < to; ++i)
@@ -125,14 +139,14 @@ public class GapItem implements AnyItem {
 		this(bc, new LogLinearModel.Scores(), llm);
 	}
 	
-	private static short prev(Terminal[] context, short i) {
-		while (context[--i] != null)
+	private static short prev(int[] context, short i) {
+		while (context[--i] >= 0)
 			;
 		return i;
 	}
 	
-	private static short next(Terminal[] context, short i) {
-		while (context[++i] != null)
+	private static short next(int[] context, short i) {
+		while (context[++i] >= 0)
 			;
 		return i;
 	}
@@ -147,8 +161,8 @@ public class GapItem implements AnyItem {
 	 */
 	public GapItem(GapItem back, Terminal word, NgramModel lm, LogLinearModel llm) {
 		dot = (short) (back.dot+1);
-		scores = new LogLinearModel.Scores(back.scores);
-		--scores.wp;
+		scores = null;
+		this.lm = 0;
 		inner = back.inner - llm.wWP;
 		this.back = back;
 		backWord = word;
@@ -159,22 +173,23 @@ public class GapItem implements AnyItem {
 		c.to = bc.to;
 		// update the inner score if there is a new n-gram
 		if (c.to >= N-1) {
+			int[] ngram = ngram();
 			for (short i = (short) (c.to-N+1); i < c.to; ++i)
 				ngram[i-c.to+N-1] = bc.context[i];
-			ngram[N-1] = word;
-			double s = lm.score(ngram);
-			scores.lm += s;
+			ngram[N-1] = word.getId();
+			double s = lm.score(ngram, 0, N);
+			this.lm += s;
 			inner += llm.wLM*s;
 		}
 		// update the context vector
 		if (c.to-c.from < 2*(N-1)) {
-			c.context = (Terminal[]) Arrays.insert(bc.context, c.to, word);
+			c.context = Arrays.insert(bc.context, c.to, word.getId());
 			++c.to;
 		} else {  // c.to-c.from == 2*(N-1)
-			c.context = (Terminal[]) bc.context.clone();
+			c.context = bc.context.clone();
 			for (short i = (short) (c.to-N+1); i < c.to-1; ++i)
 				c.context[i] = c.context[i+1];
-			c.context[c.to-1] = word;
+			c.context[c.to-1] = word.getId();
 		}
 		context = c;
 	}
@@ -188,7 +203,8 @@ public class GapItem implements AnyItem {
 	 */
 	public GapItem(GapItem back, NgramModel lm, LogLinearModel llm) {
 		dot = back.dot;
-		scores = new LogLinearModel.Scores(back.scores);
+		scores = null;
+		this.lm = 0;
 		inner = back.inner;
 		this.back = back;
 		backWord = null;
@@ -197,10 +213,8 @@ public class GapItem implements AnyItem {
 		Context c = back.context;
 		for (short i = c.to; i < c.context.length; ++i)
 			if (i >= N-1) {
-				for (short j = (short) (i-N+1); j <= i; ++j)
-					ngram[j-i+N-1] = c.context[j];
-				double s = lm.score(ngram);
-				scores.lm += s;
+				double s = lm.score(c.context, i-N+1, i+1);
+				this.lm += s;
 				inner += llm.wLM*s;
 			}
 		// re-use the context vector
@@ -216,6 +230,25 @@ public class GapItem implements AnyItem {
 			return 0;
 	}
 	
+	/**
+	 * Returns the various components of the inner score.  They are summed over the back-pointer
+	 * items each time this method is called.
+	 * 
+	 * @return the various components of the inner score.
+	 */
+	public LogLinearModel.Scores getScores() {
+		LogLinearModel.Scores scores;
+		if (back == null)
+			scores = new LogLinearModel.Scores(this.scores);
+		else {
+			scores = back.getScores();
+			if (backWord != null)
+				--scores.wp;
+		}
+		scores.lm += lm;
+		return scores;
+	}
+	
 	/**
 	 * Indicates if all words in the gap-filling phrase have been spelled out in this item.
 	 * 
@@ -19,7 +19,7 @@
  */
 package wasp.scfg.generate;
 
-import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import wasp.data.Nonterminal;
 import wasp.data.Symbol;
@@ -39,16 +39,34 @@ import wasp.util.Arrays;
 public class Item implements AnyItem {
 
 	private static short N;
-	private static Terminal[] ngram;
+	// IDs of the terminal symbols in the current n-gram of each thread; -1 for none
+	private static ThreadLocal ngrams = new ThreadLocal();
 
 	static void setN(short N) {
 		Item.N = N;
-		ngram = new Terminal[N];
 	}
 	
-	private static HashMap initContexts = new HashMap();
+	private static int[] ngram() {
+		int[] ngram = (int[]) ngrams.get();
+		if (ngram == null || ngram.length != N) {
+			ngram = new int[N];
+			ngrams.set(ngram);
+		}
+		return ngram;
+	}
+	
+	/** The initial context vector and language model score of each rule, which are computed once
+	 * and shared by all threads.  The scores of a rule are never changed during generation. */
+	private static ConcurrentHashMap initContexts = new ConcurrentHashMap();
+	private static class InitContext {
+		public Context context;
+		/** The language model score of the n-grams within the rule. */
+		public double lm;
+	}
 	/**
-	 * The surrounding context in which phrases appear in the output sentence.
+	 * The surrounding context in which phrases appear in the output sentence.  Only the boundary
+	 * words that can still be part of an n-gram are kept, as terminal IDs.  Argument positions and
+	 * word gaps are marked by <code>-1</code>.
 	 * 
 	 * @author ywwong
 	 *
@@ -56,7 +74,7 @@ public class Item implements AnyItem {
 	public static class Context {
 		public short[] args;
 		public short[] gaps;
-		public Terminal[] context;
+		public int[] context;
 		public boolean equals(Object o) {
 			if (o == this)
 				return true;
@@ -78,8 +96,10 @@ public class Item implements AnyItem {
 	public short current;
 	/** The surrounding context of argument positions. */
 	public Context context;
-	/** Various components of the inner score. */
-	public LogLinearModel.Scores scores;
+	/** The language model score added to the inner score in this step, apart from that of the
+	 * back-pointer items.  The other components of the inner score come from the rule and the
+	 * back-pointer items, so they are only summed when needed (via <code>getScores</code>). */
+	public double lm;
 	/** The inner score. */
 	public double inner;
 	public int timestamp;
@@ -103,19 +123,19 @@ public class Item implements AnyItem {
 		timestamp = 0;
 		back = null;
 		backComp = null;
+		this.lm = 0;
 		
 		// rules with wildcard terminals have no initial context vector
 		if (rule.isWildcard()) {
 			context = null;
-			scores = rule.getScores();
-			inner = llm.dot(scores);
+			inner = llm.dot(rule.getScores());
 			return;
 		}
 		// re-use the initial context vector of the given rule, or create one if necessary
-		context = (Context) initContexts.get(rule);
-		if (context == null) {
+		InitContext init = (InitContext) initContexts.get(rule);
+		if (init == null) {
 			Context c = new Context();
-			rule.getScores().lm = 0;
+			double ruleLM = 0;
 			// determine what words to include in the initial context vector
 			short len = rule.lengthE();
 			boolean[] incl = new boolean[len];
@@ -140,34 +160,41 @@ public class Item implements AnyItem {
 			short ngaps = rule.countGaps();
 			c.args = new short[nargs];
 			c.gaps = new short[ngaps];
-			c.context = new Terminal[Arrays.count(incl)+nargs+ngaps+2];
-			Arrays.clear(ngram);
+			c.context = new int[Arrays.count(incl)+nargs+ngaps+2];
+			c.context[0] = c.context[c.context.length-1] = -1;
+			int[] ngram = ngram();
+			Arrays.fill(ngram, -1);
 			for (short i = 0, idx = 1, gapIdx = 0; i < len; ++i) {
 				Symbol sym = rule.getE(i);
 				if (sym instanceof Nonterminal) {
 					c.args[sym.getIndex()-1] = idx;
-					c.context[idx++] = null;
-					Arrays.clear(ngram);
+					c.context[idx++] = -1;
+					Arrays.fill(ngram, -1);
 				} else {  // sym instanceof Terminal
 					if (incl[i])
-						c.context[idx++] = (Terminal) sym;
-					ngram[N-1] = (Terminal) sym;
-					if (ngram[0] != null)
-						rule.getScores().lm += lm.score(ngram);
-					Arrays.shiftLeft(ngram);
+						c.context[idx++] = sym.getId();
+					ngram[N-1] = sym.getId();
+					if (ngram[0] >= 0)
+						ruleLM += lm.score(ngram, 0, N);
+					Arrays.shiftLeft(ngram, -1);
 				}
 				if (rule.getGap((short) (i+1)) > 0) {
 					c.gaps[gapIdx++] = idx;
-					c.context[idx++] = null;
-					Arrays.clear(ngram);
+					c.context[idx++] = -1;
+					Arrays.fill(ngram, -1);
 				}
 			}
-			context = c;
-			// store the initial context vector
-			initContexts.put(rule, context);
+			// store the initial context vector; another thread may have stored an equal one
+			init = new InitContext();
+			init.context = c;
+			init.lm = ruleLM;
+			InitContext prev = (InitContext) initContexts.putIfAbsent(rule, init);
+			if (prev != null)
+				init = prev;
 		}
-		scores = rule.getScores();
-		inner = llm.dot(scores);
+		context = init.context;
+		this.lm = init.lm;
+		inner = llm.dot(rule.getScores())+llm.wLM*init.lm;
 	}
 
 	/**
@@ -185,7 +212,7 @@ public class Item implements AnyItem {
 		dotE = back.dotE;
 		start = back.start;
 		current = (short) (back.current+1);
-		scores = back.scores;
+		lm = 0;
 		inner = back.inner;
 		timestamp = 0;
 		this.back = back;
@@ -196,8 +223,9 @@ public class Item implements AnyItem {
 			Context c = new Context();
 			c.args = new short[0];
 			c.gaps = new short[0];
-			c.context = new Terminal[3];
-			c.context[1] = (Terminal) rule.getE((short) 0);
+			c.context = new int[3];
+			c.context[0] = c.context[2] = -1;
+			c.context[1] = rule.getE((short) 0).getId();
 			context = c;
 		} else
 			context = back.context;
@@ -217,7 +245,7 @@ public class Item implements AnyItem {
 		dotE = back.dotE;
 		start = back.start;
 		current = comp.current;
-		scores = back.scores.add(comp.scores);
+		this.lm = 0;
 		inner = back.inner+comp.inner;
 		timestamp = 0;
 		this.back = back;
@@ -237,53 +265,54 @@ public class Item implements AnyItem {
 		c.args = Arrays.remove(bc.args, 0);
 		updateInPlace(c.args, here, diff);
 		c.gaps = update(bc.gaps, here, diff);
-		c.context = new Terminal[bc.context.length+diff];
+		c.context = new int[bc.context.length+diff];
 		short idx = 0;
 		short segIdx = 0;
-		Arrays.clear(ngram);
+		int[] ngram = ngram();
+		Arrays.fill(ngram, -1);
 		for (short i = 0; i <= prev; ++i)
 			c.context[idx++] = bc.context[i];
 		for (short i = (short) (prev+1); i < here; ++i, ++segIdx) {
 			if (incl(seglen2, segIdx))
 				c.context[idx++] = bc.context[i];
 			ngram[N-1] = bc.context[i];
-			Arrays.shiftLeft(ngram);
+			Arrays.shiftLeft(ngram, -1);
 		}
 		for (short i = 1; i < cc.context.length-1; ++i, ++segIdx) {
 			if (incl(seglen2, segIdx))
 				c.context[idx++] = cc.context[i];
 			ngram[N-1] = cc.context[i];
-			if (i < N && ngram[0] != null) {
-				double s = lm.score(ngram);
-				scores.lm += s;
+			if (i < N && ngram[0] >= 0) {
+				double s = lm.score(ngram, 0, N);
+				this.lm += s;
 				inner += llm.wLM*s;
 			}
-			Arrays.shiftLeft(ngram);
+			Arrays.shiftLeft(ngram, -1);
 		}
 		for (short i = (short) (here+1); i < next; ++i, ++segIdx) {
 			if (incl(seglen2, segIdx))
 				c.context[idx++] = bc.context[i];
 			ngram[N-1] = bc.context[i];
-			if (i < here+N && ngram[0] != null) {
-				double s = lm.score(ngram);
-				scores.lm += s;
+			if (i < here+N && ngram[0] >= 0) {
+				double s = lm.score(ngram, 0, N);
+				this.lm += s;
 				inner += llm.wLM*s;
 			}
-			Arrays.shiftLeft(ngram);
+			Arrays.shiftLeft(ngram, -1);
 		}
 		for (short i = next; i < bc.context.length; ++i)
 			c.context[idx++] = bc.context[i];
 		context = c;
 	}
 	
-	private static short prev(Terminal[] context, short i) {
-		while (context[--i] != null)
+	private static short prev(int[] context, short i) {
+		while (context[--i] >= 0)
 			;
 		return i;
 	}
 	
-	private static short next(Terminal[] context, short i) {
-		while (context[++i] != null)
+	private static short next(int[] context, short i) {
+		while (context[++i] >= 0)
 			;
 		return i;
 	}
@@ -324,7 +353,7 @@ public class Item implements AnyItem {
 		dotE = (short) (back.dotE+1);
 		start = back.start;
 		current = back.current;
-		scores = back.scores;
+		lm = 0;
 		inner = back.inner;
 		timestamp = 0;
 		this.back = back;
@@ -344,7 +373,7 @@ public class Item implements AnyItem {
 		dotE = (short) (back.dotE+1);
 		start = back.start;
 		current = back.current;
-		scores = back.scores.add(comp.scores);
+		lm = 0;
 		inner = back.inner+comp.inner;
 		timestamp = 0;
 		this.back = back;
@@ -364,7 +393,7 @@ public class Item implements AnyItem {
 		c.args = bc.args;  // all arguments have been added
 		c.gaps = Arrays.remove(bc.gaps, 0);
 		updateInPlace(c.gaps, here, diff);
-		c.context = new Terminal[bc.context.length+diff];
+		c.context = new int[bc.context.length+diff];
 		short idx = 0;
 		short segIdx = 0;
 		for (short i = 0; i <= prev; ++i)
@@ -424,12 +453,33 @@ public class Item implements AnyItem {
 	 * @param item an item that is equal to this item.
 	 */
 	public void replace(Item item) {
-		scores = item.scores;
+		lm = item.lm;
 		inner = item.inner;
 		back = item.back;
 		backComp = item.backComp;
 	}
 
+	/**
+	 * Returns the various components of the inner score.  They are summed over the rule and the
+	 * back-pointer items each time this method is called.
+	 * 
+	 * @return the various components of the inner score.
+	 */
+	public LogLinearModel.Scores getScores() {
+		LogLinearModel.Scores scores;
+		if (back == null)
+			scores = new LogLinearModel.Scores(rule.getScores());
+		else {
+			scores = back.getScores();
+			if (backComp instanceof Item)
+				scores = scores.add(((Item) backComp).getScores());
+			else if (backComp instanceof GapItem)
+				scores = scores.add(((GapItem) backComp).getScores());
+		}
+		scores.lm += lm;
+		return scores;
+	}
+	
 	/**
 	 * Indicates if all non-terminals have been rewritten in this item, i.e.&nbsp;the dot is at the
 	 * end of the MRL string.
@@ -460,11 +510,8 @@ public class Item implements AnyItem {
 	 */
 	public void adjustInner(NgramModel lm, LogLinearModel llm) {
 		for (short i = 2; i <= N-1 && i+1 < context.context.length; ++i) {
-			Terminal[] ngram = new Terminal[i];
-			for (short j = 1; j <= i; ++j)
-				ngram[j-1] = context.context[j];
-			double s = lm.score(ngram);
-			scores.lm += s;
+			double s = lm.score(context.context, 1, i+1);
+			this.lm += s;
 			inner += llm.wLM*s;
 		}
 	}
@@ -46,7 +46,7 @@ public class SCFGGen extends LogLinearGen {
 	public Item item;
 	
 	public SCFGGen(Item item) {
-		super(item.inner, item.scores);
+		super(item.inner, item.getScores());
 		this.item = item;
 	}
 	
@@ -29,10 +29,12 @@ import wasp.data.Symbol;
 import wasp.data.Terminal;
 import wasp.main.Config;
 import wasp.main.Generator;
+import wasp.main.Metrics;
 import wasp.main.generate.LogLinearModel;
 import wasp.math.Math;
 import wasp.nl.BasicGapModel;
 import wasp.nl.NgramModel;
+import wasp.scfg.Budget;
 import wasp.scfg.SCFG;
 import wasp.scfg.Rule;
 import wasp.scfg.SCFGModel;
@@ -49,6 +51,11 @@ import wasp.util.SortIterator;
  */
 public class SCFGGenerator extends Generator {
 
+	private static final Metrics.Counter GENS = Metrics.counter("scfg.generate.sentences");
+	private static final Metrics.Counter CUTS = Metrics.counter("scfg.generate.budget-exceeded");
+	private static final Metrics.Histogram CHART_SIZE = Metrics.histogram("scfg.generate.chart.size");
+	private static final Metrics.Histogram LATENCY = Metrics.histogram("scfg.generate.latency");
+	
 	private SCFG gram;
 	private NgramModel lm;
 	private LogLinearModel llm;
@@ -59,6 +66,10 @@ public class SCFGGenerator extends Generator {
 	
 	private GapGenerator gg;
 	private SCFGParser parser;
+	/** The resource limits for generating each sentence; <code>null</code> if there are no limits. */
+	private Budget budget;
+	/** Describes how the last call to the <code>generate</code> method was cut short. */
+	private String cut;
 	
 	/**
 	 * Creates an SCFG generator based on the specified SCFG and n-gram language model.
@@ -82,6 +93,7 @@ public class SCFGGenerator extends Generator {
 		tmKBest = (tmNorm) ? Math.max(tmKBest, kbest) : kbest;
 		gg = new GapGenerator((BasicGapModel) tm.gm, lm, llm);
 		parser = new SCFGParser(tm);
+		budget = Budget.create();
 	}
 	
 	public SCFGGenerator(SCFGModel tm, NgramModel lm, LogLinearModel llm) {
@@ -93,14 +105,21 @@ public class SCFGGenerator extends Generator {
 	}
 	
 	public Iterator generate(Meaning F) {
-		Chart c = new Chart(gram, F.syms, tmKBest);
-		Item item = new Item(new Rule(gram.getStart()), (short) 0, lm, llm);
-		c.addItem(item);
-		for (short i = 0; i <= c.maxPos; ++i) {
-			if (i > 0)
-				complete(F.syms, c, i);
-			if (i < c.maxPos)
-				predictAndScan(F.syms, c, i);
+		long start = Metrics.start();
+		cut = null;
+		Budget budget = Budget.start(this.budget);
+		Chart c = fill(F, budget, 0);
+		if (budget != null && budget.isExceeded()) {
+			cut = "budget exceeded ("+budget.getReason()+")";
+			// keep any full derivations found so far; otherwise try again with a tighter beam
+			if (!hasGen(c)) {
+				int beam = Budget.getBeam();
+				budget.start();
+				c = fill(F, budget, beam);
+				cut += "; re-generated with beam "+beam;
+				if (budget.isExceeded())
+					cut += "; budget exceeded again ("+budget.getReason()+")";
+			}
 		}
 		// extra reranking step for normalizing translation probability
 		if (tmNorm)
@@ -112,14 +131,50 @@ public class SCFGGenerator extends Generator {
 					SCFGParse parse = (SCFGParse) jt.next();
 					z_E = Math.logAdd(z_E, parse.score);
 				}
-				gen.item.scores.tm -= z_E;
+				gen.scores.tm -= z_E;
 				gen.item.inner -= llm.wTM*z_E;
 			}
+		if (Metrics.enabled) {
+			GENS.inc();
+			if (cut != null)
+				CUTS.inc();
+			for (int i = 0; i <= c.maxPos; ++i)
+				CHART_SIZE.add(c.sets[i].size());
+			Metrics.stop(LATENCY, start);
+		}
 		return new SortIterator(new GenIterator(c), kbest);
 	}
 	
+	private Chart fill(Meaning F, Budget budget, int beam) {
+		Chart c = new Chart(gram, F.syms, tmKBest);
+		c.setBudget(budget, beam);
+		Item item = new Item(new Rule(gram.getStart()), (short) 0, lm, llm);
+		c.addItem(item);
+		// no more items can be added once the budget is used up
+		for (short i = 0; i <= c.maxPos && !c.isOverBudget(); ++i) {
+			if (i > 0)
+				complete(F.syms, c, i);
+			c.prune(i);
+			if (i < c.maxPos)
+				predictAndScan(F.syms, c, i);
+		}
+		return c;
+	}
+	
+	/**
+	 * Returns a description of how the last call to the <code>generate</code> method was cut short
+	 * for running out of budget.  The same description is appended to the comments of the returned
+	 * sentences.
+	 * 
+	 * @return a description of how generation was cut short; <code>null</code> if generation was
+	 * completed within budget.
+	 */
+	public String getCut() {
+		return cut;
+	}
+	
 	private void complete(Symbol[] F, Chart c, short current) {
-		while (!c.comps[current].isEmpty()) {
+		while (!c.comps[current].isEmpty() && !c.isOverBudget()) {
 			Item comp = (Item) c.comps[current].extractMin();
 			if (comp.rule.isDummy())
 				continue;
@@ -175,7 +230,7 @@ public class SCFGGenerator extends Generator {
 	
 	private void predictAndScan(Symbol[] F, Chart c, short current) {
 		ArrayList set = c.sets[current];
-		for (int i = 0; i < set.size(); ++i) {
+		for (int i = 0; i < set.size() && !c.isOverBudget(); ++i) {
 			Item item = (Item) set.get(i);
 			if (item.isCompleteF())
 				continue;
@@ -198,6 +253,18 @@ public class SCFGGenerator extends Generator {
 		}
 	}
 	
+	private boolean isGen(Item item) {
+		return item.start == 0 && item.isCompleteF() && item.isCompleteE()
+				&& item.rule.getLhsId() == gram.getStart().getId();
+	}
+	
+	private boolean hasGen(Chart c) {
+		for (Iterator it = c.sets[c.maxPos].iterator(); it.hasNext();)
+			if (isGen((Item) it.next()))
+				return true;
+		return false;
+	}
+	
 	private class GenIterator implements Iterator {
 		private Chart c;
 		private Iterator it;
@@ -209,11 +276,9 @@ public class SCFGGenerator extends Generator {
 		}
 		private void findNext() {
 			next = null;
-			int start = gram.getStart().getId();
 			while (it.hasNext()) {
 				Item item = (Item) it.next();
-				if (item.start == 0 && item.isCompleteF() && item.isCompleteE()
-						&& item.rule.getLhsId() == start) {
+				if (isGen(item)) {
 					next = item;
 					if (c.needAdjust)
 						next.adjustInner(lm, llm);
@@ -230,7 +295,10 @@ public class SCFGGenerator extends Generator {
 				throw new NoSuchElementException();
 			Item next = this.next;
 			findNext();
-			return new SCFGGen(next);
+			SCFGGen gen = new SCFGGen(next);
+			if (cut != null)
+				gen.comment += cut+"\n";
+			return gen;
 		}
 		public void remove() {
 			throw new UnsupportedOperationException();
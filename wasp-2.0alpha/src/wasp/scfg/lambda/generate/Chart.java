@@ -23,6 +23,7 @@ import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicInteger;
 /*
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -66,24 +67,54 @@ public class Chart {
 	public short kbest;
 
 	public short maxPos;
-	public ArrayList[][] toComps;
+	/** Items to be completed, indexed by their root positions, the positions of their next
+	 * arguments, and the LHS of their next arguments.  Items with different roots are kept apart, so
+	 * that disjoint MR subtrees can be completed concurrently. */
+	public ArrayList[][][] toComps;
 	public Heap[][] comps;
+	/** Complete items that have been taken off <code>comps</code> for completion, in that order.
+	 * They are combined again with items rooted higher up in the MR parse tree. */
+	public ArrayList[][] done;
+	/** Positions of the MR parse tree whose complete items have been spliced in from a subtree
+	 * cache.  These positions need not be predicted or completed again. */
+	public boolean[] cached;
 	public Item root;
 	private HashMap[][][] intern;
-	private int timestamp;
+	private AtomicInteger timestamp;
+	private int nlhs;
 	
 	public Chart(SCFG gram, Meaning F, short kbest) {
 		this.kbest = kbest;
 		maxPos = (short) (F.linear.length-1);
-		int nlhs = gram.countNonterms();
-		toComps = new ArrayList[maxPos+1][nlhs];
+		nlhs = gram.countNonterms();
+		toComps = new ArrayList[maxPos+1][][];
 		comps = new Heap[maxPos+1][maxPos+1];
+		done = new ArrayList[maxPos+1][maxPos+1];
+		cached = new boolean[maxPos+1];
 		root = null;
 		intern = new HashMap[maxPos+1][maxPos+1][nlhs];
 		for (short i = 0; i <= maxPos; ++i)
-			for (short j = 0; j <= maxPos; ++j)
+			for (short j = 0; j <= maxPos; ++j) {
 				comps[i][j] = new Heap(LATER_FIRST, INC);
-		timestamp = 0;
+				done[i][j] = new ArrayList();
+			}
+		timestamp = new AtomicInteger();
+	}
+	
+	/**
+	 * Returns the items rooted at the specified position that are waiting for an argument with the
+	 * specified LHS at the specified position.
+	 * 
+	 * @param root the root position of the items.
+	 * @param pos the position of the next argument.
+	 * @param lhs the LHS ID of the next argument.
+	 * @return a list of items to be completed; <code>null</code> if there are none.
+	 */
+	public ArrayList getToComps(short root, short pos, int lhs) {
+		ArrayList[][] a = toComps[root];
+		if (a == null || a[pos] == null)
+			return null;
+		return a[pos][lhs];
 	}
 	
 	public void addItem(Item item) {
@@ -122,7 +153,7 @@ public class Chart {
 	}
 	
 	private void addItemToTables(Item item) {
-		item.timestamp = timestamp++;
+		item.timestamp = timestamp.getAndIncrement();
 		if (item.isComplete())
 			// item is complete
 			comps[item.root][item.set.cardinality()-1].add(item);
@@ -130,9 +161,14 @@ public class Chart {
 			// item is to be completed
 			int n = item.args[item.dot].getId();
 			short pos = item.pos[item.dot];
-			if (toComps[pos][n] == null)
-				toComps[pos][n] = new ArrayList();
-			toComps[pos][n].add(item);
+			if (toComps[item.root] == null)
+				toComps[item.root] = new ArrayList[maxPos+1][];
+			ArrayList[] a = toComps[item.root][pos];
+			if (a == null)
+				a = toComps[item.root][pos] = new ArrayList[nlhs];
+			if (a[n] == null)
+				a[n] = new ArrayList();
+			a[n].add(item);
 		}
 	}
 	
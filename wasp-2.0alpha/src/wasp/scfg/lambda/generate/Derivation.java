@@ -33,7 +33,12 @@ public class Derivation implements Comparable {
 	public short ptr1;
 	public short ptr2;
 
+	/** The component scores of the rule, for derivations with no tail items; <code>null</code>
+	 * otherwise. */
 	public LogLinearModel.Scores scores;
+	/** The language model score added in this derivation step, apart from that of the tail
+	 * derivations. */
+	public double lm;
 	public double weight;
 	
 	public Derivation(Hyperarc edge, short ptr1, short ptr2) {
@@ -47,6 +52,24 @@ public class Derivation implements Comparable {
 		ptr1 = ptr2 = 0;
 	}
 	
+	/**
+	 * Returns the component scores of this derivation.  They are summed over the tail derivations
+	 * each time this method is called.
+	 * 
+	 * @return the component scores of this derivation.
+	 */
+	public LogLinearModel.Scores getScores() {
+		LogLinearModel.Scores s;
+		if (edge.tail1 == null)
+			s = new LogLinearModel.Scores(scores);
+		else if (edge.tail2 == null)
+			s = edge.tail1.D[ptr1].getScores();
+		else
+			s = edge.tail1.D[ptr1].getScores().add(edge.tail2.D[ptr2].getScores());
+		s.lm += lm;
+		return s;
+	}
+	
 	public boolean equals(Object o) {
 		if (o instanceof Derivation) {
 			Derivation d = (Derivation) o;
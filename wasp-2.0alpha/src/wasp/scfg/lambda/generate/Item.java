@@ -19,7 +19,7 @@
  */
 package wasp.scfg.lambda.generate;
 
-import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import wasp.data.Nonterminal;
 import wasp.data.Symbol;
@@ -42,23 +42,41 @@ import wasp.util.BitSet;
 public class Item {
 
 	private static short N;
-	private static Terminal[] ngram;
+	// IDs of the terminal symbols in the current n-gram of each thread; -1 for none
+	private static ThreadLocal ngrams = new ThreadLocal();
 
 	static void setN(short N) {
 		Item.N = N;
-		ngram = new Terminal[N];
 	}
 	
-	private static HashMap initContexts = new HashMap();
+	private static int[] ngram() {
+		int[] ngram = (int[]) ngrams.get();
+		if (ngram == null || ngram.length != N) {
+			ngram = new int[N];
+			ngrams.set(ngram);
+		}
+		return ngram;
+	}
+	
+	/** The initial context vector and language model score of each rule, which are computed once
+	 * and shared by all threads.  The scores of a rule are never changed during generation. */
+	private static ConcurrentHashMap initContexts = new ConcurrentHashMap();
+	private static class InitContext {
+		public Context context;
+		/** The language model score of the n-grams within the rule. */
+		public double lm;
+	}
 	/**
-	 * The surrounding context in which phrases appear in the output sentence.
+	 * The surrounding context in which phrases appear in the output sentence.  Only the boundary
+	 * words that can still be part of an n-gram are kept, as terminal IDs.  Argument positions are
+	 * marked by <code>-1</code>.
 	 * 
 	 * @author ywwong
 	 *
 	 */
 	private static class Context {
 		public short[] args;
-		public Terminal[] context;
+		public int[] context;
 		public boolean equals(Object o) {
 			if (o == this)
 				return true;
@@ -112,10 +130,10 @@ public class Item {
 		timestamp = 0;
 		
 		// re-use the initial context vector of the given rule, or create one if necessary
-		context = (Context) initContexts.get(rule);
-		if (context == null) {
+		InitContext init = (InitContext) initContexts.get(rule);
+		if (init == null) {
 			Context c = new Context();
-			rule.getScores().lm = 0;
+			double ruleLM = 0;
 			// determine what words to include in the initial context vector
 			short len = rule.lengthE();
 			boolean[] incl = new boolean[len];
@@ -136,34 +154,43 @@ public class Item {
 			// create the initial context vector
 			short nargs = rule.countArgs();
 			c.args = new short[nargs];
-			c.context = new Terminal[Arrays.count(incl)+nargs+2];
-			Arrays.clear(ngram);
+			c.context = new int[Arrays.count(incl)+nargs+2];
+			c.context[0] = c.context[c.context.length-1] = -1;
+			int[] ngram = ngram();
+			Arrays.fill(ngram, -1);
 			for (short i = 0, idx = 1; i < len; ++i) {
 				Symbol sym = rule.getE(i);
 				if (sym instanceof Nonterminal) {
 					c.args[sym.getIndex()-1] = idx;
-					c.context[idx++] = null;
-					Arrays.clear(ngram);
+					c.context[idx++] = -1;
+					Arrays.fill(ngram, -1);
 				} else {  // sym instanceof Terminal
 					if (incl[i])
-						c.context[idx++] = (Terminal) sym;
-					ngram[N-1] = (Terminal) sym;
-					if (ngram[0] != null)
-						rule.getScores().lm += lm.score(ngram);
-					Arrays.shiftLeft(ngram);
+						c.context[idx++] = sym.getId();
+					ngram[N-1] = sym.getId();
+					if (ngram[0] >= 0)
+						ruleLM += lm.score(ngram, 0, N);
+					Arrays.shiftLeft(ngram, -1);
 				}
 			}
-			context = c;
-			// store the initial context vector
-			initContexts.put(rule, context);
+			// store the initial context vector; another thread may have stored an equal one
+			init = new InitContext();
+			init.context = c;
+			init.lm = ruleLM;
+			InitContext prev = (InitContext) initContexts.putIfAbsent(rule, init);
+			if (prev != null)
+				init = prev;
 		}
+		context = init.context;
 		
 		bstar = new Hyperarc[1];
 		bstar[0] = new Hyperarc(this);
 		D = new Derivation[1];
 		D[0] = new Derivation(bstar[0]);
+		// the rule scores are shared, and are never changed
 		D[0].scores = rule.getScores();
-		D[0].weight = llm.dot(D[0].scores);
+		D[0].lm = init.lm;
+		D[0].weight = llm.dot(D[0].scores)+llm.wLM*init.lm;
 		//D[0].weight = llm.dotExceptWP(D[0].scores);
 		cand = null;
 	}
@@ -189,8 +216,9 @@ public class Item {
 		// create a new context vector
 		Context c = new Context();
 		c.args = new short[0];
-		c.context = new Terminal[3];
-		c.context[1] = term;
+		c.context = new int[3];
+		c.context[0] = c.context[2] = -1;
+		c.context[1] = term.getId();
 		context = c;
 		
 		bstar = new Hyperarc[1];
@@ -226,7 +254,6 @@ public class Item {
 		bstar[0] = new Hyperarc(back, comp, this);
 		D = new Derivation[1];
 		D[0] = new Derivation(bstar[0]);
-		D[0].scores = back.D[0].scores.add(comp.D[0].scores);
 		D[0].weight = back.D[0].weight+comp.D[0].weight;
 		cand = null;
 		
@@ -243,49 +270,84 @@ public class Item {
 		short seglen2 = (short) (seglen1+arglen-1);
 		short diff = (short) (Math.min(seglen2, 2*(N-1))-seglen1);
 		c.args = update(bc.args, here, diff);
-		c.context = new Terminal[bc.context.length+diff];
+		c.context = new int[bc.context.length+diff];
 		short idx = 0;
 		short segIdx = 0;
-		Arrays.clear(ngram);
+		int[] ngram = ngram();
+		Arrays.fill(ngram, -1);
 		for (short i = 0; i <= prev; ++i)
 			c.context[idx++] = bc.context[i];
 		for (short i = (short) (prev+1); i < here; ++i, ++segIdx) {
 			if (incl(seglen2, segIdx))
 				c.context[idx++] = bc.context[i];
 			ngram[N-1] = bc.context[i];
-			Arrays.shiftLeft(ngram);
+			Arrays.shiftLeft(ngram, -1);
 		}
 		for (short i = 1; i < cc.context.length-1; ++i, ++segIdx) {
 			if (incl(seglen2, segIdx))
 				c.context[idx++] = cc.context[i];
 			ngram[N-1] = cc.context[i];
-			if (i < N && ngram[0] != null) {
-				double s = lm.score(ngram);
-				D[0].scores.lm += s;
+			if (i < N && ngram[0] >= 0) {
+				double s = lm.score(ngram, 0, N);
+				D[0].lm += s;
 				D[0].weight += llm.wLM*s;
 			}
-			Arrays.shiftLeft(ngram);
+			Arrays.shiftLeft(ngram, -1);
 		}
 		for (short i = (short) (here+1); i < next; ++i, ++segIdx) {
 			if (incl(seglen2, segIdx))
 				c.context[idx++] = bc.context[i];
 			ngram[N-1] = bc.context[i];
-			if (i < here+N && ngram[0] != null) {
-				double s = lm.score(ngram);
-				D[0].scores.lm += s;
+			if (i < here+N && ngram[0] >= 0) {
+				double s = lm.score(ngram, 0, N);
+				D[0].lm += s;
 				D[0].weight += llm.wLM*s;
 			}
-			Arrays.shiftLeft(ngram);
+			Arrays.shiftLeft(ngram, -1);
 		}
 		for (short i = next; i < bc.context.length; ++i)
 			c.context[idx++] = bc.context[i];
 		context = c;
 	}
 	
+	/**
+	 * Creates a copy of a complete item for an identical MR subtree at a different position.  The
+	 * copy shares its hyperarcs and best derivation with the given item, and finds its own
+	 * <i>k</i>-best derivations.
+	 *
+	 * @param item the complete item to copy.
+	 * @param diff the offset from the old root position to the new one.
+	 * @param length the length of the new linearized MR parse.
+	 */
+	public Item(Item item, short diff, short length) {
+		rule = item.rule;
+		args = item.args;
+		pos = item.pos;
+		if (diff != 0 && pos.length > 0) {
+			pos = pos.clone();
+			for (short i = 0; i < pos.length; ++i)
+				pos[i] += diff;
+		}
+		dot = item.dot;
+		root = (short) (item.root+diff);
+		set = new BitSet(length);
+		for (short i = 0; i < item.set.length(); ++i)
+			if (item.set.get(i))
+				set.set((short) (i+diff), true);
+		vars = item.vars;
+		fvars = item.fvars;
+		context = item.context;
+		timestamp = item.timestamp;
+
+		bstar = item.bstar;
+		D = new Derivation[1];
+		D[0] = item.D[0];
+		cand = null;
+	}
+
 	public static void complete(Derivation d, NgramModel lm, LogLinearModel llm) {
 		Item back = d.edge.tail1;
 		Item comp = d.edge.tail2;
-		d.scores = back.D[d.ptr1].scores.add(comp.D[d.ptr2].scores);
 		d.weight = back.D[d.ptr1].weight+comp.D[d.ptr2].weight;
 		
 		Context bc = back.context;
@@ -294,39 +356,40 @@ public class Item {
 		short here = bc.args[index-1];
 		short prev = prev(bc.context, here);
 		short next = next(bc.context, here);
-		Arrays.clear(ngram);
+		int[] ngram = ngram();
+		Arrays.fill(ngram, -1);
 		for (short i = (short) (prev+1); i < here; ++i) {
 			ngram[N-1] = bc.context[i];
-			Arrays.shiftLeft(ngram);
+			Arrays.shiftLeft(ngram, -1);
 		}
 		for (short i = 1; i < cc.context.length-1; ++i) {
 			ngram[N-1] = cc.context[i];
-			if (i < N && ngram[0] != null) {
-				double s = lm.score(ngram);
-				d.scores.lm += s;
+			if (i < N && ngram[0] >= 0) {
+				double s = lm.score(ngram, 0, N);
+				d.lm += s;
 				d.weight += llm.wLM*s;
 			}
-			Arrays.shiftLeft(ngram);
+			Arrays.shiftLeft(ngram, -1);
 		}
 		for (short i = (short) (here+1); i < next; ++i) {
 			ngram[N-1] = bc.context[i];
-			if (i < here+N && ngram[0] != null) {
-				double s = lm.score(ngram);
-				d.scores.lm += s;
+			if (i < here+N && ngram[0] >= 0) {
+				double s = lm.score(ngram, 0, N);
+				d.lm += s;
 				d.weight += llm.wLM*s;
 			}
-			Arrays.shiftLeft(ngram);
+			Arrays.shiftLeft(ngram, -1);
 		}
 	}
 
-	private static short prev(Terminal[] context, short i) {
-		while (context[--i] != null)
+	private static short prev(int[] context, short i) {
+		while (context[--i] >= 0)
 			;
 		return i;
 	}
 	
-	private static short next(Terminal[] context, short i) {
-		while (context[++i] != null)
+	private static short next(int[] context, short i) {
+		while (context[++i] >= 0)
 			;
 		return i;
 	}
@@ -370,17 +433,13 @@ public class Item {
 		bstar[0] = new Hyperarc(comp, this);
 		D = new Derivation[1];
 		D[0] = new Derivation(bstar[0]);
-		D[0].scores = new LogLinearModel.Scores(comp.D[0].scores);
 		D[0].weight = comp.D[0].weight;
 		//D[0].weight += llm.wWP*D[0].scores.wp;
 		cand = null;
 
 		for (short i = 2; i <= N-1 && i+1 < comp.context.context.length; ++i) {
-			Terminal[] ngram = new Terminal[i];
-			for (short j = 1; j <= i; ++j)
-				ngram[j-1] = comp.context.context[j];
-			double s = lm.score(ngram);
-			D[0].scores.lm += s;
+			double s = lm.score(comp.context.context, 1, i+1);
+			D[0].lm += s;
 			D[0].weight += llm.wLM*s;
 		}
 		context = null;
@@ -388,16 +447,12 @@ public class Item {
 	
 	public static void completeRoot(Derivation d, NgramModel lm, LogLinearModel llm) {
 		Item comp = d.edge.tail1;
-		d.scores = new LogLinearModel.Scores(comp.D[d.ptr1].scores);
 		d.weight = comp.D[d.ptr1].weight;
 		//d.weight += llm.wWP*d.scores.wp;
 
 		for (short i = 2; i <= N-1 && i+1 < comp.context.context.length; ++i) {
-			Terminal[] ngram = new Terminal[i];
-			for (short j = 1; j <= i; ++j)
-				ngram[j-1] = comp.context.context[j];
-			double s = lm.score(ngram);
-			d.scores.lm += s;
+			double s = lm.score(comp.context.context, 1, i+1);
+			d.lm += s;
 			d.weight += llm.wLM*s;
 		}
 	}
@@ -47,7 +47,7 @@ public class LambdaSCFGGen extends LogLinearGen {
 	private Derivation d;
 	
 	public LambdaSCFGGen(Derivation d) {
-		super(d.weight, d.scores);
+		super(d.weight, d.getScores());
 		this.d = d.edge.tail1.D[d.ptr1];
 	}
 	
@@ -22,6 +22,9 @@ package wasp.scfg.lambda.generate;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -33,7 +36,9 @@ import wasp.data.Terminal;
 import wasp.data.VariableAssignment;
 import wasp.data.VariableSet;
 import wasp.main.Config;
+import wasp.main.Context;
 import wasp.main.Generator;
+import wasp.main.Metrics;
 import wasp.main.generate.LogLinearModel;
 import wasp.math.Math;
 import wasp.mrl.Production;
@@ -45,6 +50,7 @@ import wasp.scfg.SCFGModel;
 import wasp.util.Arrays;
 import wasp.util.BitSet;
 import wasp.util.Bool;
+import wasp.util.Int;
 import wasp.util.Permute;
 
 /**
@@ -60,10 +66,21 @@ public class LambdaSCFGGenerator extends Generator {
 		logger.setLevel(Level.FINER);
 	}
 	
+	private static final int DEFAULT_CACHE_SIZE = 1000;
+	
+	private static final Metrics.Counter CACHE_LOOKUPS = Metrics.counter("scfg.lambda.generate.cache.lookups");
+	private static final Metrics.Counter CACHE_HITS = Metrics.counter("scfg.lambda.generate.cache.hits");
+	
 	private SCFG gram;
 	private NgramModel lm;
 	private LogLinearModel llm;
 	private short kbest;
+	/** The shared pool of threads for completing disjoint MR subtrees concurrently; <code>null</code>
+	 * if only one thread is used. */
+	private ForkJoinPool pool;
+	/** Completed MR subtrees from earlier calls to <code>generate</code>; <code>null</code> if
+	 * caching is disabled. */
+	private SubtreeCache cache;
 	
 	private VariableAssignment vaEmpty;
 	private VariableSet vsEmpty;
@@ -93,6 +110,12 @@ public class LambdaSCFGGenerator extends Generator {
 		vsEmpty = new VariableSet();
 		naEmpty = new Nonterminal[0];
 		saEmpty = new short[0];
+		String threads = Config.get(Config.SCFG_LAMBDA_THREADS);
+		int nthreads = (threads==null) ? Runtime.getRuntime().availableProcessors() : Int.parseInt(threads);
+		pool = (nthreads > 1) ? Context.getSharedPool() : null;
+		String size = Config.get(Config.SCFG_LAMBDA_CACHE_SIZE);
+		int csize = (size==null) ? DEFAULT_CACHE_SIZE : Int.parseInt(size);
+		cache = (csize > 0) ? new SubtreeCache(csize) : null;
 	}
 	
 	public LambdaSCFGGenerator(SCFGModel tm, NgramModel lm, LogLinearModel llm) {
@@ -103,16 +126,36 @@ public class LambdaSCFGGenerator extends Generator {
 		return false;
 	}
 	
-	public Iterator generate(Meaning F) {
+	public Iterator generate(final Meaning F) {
 		//logger.finer(F.str);
-		Chart c = new Chart(gram, F, kbest);
+		final Chart c = new Chart(gram, F, kbest);
+		float[] weights = null;
+		if (cache != null) {
+			weights = llm.getWeights();
+			splice(F, c, weights);
+		}
 		for (short root = 0; root <= c.maxPos; ++root)
-			predict(F, c, root);
-		for (short root = c.maxPos; root > 0; --root)
-			for (short card = 0; card <= c.maxPos; ++card) {
-				c.prune(root, card);
-				complete(F, c, root, card);
-			}
+			if (!c.cached[root])
+				predict(F, c, root);
+		if (pool == null)
+			complete(F, c, (short) 0);
+		else {
+			final Context ctx = Context.current();
+			pool.invoke(new RecursiveAction() {
+				protected void compute() {
+					Context prev = Context.install(ctx);
+					try {
+						LambdaSCFGGenerator.this.complete(F, c, (short) 0);
+					} finally {
+						Context.install(prev);
+					}
+				}
+			});
+		}
+		if (cache != null)
+			for (short root = 1; root <= c.maxPos; ++root)
+				if (!c.cached[root])
+					cache.put(F, c, root, weights);
 		c.prune((short) 0, c.maxPos);
 		completeRoot(F, c);
 		if (kbest > 1)
@@ -120,6 +163,24 @@ public class LambdaSCFGGenerator extends Generator {
 		return new GenIterator(c);
 	}
 	
+	/**
+	 * Splices the largest MR subtrees found in the subtree cache into the given chart, and marks the
+	 * positions that they cover.
+	 */
+	private void splice(Meaning F, Chart c, float[] weights) {
+		for (short root = 1; root <= c.maxPos; ++root) {
+			if (Metrics.enabled)
+				CACHE_LOOKUPS.inc();
+			if (cache.splice(F, c, root, weights)) {
+				if (Metrics.enabled)
+					CACHE_HITS.inc();
+				for (short pos = root; pos <= F.lastd[root]; ++pos)
+					c.cached[pos] = true;
+				root = F.lastd[root];
+			}
+		}
+	}
+	
 	private void predict(Meaning F, Chart c, short root) {
 		Rule[] rules = gram.getRules();
 		for (int i = 0; i < rules.length; ++i) {
@@ -280,55 +341,107 @@ public class LambdaSCFGGenerator extends Generator {
 		return c1;
 	}
 	
-	private void complete(Meaning F, Chart c, short root, short card) {
-		COMP: while (!c.comps[root][card].isEmpty()) {
-			Item comp = (Item) c.comps[root][card].extractMin();
-			if (!comp.isActive())
-				continue COMP;
-			Nonterminal cn = comp.rule.getLhs();
-			BitSet cs = comp.set;
-			// check completeness of COMP subtree
-			if (F.lprods[root].isAC())
-				for (short k = 0; k < F.child[root].length; ++k) {
-					short ch = F.child[root][k];
-					if (cs.get(ch) && !cs.and(ch, F.lastd[ch]))
-						continue COMP;
-				}
-			boolean full = cs.and(root, F.lastd[root]);
-			ArrayList[] lists = new ArrayList[2];
-			lists[0] = c.toComps[root][cn.getId()];
-			lists[1] = c.toComps[F.parent[root]][cn.getId()];
-			for (int i = 0; i < 2; ++i) {
-				if (lists[i] == null)
-					continue;
-				ITEM: for (int j = 0; j < lists[i].size(); ++j) {
-					Item item = (Item) lists[i].get(j);
-					Nonterminal in = item.args[item.dot];
-					BitSet is = item.set;
-					if (in.countArgs() != cn.countArgs())
-						continue ITEM;
-					if (i == 1 && !is.get(F.parent[root]))
-						continue ITEM;
-					boolean combineAC = is.get(root);
-					if (!combineAC && !full)
-						continue ITEM;
-					Item next = new Item(item, comp, lm, llm);
-					// see if variable assignments are OK
-					if (item.vars.containsSome(comp.fvars))
-						continue ITEM;
-					next.vars = item.vars.union(comp.vars.upwardMap(in, cn));
-					if (next.vars == null)
-						continue ITEM;
-					next.fvars = item.fvars.union(comp.fvars);
-					// combine COMP and ITEM subtrees
-					next.root = item.root;
-					if (is.intersect(cs).cardinality() > ((combineAC) ? 1 : 0))
-						continue ITEM;
-					next.set = is.union(cs);
-					// add new item finally
-					//logger.finer("complete "+item+" + "+comp+" -> "+next);
-					c.addItem(next);
-				}
+	/**
+	 * Completes all items rooted at the specified position of the MR parse tree, and all items rooted
+	 * below it.  Items rooted in disjoint subtrees never combine with each other, so the subtrees
+	 * below <code>root</code> are completed concurrently.  Items rooted at <code>root</code> are then
+	 * combined with the complete items below, in the same order as if the whole MR parse tree were
+	 * processed bottom-up in one pass.  Subtrees spliced in from the subtree cache are already
+	 * complete.
+	 */
+	private void complete(final Meaning F, final Chart c, short root) {
+		if (c.cached[root])
+			return;
+		final short[] ch = F.child[root];
+		if (pool != null && ch.length > 1) {
+			ForkJoinTask[] tasks = new ForkJoinTask[ch.length];
+			final Context ctx = Context.current();
+			for (int i = 0; i < ch.length; ++i) {
+				final short child = ch[i];
+				tasks[i] = new RecursiveAction() {
+					protected void compute() {
+						Context prev = Context.install(ctx);
+						try {
+							LambdaSCFGGenerator.this.complete(F, c, child);
+						} finally {
+							Context.install(prev);
+						}
+					}
+				};
+			}
+			ForkJoinTask.invokeAll(tasks);
+		} else
+			for (int i = ch.length-1; i >= 0; --i)
+				complete(F, c, ch[i]);
+		for (short pos = F.lastd[root]; pos > root; --pos)
+			for (short card = 0; card <= c.maxPos; ++card) {
+				ArrayList done = c.done[pos][card];
+				for (int i = 0; i < done.size(); ++i)
+					complete(F, c, (Item) done.get(i), pos, root);
+			}
+		if (root == 0)
+			return;
+		for (short card = 0; card <= c.maxPos; ++card) {
+			c.prune(root, card);
+			COMP: while (!c.comps[root][card].isEmpty()) {
+				Item comp = (Item) c.comps[root][card].extractMin();
+				if (!comp.isActive())
+					continue COMP;
+				BitSet cs = comp.set;
+				// check completeness of COMP subtree
+				if (F.lprods[root].isAC())
+					for (short k = 0; k < F.child[root].length; ++k) {
+						short chk = F.child[root][k];
+						if (cs.get(chk) && !cs.and(chk, F.lastd[chk]))
+							continue COMP;
+					}
+				c.done[root][card].add(comp);
+				complete(F, c, comp, root, root);
+			}
+		}
+	}
+	
+	/**
+	 * Combines the specified complete item at position <code>pos</code> with items rooted at
+	 * position <code>root</code>.
+	 */
+	private void complete(Meaning F, Chart c, Item comp, short pos, short root) {
+		Nonterminal cn = comp.rule.getLhs();
+		BitSet cs = comp.set;
+		boolean full = cs.and(pos, F.lastd[pos]);
+		ArrayList[] lists = new ArrayList[2];
+		lists[0] = c.getToComps(root, pos, cn.getId());
+		lists[1] = (pos==root) ? null : c.getToComps(root, F.parent[pos], cn.getId());
+		for (int i = 0; i < 2; ++i) {
+			if (lists[i] == null)
+				continue;
+			ITEM: for (int j = 0; j < lists[i].size(); ++j) {
+				Item item = (Item) lists[i].get(j);
+				Nonterminal in = item.args[item.dot];
+				BitSet is = item.set;
+				if (in.countArgs() != cn.countArgs())
+					continue ITEM;
+				if (i == 1 && !is.get(F.parent[pos]))
+					continue ITEM;
+				boolean combineAC = is.get(pos);
+				if (!combineAC && !full)
+					continue ITEM;
+				Item next = new Item(item, comp, lm, llm);
+				// see if variable assignments are OK
+				if (item.vars.containsSome(comp.fvars))
+					continue ITEM;
+				next.vars = item.vars.union(comp.vars.upwardMap(in, cn));
+				if (next.vars == null)
+					continue ITEM;
+				next.fvars = item.fvars.union(comp.fvars);
+				// combine COMP and ITEM subtrees
+				next.root = item.root;
+				if (is.intersect(cs).cardinality() > ((combineAC) ? 1 : 0))
+					continue ITEM;
+				next.set = is.union(cs);
+				// add new item finally
+				//logger.finer("complete "+item+" + "+comp+" -> "+next);
+				c.addItem(next);
 			}
 		}
 	}
@@ -352,7 +465,9 @@ public class LambdaSCFGGenerator extends Generator {
 		if (c.root == null)
 			return;
 		lazyKthBest(c.root, kbest);
-		clearCandidates(c.root);
+		// cached items may be asked for more derivations later, which requires their candidates
+		if (cache == null)
+			clearCandidates(c.root);
 	}
 	
 	private void lazyKthBest(Item item, short k) {
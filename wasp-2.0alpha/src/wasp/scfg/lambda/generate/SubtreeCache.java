@@ -0,0 +1,145 @@
+/*
+ * Copyright 2006, 2007 Yuk Wah Wong.
+ *
+ * This file is part of the WASP distribution.
+ *
+ * WASP is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * WASP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with WASP; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package wasp.scfg.lambda.generate;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import wasp.data.Meaning;
+import wasp.mrl.Production;
+import wasp.util.Arrays;
+
+/**
+ * A bounded cache of completed MR subtrees for the lambda-SCFG-based chart generator.  Items rooted
+ * in an MR subtree never depend on anything outside the subtree, so once a subtree has been
+ * completed, its pruned items can be spliced into the chart of any later MR that contains the same
+ * subtree.  Subtrees are keyed by their productions and their shape, together with the component
+ * weights of the log-linear model that scored them.  The least recently used subtrees are dropped
+ * when the cache is full.
+ *
+ * @author ywwong
+ *
+ */
+public class SubtreeCache {
+
+	private static class Key {
+		public Production[] prods;
+		public short[] parent;
+		public float[] weights;
+		private int hash;
+		public Key(Meaning F, short root, float[] weights) {
+			short len = (short) (F.lastd[root]-root+1);
+			prods = new Production[len];
+			parent = new short[len];
+			for (short i = 0; i < len; ++i) {
+				prods[i] = F.lprods[root+i];
+				parent[i] = (short) ((i==0) ? -1 : F.parent[root+i]-root);
+			}
+			this.weights = weights;
+			hash = 1;
+			hash = 31*hash + Arrays.hashCode(prods);
+			hash = 31*hash + Arrays.hashCode(parent);
+		}
+		public boolean equals(Object o) {
+			if (o == this)
+				return true;
+			if (o instanceof Key) {
+				Key k = (Key) o;
+				return hash == k.hash && Arrays.equal(prods, k.prods) && Arrays.equal(parent, k.parent)
+				&& Arrays.equal(weights, k.weights);
+			}
+			return false;
+		}
+		public int hashCode() {
+			return hash;
+		}
+	}
+
+	/** The complete items of a subtree, indexed by position relative to the subtree root and
+	 * cardinality; <code>null</code> for none. */
+	private static class Entry {
+		public short root;
+		public ArrayList[][] done;
+	}
+
+	private LinkedHashMap map;
+
+	/**
+	 * Creates an empty cache.
+	 *
+	 * @param size the maximum number of MR subtrees to keep.
+	 */
+	public SubtreeCache(final int size) {
+		map = new LinkedHashMap(16, 0.75f, true) {
+			protected boolean removeEldestEntry(Map.Entry eldest) {
+				return size() > size;
+			}
+		};
+	}
+
+	/**
+	 * Splices the cached items of the MR subtree rooted at the specified position into the given
+	 * chart.  The items are added to the <code>done</code> table of the chart, as if the subtree had
+	 * just been completed.
+	 *
+	 * @param F the MR being generated from.
+	 * @param c the chart for <code>F</code>.
+	 * @param root the root position of the MR subtree.
+	 * @param weights the current component weights of the log-linear model.
+	 * @return <code>true</code> if the subtree is found in this cache; <code>false</code> otherwise.
+	 */
+	public boolean splice(Meaning F, Chart c, short root, float[] weights) {
+		Entry e = (Entry) map.get(new Key(F, root, weights));
+		if (e == null)
+			return false;
+		short diff = (short) (root-e.root);
+		short length = (short) F.linear.length;
+		for (short i = 0; i < e.done.length; ++i)
+			for (short card = 0; card < e.done[i].length; ++card) {
+				ArrayList done = e.done[i][card];
+				if (done != null)
+						for (int j = 0; j < done.size(); ++j)
+						c.done[root+i][card].add(new Item((Item) done.get(j), diff, length));
+			}
+		return true;
+	}
+
+	/**
+	 * Adds the complete items of the MR subtree rooted at the specified position to this cache.
+	 *
+	 * @param F the MR being generated from.
+	 * @param c the chart for <code>F</code>, in which the subtree has been completed.
+	 * @param root the root position of the MR subtree.
+	 * @param weights the current component weights of the log-linear model.
+	 */
+	public void put(Meaning F, Chart c, short root, float[] weights) {
+		Entry e = new Entry();
+		e.root = root;
+		short len = (short) (F.lastd[root]-root+1);
+		e.done = new ArrayList[len][len];
+		for (short i = 0; i < len; ++i)
+			for (short card = 0; card < len; ++card)
+				if (!c.done[root+i][card].isEmpty())
+					e.done[i][card] = new ArrayList(c.done[root+i][card]);
+		map.put(new Key(F, root, weights), e);
+	}
+
+}
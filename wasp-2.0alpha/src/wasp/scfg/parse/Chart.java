@@ -21,8 +21,10 @@ package wasp.scfg.parse;
 
 import java.util.ArrayList;
 import java.util.BitSet;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 /*
 import java.util.logging.Level;
@@ -32,6 +34,7 @@ import java.util.logging.Logger;
 import wasp.data.Nonterminal;
 import wasp.data.Symbol;
 import wasp.data.Terminal;
+import wasp.scfg.Budget;
 import wasp.scfg.SCFG;
 import wasp.util.Double;
 import wasp.util.Heap;
@@ -83,6 +86,18 @@ public class Chart {
 				return 0;
 		}
 	};
+	private static final Comparator BEST_FIRST = new Comparator() {
+		public int compare(Object o1, Object o2) {
+			double s1 = ((Item) o1).inner;
+			double s2 = ((Item) o2).inner;
+			if (s1 > s2)
+				return -1;
+			else if (s1 < s2)
+				return 1;
+			else
+				return 0;
+		}
+	};
 	private static final int INC = 64;
 	
 	/** The maximum number of top-scoring theories to keep for each cell.  <code>0</code> means no limit
@@ -99,6 +114,13 @@ public class Chart {
 	private BitSet[][] predicted;
 	private HashMap[][][] intern;
 	private int timestamp;
+	/** The resource limits for filling this chart; <code>null</code> if there are no limits. */
+	private Budget budget;
+	/** The maximum number of items for each position, beyond which incomplete items are left out;
+	 * <code>0</code> means no limit. */
+	private int beam;
+	/** Indicates if any item has been left out because of the <code>beam</code> limit. */
+	public boolean pruned;
 	
 	public Chart(SCFG gram, Terminal[] s, int kbest, boolean ignoreEmpty) {
 		this.kbest = kbest;
@@ -118,6 +140,76 @@ public class Chart {
 		timestamp = 0;
 	}
 	
+	/**
+	 * Sets the resource limits for filling this chart.  Once the budget is used up, no more items are
+	 * added to this chart.  Incomplete items beyond the given beam width are left out as well, starting
+	 * from the lowest-scoring ones (see <code>prune</code>).
+	 * 
+	 * @param budget the resource limits; <code>null</code> if there are no limits.
+	 * @param beam the maximum number of items for each position; <code>0</code> means no limit.
+	 */
+	public void setBudget(Budget budget, int beam) {
+		this.budget = budget;
+		this.beam = beam;
+		pruned = false;
+	}
+	
+	/**
+	 * Indicates if the budget for filling this chart has been used up, in which case no more items
+	 * can be added.
+	 * 
+	 * @return <code>true</code> if the budget has been used up; <code>false</code> otherwise.
+	 */
+	public boolean isOverBudget() {
+		return budget != null && budget.isExceeded();
+	}
+	
+	/**
+	 * Leaves out all but the top-scoring incomplete items at the specified position, if there are
+	 * more of them than the beam width.  This method is called once all items that end at the
+	 * position have been added, before they are extended.  Complete items are always kept, so that
+	 * full parses can still be found.
+	 * 
+	 * @param current a position.
+	 */
+	public void prune(short current) {
+		if (beam == 0)
+			return;
+		ArrayList set = sets[current];
+		ArrayList incomplete = new ArrayList();
+		for (int i = 0; i < set.size(); ++i) {
+			Item item = (Item) set.get(i);
+			if (!(item.dot == item.rule.lengthE()))
+				incomplete.add(item);
+		}
+		if (incomplete.size() <= beam)
+			return;
+		Collections.sort(incomplete, BEST_FIRST);
+		IdentityHashMap dropped = new IdentityHashMap();
+		for (int i = beam; i < incomplete.size(); ++i)
+			dropped.put(incomplete.get(i), incomplete.get(i));
+		sets[current] = keep(set, dropped);
+		for (int n = 0; n < toComps[current].length; ++n)
+			if (toComps[current][n] != null)
+				toComps[current][n] = keep(toComps[current][n], dropped);
+		pruned = true;
+	}
+	
+	private static ArrayList keep(ArrayList items, IdentityHashMap dropped) {
+		ArrayList list = new ArrayList(items.size());
+		for (int i = 0; i < items.size(); ++i)
+			if (!dropped.containsKey(items.get(i)))
+				list.add(items.get(i));
+		return list;
+	}
+	
+	/**
+	 * Indicates if a new item can be added to this chart, and charges the budget for it.
+	 */
+	private boolean admit(Item item) {
+		return budget == null || budget.charge();
+	}
+	
 	public void addItem(Item item) {
 		if (ignoreEmpty && item.cov != null && item.cov.isEmpty())
 			return;
@@ -126,6 +218,8 @@ public class Chart {
 		if (kbest == 0) {
 			Item i = intern(cell, item);
 			if (i == null) {
+				if (!admit(item))
+					return;
 				addIntern(cell, item);
 				add(item);
 			} else
@@ -133,6 +227,8 @@ public class Chart {
 		} else if (kbest == 1) {
 			Item i = intern(cell, item);
 			if (i == null) {
+				if (!admit(item))
+					return;
 				addIntern(cell, item);
 				add(item);
 			} else if (i.inner < item.inner)
@@ -144,6 +240,8 @@ public class Chart {
 				;
 			if (i < kbest) {
 				if (a[kbest-1] == null) {
+					if (!admit(item))
+						return;
 					for (int j = kbest-1; j >= i+1; --j)
 						a[j] = a[j-1];
 					a[i] = item;
@@ -19,6 +19,10 @@
  */
 package wasp.scfg.parse;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.logging.Level;
@@ -27,7 +31,9 @@ import java.util.logging.Logger;
 import wasp.data.Example;
 import wasp.data.Examples;
 import wasp.data.Node;
+import wasp.main.Checkpoint;
 import wasp.main.Config;
+import wasp.main.Metrics;
 import wasp.math.LBFGS;
 import wasp.math.Math;
 import wasp.math.Vectors;
@@ -45,13 +51,17 @@ import wasp.util.Int;
  * @author ywwong
  *
  */
-public class Maxent implements LBFGS.Objective {
+public class Maxent implements LBFGS.Resumable {
 
 	private static Logger logger = Logger.getLogger(Maxent.class.getName());
 	static {
 		logger.setLevel(Level.FINE);
 	}
 	
+	private static final Metrics.Counter EVALS = Metrics.counter("maxent.evaluations");
+	private static final Metrics.Counter CACHED_EVALS = Metrics.counter("maxent.evaluations.cached");
+	private static final Metrics.Histogram EVAL_TIME = Metrics.histogram("maxent.evaluation.time");
+	
 	private static final boolean DO_VITERBI_APPROX = true;
 	private static final double PRIOR_VARIANCE_RULE_WEIGHT = 100;
 	private static final double PRIOR_VARIANCE_OTHER = 1;
@@ -63,6 +73,8 @@ public class Maxent implements LBFGS.Objective {
 	// for quicker training
 	private static final int QUICK_VITERBI_APPROX_ITERATIONS = Math.max(VITERBI_APPROX_ITERATIONS/2, 1);
 	
+	private static final String CHECKPOINT = "maxent-lbfgs";
+	
 	private SCFGModel model;
 
 	private Examples examples;
@@ -70,6 +82,8 @@ public class Maxent implements LBFGS.Objective {
 	private double[] lastX;
 	private double lastVal;
 	private double[] lastGrad;
+	// Meaning -> coverage tables, shared by all parsers used during estimation
+	private HashMap covs;
 	
 	public Maxent(SCFGModel model) {
 		this.model = model;
@@ -86,11 +100,16 @@ public class Maxent implements LBFGS.Objective {
 		logger.info("Estimating the parameters of the SCFG translation model");
 		this.examples = examples;
 		vaIters = (full) ? VITERBI_APPROX_ITERATIONS : QUICK_VITERBI_APPROX_ITERATIONS;
+		covs = new HashMap();
 		reset();
+		indexFeatures();
 		double[] weights = getInitWeightVector();
-		new LBFGS().minimize(this, weights, full);
+		LBFGS lbfgs = new LBFGS();
+		lbfgs.setCheckpoint(Checkpoint.getFile(CHECKPOINT), Checkpoint.getInterval());
+		lbfgs.minimize(this, weights, full);
 		setWeightVector(weights);
 		reset();
+		covs = null;
 		logger.info("Parameter estimation of the SCFG translation model is done");
 	}
 
@@ -100,6 +119,32 @@ public class Maxent implements LBFGS.Objective {
 		lastGrad = null;
 	}
 	
+	/**
+	 * Collects the parameters of sparse feature sets (e.g. rule bigrams) that are used in the parse
+	 * charts of the training examples.  Only these parameters are estimated.
+	 */
+	private void indexFeatures() {
+		boolean sparse = false;
+		for (int i = 0; i < model.pf.all.length; ++i)
+			if (model.pf.all[i].startIndexing())
+				sparse = true;
+		if (!sparse)
+			return;
+		SCFGParser parser = new SCFGParser(model, true);
+		parser.setCoverageCache(covs);
+		for (Iterator it = examples.iterator(); it.hasNext();) {
+			Example ex = (Example) it.next();
+			for (Iterator jt = parser.parse(ex.E(), ex.F); jt.hasNext();)
+				jt.next();
+		}
+		int n = 0;
+		for (int i = 0; i < model.pf.all.length; ++i) {
+			model.pf.all[i].stopIndexing();
+			n += model.pf.all[i].countParams();
+		}
+		logger.fine("number of parameters = "+n);
+	}
+	
 	/**
 	 * Returns the initial parameters of the translation model.  The parameters are listed in a
 	 * domain-specific order.
@@ -115,10 +160,13 @@ public class Maxent implements LBFGS.Objective {
 	
 	public void getValueAndGradient(double[] X, Double val, double[] grad) {
 		if (lastX != null && Arrays.equal(lastX, X)) {
+			if (Metrics.enabled)
+				CACHED_EVALS.inc();
 			val.val = lastVal;
 			Vectors.assign(grad, lastGrad);
 			return;
 		}
+		long start = Metrics.start();
 		double[] T_E = new double[X.length];
 		double[] T_EF = new double[X.length];
 		Arrays.fill(T_E, Double.NEGATIVE_INFINITY);
@@ -126,6 +174,7 @@ public class Maxent implements LBFGS.Objective {
 		val.val = 0;
 		setWeightVector(X);
 		SCFGParser parser = new SCFGParser(model, true);
+		parser.setCoverageCache(covs);
 		for (Iterator it = examples.iterator(); it.hasNext();) {
 			Example ex = (Example) it.next();
 			logger.finest("example "+ex.id);
@@ -165,6 +214,10 @@ public class Maxent implements LBFGS.Objective {
 		lastX = (double[]) X.clone();
 		lastVal = val.val;
 		lastGrad = (double[]) grad.clone();
+		if (Metrics.enabled) {
+			EVALS.inc();
+			Metrics.stop(EVAL_TIME, start);
+		}
 	}
 	
 	/**
@@ -223,6 +276,7 @@ public class Maxent implements LBFGS.Objective {
 			if (isLastIter || (iter+1) % vaIters == 0) {
 				HashSet set = new HashSet();
 				SCFGParser parser = new SCFGParser(model, 1);
+				parser.setCoverageCache(covs);
 				for (Iterator it = examples.iterator(); it.hasNext();) {
 					Example ex = (Example) it.next();
 					//logger.finest("example "+ex.id);
@@ -260,4 +314,32 @@ public class Maxent implements LBFGS.Objective {
 		return set.contains(model.gram.tied(rule));
 	}
 	
+	/**
+	 * Writes the set of active rules, which is changed by Viterbi approximation.
+	 */
+	public void writeState(DataOutputStream out) throws IOException {
+		int nr = model.gram.countRules();
+		out.writeInt(nr);
+		for (int i = 0; i < nr; ++i)
+			out.writeBoolean(model.gram.getRule(i).isActive());
+	}
+	
+	/**
+	 * Restores the set of active rules.
+	 */
+	public void readState(DataInputStream in) throws IOException {
+		int nr = model.gram.countRules();
+		if (in.readInt() != nr)
+			throw new IOException("the number of rules does not match");
+		boolean[] active = new boolean[nr];
+		for (int i = 0; i < nr; ++i)
+			active[i] = in.readBoolean();
+		for (int i = 0; i < nr; ++i) {
+			Rule rule = model.gram.getRule(i);
+			if (rule.isActive() && !active[i])
+				rule.deactivate();
+		}
+		reset();
+	}
+	
 }
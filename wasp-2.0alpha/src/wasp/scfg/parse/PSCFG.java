@@ -19,6 +19,7 @@
  */
 package wasp.scfg.parse;
 
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.logging.Logger;
@@ -59,6 +60,8 @@ public class PSCFG {
 	private Examples examples;
 	private int maxIters;
 	private double absTol;
+	// Meaning -> coverage tables, shared by all parsers used during estimation
+	private HashMap covs;
 	
 	public PSCFG(SCFGModel model) {
 		this.model = model;
@@ -82,7 +85,9 @@ public class PSCFG {
 			absTol = QUICK_ABS_TOL;
 		}
 		setInitWeights();
+		covs = new HashMap();
 		maximize();
+		covs = null;
 		logger.info("Parameter estimation of the PSCFG translation model is done");
 	}
 	
@@ -133,6 +138,7 @@ public class PSCFG {
 		Arrays.fill(gapZ, 0);
 		double prob = 0;
 		SCFGParser parser = new SCFGParser(model, true);
+		parser.setCoverageCache(covs);
 		for (Iterator it = examples.iterator(); it.hasNext();) {
 			Example ex = (Example) it.next();
 			logger.finest("example "+ex.id);
@@ -183,6 +189,7 @@ public class PSCFG {
 		if (DO_VITERBI_APPROX) {
 			HashSet set = new HashSet();
 			SCFGParser parser = new SCFGParser(model, 1);
+			parser.setCoverageCache(covs);
 			for (Iterator it = examples.iterator(); it.hasNext();) {
 				Example ex = (Example) it.next();
 				for (Iterator jt = parser.parse(ex.E(), ex.F); jt.hasNext();) {
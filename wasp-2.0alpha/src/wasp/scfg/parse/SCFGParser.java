@@ -21,7 +21,9 @@ package wasp.scfg.parse;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -34,11 +36,13 @@ import wasp.data.Terminal;
 import wasp.data.VariableAssignment;
 import wasp.data.VariableSet;
 import wasp.main.Config;
+import wasp.main.Metrics;
 import wasp.main.Parser;
 import wasp.math.Math;
 import wasp.mrl.Denotation;
 import wasp.mrl.Production;
 import wasp.mrl.ProductionSymbol;
+import wasp.scfg.Budget;
 import wasp.scfg.SCFG;
 import wasp.scfg.Rule;
 import wasp.scfg.SCFGModel;
@@ -61,10 +65,27 @@ public class SCFGParser extends Parser {
 	static {
 		logger.setLevel(Level.INFO);
 	}
+	
+	private static final Metrics.Counter PARSES = Metrics.counter("scfg.parse.sentences");
+	private static final Metrics.Counter CUTS = Metrics.counter("scfg.parse.budget-exceeded");
+	private static final Metrics.Histogram PREDICTED = Metrics.histogram("scfg.parse.items.predicted");
+	private static final Metrics.Histogram SCANNED = Metrics.histogram("scfg.parse.items.scanned");
+	private static final Metrics.Histogram COMPLETED = Metrics.histogram("scfg.parse.items.completed");
+	private static final Metrics.Histogram CHART_SIZE = Metrics.histogram("scfg.parse.chart.size");
+	private static final Metrics.Histogram KBEST = Metrics.histogram("scfg.parse.kbest");
+	private static final Metrics.Histogram LATENCY = Metrics.histogram("scfg.parse.latency");
 
 	private SCFGModel model;
 	private int kbest;
 	private boolean checkCov;
+	/** The resource limits for decoding each sentence; <code>null</code> if there are no limits. */
+	private Budget budget;
+	/** Describes how the last call to the <code>parse</code> method was cut short. */
+	private String cut;
+	// the number of items predicted, scanned and completed for the current sentence
+	private int npredicted;
+	private int nscanned;
+	private int ncompleted;
 	
 	/** The chart currently in use.  Each call to the <code>parse</code> method creates a new chart
 	 * based on the input sentence.  This chart is re-used by the outside algorithm during parameter
@@ -80,6 +101,8 @@ public class SCFGParser extends Parser {
 	private HashMap cWilds;
 	// Production -> Coverage
 	private HashMap cProds;
+	// Meaning -> Coverages
+	private HashMap cache;
 	
 	/**
 	 * Creates a parser based on the specified SCFG for parameter estimation.
@@ -104,6 +127,7 @@ public class SCFGParser extends Parser {
 		this.model = model;
 		this.kbest = kbest;
 		checkCov = true;
+		budget = Budget.create();
 		c = null;
 		E = null;
 	}
@@ -115,19 +139,60 @@ public class SCFGParser extends Parser {
 		this.model = model;
 		kbest = Config.getKBest();
 		checkCov = true;
+		budget = Budget.create();
 		c = null;
 		E = null;
 	}
 	
+	/**
+	 * Lets this parser re-use the coverage tables that it computes for each MR across calls to the
+	 * <code>parse</code> method.  The specified map can be shared among parsers that are based on the
+	 * same SCFG model, e.g. across iterations of parameter estimation.  Cached entries are keyed by
+	 * <code>Meaning</code> objects (by identity), and they are discarded automatically when rules are
+	 * added to the grammar.
+	 * 
+	 * @param cache a map from MRs to cached coverage tables; <code>null</code> disables caching.
+	 */
+	public void setCoverageCache(HashMap cache) {
+		this.cache = cache;
+	}
+	
 	public boolean batch() {
 		return false;
 	}
 	
 	public Iterator parse(Terminal[] E, Meaning F) {
+		long start = Metrics.start();
 		this.E = E;
 		if (F != null)  // training
 			initc(F);
+		// resource limits apply to decoding only
+		Budget budget = (F == null) ? Budget.start(this.budget) : null;
+		cut = null;
+		fill(F, budget, 0);
+		if (budget != null && budget.isExceeded()) {
+			cut = "budget exceeded ("+budget.getReason()+")";
+			// keep any full parses found so far; otherwise try again with a tighter beam
+			if (!new ParseIterator(model.gram, c, null).hasNext()) {
+				int beam = Budget.getBeam();
+				budget.start();
+				fill(F, budget, beam);
+				cut += "; re-parsed with beam "+beam;
+				if (budget.isExceeded())
+					cut += "; budget exceeded again ("+budget.getReason()+")";
+			}
+			logger.fine(cut);
+		}
+		if (Metrics.enabled)
+			record(start);
+		Iterator parseIt = new ParseIterator(model.gram, c, cut);
+		return (kbest==0) ? parseIt : new SortIterator(parseIt, kbest);
+	}
+	
+	private void fill(Meaning F, Budget budget, int beam) {
+		npredicted = nscanned = ncompleted = 0;
 		c = new Chart(model.gram, this.E, kbest, checkCov);
+		c.setBudget(budget, beam);
 		Item item = new Item(new Rule(model.gram.getStart()), (short) 0);
 		item.inner = 0;
 		if (ParseFeatures.USE_VAR_TYPES)
@@ -135,14 +200,41 @@ public class SCFGParser extends Parser {
 		if (F != null)  // training
 			item.cov = cDummy;  // dummy rule
 		c.addItem(item);
-		for (short i = 0; i <= c.maxPos; ++i) {
+		// no more items can be added once the budget is used up
+		for (short i = 0; i <= c.maxPos && !c.isOverBudget(); ++i) {
 			if (i > 0)
 				complete(this.E, F, c, i);
+			c.prune(i);
 			if (i < c.maxPos)
 				predictAndScan(this.E, F, c, i);
 		}
-		Iterator parseIt = new ParseIterator(model.gram, c);
-		return (kbest==0) ? parseIt : new SortIterator(parseIt, kbest);
+	}
+	
+	private void record(long start) {
+		PARSES.inc();
+		if (cut != null)
+			CUTS.inc();
+		PREDICTED.add(npredicted);
+		SCANNED.add(nscanned);
+		COMPLETED.add(ncompleted);
+		for (int i = 0; i <= c.maxPos; ++i)
+			CHART_SIZE.add(c.sets[i].size());
+		int nparses = 0;
+		for (Iterator it = new ParseIterator(model.gram, c, null); it.hasNext(); it.next())
+			++nparses;
+		KBEST.add((kbest==0 || nparses < kbest) ? nparses : kbest);
+		Metrics.stop(LATENCY, start);
+	}
+	
+	/**
+	 * Returns a description of how the last call to the <code>parse</code> method was cut short for
+	 * running out of budget.  The same description is attached to the returned parses as comments.
+	 * 
+	 * @return a description of how parsing was cut short; <code>null</code> if parsing was completed
+	 * within budget.
+	 */
+	public String getCut() {
+		return cut;
 	}
 	
 	public Iterator parse(Terminal[] E) {
@@ -150,6 +242,18 @@ public class SCFGParser extends Parser {
 	}
 	
 	private void initc(Meaning F) {
+		if (cache != null) {
+			Coverages covs = (Coverages) cache.get(F);
+			if (covs != null && covs.nrules == model.gram.countRules()) {
+				vaEmpty = covs.vaEmpty;
+				vsEmpty = covs.vsEmpty;
+				cEmpty = covs.cEmpty;
+				cDummy = covs.cDummy;
+				cWilds = covs.cWilds;
+				cProds = covs.cProds;
+				return;
+			}
+		}
 		short length = (short) F.linear.length;
 		vaEmpty = new VariableAssignment();
 		vsEmpty = new VariableSet();
@@ -172,22 +276,38 @@ public class SCFGParser extends Parser {
 					}
 				cWilds.put(wilds[i], cov);
 			}
+		// only consider rules whose MR parses can be rooted at some node of F
 		cProds = new HashMap();
-		Rule[] rules = model.gram.getRules();
-		for (int i = 0; i < rules.length; ++i) {
-			if (!rules[i].isActive())
-				continue;
-			Production prod = rules[i].getProduction();
-			if (cProds.containsKey(prod))
+		HashMap cands = new HashMap();
+		for (short j = 0; j < length; ++j) {
+			Production Fprod = F.lprods[j];
+			if (cands.containsKey(Fprod))
 				continue;
-			Coverage cov = new Coverage();
-			for (short j = 0; j < length; ++j) {
-				Coverage c = match(prod.getParse(), F, j);
-				if (c != null)
-					cov.addAll(c);
+			Rule[] rules = model.gram.getRulesByRoot(Fprod);
+			HashSet prods = new HashSet();
+			for (int i = 0; i < rules.length; ++i)
+				if (rules[i].isActive())
+					prods.add(rules[i].getProduction());
+			cands.put(Fprod, prods.toArray(new Production[0]));
+		}
+		for (short j = 0; j < length; ++j) {
+			Production[] prods = (Production[]) cands.get(F.lprods[j]);
+			for (int i = 0; i < prods.length; ++i) {
+				Coverage c = match(prods[i].getParse(), F, j);
+				if (c == null)
+					continue;
+				Coverage cov = (Coverage) cProds.get(prods[i]);
+				if (cov == null) {
+					cov = new Coverage();
+					cProds.put(prods[i], cov);
+				}
+				cov.addAll(c);
 			}
-			if (cov.isEmpty())
-				continue;
+		}
+		for (Iterator it = cProds.entrySet().iterator(); it.hasNext();) {
+			Map.Entry entry = (Map.Entry) it.next();
+			Production prod = (Production) entry.getKey();
+			Coverage cov = (Coverage) entry.getValue();
 			// find free variables
 			for (short j = 0; j < cov.size(); ++j) {
 				VariableSet fvars = cov.getVars(j).free(prod.getLhs());
@@ -195,9 +315,32 @@ public class SCFGParser extends Parser {
 					fvars = vsEmpty;
 				cov.setFreeVars(j, fvars);
 			}
-			cProds.put(prod, cov);
 		}
 		//logger.finest(cProds.toString());
+		if (cache != null) {
+			Coverages covs = new Coverages();
+			covs.nrules = model.gram.countRules();
+			covs.vaEmpty = vaEmpty;
+			covs.vsEmpty = vsEmpty;
+			covs.cEmpty = cEmpty;
+			covs.cDummy = cDummy;
+			covs.cWilds = cWilds;
+			covs.cProds = cProds;
+			cache.put(F, covs);
+		}
+	}
+	
+	/**
+	 * The coverage tables computed for an MR by the <code>initc</code> method.
+	 */
+	private static class Coverages {
+		public int nrules;
+		public VariableAssignment vaEmpty;
+		public VariableSet vsEmpty;
+		public Coverage cEmpty;
+		public Coverage cDummy;
+		public HashMap cWilds;
+		public HashMap cProds;
 	}
 	
 	private Coverage match(Node parse, Meaning F, short index) {
@@ -269,7 +412,7 @@ public class SCFGParser extends Parser {
 	}
 	
 	private void complete(Terminal[] E, Meaning F, Chart c, short current) {
-		while (!c.comps[current].isEmpty()) {
+		while (!c.comps[current].isEmpty() && !c.isOverBudget()) {
 			Item comp = (Item) c.comps[current].extractMin();
 			if (comp.rule.isDummy())
 				continue;
@@ -306,6 +449,7 @@ public class SCFGParser extends Parser {
 				next.inner = item.inner+comp.inner;
 				for (int i = 0; i < model.pf.complete.length; ++i)
 					next.inner += model.pf.complete[i].weight(E, item, comp, next);
+				++ncompleted;
 				c.addItem(next);
 				skipWords(E, c, next);
 			}
@@ -424,6 +568,7 @@ public class SCFGParser extends Parser {
 			next.inner = item.inner;
 			for (int j = 0; j < model.pf.scan.length; ++j)
 				next.inner += model.pf.scan[j].weight(E, item, next);
+			++nscanned;
 			c.addItem(next);
 			item = next;
 		}
@@ -431,7 +576,7 @@ public class SCFGParser extends Parser {
 	
 	private void predictAndScan(Terminal[] E, Meaning F, Chart c, short current) {
 		ArrayList set = c.sets[current];
-		for (int i = 0; i < set.size(); ++i) {
+		for (int i = 0; i < set.size() && !c.isOverBudget(); ++i) {
 			Item item = (Item) set.get(i);
 			if (item.dot == item.rule.lengthE())
 				continue;
@@ -460,6 +605,7 @@ public class SCFGParser extends Parser {
 							next.inner = 0;
 							for (int l = 0; l < model.pf.predict.length; ++l)
 								next.inner += model.pf.predict[l].weight(E, next);
+							++npredicted;
 							c.addItem(next);
 						}
 					}
@@ -473,6 +619,7 @@ public class SCFGParser extends Parser {
 					next.inner = item.inner;
 					for (int j = 0; j < model.pf.scan.length; ++j)
 						next.inner += model.pf.scan[j].weight(E, item, next);
+					++nscanned;
 					c.addItem(next);
 					skipWords(E, c, next);
 				}
@@ -497,8 +644,10 @@ public class SCFGParser extends Parser {
 		private SCFG gram;
 		private Iterator it;
 		private Item next;
-		public ParseIterator(SCFG gram, Chart c) {
+		private String comment;
+		public ParseIterator(SCFG gram, Chart c, String comment) {
 			this.gram = gram;
+			this.comment = comment;
 			it = c.sets[c.maxPos].iterator();
 			findNext();
 		}
@@ -523,7 +672,9 @@ public class SCFGParser extends Parser {
 				throw new NoSuchElementException();
 			Item next = this.next;
 			findNext();
-			return new SCFGParse(next);
+			SCFGParse parse = new SCFGParse(next);
+			parse.comment = comment;
+			return parse;
 		}
 		public void remove() {
 			throw new UnsupportedOperationException();
@@ -557,7 +708,7 @@ public class SCFGParser extends Parser {
 	}
 	
 	private void initOuterScores(Chart c, boolean checkCov) {
-		for (Iterator it = new ParseIterator(model.gram, c); it.hasNext();) {
+		for (Iterator it = new ParseIterator(model.gram, c, null); it.hasNext();) {
 			SCFGParse parse = (SCFGParse) it.next();
 			if (checkCov && !parse.item.cov.isFull())
 				continue;
@@ -19,10 +19,8 @@
  */
 package wasp.scfg.parse.features;
 
-import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.PrintWriter;
 
@@ -32,10 +30,8 @@ import wasp.math.Math;
 import wasp.scfg.PartialRule;
 import wasp.scfg.SCFGModel;
 import wasp.scfg.parse.Item;
-import wasp.util.Double;
 import wasp.util.FileWriter;
 import wasp.util.Int;
-import wasp.util.Short;
 import wasp.util.TokenReader;
 
 /**
@@ -79,7 +75,7 @@ public class ParentRuleFreeVars extends ParseFeature {
 
 	public void read() throws IOException {
 		File file = new File(Config.getModelDir(), SCFG_PARENT_RULE_FREE_VARS);
-		TokenReader in = new TokenReader(new BufferedReader(new FileReader(file)));
+		TokenReader in = new TokenReader(file);
 		String[] line;
 		while ((line = in.readLine()) != null) {
 			Int index = new Int(0);
@@ -88,14 +84,14 @@ public class ParentRuleFreeVars extends ParseFeature {
 				throw new RuntimeException();
 			if (!line[index.val++].equals("//"))
 				throw new RuntimeException();
-			short nfvars = Short.parseShort(line[index.val++]);
+			short nfvars = (short) in.getInt(index.val++);
 			if (index.val < line.length && line[index.val].equals("weight")) {
 				int id = gram.getPartialRuleId(rule, false);
 				if (id < 0)
 					continue;
 				if (weights == null)
 					weights = new double[gram.countPartialRules()*NUM_BINS];
-				weights[id*NUM_BINS+nfvars] = Double.parseDouble(line[index.val+1]);
+				weights[id*NUM_BINS+nfvars] = in.getDouble(index.val+1);
 				index.val += 2;
 			}
 			if (index.val < line.length)
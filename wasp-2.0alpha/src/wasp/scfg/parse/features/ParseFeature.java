@@ -105,6 +105,22 @@ public abstract class ParseFeature {
 		Arrays.fill(outers, Double.NEGATIVE_INFINITY);
 	}
 	
+	/**
+	 * Starts collecting the parameters that are used in the parse charts of the training examples.
+	 * Feature sets with sparse parameters only allocate parameters that are collected this way.
+	 * 
+	 * @return <code>true</code> if this feature set has sparse parameters; <code>false</code>
+	 * otherwise.
+	 */
+	public boolean startIndexing() {
+		return false;
+	}
+	
+	/**
+	 * Stops collecting the parameters that are used in the parse charts.
+	 */
+	public void stopIndexing() {}
+	
 	///
 	/// File I/O
 	///
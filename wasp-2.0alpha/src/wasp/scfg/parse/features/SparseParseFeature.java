@@ -0,0 +1,126 @@
+/*
+ * Copyright 2006, 2007 Yuk Wah Wong.
+ * 
+ * This file is part of the WASP distribution.
+ *
+ * WASP is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * WASP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with WASP; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package wasp.scfg.parse.features;
+
+import wasp.math.Math;
+import wasp.scfg.SCFGModel;
+import wasp.util.Arrays;
+import wasp.util.LongNumberer;
+
+/**
+ * The abstract class for feature sets whose features are indexed by pairs of partial rules (and 
+ * optionally the number of free variables being added).  Almost all such pairs never co-occur in a 
+ * parse chart, so parameters are only allocated for pairs that are seen in the parse charts of the
+ * training examples, or read from model files.  Unseen pairs have zero weights.
+ * 
+ * @author ywwong
+ *
+ */
+public abstract class SparseParseFeature extends ParseFeature {
+
+	protected LongNumberer index;
+	private boolean indexing;
+	
+	protected SparseParseFeature(SCFGModel model) {
+		super(model);
+		index = new LongNumberer();
+		indexing = false;
+	}
+	
+	/** The number of bits in a key for the second partial rule. */
+	private static final int ID2_BITS = 24;
+	/** The number of bits in a key for the bin. */
+	private static final int BIN_BITS = 8;
+	
+	/**
+	 * Returns the key of the specified pair of partial rules and bin.  A key takes 32 bits for
+	 * <code>id1</code>, <code>ID2_BITS</code> bits for <code>id2</code>, and <code>BIN_BITS</code> bits
+	 * for <code>bin</code>.
+	 * 
+	 * @throws IllegalArgumentException if any of the arguments does not fit in its field of the key.
+	 */
+	protected static long key(int id1, int id2, short bin) {
+		if (id1 < 0 || id2 < 0 || id2 >= 1<<ID2_BITS || bin < 0 || bin >= 1<<BIN_BITS)
+			throw new IllegalArgumentException("Feature key out of range: id1="+id1+", id2="+id2
+					+", bin="+bin);
+		return ((long) id1 << (ID2_BITS+BIN_BITS)) | ((long) id2 << BIN_BITS) | bin;
+	}
+	
+	protected static int getId1(long key) {
+		return (int) (key >>> (ID2_BITS+BIN_BITS));
+	}
+	
+	protected static int getId2(long key) {
+		return (int) (key >>> BIN_BITS) & ((1<<ID2_BITS)-1);
+	}
+	
+	protected static short getBin(long key) {
+		return (short) (key & ((1<<BIN_BITS)-1));
+	}
+	
+	protected double weight(long key) {
+		int i = index.getId(key, indexing);
+		// new parameters have zero weights until the weight vector is resized
+		return (weights == null || i < 0 || i >= weights.length) ? 0 : weights[i];
+	}
+	
+	protected void addOuterScore(long key, double inc) {
+		int i = index.getId(key, false);
+		if (i >= 0)
+			outers[i] = Math.logAdd(outers[i], inc);
+	}
+	
+	protected void setWeight(long key, double w) {
+		int i = index.getId(key, true);
+		if (weights == null)
+			weights = new double[index.getNextId()];
+		else if (i >= weights.length)
+			weights = Arrays.resize(weights, Math.max(index.getNextId(), weights.length*2));
+		weights[i] = w;
+	}
+	
+	/**
+	 * Makes sure that the weight vector has exactly one entry for each parameter.
+	 */
+	protected void trimWeights() {
+		if (weights != null && weights.length != countParams())
+			weights = Arrays.resize(weights, countParams());
+	}
+	
+	///
+	/// Parameter estimation
+	///
+	
+	public int countParams() {
+		return index.getNextId();
+	}
+	
+	public boolean startIndexing() {
+		indexing = true;
+		return true;
+	}
+	
+	public void stopIndexing() {
+		indexing = false;
+		trimWeights();
+		outers = null;
+	}
+	
+}
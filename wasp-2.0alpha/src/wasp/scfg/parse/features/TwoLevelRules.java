@@ -19,20 +19,16 @@
  */
 package wasp.scfg.parse.features;
 
-import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.PrintWriter;
 
 import wasp.data.Terminal;
 import wasp.main.Config;
-import wasp.math.Math;
 import wasp.scfg.PartialRule;
 import wasp.scfg.SCFGModel;
 import wasp.scfg.parse.Item;
-import wasp.util.Double;
 import wasp.util.FileWriter;
 import wasp.util.Int;
 import wasp.util.TokenReader;
@@ -43,29 +39,22 @@ import wasp.util.TokenReader;
  * @author ywwong
  *
  */
-public class TwoLevelRules extends ParseFeature {
+public class TwoLevelRules extends SparseParseFeature {
 
 	public TwoLevelRules(SCFGModel model) {
 		super(model);
 	}
 
 	public double weight(Terminal[] E, Item item, Item comp, Item next) {
-		if (weights == null)
-			return 0;
-		return weights[item.rule.partialRuleId*gram.countPartialRules()+comp.rule.partialRuleId];
+		return weight(key(item.rule.partialRuleId, comp.rule.partialRuleId, (short) 0));
 	}
 
 	///
 	/// Parameter estimation
 	///
 
-	public int countParams() {
-		return gram.countPartialRules()*gram.countPartialRules();
-	}
-	
 	public void addOuterScore(Terminal[] E, Item item, Item comp, Item next, double inc) {
-		int i = item.rule.partialRuleId*gram.countPartialRules()+comp.rule.partialRuleId;
-		outers[i] = Math.logAdd(outers[i], inc);
+		addOuterScore(key(item.rule.partialRuleId, comp.rule.partialRuleId, (short) 0), inc);
 	}
 	
 	///
@@ -76,7 +65,7 @@ public class TwoLevelRules extends ParseFeature {
 
 	public void read() throws IOException {
 		File file = new File(Config.getModelDir(), SCFG_TWO_LEVEL_RULES);
-		TokenReader in = new TokenReader(new BufferedReader(new FileReader(file)));
+		TokenReader in = new TokenReader(file);
 		String[] line;
 		while ((line = in.readLine()) != null) {
 			Int index = new Int(0);
@@ -93,38 +82,34 @@ public class TwoLevelRules extends ParseFeature {
 				int i2 = gram.getPartialRuleId(rule2, false);
 				if (i1 < 0 || i2 < 0)
 					continue;
-				int nrules = gram.countPartialRules();
-				if (weights == null)
-					weights = new double[nrules*nrules];
-				weights[i1*nrules+i2] = Double.parseDouble(line[index.val+1]);
+				setWeight(key(i1, i2, (short) 0), in.getDouble(index.val+1));
 				index.val += 2;
 			}
 			if (index.val < line.length)
 				throw new RuntimeException();
 		}
 		in.close();
+		trimWeights();
 	}
 
 	public void write() throws IOException {
 		File file = new File(Config.getModelDir(), SCFG_TWO_LEVEL_RULES);
 		PrintWriter out = new PrintWriter(new BufferedWriter(FileWriter.createNew(file)));
-		if (weights != null) {
-			int nrules = gram.countPartialRules();
-			for (int i = 0; i < nrules; ++i) {
-				PartialRule rule1 = gram.getPartialRule(i);
-				for (int j = 0; j < nrules; ++j) {
-					double w = weights[i*nrules+j];
-					if (w != 0) {
-						PartialRule rule2 = gram.getPartialRule(j);
-						out.print(rule1);
-						out.print(" // ");
-						out.print(rule2);
-						out.print(" weight ");
-						out.println(w);
-					}
+		if (weights != null)
+			for (int i = 0; i < weights.length; ++i) {
+				double w = weights[i];
+				if (w != 0) {
+					long key = index.getKey(i);
+					int id1 = getId1(key);
+					PartialRule rule1 = gram.getPartialRule(id1);
+					PartialRule rule2 = gram.getPartialRule(getId2(key));
+					out.print(rule1);
+					out.print(" // ");
+					out.print(rule2);
+					out.print(" weight ");
+					out.println(w);
 				}
 			}
-		}
 		out.close();
 	}
 	
@@ -19,23 +19,18 @@
  */
 package wasp.scfg.parse.features;
 
-import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.PrintWriter;
 
 import wasp.data.Terminal;
 import wasp.main.Config;
-import wasp.math.Math;
 import wasp.scfg.PartialRule;
 import wasp.scfg.SCFGModel;
 import wasp.scfg.parse.Item;
-import wasp.util.Double;
 import wasp.util.FileWriter;
 import wasp.util.Int;
-import wasp.util.Short;
 import wasp.util.TokenReader;
 
 /**
@@ -44,35 +39,22 @@ import wasp.util.TokenReader;
  * @author ywwong
  *
  */
-public class TwoLevelRulesFreeVars extends ParseFeature {
+public class TwoLevelRulesFreeVars extends SparseParseFeature {
 
-	private static final short NUM_BINS = ParseFeatures.NUM_BINS_FREE_VARS;
-	
 	public TwoLevelRulesFreeVars(SCFGModel model) {
 		super(model);
 	}
 
 	public double weight(Terminal[] E, Item item, Item comp, Item next) {
-		if (weights == null)
-			return 0;
-		int id1 = item.rule.partialRuleId;
-		int id2 = comp.rule.partialRuleId;
-		return weights[(id1*gram.countPartialRules()+id2)*NUM_BINS + comp.nfvars];
+		return weight(key(item.rule.partialRuleId, comp.rule.partialRuleId, comp.nfvars));
 	}
 	
 	///
 	/// Parameter estimation
 	///
 
-	public int countParams() {
-		return gram.countPartialRules()*gram.countPartialRules()*NUM_BINS;
-	}
-
 	public void addOuterScore(Terminal[] E, Item item, Item comp, Item next, double inc) {
-		int id1 = item.rule.partialRuleId;
-		int id2 = comp.rule.partialRuleId;
-		int i = (id1*gram.countPartialRules()+id2)*NUM_BINS + comp.nfvars;
-		outers[i] = Math.logAdd(outers[i], inc);
+		addOuterScore(key(item.rule.partialRuleId, comp.rule.partialRuleId, comp.nfvars), inc);
 	}
 	
 	///
@@ -83,7 +65,7 @@ public class TwoLevelRulesFreeVars extends ParseFeature {
 
 	public void read() throws IOException {
 		File file = new File(Config.getModelDir(), SCFG_TWO_LEVEL_RULES_FREE_VARS);
-		TokenReader in = new TokenReader(new BufferedReader(new FileReader(file)));
+		TokenReader in = new TokenReader(file);
 		String[] line;
 		while ((line = in.readLine()) != null) {
 			Int index = new Int(0);
@@ -97,48 +79,42 @@ public class TwoLevelRulesFreeVars extends ParseFeature {
 				throw new RuntimeException();
 			if (!line[index.val++].equals("//"))
 				throw new RuntimeException();
-			short nfvars = Short.parseShort(line[index.val++]);
+			short nfvars = (short) in.getInt(index.val++);
 			if (index.val < line.length && line[index.val].equals("weight")) {
 				int i1 = gram.getPartialRuleId(rule1, false);
 				int i2 = gram.getPartialRuleId(rule2, false);
 				if (i1 < 0 || i2 < 0)
 					continue;
-				int nrules = gram.countPartialRules();
-				if (weights == null)
-					weights = new double[nrules*nrules*NUM_BINS];
-				weights[(i1*nrules+i2)*NUM_BINS+nfvars] = Double.parseDouble(line[index.val+1]);
+				setWeight(key(i1, i2, nfvars), in.getDouble(index.val+1));
 				index.val += 2;
 			}
 			if (index.val < line.length)
 				throw new RuntimeException();
 		}
 		in.close();
+		trimWeights();
 	}
 
 	public void write() throws IOException {
 		File file = new File(Config.getModelDir(), SCFG_TWO_LEVEL_RULES_FREE_VARS);
 		PrintWriter out = new PrintWriter(new BufferedWriter(FileWriter.createNew(file)));
-		if (weights != null) {
-			int nrules = gram.countPartialRules();
-			for (int i = 0; i < nrules; ++i) {
-				PartialRule rule1 = gram.getPartialRule(i);
-				for (int j = 0; j < nrules; ++j) {
-					PartialRule rule2 = gram.getPartialRule(j);
-					for (short k = 0; k < NUM_BINS; ++k) {
-						double w = weights[(i*nrules+j)*NUM_BINS+k];
-						if (w != 0) {
-							out.print(rule1);
-							out.print(" // ");
-							out.print(rule2);
-							out.print(" // ");
-							out.print(k);
-							out.print(" weight ");
-							out.println(w);
-						}
-					}
+		if (weights != null)
+			for (int i = 0; i < weights.length; ++i) {
+				double w = weights[i];
+				if (w != 0) {
+					long key = index.getKey(i);
+					int id1 = getId1(key);
+					PartialRule rule1 = gram.getPartialRule(id1);
+					PartialRule rule2 = gram.getPartialRule(getId2(key));
+					out.print(rule1);
+					out.print(" // ");
+					out.print(rule2);
+					out.print(" // ");
+					out.print(getBin(key));
+					out.print(" weight ");
+					out.println(w);
 				}
 			}
-		}
 		out.close();
 	}
 	
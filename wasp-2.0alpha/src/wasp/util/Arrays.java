@@ -324,6 +324,11 @@ public class Arrays {
 			array[i] = val;
 	}
 	
+	public static void fill(long[] array, long val) {
+		for (int i = 0; i < array.length; ++i)
+			array[i] = val;
+	}
+	
 	public static void fill(short[] array, short val) {
 		for (int i = 0; i < array.length; ++i)
 			array[i] = val;
@@ -684,6 +689,13 @@ public class Arrays {
 		return a;
 	}
 	
+	public static byte[] resize(byte[] array, int length) {
+		byte[] a = new byte[length];
+		for (int i = 0; i < array.length && i < length; ++i)
+			a[i] = array[i];
+		return a;
+	}
+	
 	public static double[] resize(double[] array, int length) {
 		double[] a = new double[length];
 		for (int i = 0; i < array.length && i < length; ++i)
@@ -707,6 +719,13 @@ public class Arrays {
 		return a;
 	}
 	
+	public static long[] resize(long[] array, int length) {
+		long[] a = new long[length];
+		for (int i = 0; i < array.length && i < length; ++i)
+			a[i] = array[i];
+		return a;
+	}
+	
 	public static short[] resize(short[] array, int length) {
 		short[] a = new short[length];
 		for (int i = 0; i < array.length && i < length; ++i)
@@ -742,6 +761,12 @@ public class Arrays {
 			array[i] = val[i];
 	}
 	
+	public static void shiftLeft(int[] array, int val) {
+		for (int i = 0; i < array.length-1; ++i)
+			array[i] = array[i+1];
+		array[array.length-1] = val;
+	}
+	
 	public static void shiftLeft(Object[] array) {
 		for (int i = 0; i < array.length-1; ++i)
 			array[i] = array[i+1];
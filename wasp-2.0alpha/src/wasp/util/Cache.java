@@ -0,0 +1,122 @@
+/*
+ * Copyright 2006, 2007 Yuk Wah Wong.
+ *
+ * This file is part of the WASP distribution.
+ *
+ * WASP is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * WASP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with WASP; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package wasp.util;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A thread-safe cache with a bounded number of entries.  Entries are kept in two generations of
+ * concurrent hash maps.  New entries go to the young generation; when it is half full, it becomes the
+ * old generation, and the previous old generation is dropped.  An entry found in the old generation
+ * is moved back to the young generation, so recently used entries tend to survive.  Lookups never
+ * block, and the cache holds at most about <code>capacity</code> entries.
+ *
+ * @author ywwong
+ *
+ */
+public class Cache {
+
+	private final int capacity;
+	private volatile ConcurrentHashMap young;
+	private volatile ConcurrentHashMap old;
+
+	/**
+	 * @param capacity the maximum number of entries to keep.
+	 */
+	public Cache(int capacity) {
+		this.capacity = Math.max(2, capacity);
+		young = new ConcurrentHashMap();
+		old = new ConcurrentHashMap();
+	}
+
+	/**
+	 * Returns the value of the specified key, or <code>null</code> if it is not in the cache.
+	 *
+	 * @param key the key to look for.
+	 * @return the value of <code>key</code>; <code>null</code> if it is not in the cache.
+	 */
+	public Object get(Object key) {
+		Object value = young.get(key);
+		if (value == null) {
+			value = old.get(key);
+			if (value != null)
+				put(key, value);
+		}
+		return value;
+	}
+
+	/**
+	 * Stores the specified key-value pair in the cache.  Neither the key nor the value can be
+	 * <code>null</code>.
+	 *
+	 * @param key the key.
+	 * @param value the value of <code>key</code>.
+	 */
+	public void put(Object key, Object value) {
+		ConcurrentHashMap y = young;
+		y.put(key, value);
+		if (y.size() >= capacity/2)
+			age(y);
+	}
+
+	private synchronized void age(ConcurrentHashMap y) {
+		if (young != y)
+			return;
+		old = y;
+		young = new ConcurrentHashMap();
+	}
+
+	/**
+	 * Copies all entries of the specified cache to this cache.
+	 *
+	 * @param cache the cache to copy from.
+	 */
+	public void putAll(Cache cache) {
+		putAll(cache.old);
+		putAll(cache.young);
+	}
+
+	private void putAll(ConcurrentHashMap map) {
+		for (Iterator it = map.entrySet().iterator(); it.hasNext();) {
+			Map.Entry entry = (Map.Entry) it.next();
+			put(entry.getKey(), entry.getValue());
+		}
+	}
+
+	/**
+	 * Removes all entries from the cache.
+	 */
+	public synchronized void clear() {
+		old = new ConcurrentHashMap();
+		young = new ConcurrentHashMap();
+	}
+
+	/**
+	 * Returns the maximum number of entries in the cache.
+	 *
+	 * @return the maximum number of entries in the cache.
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+}
@@ -0,0 +1,239 @@
+/*
+ * Copyright 2006, 2007 Yuk Wah Wong.
+ *
+ * This file is part of the WASP distribution.
+ *
+ * WASP is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * WASP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with WASP; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package wasp.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import wasp.main.Context;
+
+/**
+ * Reads a text file in chunks that are parsed concurrently.  The file is split at record boundaries,
+ * so that each record is parsed as a whole by one thread.  A record is a line, or a group of lines
+ * the first of which starts with a given prefix.  Results of each chunk are returned in file order,
+ * so that they can be merged as if the file were read sequentially.  Gzip-compressed files are read
+ * in one chunk.  Chunks are parsed in the fork/join pool shared by all contexts, in the context of
+ * the calling thread.
+ *
+ * @author ywwong
+ *
+ */
+public abstract class ChunkedFileReader {
+
+	// files smaller than this are not split
+	private static final long MIN_CHUNK_SIZE = 1<<20;
+
+	private byte[] recordPrefix;
+
+	/**
+	 * Creates a reader for files in which each line is a record.
+	 */
+	protected ChunkedFileReader() {
+		this(null);
+	}
+
+	/**
+	 * Creates a reader for files in which each record starts with a line that has the given prefix.
+	 *
+	 * @param recordPrefix the prefix of the first line of each record.
+	 */
+	protected ChunkedFileReader(String recordPrefix) {
+		this.recordPrefix = (recordPrefix==null) ? null : recordPrefix.getBytes();
+	}
+
+	/**
+	 * Parses a chunk of the file.  This method may be called by several threads at once.
+	 *
+	 * @param in the reader of the chunk, which contains only whole records.
+	 * @return the result of parsing the chunk.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	protected abstract Object parse(TokenReader in) throws IOException;
+
+	/**
+	 * Reads the specified file.
+	 *
+	 * @param file the file to read.
+	 * @return the results of parsing each chunk, in file order.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	public Object[] read(File file) throws IOException {
+		long length = file.length();
+		int nthreads = Runtime.getRuntime().availableProcessors();
+		int nchunks = (int) Math.max(1, Math.min(nthreads, length/MIN_CHUNK_SIZE));
+		if (nchunks == 1 || isGzip(file)) {
+			TokenReader in = new TokenReader(file);
+			Object result = parse(in);
+			in.close();
+			return new Object[] {result};
+		}
+		long[] bounds = split(file, length, nchunks);
+		ExecutorService pool = Context.getSharedPool();
+		final Context ctx = Context.current();
+		Future[] futures = new Future[nchunks];
+		try {
+			for (int i = 0; i < nchunks; ++i) {
+				final File f = file;
+				final long from = bounds[i];
+				final long to = bounds[i+1];
+				futures[i] = pool.submit(new Callable() {
+					public Object call() throws IOException {
+						Context prev = Context.install(ctx);
+						try {
+							TokenReader in = new TokenReader(open(f, from, to));
+							Object result = parse(in);
+							in.close();
+							return result;
+						} finally {
+							Context.install(prev);
+						}
+					}
+				});
+			}
+			Object[] results = new Object[nchunks];
+			for (int i = 0; i < nchunks; ++i)
+				results[i] = futures[i].get();
+			return results;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			cancel(futures);
+			throw new IOException("interrupted while reading "+file);
+		} catch (ExecutionException e) {
+			cancel(futures);
+			Throwable t = e.getCause();
+			if (t instanceof IOException)
+				throw (IOException) t;
+			if (t instanceof RuntimeException)
+				throw (RuntimeException) t;
+			if (t instanceof Error)
+				throw (Error) t;
+			throw new RuntimeException(t);
+		}
+	}
+
+	private static void cancel(Future[] futures) {
+		for (int i = 0; i < futures.length; ++i)
+			if (futures[i] != null)
+				futures[i].cancel(true);
+	}
+
+	private static boolean isGzip(File file) throws IOException {
+		FileInputStream in = new FileInputStream(file);
+		try {
+			return in.read() == 0x1f && in.read() == 0x8b;
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Returns the offsets at which the chunks start, followed by the length of the file.  Empty chunks
+	 * are possible when records are large.
+	 */
+	private long[] split(File file, long length, int nchunks) throws IOException {
+		long[] bounds = new long[nchunks+1];
+		bounds[nchunks] = length;
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			for (int i = 1; i < nchunks; ++i)
+				bounds[i] = Math.max(bounds[i-1], nextRecord(raf, length*i/nchunks, length));
+		} finally {
+			raf.close();
+		}
+		return bounds;
+	}
+
+	/**
+	 * Returns the offset of the first record that starts after the specified offset.
+	 */
+	private long nextRecord(RandomAccessFile raf, long pos, long length) throws IOException {
+		byte[] buf = new byte[8192];
+		int n = 0;
+		int i = 0;
+		boolean lineStart = false;
+		while (true) {
+			if (i == n) {
+				raf.seek(pos);
+				n = raf.read(buf);
+				i = 0;
+				if (n <= 0)
+					return length;
+			}
+			if (lineStart) {
+				if (recordPrefix == null)
+					return pos;
+				if (n-i < recordPrefix.length && pos+recordPrefix.length <= length) {
+					// make sure that the whole prefix is in the buffer
+					n = i;
+					continue;
+				}
+				if (matches(buf, i, n))
+					return pos;
+				lineStart = false;
+			}
+			if (buf[i++] == '\n')
+				lineStart = true;
+			++pos;
+		}
+	}
+
+	private boolean matches(byte[] buf, int i, int n) {
+		if (n-i < recordPrefix.length)
+			return false;
+		for (int j = 0; j < recordPrefix.length; ++j)
+			if (buf[i+j] != recordPrefix[j])
+				return false;
+		return true;
+	}
+
+	private static InputStream open(File file, long from, long to) throws IOException {
+		FileInputStream fin = new FileInputStream(file);
+		fin.getChannel().position(from);
+		final long limit = to-from;
+		return new FilterInputStream(fin) {
+			private long pos = 0;
+			public int read() throws IOException {
+				if (pos >= limit)
+					return -1;
+				int b = super.read();
+				if (b >= 0)
+					++pos;
+				return b;
+			}
+			public int read(byte[] b, int off, int len) throws IOException {
+				if (pos >= limit)
+					return -1;
+				int n = super.read(b, off, (int) Math.min(len, limit-pos));
+				if (n > 0)
+					pos += n;
+				return n;
+			}
+		};
+	}
+
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2006, 2007 Yuk Wah Wong.
+ *
+ * This file is part of the WASP distribution.
+ *
+ * WASP is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * WASP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with WASP; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package wasp.util;
+
+/**
+ * A data structure that maps <code>long</code> keys to consecutive non-negative integer IDs, and vice
+ * versa.  Keys are stored in an open-addressing hash table, so no objects are created per key.
+ * Lookups that do not add new keys can be done concurrently.
+ *
+ * @author ywwong
+ *
+ */
+public class LongNumberer {
+
+	private static final int INIT_CAPACITY = 64;
+
+	// hash table: slot -> ID+1 (0 for empty slots)
+	private int[] table;
+	private long[] idToKey;
+	private int nextId;
+
+	public LongNumberer() {
+		table = new int[INIT_CAPACITY];
+		idToKey = new long[INIT_CAPACITY/2];
+		nextId = 0;
+	}
+
+	private static int hash(long key) {
+		long h = key*0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+
+	/**
+	 * Returns the ID of the specified key.  If the specified key is not found and the <code>add</code>
+	 * argument is true, then the key is mapped to a new ID.  Otherwise, <code>-1</code> is returned.
+	 *
+	 * @param key the key to look for.
+	 * @param add indicates if a new ID is created when the <code>key</code> argument is not found.
+	 * @return the ID of the specified key; <code>-1</code> if there is no such ID.
+	 */
+	public int getId(long key, boolean add) {
+		int mask = table.length-1;
+		int i = hash(key) & mask;
+		while (table[i] != 0) {
+			if (idToKey[table[i]-1] == key)
+				return table[i]-1;
+			i = (i+1) & mask;
+		}
+		if (!add)
+			return -1;
+		if (nextId == idToKey.length)
+			idToKey = Arrays.resize(idToKey, idToKey.length*2);
+		idToKey[nextId] = key;
+		table[i] = ++nextId;
+		if (nextId*2 > table.length)
+			rehash();
+		return nextId-1;
+	}
+
+	private void rehash() {
+		int[] t = new int[table.length*2];
+		int mask = t.length-1;
+		for (int id = 0; id < nextId; ++id) {
+			int i = hash(idToKey[id]) & mask;
+			while (t[i] != 0)
+				i = (i+1) & mask;
+			t[i] = id+1;
+		}
+		table = t;
+	}
+
+	/**
+	 * Returns the key with the specified ID.
+	 *
+	 * @param id a key ID.
+	 * @return the key with the specified ID.
+	 * @throws ArrayIndexOutOfBoundsException if no such ID exists.
+	 */
+	public long getKey(int id) {
+		if (id < 0 || id >= nextId)
+			throw new ArrayIndexOutOfBoundsException(id);
+		return idToKey[id];
+	}
+
+	/**
+	 * Returns the next ID to assign to new keys, which is also the number of keys.
+	 *
+	 * @return the next ID to assign to new keys.
+	 */
+	public int getNextId() {
+		return nextId;
+	}
+
+}
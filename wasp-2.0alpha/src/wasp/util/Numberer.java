@@ -116,4 +116,18 @@ public class Numberer {
     	return getId(o, true) == last;
     }
     
+    /**
+     * Returns a copy of this numberer.  Subsequent additions to the copy do not affect this numberer,
+     * and vice versa.
+     * 
+     * @return a copy of this numberer.
+     */
+    public Numberer copy() {
+    	Numberer n = new Numberer();
+    	n.objToId = (HashMap) objToId.clone();
+    	n.idToObj = idToObj.clone();
+    	n.nextId = nextId;
+    	return n;
+    }
+    
 }
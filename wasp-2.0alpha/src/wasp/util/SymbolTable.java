@@ -0,0 +1,185 @@
+/*
+ * Copyright 2006, 2007 Yuk Wah Wong.
+ *
+ * This file is part of the WASP distribution.
+ *
+ * WASP is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * WASP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with WASP; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package wasp.util;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+
+/**
+ * A thread-safe data structure that maps strings to consecutive integer IDs, and vice versa.  Each ID
+ * also carries an <code>int</code> of bit flags.  Lookups never block.  New strings are added under
+ * the per-bin locks of a concurrent hash map, so threads adding different strings rarely contend.
+ * Each new string is published in its own slot, without waiting for other threads.
+ * <code>getNextId()</code> advances past the slots that have been published in order, so that all
+ * IDs below it are always valid.
+ * <p>
+ * Strings and flags are kept in fixed-size chunks, which are never copied once allocated.  The
+ * strings themselves are shared with the keys of the hash map.
+ *
+ * @author ywwong
+ *
+ */
+public class SymbolTable {
+
+	private static final int CHUNK_BITS = 10;
+	private static final int CHUNK_SIZE = 1<<CHUNK_BITS;
+	private static final int CHUNK_MASK = CHUNK_SIZE-1;
+	private static final int MAX_CHUNKS = 1<<16;
+
+	// String -> Integer
+	private final ConcurrentHashMap strToId;
+	// chunk -> AtomicReferenceArray of String
+	private final AtomicReferenceArray strs;
+	// chunk -> AtomicIntegerArray
+	private final AtomicReferenceArray flags;
+	private final int firstId;
+	private final AtomicInteger nextId;
+	private final AtomicInteger published;
+
+	/**
+	 * @param firstId the first ID to use.
+	 */
+	public SymbolTable(int firstId) {
+		strToId = new ConcurrentHashMap();
+		strs = new AtomicReferenceArray(MAX_CHUNKS);
+		flags = new AtomicReferenceArray(MAX_CHUNKS);
+		this.firstId = firstId;
+		nextId = new AtomicInteger(firstId);
+		published = new AtomicInteger(firstId);
+	}
+
+	public SymbolTable() {
+		this(0);
+	}
+
+	/**
+	 * Returns the ID of the specified string, or <code>-1</code> if it has not been added.
+	 *
+	 * @param str the string to look for.
+	 * @return the ID of the specified string; <code>-1</code> if there is no such ID.
+	 */
+	public int getId(String str) {
+		Integer id = (Integer) strToId.get(str);
+		return (id==null) ? -1 : id.intValue();
+	}
+
+	/**
+	 * Returns the ID of the specified string.  If the specified string is not found, then it is mapped
+	 * to a new ID with the given initial flags.
+	 *
+	 * @param str the string to look for.
+	 * @param initFlags the flags of the new ID, if one is created.
+	 * @return the ID of the specified string.
+	 */
+	public int getId(final String str, final int initFlags) {
+		Integer id = (Integer) strToId.get(str);
+		if (id != null)
+			return id.intValue();
+		id = (Integer) strToId.computeIfAbsent(str, new Function() {
+			public Object apply(Object o) {
+				return Integer.valueOf(add(str, initFlags));
+			}
+		});
+		return id.intValue();
+	}
+
+	/**
+	 * Stores a new string.  This is done before the string is put in the hash map, so that any thread
+	 * that finds the new ID in the hash map also finds the string.  The flags are stored before the
+	 * string, so that any thread that finds the string also finds the flags.
+	 */
+	private int add(String str, int initFlags) {
+		int id = nextId.getAndIncrement();
+		int c = id>>>CHUNK_BITS;
+		if (strs.get(c) == null)
+			strs.compareAndSet(c, null, new AtomicReferenceArray(CHUNK_SIZE));
+		if (flags.get(c) == null)
+			flags.compareAndSet(c, null, new AtomicIntegerArray(CHUNK_SIZE));
+		((AtomicIntegerArray) flags.get(c)).set(id&CHUNK_MASK, initFlags);
+		((AtomicReferenceArray) strs.get(c)).set(id&CHUNK_MASK, str);
+		return id;
+	}
+
+	/**
+	 * Returns the string with the specified ID.  If there is no such ID, then <code>null</code> is
+	 * returned.
+	 *
+	 * @param id a string ID.
+	 * @return the string with the specified ID; <code>null</code> when no such ID exists.
+	 */
+	public String getStr(int id) {
+		if (id < firstId)
+			return null;
+		AtomicReferenceArray a = (AtomicReferenceArray) strs.get(id>>>CHUNK_BITS);
+		return (a==null) ? null : (String) a.get(id&CHUNK_MASK);
+	}
+
+	/**
+	 * Returns the flags of the specified ID.  If there is no such ID, then <code>0</code> is returned.
+	 *
+	 * @param id a string ID.
+	 * @return the flags of the specified ID.
+	 */
+	public int getFlags(int id) {
+		if (id < firstId)
+			return 0;
+		AtomicIntegerArray a = (AtomicIntegerArray) flags.get(id>>>CHUNK_BITS);
+		return (a==null) ? 0 : a.get(id&CHUNK_MASK);
+	}
+
+	/**
+	 * Sets the specified flag bits of the specified ID.
+	 *
+	 * @param id a string ID.
+	 * @param flag the flag bits to set.
+	 * @return <code>true</code> if any of the flag bits was previously unset; <code>false</code>
+	 * otherwise.
+	 */
+	public boolean setFlags(int id, int flag) {
+		AtomicIntegerArray a = (AtomicIntegerArray) flags.get(id>>>CHUNK_BITS);
+		int i = id&CHUNK_MASK;
+		while (true) {
+			int f = a.get(i);
+			if ((f & flag) == flag)
+				return false;
+			if (a.compareAndSet(i, f, f|flag))
+				return true;
+		}
+	}
+
+	/**
+	 * Returns the next ID to assign to new strings.  All IDs below it are valid.  IDs whose strings
+	 * are still being stored by other threads are not counted yet.
+	 *
+	 * @return the next ID to assign to new strings.
+	 */
+	public int getNextId() {
+		int n = published.get();
+		while (n < nextId.get() && getStr(n) != null) {
+			published.compareAndSet(n, n+1);
+			n = published.get();
+		}
+		return n;
+	}
+
+}
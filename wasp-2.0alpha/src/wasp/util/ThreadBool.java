@@ -0,0 +1,53 @@
+/*
+ * Copyright 2006, 2007 Yuk Wah Wong.
+ * 
+ * This file is part of the WASP distribution.
+ *
+ * WASP is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * WASP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with WASP; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package wasp.util;
+
+/**
+ * A boolean flag whose value is local to each thread.  This is used for static mode flags (e.g. 
+ * <code>Terminal.readWords</code>) that are set right before reading, so that readers in different
+ * threads do not interfere with each other.
+ * 
+ * @author ywwong
+ * 
+ */
+public class ThreadBool {
+
+	private final boolean init;
+	private final ThreadLocal val;
+
+	public ThreadBool(boolean init) {
+		this.init = init;
+		val = new ThreadLocal();
+	}
+
+	public boolean get() {
+		Boolean b = (Boolean) val.get();
+		return (b==null) ? init : b.booleanValue();
+	}
+
+	public void set(boolean b) {
+		val.set((b) ? Boolean.TRUE : Boolean.FALSE);
+	}
+
+	public String toString() {
+		return Boolean.toString(get());
+	}
+
+}
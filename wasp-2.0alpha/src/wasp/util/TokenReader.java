@@ -1,6 +1,6 @@
 /*
  * Copyright 2006, 2007 Yuk Wah Wong.
- * 
+ *
  * This file is part of the WASP distribution.
  *
  * WASP is free software; you can redistribute it and/or modify
@@ -20,52 +20,452 @@
 package wasp.util;
 
 import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.io.PushbackInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.zip.GZIPInputStream;
 
 /**
  * Reads text from a stream, and breaks the text into tokens.
- * 
+ * <p>
+ * Text can be read one line at a time, either as a <code>String</code> array (via the
+ * <code>readLine()</code> method), or as a sequence of token views (via the <code>nextLine()</code>
+ * method), which can be compared to strings and parsed as numbers without creating new objects.  The
+ * two ways of reading can be mixed.
+ * <p>
+ * Readers created from files and byte streams tokenize the raw bytes directly.  Repeated tokens share
+ * the same <code>String</code> objects, and gzip-compressed files are decompressed on the fly.
+ * Readers created from character streams are handled as before.
+ *
  * @author ywwong
  *
  */
 public class TokenReader {
 
+	private static final int BUF_SIZE = 1<<16;
+	private static final int CACHE_SIZE = 1<<12;
+	private static final Charset CHARSET = Charset.defaultCharset();
+	private static final double[] POW10 = {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17,
+		1e18, 1e19, 1e20, 1e21, 1e22
+	};
+	private static final float[] POW10F = {
+		1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f, 1e10f
+	};
+
+	// character streams
 	private BufferedReader in;
-	
+	private String[] tokens;
+
+	// byte streams
+	private FileChannel channel;
+	private ByteBuffer channelBuf;
+	private InputStream stream;
+	private byte[] buf;
+	private int pos;
+	private int limit;
+	private int lineStart;
+	private boolean eof;
+	// token i of the current line spans buf[starts[i]] to buf[ends[i]-1]
+	private int[] starts;
+	private int[] ends;
+	private int ntokens;
+	// direct-mapped cache of recently seen tokens
+	private String[] cache;
+	private char[] chars;
+
 	public TokenReader(BufferedReader in) {
 		this.in = in;
 	}
-	
+
 	public TokenReader(InputStream in) {
-		this.in = new BufferedReader(new InputStreamReader(in));
+		initBytes();
+		stream = in;
+	}
+
+	/**
+	 * Creates a reader for the specified file.  The file is decompressed on the fly if it is
+	 * gzip-compressed.
+	 *
+	 * @param file the file to read.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	public TokenReader(File file) throws IOException {
+		initBytes();
+		FileInputStream fin = new FileInputStream(file);
+		PushbackInputStream pin = new PushbackInputStream(fin, 2);
+		byte[] magic = new byte[2];
+		int n = pin.read(magic, 0, 2);
+		if (n == 2 && magic[0] == (byte) 0x1f && magic[1] == (byte) 0x8b) {
+			pin.unread(magic, 0, n);
+			stream = new GZIPInputStream(pin, BUF_SIZE);
+		} else {
+			// plain files are read through the channel, past the bytes that have been peeked at
+			channel = fin.getChannel();
+			channel.position(0);
+			channelBuf = ByteBuffer.wrap(buf);
+		}
+	}
+
+	private void initBytes() {
+		buf = new byte[BUF_SIZE];
+		pos = 0;
+		limit = 0;
+		lineStart = 0;
+		eof = false;
+		starts = new int[16];
+		ends = new int[16];
+		ntokens = 0;
+		cache = new String[CACHE_SIZE];
+		chars = new char[64];
 	}
-	
+
 	/**
 	 * Closes this stream.
-	 * 
+	 *
 	 * @throws IOException if an I/O error occurs.
 	 */
 	public void close() throws IOException {
-		in.close();
+		if (in != null)
+			in.close();
+		else if (channel != null)
+			channel.close();
+		else
+			stream.close();
 	}
-	
+
 	/**
-	 * Reads a line of text and breaks it into tokens.  A line is considered to be terminated by any 
-	 * one of a line feed (<code>'\n'</code>), a carriage return (<code>'\r'</code>), or a carriage 
+	 * Reads a line of text and breaks it into tokens.  A line is considered to be terminated by any
+	 * one of a line feed (<code>'\n'</code>), a carriage return (<code>'\r'</code>), or a carriage
 	 * return followed immediately by a linefeed.  A token is a <code>String</code> with no whitespace
 	 * characters in it.
-	 * 
-	 * @return a <code>String</code> array containing all tokens in the line; <code>null</code> if the 
+	 *
+	 * @return a <code>String</code> array containing all tokens in the line; <code>null</code> if the
 	 * end of the stream has been reached.
 	 * @throws IOException if an I/O error occurs.
 	 */
 	public String[] readLine() throws IOException {
-		String line = in.readLine();
-		if (line == null)
+		if (!nextLine())
 			return null;
-		return Arrays.tokenize(line);
+		if (in != null)
+			return tokens;
+		String[] line = new String[ntokens];
+		for (int i = 0; i < ntokens; ++i)
+			line[i] = getToken(i);
+		return line;
+	}
+
+	/**
+	 * Advances to the next line of text.  Tokens in that line can then be accessed via the
+	 * <code>getToken</code>, <code>isToken</code>, <code>getInt</code>, <code>getFloat</code> and
+	 * <code>getDouble</code> methods.
+	 *
+	 * @return <code>true</code> if there is a next line; <code>false</code> if the end of the stream
+	 * has been reached.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	public boolean nextLine() throws IOException {
+		if (in != null) {
+			String line = in.readLine();
+			if (line == null)
+				return false;
+			tokens = Arrays.tokenize(line);
+			return true;
+		}
+		ntokens = 0;
+		lineStart = pos;
+		if (pos == limit && !fill())
+			return false;
+		boolean inToken = false;
+		while (true) {
+			if (pos == limit && !fill()) {
+				if (inToken)
+					endToken(limit);
+				return true;
+			}
+			byte b = buf[pos];
+			if (b == '\n' || b == '\r') {
+				if (inToken)
+					endToken(pos);
+				++pos;
+				if (b == '\r' && (pos < limit || fill()) && buf[pos] == '\n')
+					++pos;
+				return true;
+			}
+			boolean space = b == ' ' || b == '\t' || b == '\f';
+			if (inToken && space) {
+				endToken(pos);
+				inToken = false;
+			} else if (!inToken && !space) {
+				if (ntokens == starts.length) {
+					starts = Arrays.resize(starts, ntokens*2);
+					ends = Arrays.resize(ends, ntokens*2);
+				}
+				starts[ntokens] = pos;
+				inToken = true;
+			}
+			++pos;
+		}
+	}
+
+	private void endToken(int end) {
+		ends[ntokens++] = end;
+	}
+
+	/**
+	 * Reads more bytes into the buffer.  The bytes of the current line are moved to the beginning of
+	 * the buffer first, and token offsets are shifted accordingly.  The buffer grows if a line does not
+	 * fit in it.
+	 */
+	private boolean fill() throws IOException {
+		if (eof)
+			return false;
+		int shift = lineStart;
+		if (shift > 0) {
+			System.arraycopy(buf, shift, buf, 0, limit-shift);
+			limit -= shift;
+			pos -= shift;
+			lineStart = 0;
+			// this includes the start of a token that has not ended yet
+			for (int i = 0; i < starts.length && i <= ntokens; ++i) {
+				starts[i] -= shift;
+				ends[i] -= shift;
+			}
+		}
+		if (limit == buf.length) {
+			buf = Arrays.resize(buf, buf.length*2);
+			if (channel != null)
+				channelBuf = ByteBuffer.wrap(buf);
+		}
+		int n;
+		if (channel != null) {
+			channelBuf.limit(buf.length);
+			channelBuf.position(limit);
+			n = channel.read(channelBuf);
+		} else
+			n = stream.read(buf, limit, buf.length-limit);
+		if (n < 0) {
+			eof = true;
+			return false;
+		}
+		limit += n;
+		return true;
+	}
+
+	/**
+	 * Returns the number of tokens in the current line.
+	 *
+	 * @return the number of tokens in the current line.
+	 */
+	public int countTokens() {
+		return (in != null) ? tokens.length : ntokens;
+	}
+
+	/**
+	 * Returns the specified token of the current line.
+	 *
+	 * @param i the position of the token in the current line.
+	 * @return the token at the specified position.
+	 */
+	public String getToken(int i) {
+		if (in != null)
+			return tokens[i];
+		checkIndex(i);
+		int s = starts[i];
+		int len = ends[i]-s;
+		int h = 0;
+		boolean ascii = true;
+		for (int j = 0; j < len; ++j) {
+			byte b = buf[s+j];
+			h = 31*h+b;
+			ascii &= b >= 0;
+		}
+		if (!ascii)
+			return new String(buf, s, len, CHARSET);
+		int slot = (h ^ (h>>>12)) & (CACHE_SIZE-1);
+		String str = cache[slot];
+		if (str != null && matches(str, s, len))
+			return str;
+		if (chars.length < len)
+			chars = new char[len];
+		for (int j = 0; j < len; ++j)
+			chars[j] = (char) buf[s+j];
+		str = new String(chars, 0, len);
+		cache[slot] = str;
+		return str;
+	}
+
+	private boolean matches(String str, int s, int len) {
+		if (str.length() != len)
+			return false;
+		for (int j = 0; j < len; ++j)
+			if (str.charAt(j) != buf[s+j])
+				return false;
+		return true;
+	}
+
+	private void checkIndex(int i) {
+		if (i < 0 || i >= ntokens)
+			throw new ArrayIndexOutOfBoundsException(i);
+	}
+
+	/**
+	 * Indicates if the specified token of the current line is equal to the given string.
+	 *
+	 * @param i the position of the token in the current line.
+	 * @param str the string to compare with.
+	 * @return <code>true</code> if the token at the specified position is equal to <code>str</code>;
+	 * <code>false</code> otherwise.
+	 */
+	public boolean isToken(int i, String str) {
+		if (in != null)
+			return tokens[i].equals(str);
+		checkIndex(i);
+		int s = starts[i];
+		int len = ends[i]-s;
+		for (int j = 0; j < len; ++j)
+			if (buf[s+j] < 0)
+				return slowToken(i).equals(str);
+		return matches(str, s, len);
+	}
+
+	/**
+	 * Parses the specified token of the current line as an <code>int</code>.
+	 *
+	 * @param i the position of the token in the current line.
+	 * @return the <code>int</code> value of the token.
+	 * @throws NumberFormatException if the token is not a valid <code>int</code>.
+	 */
+	public int getInt(int i) {
+		if (in != null)
+			return Int.parseInt(tokens[i]);
+		checkIndex(i);
+		int s = starts[i];
+		int e = ends[i];
+		boolean neg = s < e && buf[s] == '-';
+		if (neg || (s < e && buf[s] == '+'))
+			++s;
+		// at most 9 digits, so that no overflow can occur
+		if (s == e || e-s > 9)
+			return Int.parseInt(slowToken(i));
+		int val = 0;
+		for (; s < e; ++s) {
+			int d = buf[s]-'0';
+			if (d < 0 || d > 9)
+				return Int.parseInt(slowToken(i));
+			val = val*10+d;
+		}
+		return (neg) ? -val : val;
 	}
-	
+
+	/**
+	 * Parses the specified token of the current line as a <code>double</code>.  Decimal numbers with at
+	 * most 15 significant digits are parsed without creating new objects.  The result is always the
+	 * same as that of <code>Double.parseDouble</code>.
+	 *
+	 * @param i the position of the token in the current line.
+	 * @return the <code>double</code> value of the token.
+	 * @throws NumberFormatException if the token is not a valid <code>double</code>.
+	 */
+	public double getDouble(int i) {
+		if (in != null)
+			return Double.parseDouble(tokens[i]);
+		checkIndex(i);
+		long m = parseMantissa(i);
+		if (m >= 0) {
+			int scale = this.scale;
+			// both m and 10^|scale| are exact, so a single multiplication or division is correctly
+			// rounded
+			if (scale == 0)
+				return (negative) ? -(double) m : (double) m;
+			if (-22 <= scale && scale <= 22) {
+				double val = (scale > 0) ? m*POW10[scale] : m/POW10[-scale];
+				return (negative) ? -val : val;
+			}
+		}
+		return Double.parseDouble(slowToken(i));
+	}
+
+	/**
+	 * Parses the specified token of the current line as a <code>float</code>.  The result is always the
+	 * same as that of <code>Float.parseFloat</code>.
+	 *
+	 * @param i the position of the token in the current line.
+	 * @return the <code>float</code> value of the token.
+	 * @throws NumberFormatException if the token is not a valid <code>float</code>.
+	 */
+	public float getFloat(int i) {
+		if (in != null)
+			return Float.parseFloat(tokens[i]);
+		checkIndex(i);
+		long m = parseMantissa(i);
+		if (m >= 0 && m < (1<<24) && -10 <= scale && scale <= 10) {
+			float val = (scale >= 0) ? m*POW10F[scale] : m/POW10F[-scale];
+			return (negative) ? -val : val;
+		}
+		return Float.parseFloat(slowToken(i));
+	}
+
+	// results of parseMantissa()
+	private boolean negative;
+	private int scale;
+
+	/**
+	 * Parses a plain decimal number as <code>m*10^scale</code>.  Returns <code>-1</code> if the token
+	 * is not a plain decimal number, or it has more than 15 significant digits.
+	 */
+	private long parseMantissa(int i) {
+		int s = starts[i];
+		int e = ends[i];
+		negative = s < e && buf[s] == '-';
+		if (negative || (s < e && buf[s] == '+'))
+			++s;
+		long m = 0;
+		int ndigits = 0;
+		boolean any = false;
+		scale = 0;
+		for (; s < e && '0' <= buf[s] && buf[s] <= '9'; ++s) {
+			if (m > 0 || buf[s] != '0')
+				++ndigits;
+			m = m*10+(buf[s]-'0');
+			any = true;
+			if (ndigits > 15)
+				return -1;
+		}
+		if (s < e && buf[s] == '.')
+			for (++s; s < e && '0' <= buf[s] && buf[s] <= '9'; ++s) {
+				if (m > 0 || buf[s] != '0')
+					++ndigits;
+				m = m*10+(buf[s]-'0');
+				--scale;
+				any = true;
+				if (ndigits > 15)
+					return -1;
+			}
+		if (!any || ndigits > 15)
+			return -1;
+		if (s < e && (buf[s] == 'e' || buf[s] == 'E')) {
+			++s;
+			boolean neg = s < e && buf[s] == '-';
+			if (neg || (s < e && buf[s] == '+'))
+				++s;
+			if (s == e || e-s > 3)
+				return -1;
+			int exp = 0;
+			for (; s < e && '0' <= buf[s] && buf[s] <= '9'; ++s)
+				exp = exp*10+(buf[s]-'0');
+			scale += (neg) ? -exp : exp;
+		}
+		return (s == e) ? m : -1;
+	}
+
+	private String slowToken(int i) {
+		return new String(buf, starts[i], ends[i]-starts[i], CHARSET);
+	}
+
 }